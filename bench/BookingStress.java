@@ -0,0 +1,439 @@
+package bench;
+
+import enums.AppointmentStatus;
+import enums.BloodType;
+import enums.Gender;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+import model.Appointment;
+import model.AppointmentDetail;
+import model.Doctor;
+import model.Patient;
+import repository.AppointmentRepository;
+import repository.DoctorRepository;
+import repository.PatientRepository;
+import service.AppointmentScheduleService;
+import service.AppointmentService;
+
+/**
+ * Stress harness for concurrent appointment booking. Threads book, reschedule and cancel appointments
+ * for a handful of doctors at once, and the appointments file is then read back to check that no doctor
+ * or patient was double-booked. The racy check-then-create sequence that {@code bookIfFree} replaced is
+ * run first for comparison, and is reported but not held to the check.
+ * <p>
+ * The last check starts several worker processes of this harness on the same data directory, each booking
+ * from threads of its own, since the booking locks of one process do not exclude another.
+ * <p>
+ * The harness seeds its own doctors and patients under {@code data/}, so it has to be run from an empty
+ * directory, which the worker processes share. Run it with {@code ./compile.sh bench}. It exits with status 1 if any check fails.
+ *
+ * @author Russell Arvin
+ * @version 1.0
+ */
+public final class BookingStress {
+    private static final int THREADS = 16;
+    private static final int BOOKINGS_PER_THREAD = 100;
+    private static final int DOCTORS = 3;
+    private static final int PATIENTS = 200;
+    private static final int SLOTS_PER_DAY = 16;
+    private static final int WORKER_PROCESSES = 4;
+    private static final String WORKER = "worker";
+
+    private final AppointmentService appointmentService;
+    private final AppointmentScheduleService scheduleService;
+
+    /**
+     * Constructs the harness over freshly seeded repositories.
+     *
+     * @param appointmentService The service to manage appointments.
+     * @param scheduleService    The service that books appointments.
+     */
+    private BookingStress(AppointmentService appointmentService, AppointmentScheduleService scheduleService) {
+        this.appointmentService = appointmentService;
+        this.scheduleService = scheduleService;
+    }
+
+    /**
+     * Seeds the doctors and patients and runs every check.
+     *
+     * @param args unused
+     * @throws Exception if a worker thread fails
+     */
+    public static void main(String[] args) throws Exception {
+        if (args.length == 3 && args[0].equals(WORKER)) {
+            // A worker process started by bookAcrossProcesses, booking into the data directory it was started in
+            BookingStress worker = create();
+            int booked = worker.runBookings(LocalDate.parse(args[1]), Integer.parseInt(args[2]), worker::bookIfFree);
+            System.out.println(booked);
+            System.exit(0);
+        }
+
+        if (Files.exists(Paths.get("data"))) {
+            System.out.println("Refusing to run next to an existing data directory, run it through ./compile.sh bench");
+            System.exit(2);
+        }
+        seed(new DoctorRepository(), new PatientRepository());
+        BookingStress stress = create();
+
+        LocalDate day = LocalDate.now().plusDays(7);
+        boolean passed = true;
+        stress.bookRacily(day);
+        passed &= stress.bookAtomically(day.plusDays(1));
+        passed &= stress.rescheduleIntoOneSlot(day.plusDays(2));
+        passed &= stress.cancelAndRebook(day.plusDays(4));
+        passed &= bookAcrossProcesses(day.plusDays(6));
+        System.exit(passed ? 0 : 1);
+    }
+
+    /**
+     * Creates the harness over the repositories of the data directory.
+     *
+     * @return The harness.
+     */
+    private static BookingStress create() {
+        AppointmentRepository appointmentRepository = new AppointmentRepository();
+        DoctorRepository doctorRepository = new DoctorRepository();
+        PatientRepository patientRepository = new PatientRepository();
+        AppointmentService appointmentService = new AppointmentService(appointmentRepository, doctorRepository, patientRepository);
+        return new BookingStress(
+            appointmentService,
+            new AppointmentScheduleService(appointmentService, patientRepository, doctorRepository)
+        );
+    }
+
+    /**
+     * Books with a separate availability check and create, which two threads can both pass.
+     *
+     * @param day The day to book.
+     * @throws Exception if a worker thread fails.
+     */
+    private void bookRacily(LocalDate day) throws Exception {
+        int booked = runBookings(day, 0, (doctorId, patientId, start) -> {
+            if (!appointmentService.isDoctorFree(doctorId, start, start.plusMinutes(30))) return false;
+            if (!appointmentService.isPatientFree(patientId, start, start.plusMinutes(30))) return false;
+            Thread.yield();
+            return appointmentService.createAppointment(patientId, doctorId, start, start.plusMinutes(30)) == null;
+        });
+        System.out.printf("check-then-create: %d booked, %d double bookings (for comparison)%n", booked, countDoubleBookings(day));
+    }
+
+    /**
+     * Books through {@code bookIfFree}, which must never double-book.
+     *
+     * @param day The day to book.
+     * @return true if nobody was double-booked.
+     * @throws Exception if a worker thread fails.
+     */
+    private boolean bookAtomically(LocalDate day) throws Exception {
+        int booked = runBookings(day, 0, this::bookIfFree);
+        int doubleBookings = countDoubleBookings(day);
+        System.out.printf("bookIfFree: %d booked, %d double bookings%n", booked, doubleBookings);
+        return doubleBookings == 0;
+    }
+
+    /**
+     * Books through {@code bookIfFree} from several processes sharing the data directory at once,
+     * which must never double-book either.
+     *
+     * @param day The day to book.
+     * @return true if every worker finished and nobody was double-booked.
+     * @throws Exception if a worker process cannot be started.
+     */
+    private static boolean bookAcrossProcesses(LocalDate day) throws Exception {
+        String java = Paths.get(System.getProperty("java.home"), "bin", "java").toString();
+        List<Process> workers = new ArrayList<>();
+        for (int worker = 1; worker <= WORKER_PROCESSES; worker++) {
+            workers.add(new ProcessBuilder(java, "-cp", System.getProperty("java.class.path"),
+                BookingStress.class.getName(), WORKER, day.toString(), String.valueOf(worker))
+                .redirectErrorStream(true)
+                .start());
+        }
+
+        int booked = 0;
+        boolean finished = true;
+        for (Process worker : workers) {
+            String output = new String(worker.getInputStream().readAllBytes()).trim();
+            if (worker.waitFor() != 0) {
+                System.out.println("Worker process failed: " + output);
+                finished = false;
+            } else {
+                booked += Integer.parseInt(output);
+            }
+        }
+        int doubleBookings = countDoubleBookings(day);
+
+        System.out.printf("bookIfFree from %d processes: %d booked, %d double bookings%n",
+            WORKER_PROCESSES, booked, doubleBookings);
+        return finished && doubleBookings == 0;
+    }
+
+    /**
+     * Books a 30-minute appointment through {@code bookIfFree}.
+     *
+     * @param doctorId  The ID of the doctor.
+     * @param patientId The ID of the patient.
+     * @param start     The start of the appointment.
+     * @return true if the appointment was booked.
+     */
+    private boolean bookIfFree(String doctorId, String patientId, LocalDateTime start) {
+        return scheduleService.bookIfFree(doctorId, patientId, start, start.plusMinutes(30)) == null;
+    }
+
+    /**
+     * Moves every appointment of a doctor into the same free slot at once, which only one may win.
+     *
+     * @param day The day the appointments start on.
+     * @return true if exactly one appointment was moved and nobody was double-booked.
+     * @throws Exception if a worker thread fails.
+     */
+    private boolean rescheduleIntoOneSlot(LocalDate day) throws Exception {
+        for (int slot = 0; slot < SLOTS_PER_DAY; slot++) {
+            scheduleService.bookIfFree(doctorIdOf(0), patientIdOf(slot), slotStart(day, slot), slotStart(day, slot).plusMinutes(30));
+        }
+        AppointmentDetail[] appointments = appointmentService.findManyByDoctorIdStartingBetween(
+            doctorIdOf(0), day.atStartOfDay(), day.plusDays(1).atStartOfDay());
+
+        LocalDateTime target = slotStart(day.plusDays(1), 0);
+        List<Callable<Boolean>> moves = new ArrayList<>();
+        for (AppointmentDetail appointment : appointments) {
+            moves.add(() -> scheduleService.rescheduleIfFree(appointment, target, target.plusMinutes(30)) == null);
+        }
+        int moved = runAll(moves);
+        int doubleBookings = countDoubleBookings(day.plusDays(1));
+
+        System.out.printf("rescheduleIfFree: %d of %d moved into one slot, %d double bookings%n",
+            moved, appointments.length, doubleBookings);
+        return moved == 1 && doubleBookings == 0;
+    }
+
+    /**
+     * Cancels a doctor's appointments while other threads try to book new patients into the slots they free.
+     *
+     * @param day The day to book.
+     * @return true if nobody was double-booked.
+     * @throws Exception if a worker thread fails.
+     */
+    private boolean cancelAndRebook(LocalDate day) throws Exception {
+        for (int slot = 0; slot < SLOTS_PER_DAY; slot++) {
+            scheduleService.bookIfFree(doctorIdOf(1), patientIdOf(slot), slotStart(day, slot), slotStart(day, slot).plusMinutes(30));
+        }
+        AppointmentDetail[] appointments = appointmentService.findManyByDoctorIdStartingBetween(
+            doctorIdOf(1), day.atStartOfDay(), day.plusDays(1).atStartOfDay());
+
+        List<Callable<Boolean>> tasks = new ArrayList<>();
+        AtomicInteger rebooked = new AtomicInteger();
+        for (AppointmentDetail appointment : appointments) {
+            tasks.add(() -> appointmentService.setStatus(appointment.getId(), AppointmentStatus.PATIENT_CANCELLED, null) == null);
+        }
+        for (int slot = 0; slot < SLOTS_PER_DAY; slot++) {
+            for (int attempt = 0; attempt < 4; attempt++) {
+                LocalDateTime start = slotStart(day, slot);
+                String patientId = patientIdOf(SLOTS_PER_DAY + slot * 4 + attempt);
+                tasks.add(() -> {
+                    for (int retry = 0; retry < 50; retry++) {
+                        if (scheduleService.bookIfFree(doctorIdOf(1), patientId, start, start.plusMinutes(30)) == null) {
+                            rebooked.incrementAndGet();
+                            return true;
+                        }
+                        Thread.yield();
+                    }
+                    return false;
+                });
+            }
+        }
+        int cancelled = runAll(tasks) - rebooked.get();
+        int doubleBookings = countDoubleBookings(day);
+
+        System.out.printf("setStatus and bookIfFree: %d slots freed, %d rebooked, %d double bookings%n",
+            cancelled, rebooked.get(), doubleBookings);
+        return doubleBookings == 0;
+    }
+
+    /**
+     * Runs booking attempts for random doctors, patients and slots of a day from several threads.
+     *
+     * @param day     The day to book.
+     * @param run     The number of the run, which picks the random sequence of each thread.
+     * @param booking The booking to attempt.
+     * @return The number of appointments booked.
+     * @throws Exception if a worker thread fails.
+     */
+    private int runBookings(LocalDate day, int run, Booking booking) throws Exception {
+        List<Callable<Boolean>> threads = new ArrayList<>();
+        AtomicInteger booked = new AtomicInteger();
+        for (int thread = 0; thread < THREADS; thread++) {
+            Random random = new Random((long) run * THREADS + thread);
+            threads.add(() -> {
+                for (int i = 0; i < BOOKINGS_PER_THREAD; i++) {
+                    String doctorId = doctorIdOf(random.nextInt(DOCTORS));
+                    String patientId = patientIdOf(random.nextInt(PATIENTS));
+                    if (booking.attempt(doctorId, patientId, slotStart(day, random.nextInt(SLOTS_PER_DAY)))) {
+                        booked.incrementAndGet();
+                    }
+                }
+                return true;
+            });
+        }
+        runAll(threads);
+        return booked.get();
+    }
+
+    /**
+     * Starts every task at the same moment, each on its own thread, and waits for all of them.
+     *
+     * @param tasks The tasks.
+     * @return The number of tasks that returned true.
+     * @throws Exception if a worker thread fails.
+     */
+    private static int runAll(List<Callable<Boolean>> tasks) throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(tasks.size());
+        CountDownLatch start = new CountDownLatch(1);
+        List<Future<Boolean>> results = new ArrayList<>();
+        for (Callable<Boolean> task : tasks) {
+            results.add(executor.submit(() -> {
+                start.await();
+                return task.call();
+            }));
+        }
+        start.countDown();
+
+        int succeeded = 0;
+        try {
+            for (Future<Boolean> result : results) {
+                if (result.get()) succeeded++;
+            }
+        } finally {
+            executor.shutdown();
+        }
+        return succeeded;
+    }
+
+    /**
+     * Counts the appointments on a day that overlap an earlier appointment of the same doctor or patient,
+     * reading the appointments file through a new repository. Cancelled appointments take up no time.
+     *
+     * @param day The day to check.
+     * @return The number of double bookings.
+     */
+    private static int countDoubleBookings(LocalDate day) {
+        List<Appointment> active = new ArrayList<>();
+        for (Appointment appointment : new AppointmentRepository().findAll()) {
+            AppointmentStatus status = appointment.getStatus();
+            if (!appointment.getStartDateTime().toLocalDate().equals(day)) continue;
+            if (status == AppointmentStatus.DOCTOR_CANCELLED || status == AppointmentStatus.PATIENT_CANCELLED) continue;
+            active.add(appointment);
+        }
+        return countOverlaps(active, Appointment::getDoctorId) + countOverlaps(active, Appointment::getPatientId);
+    }
+
+    /**
+     * Counts the appointments that overlap an earlier appointment of the same owner.
+     *
+     * @param appointments The appointments.
+     * @param owner        Gives the doctor or patient ID an appointment belongs to.
+     * @return The number of overlapping appointments.
+     */
+    private static int countOverlaps(List<Appointment> appointments, Function<Appointment, String> owner) {
+        Map<String, List<Appointment>> byOwner = new HashMap<>();
+        for (Appointment appointment : appointments) {
+            byOwner.computeIfAbsent(owner.apply(appointment), id -> new ArrayList<>()).add(appointment);
+        }
+
+        int overlaps = 0;
+        for (List<Appointment> owned : byOwner.values()) {
+            owned.sort(Comparator.comparing(Appointment::getStartDateTime));
+            LocalDateTime busyUntil = LocalDateTime.MIN;
+            for (Appointment appointment : owned) {
+                if (appointment.getStartDateTime().isBefore(busyUntil)) overlaps++;
+                if (appointment.getEndDateTime().isAfter(busyUntil)) busyUntil = appointment.getEndDateTime();
+            }
+        }
+        return overlaps;
+    }
+
+    /**
+     * Writes the doctors and patients the bookings are made for.
+     *
+     * @param doctorRepository  The repository for doctor data.
+     * @param patientRepository The repository for patient data.
+     */
+    private static void seed(DoctorRepository doctorRepository, PatientRepository patientRepository) {
+        LocalDateTime now = LocalDateTime.now();
+        Doctor[] doctors = new Doctor[DOCTORS];
+        for (int i = 0; i < DOCTORS; i++) {
+            doctors[i] = new Doctor(doctorIdOf(i), "password", new byte[16], "Doctor " + i, 40, Gender.MALE, 9, 17, now, now);
+        }
+        doctorRepository.saveMany(doctors);
+
+        // Enough patients for the random bookings and for rebooking every slot of the cancellation run
+        Patient[] patients = new Patient[PATIENTS + SLOTS_PER_DAY * 5];
+        for (int i = 0; i < patients.length; i++) {
+            patients[i] = new Patient(patientIdOf(i), "password", new byte[16], "Patient " + i, 30,
+                LocalDate.of(1990, 1, 1), Gender.FEMALE, BloodType.O_POSITIVE, 91234567, "patient" + i + "@example.com",
+                now, now);
+        }
+        patientRepository.saveMany(patients);
+    }
+
+    /**
+     * Returns the ID of a seeded doctor.
+     *
+     * @param index The number of the doctor.
+     * @return The doctor's ID.
+     */
+    private static String doctorIdOf(int index) {
+        return String.format("D%03d", index);
+    }
+
+    /**
+     * Returns the ID of a seeded patient.
+     *
+     * @param index The number of the patient.
+     * @return The patient's ID.
+     */
+    private static String patientIdOf(int index) {
+        return String.format("P%04d", index);
+    }
+
+    /**
+     * Returns the start of a 30-minute slot within the doctors' working hours.
+     *
+     * @param day  The day.
+     * @param slot The number of the slot, counted from 09:00.
+     * @return The start of the slot.
+     */
+    private static LocalDateTime slotStart(LocalDate day, int slot) {
+        return day.atTime(9, 0).plusMinutes(30L * slot);
+    }
+
+    /**
+     * A single attempt to book an appointment.
+     */
+    @FunctionalInterface
+    private interface Booking {
+        /**
+         * Attempts to book a 30-minute appointment.
+         *
+         * @param doctorId  The ID of the doctor.
+         * @param patientId The ID of the patient.
+         * @param start     The start of the appointment.
+         * @return true if the appointment was booked.
+         */
+        boolean attempt(String doctorId, String patientId, LocalDateTime start);
+    }
+}
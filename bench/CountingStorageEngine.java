@@ -0,0 +1,175 @@
+package bench;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Stream;
+import repository.base.CsvStorageEngine;
+import repository.base.RowQuery;
+
+/**
+ * A CSV storage engine that counts the calls made to it, so a harness can tell how often a repository
+ * goes to storage. Calls that read rows are counted apart from version checks, which only compare the
+ * file's version stamp unless another process has written to it. The counts are not thread-safe.
+ *
+ * @author Russell Arvin
+ * @version 1.0
+ */
+final class CountingStorageEngine extends CsvStorageEngine {
+    private int rowReads = 0;
+    private int versionChecks = 0;
+
+    /**
+     * Constructs a CountingStorageEngine for a CSV file.
+     *
+     * @param filePath the file path of the CSV file
+     * @param header the header row for the CSV file
+     * @param appendOnly whether updates and deletes are appended instead of rewriting the file
+     */
+    CountingStorageEngine(String filePath, String header, boolean appendOnly) {
+        super(filePath, header, appendOnly);
+    }
+
+    /**
+     * Returns the number of calls that read rows since the counts were last reset.
+     *
+     * @return the number of row reads
+     */
+    int getRowReads() {
+        return rowReads;
+    }
+
+    /**
+     * Returns the number of version checks since the counts were last reset.
+     *
+     * @return the number of version checks
+     */
+    int getVersionChecks() {
+        return versionChecks;
+    }
+
+    /**
+     * Sets both counts back to zero.
+     */
+    void resetCounts() {
+        rowReads = 0;
+        versionChecks = 0;
+    }
+
+    /**
+     * Counts a version check and brings the file's indexes up to date.
+     */
+    @Override
+    public void refresh() {
+        versionChecks++;
+        super.refresh();
+    }
+
+    /**
+     * Counts a row read and reads the row with the given ID.
+     *
+     * @param id the record ID
+     * @return the row, or null if not found
+     */
+    @Override
+    public String readLine(String id) {
+        rowReads++;
+        return super.readLine(id);
+    }
+
+    /**
+     * Counts a row read and reads the rows with the given IDs.
+     *
+     * @param ids the record IDs
+     * @return the rows keyed by record ID
+     */
+    @Override
+    public Map<String, String> readLines(Collection<String> ids) {
+        rowReads++;
+        return super.readLines(ids);
+    }
+
+    /**
+     * Counts a row read and reads the last row.
+     *
+     * @return the last row, or null if the file has no records
+     */
+    @Override
+    public String getLastLine() {
+        rowReads++;
+        return super.getLastLine();
+    }
+
+    /**
+     * Counts a row read and reads every row.
+     *
+     * @return the rows, excluding the header
+     */
+    @Override
+    public List<String> readAllLines() {
+        rowReads++;
+        return super.readAllLines();
+    }
+
+    /**
+     * Counts a row read and streams every row.
+     *
+     * @return a stream of the rows, which should be closed
+     */
+    @Override
+    public Stream<String> scan() {
+        rowReads++;
+        return super.scan();
+    }
+
+    /**
+     * Counts a row read and streams the rows whose column holds a value.
+     *
+     * @param columnName the column to match
+     * @param value the value to match
+     * @return a stream of the matching rows, which should be closed
+     */
+    @Override
+    public Stream<String> scan(String columnName, String value) {
+        rowReads++;
+        return super.scan(columnName, value);
+    }
+
+    /**
+     * Counts a row read and streams the rows matching a query.
+     *
+     * @param query the query to match
+     * @return a stream of the matching rows, which should be closed
+     */
+    @Override
+    public Stream<String> scan(RowQuery query) {
+        rowReads++;
+        return super.scan(query);
+    }
+
+    /**
+     * Counts a row read and reads the rows whose column holds a value.
+     *
+     * @param columnName the column to match
+     * @param value the value to match
+     * @return the matching rows
+     */
+    @Override
+    public List<String> findLinesByColumnValue(String columnName, String value) {
+        rowReads++;
+        return super.findLinesByColumnValue(columnName, value);
+    }
+
+    /**
+     * Counts a row read and reads the first row whose column holds a value.
+     *
+     * @param columnName the column to match
+     * @param value the value to match
+     * @return the first matching row, or null if there is none
+     */
+    @Override
+    public String findLineByColumnValue(String columnName, String value) {
+        rowReads++;
+        return super.findLineByColumnValue(columnName, value);
+    }
+}
@@ -0,0 +1,144 @@
+package bench;
+
+import enums.AppointmentStatus;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Function;
+import model.Appointment;
+import repository.mapper.AppointmentMapper;
+import util.CsvCursor;
+import util.TimestampCodec;
+
+/**
+ * Benchmark of mapping CSV rows to entities, comparing the {@code String.split} mappers with the
+ * {@link CsvCursor} read by {@link AppointmentMapper}, over a million appointment rows held in memory.
+ * The split path is run twice: as the mappers read rows before the cursor, and with the cursor's timestamp
+ * parser, so the difference made by the tokenizer alone can be told apart from the faster timestamps.
+ * <p>
+ * The rows have no quoted fields, since the split path cannot read them. Each path is warmed up before
+ * it is timed, and the fastest of several rounds is reported. Run it with {@code ./compile.sh bench}.
+ *
+ * @author Russell Arvin
+ * @version 1.0
+ */
+public final class CsvParseBench {
+    private static final int ROWS = 1_000_000;
+    private static final int WARM_UP_ROUNDS = 3;
+    private static final int ROUNDS = 5;
+
+    // Keeps the mapped entities observable, so the mapping cannot be optimised away
+    private static long sink;
+
+    /**
+     * Prevents instantiation of this benchmark.
+     */
+    private CsvParseBench() {
+    }
+
+    /**
+     * Builds the rows and times each way of mapping them.
+     *
+     * @param args unused
+     */
+    public static void main(String[] args) {
+        List<String> rows = rows();
+        AppointmentMapper mapper = new AppointmentMapper();
+        CsvCursor fields = new CsvCursor();
+
+        System.out.printf("Mapping %d appointment rows, fastest of %d rounds%n", ROWS, ROUNDS);
+        time("split, LocalDateTime.parse", rows, CsvParseBench::splitWithLocalDateTime);
+        time("split, TimestampCodec.parse", rows, CsvParseBench::splitWithTimestampCodec);
+        time("CsvCursor, reset per row", rows, line -> mapper.fromCsv(fields.reset(line)));
+        System.out.println("(checksum " + sink + ")");
+    }
+
+    /**
+     * Maps every row through one path after warming it up, and prints the fastest round.
+     *
+     * @param name   The name of the path.
+     * @param rows   The rows to map.
+     * @param mapper The path from a row to an appointment.
+     */
+    private static void time(String name, List<String> rows, Function<String, Appointment> mapper) {
+        long best = Long.MAX_VALUE;
+        for (int round = 0; round < WARM_UP_ROUNDS + ROUNDS; round++) {
+            long started = System.nanoTime();
+            for (String row : rows) {
+                sink += mapper.apply(row).getStartDateTime().getMinute();
+            }
+            long elapsed = System.nanoTime() - started;
+            if (round >= WARM_UP_ROUNDS) best = Math.min(best, elapsed);
+        }
+        System.out.printf("%-30s %6d ms%n", name, best / 1_000_000);
+    }
+
+    /**
+     * Maps a row as the mappers did before the cursor.
+     *
+     * @param line The CSV row.
+     * @return The appointment.
+     */
+    private static Appointment splitWithLocalDateTime(String line) {
+        String[] parts = line.split(",");
+        return new Appointment(
+            parts[0],
+            parts[1],
+            parts[2],
+            LocalDateTime.parse(parts[3]),
+            LocalDateTime.parse(parts[4]),
+            AppointmentStatus.valueOf(parts[5]),
+            parts[6],
+            LocalDateTime.parse(parts[7]),
+            LocalDateTime.parse(parts[8])
+        );
+    }
+
+    /**
+     * Maps a row with {@code String.split}, parsing timestamps as the cursor does.
+     *
+     * @param line The CSV row.
+     * @return The appointment.
+     */
+    private static Appointment splitWithTimestampCodec(String line) {
+        String[] parts = line.split(",");
+        return new Appointment(
+            parts[0],
+            parts[1],
+            parts[2],
+            TimestampCodec.parse(parts[3]),
+            TimestampCodec.parse(parts[4]),
+            AppointmentStatus.valueOf(parts[5]),
+            parts[6],
+            TimestampCodec.parse(parts[7]),
+            TimestampCodec.parse(parts[8])
+        );
+    }
+
+    /**
+     * Builds appointment rows as they are stored, with a cancel reason on every tenth row.
+     *
+     * @return The rows.
+     */
+    private static List<String> rows() {
+        List<String> rows = new ArrayList<>(ROWS);
+        LocalDateTime start = LocalDateTime.of(2025, 1, 6, 9, 0);
+        AppointmentStatus[] statuses = AppointmentStatus.values();
+        for (int i = 0; i < ROWS; i++) {
+            LocalDateTime slot = start.plusMinutes(30L * i);
+            Appointment appointment = new Appointment(
+                String.format("A%07d", i),
+                String.format("D%03d", i % 500),
+                String.format("P%05d", i % 20_000),
+                slot,
+                slot.plusMinutes(30),
+                statuses[i % statuses.length],
+                i % 10 == 0 ? "Doctor unavailable" : "",
+                slot.minusDays(7),
+                slot.minusDays(1)
+            );
+            rows.add(appointment.toCsvString());
+        }
+        return rows;
+    }
+}
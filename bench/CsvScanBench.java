@@ -0,0 +1,237 @@
+package bench;
+
+import enums.AppointmentStatus;
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Supplier;
+import java.util.stream.Stream;
+import model.Appointment;
+import repository.base.CsvFileManager;
+import repository.base.CsvLoadStats;
+
+/**
+ * Benchmark of reading a large CSV file through {@link CsvFileManager}, comparing its byte view with
+ * reading the file as the manager did before it: decoding every line and splitting it on commas.
+ * A million appointment rows are written to a temporary file, which is large enough to be memory-mapped,
+ * and each way of reading it is timed for a full read, a filter on a column without an index and
+ * lookups by id.
+ * <p>
+ * The manager is preloaded before it is timed, so the index build is reported on its own. Each path is
+ * warmed up before it is timed, and the fastest of several rounds is reported. Run it with
+ * {@code ./compile.sh bench}. It exits with status 1 if the two paths do not return the same rows.
+ *
+ * @author Russell Arvin
+ * @version 1.0
+ */
+public final class CsvScanBench {
+    private static final int ROWS = 1_000_000;
+    private static final int LOOKUPS = 20;
+    private static final int WARM_UP_ROUNDS = 1;
+    private static final int ROUNDS = 3;
+    private static final String HEADER = "id,doctorId,patientId,startDateTime,endDateTime,status,cancelReason,createdAt,updatedAt";
+    private static final String PATIENT_ID = "P00042";
+
+    /**
+     * Prevents instantiation of this benchmark.
+     */
+    private CsvScanBench() {
+    }
+
+    /**
+     * Writes the file and times each way of reading it.
+     *
+     * @param args unused
+     * @throws IOException if the temporary file cannot be written or read
+     */
+    public static void main(String[] args) throws IOException {
+        Path directory = Files.createTempDirectory("csv-scan-bench");
+        Path file = directory.resolve("appointments.csv");
+        boolean same = true;
+        try {
+            write(file);
+            System.out.printf("Reading %d appointment rows (%d MB), fastest of %d rounds%n",
+                ROWS, Files.size(file) / (1024 * 1024), ROUNDS);
+
+            CsvFileManager manager = new CsvFileManager(file.toString(), HEADER);
+            CsvLoadStats stats = manager.preload();
+            System.out.printf("%-46s %6d ms%n", "CsvFileManager preload", (long) stats.getMillis());
+
+            List<String> ids = new ArrayList<>();
+            for (int i = 0; i < LOOKUPS; i++) {
+                ids.add(id((int) ((long) i * ROWS / LOOKUPS + ROWS / (2 * LOOKUPS))));
+            }
+
+            same &= compare("read all rows",
+                () -> readAll(file).size(),
+                () -> manager.readAllLines().size());
+            same &= compare("filter patientId (no index)",
+                () -> filter(file, 2, PATIENT_ID).size(),
+                () -> manager.findLinesByColumnValue("patientId", PATIENT_ID).size());
+            same &= compare("look up " + LOOKUPS + " ids",
+                () -> lookUp(file, ids),
+                () -> {
+                    int found = 0;
+                    for (String id : ids) {
+                        if (manager.readLine(id) != null) found++;
+                    }
+                    return found;
+                });
+        } finally {
+            // The manager may leave a lock or snapshot file next to the CSV file
+            try (Stream<Path> files = Files.list(directory)) {
+                for (Path path : (Iterable<Path>) files::iterator) Files.deleteIfExists(path);
+            }
+            Files.deleteIfExists(directory);
+        }
+        System.exit(same ? 0 : 1);
+    }
+
+    /**
+     * Times one operation through both paths and prints them side by side.
+     *
+     * @param name    The name of the operation.
+     * @param split   The operation read by decoding and splitting every line.
+     * @param manager The operation read through the manager.
+     * @return true if both paths returned the same number of rows
+     */
+    private static boolean compare(String name, Supplier<Integer> split, Supplier<Integer> manager) {
+        long[] splitBest = new long[1];
+        long[] managerBest = new long[1];
+        int splitRows = time(split, splitBest);
+        int managerRows = time(manager, managerBest);
+        System.out.printf("%-46s %6d ms%n", name + ", split", splitBest[0] / 1_000_000);
+        System.out.printf("%-46s %6d ms%n", name + ", CsvFileManager", managerBest[0] / 1_000_000);
+        if (splitRows != managerRows) {
+            System.out.printf("  rows differ: %d by split, %d by CsvFileManager%n", splitRows, managerRows);
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * Runs an operation after warming it up, keeping the fastest round.
+     *
+     * @param operation The operation, returning the number of rows it found.
+     * @param best      Receives the fastest round in nanoseconds.
+     * @return the number of rows found in the last round
+     */
+    private static int time(Supplier<Integer> operation, long[] best) {
+        best[0] = Long.MAX_VALUE;
+        int rows = 0;
+        for (int round = 0; round < WARM_UP_ROUNDS + ROUNDS; round++) {
+            long started = System.nanoTime();
+            rows = operation.get();
+            long elapsed = System.nanoTime() - started;
+            if (round >= WARM_UP_ROUNDS) best[0] = Math.min(best[0], elapsed);
+        }
+        return rows;
+    }
+
+    /**
+     * Reads every row after the header, decoding and splitting each one.
+     *
+     * @param file The CSV file.
+     * @return The rows.
+     */
+    private static List<String> readAll(Path file) {
+        return filter(file, -1, null);
+    }
+
+    /**
+     * Reads the rows whose column holds a value, decoding and splitting every row.
+     *
+     * @param file   The CSV file.
+     * @param column The index of the column, or -1 to keep every row.
+     * @param value  The value to match.
+     * @return The matching rows.
+     */
+    private static List<String> filter(Path file, int column, String value) {
+        List<String> rows = new ArrayList<>();
+        try (BufferedReader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+            reader.readLine(); // Skip the header
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (line.isEmpty()) continue;
+                String[] values = line.split(",");
+                if (column < 0 || values[column].trim().equals(value)) rows.add(line);
+            }
+        } catch (IOException e) {
+            throw new RuntimeException("Error reading CSV: " + e.getMessage());
+        }
+        return rows;
+    }
+
+    /**
+     * Looks up each id by reading the file until its row, decoding and splitting every row on the way.
+     *
+     * @param file The CSV file.
+     * @param ids  The ids to look up.
+     * @return The number of ids found.
+     */
+    private static int lookUp(Path file, List<String> ids) {
+        int found = 0;
+        for (String id : ids) {
+            try (BufferedReader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+                reader.readLine(); // Skip the header
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    if (!line.isEmpty() && line.split(",")[0].trim().equals(id)) {
+                        found++;
+                        break;
+                    }
+                }
+            } catch (IOException e) {
+                throw new RuntimeException("Error reading CSV: " + e.getMessage());
+            }
+        }
+        return found;
+    }
+
+    /**
+     * Writes the appointment rows as they are stored, with a cancel reason on every tenth row.
+     *
+     * @param file The file to write.
+     * @throws IOException if the file cannot be written
+     */
+    private static void write(Path file) throws IOException {
+        LocalDateTime start = LocalDateTime.of(2025, 1, 6, 9, 0);
+        AppointmentStatus[] statuses = AppointmentStatus.values();
+        try (BufferedWriter writer = Files.newBufferedWriter(file, StandardCharsets.UTF_8)) {
+            writer.write(HEADER);
+            writer.newLine();
+            for (int i = 0; i < ROWS; i++) {
+                LocalDateTime slot = start.plusMinutes(30L * i);
+                Appointment appointment = new Appointment(
+                    id(i),
+                    String.format("D%03d", i % 500),
+                    String.format("P%05d", i % 20_000),
+                    slot,
+                    slot.plusMinutes(30),
+                    statuses[i % statuses.length],
+                    i % 10 == 0 ? "Doctor unavailable" : "",
+                    slot.minusDays(7),
+                    slot.minusDays(1)
+                );
+                writer.write(appointment.toCsvString());
+                writer.newLine();
+            }
+        }
+    }
+
+    /**
+     * Returns the id of an appointment row.
+     *
+     * @param row The number of the row.
+     * @return The id.
+     */
+    private static String id(int row) {
+        return String.format("A%07d", row);
+    }
+}
@@ -0,0 +1,231 @@
+package bench;
+
+import enums.AppointmentStatus;
+import enums.BloodType;
+import enums.Gender;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+import java.util.function.Supplier;
+import java.util.stream.Stream;
+import model.Appointment;
+import model.AppointmentDetail;
+import model.Doctor;
+import model.Patient;
+import repository.AppointmentRepository;
+import repository.DoctorRepository;
+import repository.PatientRepository;
+import repository.base.CsvStorageEngine;
+import repository.base.StorageEngine;
+import service.AppointmentService;
+
+/**
+ * Benchmark of attaching doctors and patients to appointment details, comparing the batched lookups of
+ * {@link AppointmentService#findAll()} with one doctor and one patient lookup per appointment, as the
+ * details were built before. A thousand appointments across 500 doctors and 200 patients are listed, and
+ * the calls made to the doctor and patient storage are counted through a {@link CountingStorageEngine}.
+ * <p>
+ * Each path is run once on fresh repositories, whose caches are empty, and then timed on warm caches,
+ * reporting the fastest of several rounds. The files are kept in a temporary directory, so the harness
+ * can be run from anywhere. Run it with {@code ./compile.sh bench}. It exits with status 1 if the two
+ * paths do not build the same details.
+ *
+ * @author Russell Arvin
+ * @version 1.0
+ */
+public final class DetailHydrationBench {
+    private static final int APPOINTMENTS = 1_000;
+    private static final int DOCTORS = 500;
+    private static final int PATIENTS = 200;
+    private static final int WARM_UP_ROUNDS = 5;
+    private static final int ROUNDS = 20;
+
+    private final List<CountingStorageEngine> engines = new ArrayList<>();
+    private final AppointmentRepository appointmentRepository;
+    private final DoctorRepository doctorRepository;
+    private final PatientRepository patientRepository;
+    private final AppointmentService appointmentService;
+
+    /**
+     * Constructs the benchmark over fresh repositories of the files in a directory, counting the calls
+     * made to the doctor and patient storage.
+     *
+     * @param directory The directory holding the data files.
+     */
+    private DetailHydrationBench(Path directory) {
+        StorageEngine.Factory counting = (filePath, header, appendOnly) -> {
+            CountingStorageEngine engine =
+                new CountingStorageEngine(directory.resolve(filePath).toString(), header, appendOnly);
+            engines.add(engine);
+            return engine;
+        };
+        appointmentRepository = new AppointmentRepository((filePath, header, appendOnly) ->
+            new CsvStorageEngine(directory.resolve(filePath).toString(), header, appendOnly));
+        doctorRepository = new DoctorRepository(counting);
+        patientRepository = new PatientRepository(counting);
+        appointmentService = new AppointmentService(appointmentRepository, doctorRepository, patientRepository);
+    }
+
+    /**
+     * Seeds the data files and times each way of building the details.
+     *
+     * @param args unused
+     * @throws IOException if the temporary directory cannot be created or removed
+     */
+    public static void main(String[] args) throws IOException {
+        Path directory = Files.createTempDirectory("detail-hydration-bench");
+        boolean same;
+        try {
+            new DetailHydrationBench(directory).seed();
+            System.out.printf("Listing %d appointments across %d doctors and %d patients, fastest of %d rounds%n",
+                APPOINTMENTS, DOCTORS, PATIENTS, ROUNDS);
+
+            DetailHydrationBench oneByOne = new DetailHydrationBench(directory);
+            AppointmentDetail[] expected = oneByOne.measure("one lookup per appointment", oneByOne::findAllOneByOne);
+            DetailHydrationBench batched = new DetailHydrationBench(directory);
+            AppointmentDetail[] actual = batched.measure("batched lookups", batched.appointmentService::findAll);
+            same = isSame(expected, actual);
+        } finally {
+            try (Stream<Path> paths = Files.walk(directory)) {
+                for (Path path : (Iterable<Path>) paths.sorted(Comparator.reverseOrder())::iterator) {
+                    Files.deleteIfExists(path);
+                }
+            }
+        }
+        System.exit(same ? 0 : 1);
+    }
+
+    /**
+     * Writes the doctors, patients and appointments, each appointment with a random doctor and patient.
+     */
+    private void seed() {
+        LocalDateTime now = LocalDateTime.now();
+        Doctor[] doctors = new Doctor[DOCTORS];
+        for (int i = 0; i < DOCTORS; i++) {
+            doctors[i] = new Doctor(String.format("D%03d", i), "password", new byte[16], "Doctor " + i, 40,
+                Gender.MALE, 9, 17, now, now);
+        }
+        doctorRepository.saveMany(doctors);
+
+        Patient[] patients = new Patient[PATIENTS];
+        for (int i = 0; i < PATIENTS; i++) {
+            patients[i] = new Patient(String.format("P%04d", i), "password", new byte[16], "Patient " + i, 30,
+                LocalDate.of(1990, 1, 1), Gender.FEMALE, BloodType.O_POSITIVE, 91234567, "patient" + i + "@example.com",
+                now, now);
+        }
+        patientRepository.saveMany(patients);
+
+        Random random = new Random(42);
+        LocalDateTime first = LocalDate.of(2025, 3, 3).atTime(9, 0);
+        Appointment[] appointments = new Appointment[APPOINTMENTS];
+        for (int i = 0; i < APPOINTMENTS; i++) {
+            LocalDateTime start = first.plusMinutes(30L * i);
+            appointments[i] = new Appointment(String.format("A%04d", i), doctors[random.nextInt(DOCTORS)].getId(),
+                patients[random.nextInt(PATIENTS)].getId(), start, start.plusMinutes(30), AppointmentStatus.CONFIRMED,
+                "", now, now);
+        }
+        appointmentRepository.saveMany(appointments);
+    }
+
+    /**
+     * Builds the details once on empty caches and then on warm caches, printing the storage calls
+     * and the time of each.
+     *
+     * @param name    The name of the path.
+     * @param details The path that builds the details of every appointment.
+     * @return The details built by the last round.
+     */
+    private AppointmentDetail[] measure(String name, Supplier<AppointmentDetail[]> details) {
+        resetCounts();
+        long started = System.nanoTime();
+        AppointmentDetail[] built = details.get();
+        print(name + ", cold", System.nanoTime() - started);
+
+        long best = Long.MAX_VALUE;
+        for (int round = 0; round < WARM_UP_ROUNDS + ROUNDS; round++) {
+            resetCounts();
+            started = System.nanoTime();
+            built = details.get();
+            long elapsed = System.nanoTime() - started;
+            if (round >= WARM_UP_ROUNDS) best = Math.min(best, elapsed);
+        }
+        print(name + ", warm", best);
+        return built;
+    }
+
+    /**
+     * Builds the details as they were built before the lookups were batched.
+     *
+     * @return The details of every appointment.
+     */
+    private AppointmentDetail[] findAllOneByOne() {
+        Appointment[] appointments = appointmentRepository.findAll();
+        AppointmentDetail[] details = new AppointmentDetail[appointments.length];
+        for (int i = 0; i < appointments.length; i++) {
+            Appointment appointment = appointments[i];
+            details[i] = AppointmentDetail.fromAppointment(
+                appointment,
+                doctorRepository.findOne(appointment.getDoctorId()),
+                patientRepository.findOne(appointment.getPatientId())
+            );
+        }
+        return details;
+    }
+
+    /**
+     * Sets the storage call counts of the doctor and patient engines back to zero.
+     */
+    private void resetCounts() {
+        for (CountingStorageEngine engine : engines) {
+            engine.resetCounts();
+        }
+    }
+
+    /**
+     * Prints the storage calls made to the doctor and patient engines since their counts were reset.
+     *
+     * @param name  The name of the run.
+     * @param nanos The time the run took.
+     */
+    private void print(String name, long nanos) {
+        int rowReads = 0;
+        int versionChecks = 0;
+        for (CountingStorageEngine engine : engines) {
+            rowReads += engine.getRowReads();
+            versionChecks += engine.getVersionChecks();
+        }
+        System.out.printf("%-34s %5d row reads, %5d version checks, %7.2f ms%n",
+            name, rowReads, versionChecks, nanos / 1e6);
+    }
+
+    /**
+     * Checks that two paths built the same details, with the same doctor and patient attached.
+     *
+     * @param expected The details built one lookup at a time.
+     * @param actual   The details built with batched lookups.
+     * @return true if every detail matches
+     */
+    private static boolean isSame(AppointmentDetail[] expected, AppointmentDetail[] actual) {
+        if (expected.length != actual.length) {
+            System.out.printf("Details differ: %d one by one, %d batched%n", expected.length, actual.length);
+            return false;
+        }
+        for (int i = 0; i < expected.length; i++) {
+            AppointmentDetail one = expected[i];
+            AppointmentDetail other = actual[i];
+            if (!one.getId().equals(other.getId())
+                || other.getDoctor() == null || !one.getDoctor().getId().equals(other.getDoctor().getId())
+                || other.getPatient() == null || !one.getPatient().getId().equals(other.getPatient().getId())) {
+                System.out.println("Details differ for appointment " + one.getId());
+                return false;
+            }
+        }
+        return true;
+    }
+}
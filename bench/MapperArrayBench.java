@@ -0,0 +1,86 @@
+package bench;
+
+import java.lang.reflect.Array;
+import java.lang.reflect.ParameterizedType;
+import java.util.function.IntFunction;
+import model.Appointment;
+import model.BaseEntity;
+import repository.mapper.AppointmentMapper;
+import repository.mapper.BaseMapper;
+
+/**
+ * Benchmark of creating the result arrays of a repository, comparing {@link BaseMapper#newArray(int)}
+ * with the reflection the repositories used before it: resolving the entity class from the generic
+ * interface of the mapper, then creating the array with {@link Array#newInstance(Class, int)}. Both are
+ * called a million times, with array lengths from 0 to 15 as small query results would have.
+ * <p>
+ * Each path is warmed up before it is timed, and the fastest of several rounds is reported.
+ * Run it with {@code ./compile.sh bench}.
+ *
+ * @author Russell Arvin
+ * @version 1.0
+ */
+public final class MapperArrayBench {
+    private static final int CALLS = 1_000_000;
+    private static final int WARM_UP_ROUNDS = 5;
+    private static final int ROUNDS = 10;
+
+    // Keeps the created arrays observable, so their creation cannot be optimised away
+    private static long sink;
+
+    /**
+     * Prevents instantiation of this benchmark.
+     */
+    private MapperArrayBench() {
+    }
+
+    /**
+     * Times each way of creating the arrays.
+     *
+     * @param args unused
+     */
+    public static void main(String[] args) {
+        AppointmentMapper mapper = new AppointmentMapper();
+
+        System.out.printf("Creating %d appointment arrays, fastest of %d rounds%n", CALLS, ROUNDS);
+        time("generic interface, Array.newInstance", size -> reflectiveArray(mapper, size));
+        time("mapper.newArray", mapper::newArray);
+        System.out.println("(checksum " + sink + ")");
+    }
+
+    /**
+     * Creates the arrays through one path after warming it up, and prints the fastest round.
+     *
+     * @param name    The name of the path.
+     * @param factory The path from a length to an array.
+     */
+    private static void time(String name, IntFunction<Appointment[]> factory) {
+        long best = Long.MAX_VALUE;
+        for (int round = 0; round < WARM_UP_ROUNDS + ROUNDS; round++) {
+            long started = System.nanoTime();
+            for (int i = 0; i < CALLS; i++) {
+                sink += factory.apply(i & 15).length;
+            }
+            long elapsed = System.nanoTime() - started;
+            if (round >= WARM_UP_ROUNDS) best = Math.min(best, elapsed);
+        }
+        System.out.printf("%-40s %6.1f ms%n", name, best / 1_000_000.0);
+    }
+
+    /**
+     * Creates an array as the repositories did before the mapper could create it.
+     *
+     * @param <T>    The entity type of the mapper.
+     * @param mapper The mapper whose entity type is the type of the array.
+     * @param size   The length of the array.
+     * @return A new array of the entity type with the given length.
+     */
+    private static <T extends BaseEntity> T[] reflectiveArray(BaseMapper<T> mapper, int size) {
+        @SuppressWarnings("unchecked")
+        Class<T> entityClass = (Class<T>) ((ParameterizedType) mapper.getClass().getGenericInterfaces()[0])
+            .getActualTypeArguments()[0];
+        @SuppressWarnings("unchecked")
+        T[] array = (T[]) Array.newInstance(entityClass, size);
+        return array;
+    }
+}
@@ -0,0 +1,167 @@
+package bench;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.stream.Stream;
+import repository.base.CsvFileManager;
+
+/**
+ * Stress harness for the per-file locking of {@link CsvFileManager}. Writer threads insert and then update
+ * rows of one CSV file while reading it, half of them through a shared manager and half through a manager
+ * of their own, and the file is then read back through a fresh manager to check that no insert or update
+ * was lost. Both the rewriting and the append-only storage modes are run.
+ * <p>
+ * The file is created in a temporary directory, so the harness can be run from anywhere.
+ * Run it with {@code ./compile.sh bench}. It exits with status 1 if any row is missing or out of date.
+ *
+ * @author Russell Arvin
+ * @version 1.0
+ */
+public final class WriterStress {
+    private static final int WRITERS = 32;
+    private static final int ROWS_PER_WRITER = 40;
+    private static final String HEADER = "id,writer,version";
+
+    /**
+     * Prevents instantiation of this harness.
+     */
+    private WriterStress() {
+    }
+
+    /**
+     * Runs the harness in both storage modes.
+     *
+     * @param args unused
+     * @throws Exception if a writer fails or the temporary file cannot be created
+     */
+    public static void main(String[] args) throws Exception {
+        boolean rewriting = run(false);
+        boolean appendOnly = run(true);
+        System.exit(rewriting && appendOnly ? 0 : 1);
+    }
+
+    /**
+     * Runs every writer against a new file and checks the file once they are done.
+     *
+     * @param appendOnly whether the file is managed in append-only mode
+     * @return true if every row is present with its update
+     * @throws Exception if a writer fails or the temporary file cannot be created
+     */
+    private static boolean run(boolean appendOnly) throws Exception {
+        Path directory = Files.createTempDirectory("writer-stress");
+        String filePath = directory.resolve("rows.csv").toString();
+        CsvFileManager shared = new CsvFileManager(filePath, HEADER, appendOnly);
+        shared.createFileIfNotExists();
+
+        ExecutorService executor = Executors.newFixedThreadPool(WRITERS);
+        CountDownLatch start = new CountDownLatch(1);
+        List<Future<?>> writers = new ArrayList<>();
+        for (int writer = 0; writer < WRITERS; writer++) {
+            int number = writer;
+            CsvFileManager manager = writer % 2 == 0 ? shared : new CsvFileManager(filePath, HEADER, appendOnly);
+            writers.add(executor.submit(() -> {
+                start.await();
+                write(manager, number);
+                return null;
+            }));
+        }
+
+        long started = System.nanoTime();
+        start.countDown();
+        try {
+            for (Future<?> writer : writers) {
+                writer.get();
+            }
+        } finally {
+            executor.shutdown();
+        }
+        long millis = (System.nanoTime() - started) / 1_000_000;
+
+        // Read back through a new manager, so nothing comes from the writers' in-memory indexes
+        Map<String, String> rows = new HashMap<>();
+        for (String line : new CsvFileManager(filePath, HEADER, appendOnly).readAllLines()) {
+            rows.put(line.substring(0, line.indexOf(',')), line);
+        }
+        int lost = 0;
+        for (int writer = 0; writer < WRITERS; writer++) {
+            for (int row = 0; row < ROWS_PER_WRITER; row++) {
+                String id = idOf(writer, row);
+                if (!line(id, writer, 1).equals(rows.get(id))) lost++;
+            }
+        }
+        int expected = WRITERS * ROWS_PER_WRITER;
+
+        System.out.printf("%s: %d writers, %d rows in %d ms, %d rows read back, %d lost inserts or updates%n",
+            appendOnly ? "append-only" : "rewriting", WRITERS, expected, millis, rows.size(), lost);
+        deleteDirectory(directory);
+        return lost == 0 && rows.size() == expected;
+    }
+
+    /**
+     * Inserts a writer's rows and then updates each of them, reading the file between writes.
+     *
+     * @param manager the manager to write through
+     * @param writer the number of the writer
+     */
+    private static void write(CsvFileManager manager, int writer) {
+        for (int row = 0; row < ROWS_PER_WRITER; row++) {
+            String id = idOf(writer, row);
+            if (!manager.appendLineIfAbsent(id, line(id, writer, 0))) {
+                throw new IllegalStateException("Row " + id + " was already present");
+            }
+            if (row % 10 == 0) manager.readAllLines();
+        }
+        for (int row = 0; row < ROWS_PER_WRITER; row++) {
+            String id = idOf(writer, row);
+            if (!manager.updateLine(id, line(id, writer, 1))) {
+                throw new IllegalStateException("Row " + id + " could not be found to update");
+            }
+            manager.readLine(idOf((writer + 1) % WRITERS, row));
+        }
+    }
+
+    /**
+     * Returns the ID of a writer's row.
+     *
+     * @param writer the number of the writer
+     * @param row the number of the row
+     * @return the ID
+     */
+    private static String idOf(int writer, int row) {
+        return "W" + writer + "R" + row;
+    }
+
+    /**
+     * Returns the line of a row at a version.
+     *
+     * @param id the ID of the row
+     * @param writer the number of the writer
+     * @param version the version of the row
+     * @return the CSV line
+     */
+    private static String line(String id, int writer, int version) {
+        return id + "," + writer + "," + version;
+    }
+
+    /**
+     * Deletes a directory and everything in it.
+     *
+     * @param directory the directory
+     * @throws IOException if the directory cannot be listed
+     */
+    private static void deleteDirectory(Path directory) throws IOException {
+        try (Stream<Path> paths = Files.walk(directory)) {
+            paths.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+        }
+    }
+}
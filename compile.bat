@@ -17,8 +17,8 @@ javac -d bin -cp %CLASSPATH% src\enums\*.java
 javac -d bin -cp %CLASSPATH% src\model\Entity.java
 javac -d bin -cp %CLASSPATH% src\model\BaseEntity.java
 javac -d bin -cp %CLASSPATH% src\controller\Controller.java
-javac -d bin -cp %CLASSPATH% src\repository\mapper\BaseMapper.java
 javac -d bin -cp %CLASSPATH% src\util\*.java
+javac -d bin -cp %CLASSPATH% src\repository\mapper\BaseMapper.java
 javac -d bin -cp %CLASSPATH% src\validator\*.java
 
 :: 2. Compile all models
@@ -31,8 +31,7 @@ javac -d bin -cp %CLASSPATH% src\repository\mapper\*.java
 
 :: 4. Compile repository base
 echo Compiling repository base...
-javac -d bin -cp %CLASSPATH% src\repository\base\CsvFileManager.java
-javac -d bin -cp %CLASSPATH% src\repository\base\CsvRepository.java
+javac -d bin -cp %CLASSPATH% src\repository\base\*.java
 
 :: 5. Compile repositories
 echo Compiling repositories...
@@ -54,6 +53,9 @@ javac -d bin -cp %CLASSPATH% src\main\*.java
 
 echo Compilation complete.
 
+:: "compile.bat bench" also compiles the stress harnesses and benchmarks and runs them instead of the application
+if "%1"=="bench" goto bench
+
 :: Check if Main class exists and run
 if exist bin\main\Main.class (
     echo Running the application...
@@ -62,3 +64,32 @@ if exist bin\main\Main.class (
     echo Error: Main class not found!
     exit /b 1
 )
+goto :eof
+
+:bench
+echo Compiling stress harnesses...
+javac -d bin -cp %CLASSPATH% bench\*.java || exit /b 1
+
+:: The harnesses write their own data files, so they run in an empty directory away from data\
+set ROOT=%CD%
+set BENCH_DIR=%TEMP%\hms-bench-%RANDOM%
+mkdir "%BENCH_DIR%"
+pushd "%BENCH_DIR%"
+set STATUS=0
+echo Running bench.WriterStress...
+java -cp "%ROOT%\bin" bench.WriterStress || set STATUS=1
+echo Running bench.BookingStress...
+java -cp "%ROOT%\bin" bench.BookingStress || set STATUS=1
+echo Running bench.CsvParseBench...
+java -cp "%ROOT%\bin" bench.CsvParseBench || set STATUS=1
+echo Running bench.CsvScanBench...
+java -cp "%ROOT%\bin" bench.CsvScanBench || set STATUS=1
+echo Running bench.MapperArrayBench...
+java -cp "%ROOT%\bin" bench.MapperArrayBench || set STATUS=1
+echo Running bench.OverlapBench...
+java -cp "%ROOT%\bin" bench.OverlapBench || set STATUS=1
+echo Running bench.DetailHydrationBench...
+java -cp "%ROOT%\bin" bench.DetailHydrationBench || set STATUS=1
+popd
+rmdir /S /Q "%BENCH_DIR%"
+exit /b %STATUS%
@@ -21,8 +21,8 @@ compilation_steps=(
     "src/model/Entity.java"
     "src/model/BaseEntity.java"
     "src/controller/Controller.java"
-    "src/repository/mapper/BaseMapper.java"
     "src/util/*.java"
+    "src/repository/mapper/BaseMapper.java"
     "src/validator/*.java"
     
     # 2. Compile all models first
@@ -32,8 +32,7 @@ compilation_steps=(
     "src/repository/mapper/*.java"
     
     # 4. Compile repository base
-    "src/repository/base/CsvFileManager.java"
-    "src/repository/base/CsvRepository.java"
+    "src/repository/base/*.java"
     
     # 5. Compile repositories
     "src/repository/*.java"
@@ -67,6 +66,35 @@ done
 
 echo "Compilation complete."
 
+# "./compile.sh bench" also compiles the stress harnesses and benchmarks and runs them instead of the application
+benchmarks=(
+    "bench.WriterStress"
+    "bench.BookingStress"
+    "bench.CsvParseBench"
+    "bench.CsvScanBench"
+    "bench.MapperArrayBench"
+    "bench.OverlapBench"
+    "bench.DetailHydrationBench"
+)
+
+if [ "$1" == "bench" ]; then
+    compile_step "bench/*.java"
+
+    # The harnesses write their own data files, so they run in an empty directory away from data/
+    root=$(pwd)
+    bench_dir=$(mktemp -d)
+    status=0
+    for benchmark in "${benchmarks[@]}"; do
+        echo "Running $benchmark..."
+        if ! (cd "$bench_dir" && java -cp "$root/bin" "$benchmark"); then
+            echo "Stress harness failed: $benchmark"
+            status=1
+        fi
+    done
+    rm -rf "$bench_dir"
+    exit $status
+fi
+
 # Check if Main class exists before running
 if [ -f "bin/main/Main.class" ]; then
     echo "Running the application..."
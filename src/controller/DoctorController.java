@@ -29,6 +29,7 @@ public class DoctorController extends BaseController<DoctorMenuUI> {
     private AppointmentTableUI tableUI;  // UI for managing appointment tables.
     private DoctorService doctorService;  // Service for managing doctor-specific data.
     private PatientService patientService;  // Service for managing patient-specific data.
+    private AppointmentScheduleService appointmentScheduleService;  // Service for finding free appointment slots.
     private AppointmentScheduleUI appointmentScheduleUI;  // UI for managing doctor's appointment schedule.
 
     /**
@@ -58,6 +59,7 @@ public class DoctorController extends BaseController<DoctorMenuUI> {
         this.tableUI = new AppointmentTableUI(appointmentService, appointmentScheduleService, appointmentOutcomeService, inventoryService, doctor, UserRole.DOCTOR);
         this.doctorService = doctorService;
         this.patientService = patientService;
+        this.appointmentScheduleService = appointmentScheduleService;
         this.appointmentScheduleUI = new AppointmentScheduleUI(scanner, appointmentService, UserRole.DOCTOR, doctor);
     }
 
@@ -146,6 +148,6 @@ public class DoctorController extends BaseController<DoctorMenuUI> {
      * Sets the doctor's availability for appointments.
      */
     private void setAvailability(){
-        DoctorAvailabilityUI.display(scanner, doctorService, doctor);
+        DoctorAvailabilityUI.display(scanner, doctorService, appointmentScheduleService, doctor);
     }
 }
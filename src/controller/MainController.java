@@ -1,6 +1,7 @@
 package controller;
 
 import enums.UserRole;
+import java.util.List;
 import java.util.Scanner;
 import model.Administrator;
 import model.Doctor;
@@ -18,6 +19,10 @@ import repository.PatientVitalRepository;
 import repository.PrescriptionRepository;
 import repository.ReplenishmentRequestRepository;
 import repository.base.CsvRepository;
+import repository.base.CsvStorageEngine;
+import repository.base.RepositoryPreloader;
+import repository.base.StorageEngine;
+import repository.base.SequenceAllocator;
 import repository.mapper.AdministratorMapper;
 import repository.mapper.NurseMapper;
 import repository.mapper.PharmacistMapper;
@@ -57,42 +62,66 @@ public class MainController extends BaseController<LoginMenuUI> {
     private DoctorService doctorService;  // Manages doctor-specific operations
     private PatientService patientService;  // Manages patient-specific operations
     private InitialisationService initialisationService;  // Handles initialization of repositories and services
+    private List<CsvRepository<?, ?>> repositories;  // Every repository, for preloading and checkpointing
 
     /**
-     * Constructs a MainController and initializes repositories and services.
+     * Constructs a MainController, initializes repositories and services, and starts loading
+     * the CSV files of the repositories in the background.
      * 
      * @param scanner Scanner instance for reading user input.
      */
     public MainController(Scanner scanner) {
         super(new LoginMenuUI(), scanner);
 
-        PatientRepository patientRepository = new PatientRepository();
-        DoctorRepository doctorRepository = new DoctorRepository();
-        MedicineRepository medicineRepository = new MedicineRepository();
-        ReplenishmentRequestRepository replenishmentRequestRepository = new ReplenishmentRequestRepository();
-        AppointmentRepository appointmentRepository = new AppointmentRepository();
-        AppointmentOutcomeRepository appointmentOutcomeRepository = new AppointmentOutcomeRepository();
-        PrescriptionRepository prescriptionRepository = new PrescriptionRepository();
-        MedicalRecordRepository medicalRecordRepository = new MedicalRecordRepository();
-        PatientVitalRepository patientVitalRepository = new PatientVitalRepository();
+        // Each repository picks its storage engine. Several sessions may share the data folder, so every
+        // file stays on the CSV engine, which sees the other sessions' writes; InMemoryStorageEngine is
+        // only for data that one process owns.
+        StorageEngine.Factory csv = CsvStorageEngine::new;
+
+        PatientRepository patientRepository = new PatientRepository(csv);
+        DoctorRepository doctorRepository = new DoctorRepository(csv);
+        MedicineRepository medicineRepository = new MedicineRepository(csv);
+        ReplenishmentRequestRepository replenishmentRequestRepository = new ReplenishmentRequestRepository(csv);
+        AppointmentRepository appointmentRepository = new AppointmentRepository(csv);
+        AppointmentOutcomeRepository appointmentOutcomeRepository = new AppointmentOutcomeRepository(csv);
+        PrescriptionRepository prescriptionRepository = new PrescriptionRepository(csv);
+        MedicalRecordRepository medicalRecordRepository = new MedicalRecordRepository(csv);
+        PatientVitalRepository patientVitalRepository = new PatientVitalRepository(csv);
 
         CsvRepository<Administrator,AdministratorMapper> administratorRepository = new CsvRepository<Administrator,AdministratorMapper>(
             "data/administrators.csv",
             Constant.DEFAULT_STAFF_CSV_HEADER,
-            new AdministratorMapper()
+            new AdministratorMapper(),
+            false,
+            csv
         );
         
         CsvRepository<Nurse, NurseMapper> nurseRepository = new CsvRepository<Nurse,NurseMapper>(
             "data/nurses.csv",
             Constant.DEFAULT_STAFF_CSV_HEADER,
-            new NurseMapper()
+            new NurseMapper(),
+            false,
+            csv
         );
         CsvRepository<Pharmacist, PharmacistMapper> pharmacistRepository = new CsvRepository<Pharmacist, PharmacistMapper>(
             "data/pharmacists.csv",
             Constant.DEFAULT_STAFF_CSV_HEADER,
-            new PharmacistMapper()
+            new PharmacistMapper(),
+            false,
+            csv
+        );
+
+        this.repositories = List.of(
+            patientRepository, doctorRepository, medicineRepository, replenishmentRequestRepository,
+            appointmentRepository, appointmentOutcomeRepository, prescriptionRepository, medicalRecordRepository,
+            patientVitalRepository, administratorRepository, nurseRepository, pharmacistRepository
         );
 
+        // Load and index every file in the background, so the menus never wait on a file they do not use
+        new RepositoryPreloader(Constant.PRELOAD_THREADS, repositories).start().thenAccept(report -> {
+            if (Boolean.getBoolean(Constant.PRELOAD_REPORT_PROPERTY)) report.forEach(System.out::println);
+        });
+
         this.userService = new UserService(administratorRepository, pharmacistRepository, doctorRepository, patientRepository, nurseRepository);
         this.authService = new AuthService(userService);
         this.inventoryService = new InventoryService(medicineRepository);
@@ -103,7 +132,7 @@ public class MainController extends BaseController<LoginMenuUI> {
         this.appointmentScheduleService = new AppointmentScheduleService(appointmentService, patientRepository, doctorRepository);
         this.appointmentOutcomeService = new AppointmentOutcomeService(appointmentOutcomeRepository, prescriptionRepository, appointmentRepository, doctorRepository, patientRepository, medicineRepository);
         this.doctorService = new DoctorService(doctorRepository, appointmentRepository, patientRepository);
-        this.patientService = new PatientService(patientRepository, appointmentRepository, doctorRepository, medicalRecordRepository, patientVitalRepository);
+        this.patientService = new PatientService(patientRepository, appointmentRepository, doctorRepository, medicalRecordRepository, patientVitalRepository, new SequenceAllocator());
         this.initialisationService = new InitialisationService(administratorRepository, patientRepository, pharmacistRepository, doctorRepository, nurseRepository, medicineRepository);
     }
 
@@ -123,6 +152,7 @@ public class MainController extends BaseController<LoginMenuUI> {
             } else if (choice.equals("3")) {
                 handleLogin(true);
             } else if (choice.equals("4")) {
+                checkpoint();
                 return;
             } else {
                 System.out.println("Invalid option!");
@@ -130,6 +160,20 @@ public class MainController extends BaseController<LoginMenuUI> {
         }
     }
 
+    /**
+     * Checkpoints every repository, so in-memory records reach their CSV files and the next start
+     * does not have to rebuild the indexes from the CSV files.
+     */
+    private void checkpoint() {
+        for (CsvRepository<?, ?> repository : repositories) {
+            try {
+                repository.checkpoint();
+            } catch (RuntimeException e) {
+                System.err.println(e.getMessage());
+            }
+        }
+    }
+
     /**
      * Initiates the patient registration process.
      */
@@ -0,0 +1,16 @@
+package enums;
+
+/**
+ * Enum representing how timestamps are written to the CSV files.
+ * Files may hold a mix of both encodings, as every field is recognised on read.
+ * 
+ * @author Russell Arvin 
+ * @version 1.0 
+ */
+public enum TimestampEncoding {
+    /** ISO-8601 local date-time, in the layout of LocalDateTime.toString(). */
+    ISO,
+    
+    /** Microseconds since 1970-01-01T00:00, counting the local date-time as if it were UTC. */
+    EPOCH_MICROS
+}
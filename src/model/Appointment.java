@@ -2,6 +2,8 @@ package model;
 
 import enums.AppointmentStatus;
 import java.time.LocalDateTime;
+import util.CsvCursor;
+import util.TimestampCodec;
 
 /**
  * The Appointment class represents a scheduled appointment between a doctor and a patient.
@@ -177,16 +179,16 @@ public class Appointment extends BaseEntity {
      */
     @Override
     public String toCsvString() {
-        return String.join(",",
+        return CsvCursor.join(
             id,
             doctorId,
             patientId,
-            startDateTime.toString(),
-            endDateTime.toString(),
+            TimestampCodec.format(startDateTime),
+            TimestampCodec.format(endDateTime),
             status.toString(),
-            cancelReason != null ? cancelReason.replace(",", ";") : "",
-            createdAt.toString(),
-            updatedAt.toString()
+            cancelReason,
+            TimestampCodec.format(createdAt),
+            TimestampCodec.format(updatedAt)
         );
     }
 }
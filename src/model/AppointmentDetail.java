@@ -39,7 +39,7 @@ public class AppointmentDetail extends Appointment {
         LocalDateTime createdAt,
         LocalDateTime updatedAt
     ){
-        super(id, patient.getId(), doctor.getId(), startDateTime, endDateTime, status, cancelReason, createdAt, updatedAt);
+        super(id, doctor.getId(), patient.getId(), startDateTime, endDateTime, status, cancelReason, createdAt, updatedAt);
         this.doctor = doctor;
         this.patient = patient;
     }
@@ -2,6 +2,8 @@ package model;
 
 import enums.AppointmentServiceType;
 import java.time.LocalDateTime;
+import util.CsvCursor;
+import util.TimestampCodec;
 
 /**
  * The AppointmentOutcome class represents the outcome of an appointment, including details
@@ -109,17 +111,14 @@ public class AppointmentOutcome extends BaseEntity {
      */
     @Override
     public String toCsvString() {
-        // Escape any commas in consultationNotes to prevent CSV parsing issues
-        String escapedNotes = consultationNotes.replace(",", ";");
-        
-        return String.join(",",
+        return CsvCursor.join(
             id,                         // from BaseEntity
             patientId,
             appointmentId,
             serviceType.toString(),     // enum to string
-            escapedNotes,
-            createdAt.toString(),       // from BaseEntity
-            updatedAt.toString()        // from BaseEntity
+            consultationNotes,
+            TimestampCodec.format(createdAt), // from BaseEntity
+            TimestampCodec.format(updatedAt) // from BaseEntity
         );
     }
 }
@@ -3,6 +3,8 @@ package model;
 import enums.Gender;
 import java.nio.charset.StandardCharsets;
 import java.time.LocalDateTime;
+import util.CsvCursor;
+import util.TimestampCodec;
 
 /**
  * The Doctor class represents a doctor in the system, extending the User class
@@ -86,7 +88,7 @@ public class Doctor extends User {
      */
     @Override
     public String toCsvString() {
-        return String.join(",",
+        return CsvCursor.join(
             id,
             password,
             new String(salt, StandardCharsets.UTF_8), // from salt
@@ -95,8 +97,8 @@ public class Doctor extends User {
             gender.toString(),
             String.valueOf(startWorkHours),
             String.valueOf(endWorkHours),
-            createdAt.toString(),
-            updatedAt.toString()
+            TimestampCodec.format(createdAt),
+            TimestampCodec.format(updatedAt)
         );
     }
 }
@@ -0,0 +1,56 @@
+package model;
+
+import java.time.LocalDateTime;
+
+/**
+ * The FreeSlot class represents a time slot in which a doctor is working and has no appointment,
+ * as returned by a search for the earliest available slots.
+ *
+ * @author Russell Arvin
+ * @version 1.0
+ */
+public class FreeSlot {
+    private final Doctor doctor;
+    private final LocalDateTime startDateTime;
+    private final LocalDateTime endDateTime;
+
+    /**
+     * Constructs a FreeSlot with the specified details.
+     *
+     * @param doctor        The doctor who is free.
+     * @param startDateTime The starting date and time of the slot.
+     * @param endDateTime   The ending date and time of the slot.
+     */
+    public FreeSlot(Doctor doctor, LocalDateTime startDateTime, LocalDateTime endDateTime) {
+        this.doctor = doctor;
+        this.startDateTime = startDateTime;
+        this.endDateTime = endDateTime;
+    }
+
+    /**
+     * Gets the doctor who is free during the slot.
+     *
+     * @return The doctor.
+     */
+    public Doctor getDoctor() {
+        return doctor;
+    }
+
+    /**
+     * Gets the starting date and time of the slot.
+     *
+     * @return The start date and time.
+     */
+    public LocalDateTime getStartDateTime() {
+        return startDateTime;
+    }
+
+    /**
+     * Gets the ending date and time of the slot.
+     *
+     * @return The end date and time.
+     */
+    public LocalDateTime getEndDateTime() {
+        return endDateTime;
+    }
+}
@@ -2,6 +2,8 @@ package model;
 
 import enums.MedicalRecordType;
 import java.time.LocalDateTime;
+import util.CsvCursor;
+import util.TimestampCodec;
 
 /**
  * The MedicalRecord class represents a medical record in the system, containing details
@@ -107,14 +109,14 @@ public class MedicalRecord extends BaseEntity {
      * @return A CSV-formatted string containing medical record data.
      */
     public String toCsvString() {
-        return String.join(",",
+        return CsvCursor.join(
             id,
             patientId,
             doctorId,
             type.toString(),
             details,
-            createdAt.toString(),
-            updatedAt.toString()
+            TimestampCodec.format(createdAt),
+            TimestampCodec.format(updatedAt)
         );
     }
 }
@@ -1,6 +1,8 @@
 package model;
 
 import java.time.LocalDateTime;
+import util.CsvCursor;
+import util.TimestampCodec;
 
 /**
  * The Medicine class represents a medication in the system, with attributes for name,
@@ -108,13 +110,13 @@ public class Medicine extends BaseEntity {
      * @return A CSV-formatted string containing medicine data.
      */
     public String toCsvString() {
-        return String.join(",",
+        return CsvCursor.join(
             id,
             name,
             String.valueOf(stock),
             String.valueOf(lowStockAlert),
-            createdAt.toString(),
-            updatedAt.toString()
+            TimestampCodec.format(createdAt),
+            TimestampCodec.format(updatedAt)
         );
     }
 }
@@ -5,6 +5,8 @@ import enums.Gender;
 import java.nio.charset.StandardCharsets;
 import java.time.LocalDate;
 import java.time.LocalDateTime;
+import util.CsvCursor;
+import util.TimestampCodec;
 
 /**
  * The Patient class represents a patient in the system, extending the User class.
@@ -143,7 +145,7 @@ public class Patient extends User {
      */
     @Override
     public String toCsvString() {
-        return String.join(",",
+        return CsvCursor.join(
             id,                         // from BaseEntity
             password,                   // from User
             new String(salt, StandardCharsets.UTF_8), // from salt
@@ -154,8 +156,8 @@ public class Patient extends User {
             bloodType.toString(),       // enum to string
             String.valueOf(phoneNumber),// int to string
             email != null ? email : "", // handle potentially null email
-            createdAt.toString(),       // from BaseEntity
-            updatedAt.toString()        // from BaseEntity
+            TimestampCodec.format(createdAt), // from BaseEntity
+            TimestampCodec.format(updatedAt) // from BaseEntity
         );
     }
 
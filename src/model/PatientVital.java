@@ -1,6 +1,8 @@
 package model;
 
 import java.time.LocalDateTime;
+import util.CsvCursor;
+import util.TimestampCodec;
 
 /**
  * The PatientVital class represents the vital signs of a patient, including
@@ -122,15 +124,15 @@ public class PatientVital extends BaseEntity {
      * @return A CSV-formatted string containing patient vital data.
      */
     public String toCsvString() {
-        return String.join(",",
+        return CsvCursor.join(
             id,
             patientId,
             String.valueOf(bloodOxygen),
             String.valueOf(height),
             String.valueOf(weight),
             String.valueOf(bloodPressure),
-            createdAt.toString(),
-            updatedAt.toString()
+            TimestampCodec.format(createdAt),
+            TimestampCodec.format(updatedAt)
         );
     }
 }
@@ -2,6 +2,8 @@ package model;
 
 import enums.PrescriptionStatus;
 import java.time.LocalDateTime;
+import util.CsvCursor;
+import util.TimestampCodec;
 
 /**
  * The Prescription class represents a prescription issued during a medical appointment,
@@ -111,14 +113,14 @@ public class Prescription extends BaseEntity {
      */
     @Override
     public String toCsvString() {
-        return String.join(",",
+        return CsvCursor.join(
             id,
             appointmentOutcomeId,
             medicineId,
             status.toString(),
             String.valueOf(amount),
-            createdAt.toString(),
-            updatedAt.toString()
+            TimestampCodec.format(createdAt),
+            TimestampCodec.format(updatedAt)
         );
     }
 }
@@ -2,6 +2,8 @@ package model;
 
 import enums.ReplenishmentRequestStatus;
 import java.time.LocalDateTime;
+import util.CsvCursor;
+import util.TimestampCodec;
 
 /**
  * The ReplenishmentRequest class represents a request to replenish the stock of a specific medicine.
@@ -123,14 +125,14 @@ public class ReplenishmentRequest extends BaseEntity {
      * @return A CSV-formatted string containing replenishment request data.
      */
     public String toCsvString() {
-        return String.join(",",
+        return CsvCursor.join(
             id,
             medicineId,
             pharmacistId,
             String.valueOf(newAmount),
             status.toString(),
-            createdAt.toString(),
-            updatedAt.toString()
+            TimestampCodec.format(createdAt),
+            TimestampCodec.format(updatedAt)
         );
     }
 }
@@ -4,6 +4,8 @@ import enums.Gender;
 import java.nio.charset.StandardCharsets;
 import java.time.LocalDateTime;
 import util.PasswordUtil;
+import util.CsvCursor;
+import util.TimestampCodec;
 
 /**
  * The User class serves as an abstract base class for user entities in the system.
@@ -157,15 +159,15 @@ public abstract class User extends BaseEntity {
      */
     @Override
     public String toCsvString() {
-        return String.join(",", 
+        return CsvCursor.join(
             id, 
             password, 
             new String(salt, StandardCharsets.UTF_8), 
             name,
             String.valueOf(age),
             gender.toString(),
-            createdAt.toString(), 
-            updatedAt.toString()
+            TimestampCodec.format(createdAt), 
+            TimestampCodec.format(updatedAt)
         );
     }
 }
@@ -1,8 +1,13 @@
 package repository;
 
+import java.util.Collection;
 import java.util.List;
+import java.util.stream.Stream;
 import model.AppointmentOutcome;
 import repository.base.CsvRepository;
+import repository.base.CsvStorageEngine;
+import repository.base.RowQuery;
+import repository.base.StorageEngine;
 import repository.mapper.AppointmentOutcomeMapper;
 
 /**
@@ -23,7 +28,18 @@ public class AppointmentOutcomeRepository extends CsvRepository<AppointmentOutco
      * for storing AppointmentOutcome data and initializes the AppointmentOutcomeMapper.
      */
     public AppointmentOutcomeRepository() {
-        super(CSV_FILE, CSV_HEADER, new AppointmentOutcomeMapper());
+        this(CsvStorageEngine::new);
+    }
+
+    /**
+     * Constructs an AppointmentOutcomeRepository whose rows are kept by the given storage engine.
+     *
+     * @param engine Creates the storage engine for the CSV file.
+     */
+    public AppointmentOutcomeRepository(StorageEngine.Factory engine) {
+        super(CSV_FILE, CSV_HEADER, new AppointmentOutcomeMapper(), false, engine);
+        registerIndex("patientId");
+        registerIndex("appointmentId");
     }
 
     /**
@@ -33,12 +49,25 @@ public class AppointmentOutcomeRepository extends CsvRepository<AppointmentOutco
      * @return The AppointmentOutcome object associated with the specified appointment ID, or null if not found.
      */
     public AppointmentOutcome findOneByAppointmentId(String appointmentId) {
-        String line = this.fileManager.findLineByColumnValue("appointmentId", appointmentId);
+        String line = this.storage.findLineByColumnValue("appointmentId", appointmentId);
         
         if(line == null) return null;
         return mapper.fromCsvString(line);
     }
 
+    /**
+     * Finds and returns the AppointmentOutcome records of any of the specified appointment IDs in one
+     * pass, reading only the rows the appointment ID index lists for them.
+     *
+     * @param appointmentIds The appointment IDs to search for.
+     * @return An array of AppointmentOutcome objects associated with any of the appointment IDs, in file order.
+     */
+    public AppointmentOutcome[] findManyByAppointmentIds(Collection<String> appointmentIds) {
+        try (Stream<AppointmentOutcome> outcomes = super.scan(new RowQuery().in("appointmentId", appointmentIds))) {
+            return outcomes.toArray(AppointmentOutcome[]::new);
+        }
+    }
+
 
     /**
      * Finds and returns multiple AppointmentOutcome records associated with the specified patient ID.
@@ -47,7 +76,7 @@ public class AppointmentOutcomeRepository extends CsvRepository<AppointmentOutco
      * @return An array of AppointmentOutcome objects associated with the specified patient ID.
      */
     public AppointmentOutcome[] findManyByPatientId(String patientId) {
-        List<String> lines = this.fileManager.findLinesByColumnValue("patientId", patientId);
-        return super.mapLines(lines, AppointmentOutcome.class);
+        List<String> lines = this.storage.findLinesByColumnValue("patientId", patientId);
+        return super.mapLines(lines);
     }
 }
@@ -1,9 +1,15 @@
 package repository;
 
 import enums.AppointmentStatus;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.stream.Stream;
 import model.Appointment;
 import repository.base.CsvRepository;
+import repository.base.CsvStorageEngine;
+import repository.base.RowQuery;
+import repository.base.StorageEngine;
 import repository.mapper.AppointmentMapper;
 
 /**
@@ -19,12 +25,34 @@ public class AppointmentRepository extends CsvRepository<Appointment, Appointmen
     private static final String CSV_FILE = "data/appointments.csv";
     private static final String CSV_HEADER = "id,doctorId,patientId,startDateTime,endDateTime,status,cancelReason,createdAt,updatedAt";
 
+    // The statuses of appointments that take up their time slot
+    private static final AppointmentStatus[] BOOKED_STATUSES = {
+        AppointmentStatus.REQUESTED,
+        AppointmentStatus.CONFIRMED,
+        AppointmentStatus.COMPLETED
+    };
+
     /**
      * Constructs an AppointmentRepository with predefined CSV file and header information
      * for storing Appointment data and initializes the AppointmentMapper.
+     * Appointments change status often, so the file is kept in append-only mode.
      */
     public AppointmentRepository() {
-        super(CSV_FILE, CSV_HEADER, new AppointmentMapper());
+        this(CsvStorageEngine::new);
+    }
+
+    /**
+     * Constructs an AppointmentRepository whose rows are kept by the given storage engine.
+     *
+     * @param engine Creates the storage engine for the CSV file.
+     */
+    public AppointmentRepository(StorageEngine.Factory engine) {
+        super(CSV_FILE, CSV_HEADER, new AppointmentMapper(), true, engine);
+        registerIndex("doctorId");
+        registerIndex("patientId");
+        registerIndex("status");
+        registerCompositeIndex("doctorId", "startDateTime");
+        registerCompositeIndex("patientId", "startDateTime");
     }
 
 
@@ -35,8 +63,8 @@ public class AppointmentRepository extends CsvRepository<Appointment, Appointmen
      * @return An array of Appointment objects associated with the specified doctor ID.
      */
     public Appointment[] findManyByDoctorId(String doctorId) {
-        List<String> lines = this.fileManager.findLinesByColumnValue("doctorId", doctorId);
-        return super.mapLines(lines, Appointment.class);
+        List<String> lines = this.storage.findLinesByColumnValue("doctorId", doctorId);
+        return super.mapLines(lines);
     }
     
     /**
@@ -46,8 +74,186 @@ public class AppointmentRepository extends CsvRepository<Appointment, Appointmen
      * @return An array of Appointment objects associated with the specified patient ID.
      */
     public Appointment[] findManyByPatientId(String patientId) {
-        List<String> lines = this.fileManager.findLinesByColumnValue("patientId", patientId);
-        return super.mapLines(lines, Appointment.class);
+        List<String> lines = this.storage.findLinesByColumnValue("patientId", patientId);
+        return super.mapLines(lines);
+    }
+
+    /**
+     * Streams the Appointment records associated with the specified doctor ID, mapping them lazily.
+     * The stream should be closed after use.
+     *
+     * @param doctorId The doctor ID to search for.
+     * @return A stream of Appointment objects associated with the specified doctor ID.
+     */
+    public Stream<Appointment> scanByDoctorId(String doctorId) {
+        return super.scan("doctorId", doctorId);
+    }
+
+    /**
+     * Streams the Appointment records associated with the specified patient ID, mapping them lazily.
+     * The stream should be closed after use.
+     *
+     * @param patientId The patient ID to search for.
+     * @return A stream of Appointment objects associated with the specified patient ID.
+     */
+    public Stream<Appointment> scanByPatientId(String patientId) {
+        return super.scan("patientId", patientId);
+    }
+
+    /**
+     * Streams the Appointment records with the specified status, mapping them lazily.
+     * The stream should be closed after use.
+     *
+     * @param status The status of the appointments to search for.
+     * @return A stream of Appointment objects with the specified status.
+     */
+    public Stream<Appointment> scanByStatus(AppointmentStatus status) {
+        return super.scan("status", status.toString());
+    }
+
+    /**
+     * Streams the Appointment records of a doctor that have any of the given statuses, mapping only the
+     * matching rows. The stream should be closed after use.
+     *
+     * @param doctorId The doctor ID to search for.
+     * @param statuses The statuses the appointments may have.
+     * @return A stream of the doctor's Appointment objects with any of the statuses.
+     */
+    public Stream<Appointment> scanByDoctorIdAndStatus(String doctorId, AppointmentStatus... statuses) {
+        return super.scan(new RowQuery()
+            .equalTo("doctorId", doctorId)
+            .in("status", names(statuses)));
+    }
+
+    /**
+     * Streams the Appointment records of a patient that have any of the given statuses, mapping only the
+     * matching rows. The stream should be closed after use.
+     *
+     * @param patientId The patient ID to search for.
+     * @param statuses  The statuses the appointments may have.
+     * @return A stream of the patient's Appointment objects with any of the statuses.
+     */
+    public Stream<Appointment> scanByPatientIdAndStatus(String patientId, AppointmentStatus... statuses) {
+        return super.scan(new RowQuery()
+            .equalTo("patientId", patientId)
+            .in("status", names(statuses)));
+    }
+
+    /**
+     * Streams the Appointment records with a status that start within a time range, mapping only the
+     * matching rows. The stream should be closed after use.
+     *
+     * @param status The status of the appointments to search for.
+     * @param from   The earliest start time, inclusive.
+     * @param to     The latest start time, exclusive.
+     * @return A stream of the Appointment objects with the status that start within the range.
+     */
+    public Stream<Appointment> scanByStatusStartingBetween(AppointmentStatus status, LocalDateTime from, LocalDateTime to) {
+        return super.scan(new RowQuery()
+            .equalTo("status", status.toString())
+            .between("startDateTime", from, to));
+    }
+
+    /**
+     * Streams the Appointment records of a doctor that start within a time range, in order of their start
+     * time. Only the appointments in the range are read. The stream should be closed after use.
+     *
+     * @param doctorId The doctor ID to search for.
+     * @param from     The earliest start time, inclusive.
+     * @param to       The latest start time, exclusive.
+     * @return A stream of the doctor's Appointment objects that start within the range.
+     */
+    public Stream<Appointment> scanByDoctorIdStartingBetween(String doctorId, LocalDateTime from, LocalDateTime to) {
+        return super.scan(new RowQuery()
+            .equalTo("doctorId", doctorId)
+            .between("startDateTime", from, to));
+    }
+
+    /**
+     * Streams the Appointment records of a patient that start within a time range, in order of their start
+     * time. Only the appointments in the range are read. The stream should be closed after use.
+     *
+     * @param patientId The patient ID to search for.
+     * @param from      The earliest start time, inclusive.
+     * @param to        The latest start time, exclusive.
+     * @return A stream of the patient's Appointment objects that start within the range.
+     */
+    public Stream<Appointment> scanByPatientIdStartingBetween(String patientId, LocalDateTime from, LocalDateTime to) {
+        return super.scan(new RowQuery()
+            .equalTo("patientId", patientId)
+            .between("startDateTime", from, to));
+    }
+
+    /**
+     * Streams the Appointment records of a doctor that start within a time range and have any of the
+     * given statuses, in order of their start time. Only the appointments in the range are read.
+     * The stream should be closed after use.
+     *
+     * @param doctorId The doctor ID to search for.
+     * @param from     The earliest start time, inclusive.
+     * @param to       The latest start time, exclusive.
+     * @param statuses The statuses the appointments may have.
+     * @return A stream of the doctor's matching Appointment objects.
+     */
+    public Stream<Appointment> scanByDoctorIdStartingBetween(
+        String doctorId,
+        LocalDateTime from,
+        LocalDateTime to,
+        AppointmentStatus... statuses
+    ) {
+        return super.scan(new RowQuery()
+            .equalTo("doctorId", doctorId)
+            .in("status", names(statuses))
+            .between("startDateTime", from, to));
+    }
+
+    /**
+     * Saves an appointment, new or rescheduled, unless its doctor or its patient has another appointment
+     * that takes up time overlapping it. Cancelled appointments take up no time. The overlap is checked on
+     * the appointments file under its write lock, so an appointment another process booked a moment earlier
+     * is found even before any calendar has seen it.
+     *
+     * @param appointment The appointment to save.
+     * @return null if the appointment was saved, otherwise the other appointment that overlaps it.
+     */
+    public Appointment saveUnlessOverlapping(Appointment appointment) {
+        return super.saveUnlessMatched(
+            appointment,
+            overlapping("doctorId", appointment.getDoctorId(), appointment.getStartDateTime(), appointment.getEndDateTime()),
+            overlapping("patientId", appointment.getPatientId(), appointment.getStartDateTime(), appointment.getEndDateTime())
+        );
+    }
+
+    /**
+     * Builds the query for the appointments of a doctor or patient that take up time overlapping a time slot.
+     *
+     * @param columnName    The column holding the doctor or patient ID.
+     * @param ownerId       The ID of the doctor or patient.
+     * @param startDateTime The start of the time slot.
+     * @param endDateTime   The end of the time slot.
+     * @return The query.
+     */
+    private static RowQuery overlapping(String columnName, String ownerId, LocalDateTime startDateTime, LocalDateTime endDateTime) {
+        // Overlapping appointments start before the slot ends and end strictly after it starts
+        return new RowQuery()
+            .equalTo(columnName, ownerId)
+            .in("status", names(BOOKED_STATUSES))
+            .between("startDateTime", null, endDateTime)
+            .between("endDateTime", startDateTime.plusNanos(1), null);
+    }
+
+    /**
+     * Returns the stored names of appointment statuses.
+     *
+     * @param statuses The statuses.
+     * @return The names of the statuses, as stored in the status column.
+     */
+    private static List<String> names(AppointmentStatus[] statuses) {
+        List<String> names = new ArrayList<>(statuses.length);
+        for (AppointmentStatus status : statuses) {
+            names.add(status.toString());
+        }
+        return names;
     }
 
     /**
@@ -57,7 +263,7 @@ public class AppointmentRepository extends CsvRepository<Appointment, Appointmen
      * @return An array of Appointment objects with the specified status.
      */
     public Appointment[] findManyByStatus(AppointmentStatus status) {
-        List<String> lines = this.fileManager.findLinesByColumnValue("status", status.toString());
-        return super.mapLines(lines, Appointment.class);
+        List<String> lines = this.storage.findLinesByColumnValue("status", status.toString());
+        return super.mapLines(lines);
     }
 }
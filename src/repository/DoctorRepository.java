@@ -2,7 +2,10 @@ package repository;
 
 import model.Doctor;
 import repository.base.CsvRepository;
+import repository.base.CsvStorageEngine;
+import repository.base.StorageEngine;
 import repository.mapper.DoctorMapper;
+import util.Constant;
 
 /**
  * The DoctorRepository class extends CsvRepository for managing Doctor entities.
@@ -22,7 +25,17 @@ public class DoctorRepository extends CsvRepository<Doctor, DoctorMapper> {
      * for storing Doctor data and initializes the DoctorMapper.
      */
     public DoctorRepository() {
-        super(CSV_FILE, CSV_HEADER, new DoctorMapper());
+        this(CsvStorageEngine::new);
+    }
+
+    /**
+     * Constructs a DoctorRepository whose rows are kept by the given storage engine.
+     *
+     * @param engine Creates the storage engine for the CSV file.
+     */
+    public DoctorRepository(StorageEngine.Factory engine) {
+        super(CSV_FILE, CSV_HEADER, new DoctorMapper(), false, engine);
+        enableCache(Constant.ENTITY_CACHE_MAX_BYTES);
     }
 
     /**
@@ -32,7 +45,7 @@ public class DoctorRepository extends CsvRepository<Doctor, DoctorMapper> {
      * @return The Doctor object with the specified name, or null if not found.
      */
     public Doctor findOneByName(String name) {
-        String line = this.fileManager.findLineByColumnValue("name", name);
+        String line = this.storage.findLineByColumnValue("name", name);
         
         if(line == null) return null;
         return mapper.fromCsvString(line);
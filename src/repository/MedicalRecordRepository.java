@@ -3,6 +3,8 @@ package repository;
 import java.util.List;
 import model.MedicalRecord;
 import repository.base.CsvRepository;
+import repository.base.CsvStorageEngine;
+import repository.base.StorageEngine;
 import repository.mapper.MedicalRecordMapper;
 
 /**
@@ -23,7 +25,17 @@ public class MedicalRecordRepository extends CsvRepository<MedicalRecord, Medica
      * for storing MedicalRecord data and initializes the MedicalRecordMapper.
      */
     public MedicalRecordRepository() {
-        super(CSV_FILE, CSV_HEADER, new MedicalRecordMapper());
+        this(CsvStorageEngine::new);
+    }
+
+    /**
+     * Constructs a MedicalRecordRepository whose rows are kept by the given storage engine.
+     *
+     * @param engine Creates the storage engine for the CSV file.
+     */
+    public MedicalRecordRepository(StorageEngine.Factory engine) {
+        super(CSV_FILE, CSV_HEADER, new MedicalRecordMapper(), false, engine);
+        registerIndex("patientId");
     }
 
     /**
@@ -33,7 +45,7 @@ public class MedicalRecordRepository extends CsvRepository<MedicalRecord, Medica
      * @return An array of MedicalRecord objects associated with the specified patient ID.
      */
     public MedicalRecord[] findManyByPatientId(String patientId) {
-        List<String> lines = this.fileManager.findLinesByColumnValue("patientId", patientId);
-        return super.mapLines(lines, MedicalRecord.class);
+        List<String> lines = this.storage.findLinesByColumnValue("patientId", patientId);
+        return super.mapLines(lines);
     }
 }
@@ -2,7 +2,10 @@ package repository;
 
 import model.Medicine;
 import repository.base.CsvRepository;
+import repository.base.CsvStorageEngine;
+import repository.base.StorageEngine;
 import repository.mapper.MedicineMapper;
+import util.Constant;
 
 /**
  * The MedicineRepository class extends CsvRepository for managing Medicine entities.
@@ -22,7 +25,17 @@ public class MedicineRepository extends CsvRepository<Medicine, MedicineMapper>
      * for storing Medicine data and initializes the MedicineMapper.
      */
     public MedicineRepository() {
-        super(CSV_FILE, CSV_HEADER, new MedicineMapper());
+        this(CsvStorageEngine::new);
+    }
+
+    /**
+     * Constructs a MedicineRepository whose rows are kept by the given storage engine.
+     *
+     * @param engine Creates the storage engine for the CSV file.
+     */
+    public MedicineRepository(StorageEngine.Factory engine) {
+        super(CSV_FILE, CSV_HEADER, new MedicineMapper(), false, engine);
+        enableCache(Constant.ENTITY_CACHE_MAX_BYTES);
     }
 
     /**
@@ -32,7 +45,7 @@ public class MedicineRepository extends CsvRepository<Medicine, MedicineMapper>
      * @return The Medicine object with the specified name, or null if not found.
      */
     public Medicine findOneByName(String name) {
-        String line = this.fileManager.findLineByColumnValue("name", name);
+        String line = this.storage.findLineByColumnValue("name", name);
         
         if (line == null) return null;
         return mapper.fromCsvString(line);
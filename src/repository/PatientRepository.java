@@ -2,7 +2,10 @@ package repository;
 
 import model.Patient;
 import repository.base.CsvRepository;
+import repository.base.CsvStorageEngine;
+import repository.base.StorageEngine;
 import repository.mapper.PatientMapper;
+import util.Constant;
 
 /**
  * The PatientRepository class extends CsvRepository for managing Patient entities.
@@ -22,7 +25,17 @@ public class PatientRepository extends CsvRepository<Patient, PatientMapper> {
      * for storing Patient data and initializes the PatientMapper.
      */
     public PatientRepository() {
-        super(CSV_FILE, CSV_HEADER, new PatientMapper());
+        this(CsvStorageEngine::new);
+    }
+
+    /**
+     * Constructs a PatientRepository whose rows are kept by the given storage engine.
+     *
+     * @param engine Creates the storage engine for the CSV file.
+     */
+    public PatientRepository(StorageEngine.Factory engine) {
+        super(CSV_FILE, CSV_HEADER, new PatientMapper(), false, engine);
+        enableCache(Constant.ENTITY_CACHE_MAX_BYTES);
     }
 
     /**
@@ -32,7 +45,7 @@ public class PatientRepository extends CsvRepository<Patient, PatientMapper> {
      * @return The Patient object with the specified name, or null if not found.
      */
     public Patient findOneByName(String patientName) {
-        String line = this.fileManager.findLineByColumnValue("name", patientName);
+        String line = this.storage.findLineByColumnValue("name", patientName);
         return this.mapper.fromCsvString(line);
     }
 }
@@ -3,6 +3,8 @@ package repository;
 import java.util.List;
 import model.PatientVital;
 import repository.base.CsvRepository;
+import repository.base.CsvStorageEngine;
+import repository.base.StorageEngine;
 import repository.mapper.PatientVitalMapper;
 
 /**
@@ -23,7 +25,17 @@ public class PatientVitalRepository extends CsvRepository<PatientVital, PatientV
      * for storing PatientVital data and initializes the PatientVitalMapper.
      */
     public PatientVitalRepository() {
-        super(CSV_FILE, CSV_HEADER, new PatientVitalMapper());
+        this(CsvStorageEngine::new);
+    }
+
+    /**
+     * Constructs a PatientVitalRepository whose rows are kept by the given storage engine.
+     *
+     * @param engine Creates the storage engine for the CSV file.
+     */
+    public PatientVitalRepository(StorageEngine.Factory engine) {
+        super(CSV_FILE, CSV_HEADER, new PatientVitalMapper(), false, engine);
+        registerIndex("patientId");
     }
 
     /**
@@ -33,7 +45,7 @@ public class PatientVitalRepository extends CsvRepository<PatientVital, PatientV
      * @return An array of PatientVital objects associated with the specified patient ID.
      */
     public PatientVital[] findManyByPatientId(String patientId) {
-        List<String> lines = this.fileManager.findLinesByColumnValue("patientId", patientId);
-        return super.mapLines(lines, PatientVital.class);
+        List<String> lines = this.storage.findLinesByColumnValue("patientId", patientId);
+        return super.mapLines(lines);
     }
 }
@@ -1,8 +1,13 @@
 package repository;
 
+import java.util.Collection;
 import java.util.List;
+import java.util.stream.Stream;
 import model.Prescription;
 import repository.base.CsvRepository;
+import repository.base.CsvStorageEngine;
+import repository.base.RowQuery;
+import repository.base.StorageEngine;
 import repository.mapper.PrescriptionMapper;
 
 /**
@@ -23,7 +28,17 @@ public class PrescriptionRepository extends CsvRepository<Prescription, Prescrip
      * for storing Prescription data and initializes the PrescriptionMapper.
      */
     public PrescriptionRepository() {
-        super(CSV_FILE, CSV_HEADER, new PrescriptionMapper());
+        this(CsvStorageEngine::new);
+    }
+
+    /**
+     * Constructs a PrescriptionRepository whose rows are kept by the given storage engine.
+     *
+     * @param engine Creates the storage engine for the CSV file.
+     */
+    public PrescriptionRepository(StorageEngine.Factory engine) {
+        super(CSV_FILE, CSV_HEADER, new PrescriptionMapper(), false, engine);
+        registerIndex("appointmentOutcomeId");
     }
 
     /**
@@ -33,7 +48,20 @@ public class PrescriptionRepository extends CsvRepository<Prescription, Prescrip
      * @return An array of Prescription objects associated with the specified outcome ID.
      */
     public Prescription[] findManyByOutcomeId(String outcomeId) {
-        List<String> lines = this.fileManager.findLinesByColumnValue("appointmentOutcomeId", outcomeId);
-        return super.mapLines(lines, Prescription.class);
+        List<String> lines = this.storage.findLinesByColumnValue("appointmentOutcomeId", outcomeId);
+        return super.mapLines(lines);
+    }
+
+    /**
+     * Finds and returns the Prescription records of any of the specified appointment outcome IDs in one
+     * pass, reading only the rows the appointment outcome ID index lists for them.
+     *
+     * @param outcomeIds The appointment outcome IDs to search for.
+     * @return An array of Prescription objects associated with any of the outcome IDs, in file order.
+     */
+    public Prescription[] findManyByOutcomeIds(Collection<String> outcomeIds) {
+        try (Stream<Prescription> prescriptions = super.scan(new RowQuery().in("appointmentOutcomeId", outcomeIds))) {
+            return prescriptions.toArray(Prescription[]::new);
+        }
     }
 }
@@ -4,6 +4,8 @@ import enums.ReplenishmentRequestStatus;
 import java.util.List;
 import model.ReplenishmentRequest;
 import repository.base.CsvRepository;
+import repository.base.CsvStorageEngine;
+import repository.base.StorageEngine;
 import repository.mapper.ReplenishmentRequestMapper;
 
 /**
@@ -24,7 +26,18 @@ public class ReplenishmentRequestRepository extends CsvRepository<ReplenishmentR
      * for storing ReplenishmentRequest data and initializes the ReplenishmentRequestMapper.
      */
     public ReplenishmentRequestRepository() {
-        super(CSV_FILE, CSV_HEADER, new ReplenishmentRequestMapper());
+        this(CsvStorageEngine::new);
+    }
+
+    /**
+     * Constructs a ReplenishmentRequestRepository whose rows are kept by the given storage engine.
+     *
+     * @param engine Creates the storage engine for the CSV file.
+     */
+    public ReplenishmentRequestRepository(StorageEngine.Factory engine) {
+        super(CSV_FILE, CSV_HEADER, new ReplenishmentRequestMapper(), false, engine);
+        registerIndex("status");
+        registerIndex("pharmacistId");
     }
 
     /**
@@ -34,8 +47,8 @@ public class ReplenishmentRequestRepository extends CsvRepository<ReplenishmentR
      * @return An array of ReplenishmentRequest objects with the specified status.
      */
     public ReplenishmentRequest[] findManyByStatus(ReplenishmentRequestStatus status) {
-        List<String> lines = this.fileManager.findLinesByColumnValue("status", status.toString());
-        return super.mapLines(lines, ReplenishmentRequest.class);
+        List<String> lines = this.storage.findLinesByColumnValue("status", status.toString());
+        return super.mapLines(lines);
     }
 
     /**
@@ -45,7 +58,7 @@ public class ReplenishmentRequestRepository extends CsvRepository<ReplenishmentR
      * @return An array of ReplenishmentRequest objects associated with the specified pharmacist ID.
      */
     public ReplenishmentRequest[] findManyByPharmacist(String pharmarcistId) {
-        List<String> lines = this.fileManager.findLinesByColumnValue("pharmacistId", pharmarcistId);
-        return super.mapLines(lines, ReplenishmentRequest.class);
+        List<String> lines = this.storage.findLinesByColumnValue("pharmacistId", pharmarcistId);
+        return super.mapLines(lines);
     }
 }
@@ -0,0 +1,268 @@
+package repository.base;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Set;
+import util.CsvCursor;
+
+/**
+ * A secondary index over one column of a CSV file, mapping each column value
+ * to the byte offsets of the rows that hold it. Offsets are kept sorted, so rows
+ * come back in file order.
+ *
+ * @author Russell Arvin
+ * @version 1.0
+ */
+class ColumnIndex {
+    private static final long[] EMPTY = new long[0];
+
+    private final String columnName;
+    private final int position;
+    private final Map<String, Postings> postings = new HashMap<>();
+
+    /**
+     * Constructs an empty index for a column.
+     *
+     * @param columnName the name of the indexed column
+     * @param position the zero-based position of the column in each row
+     */
+    ColumnIndex(String columnName, int position) {
+        this.columnName = columnName;
+        this.position = position;
+    }
+
+    /**
+     * Returns the name of the indexed column.
+     *
+     * @return the column name
+     */
+    String getColumnName() {
+        return columnName;
+    }
+
+    /**
+     * Returns the zero-based position of the indexed column in each row.
+     *
+     * @return the column position
+     */
+    int getPosition() {
+        return position;
+    }
+
+    /**
+     * Extracts the (trimmed) value of the indexed column from a row.
+     *
+     * @param line the CSV row
+     * @return the column value, or null if the row has too few columns
+     */
+    String valueOf(String line) {
+        return valueAt(line, position);
+    }
+
+    /**
+     * Extracts the (trimmed) value of a column from a row. Quoted columns are read as by
+     * {@link CsvCursor}, so they may hold commas.
+     *
+     * @param line the CSV row
+     * @param position the zero-based position of the column
+     * @return the column value, or null if the row has too few columns or a malformed quoted column
+     */
+    static String valueAt(String line, int position) {
+        try {
+            CsvCursor cursor = new CsvCursor(line);
+            for (int i = 0; i < position; i++) {
+                if (!cursor.hasNext()) return null;
+                cursor.skip();
+            }
+            return cursor.hasNext() ? cursor.nextString().trim() : null;
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Extracts the (trimmed) value of the indexed column from a row held as bytes,
+     * decoding only that column.
+     *
+     * @param bytes the buffer holding the row
+     * @param start the index at which the row starts
+     * @param end the index just past the row content
+     * @return the column value, or null if the row has too few columns
+     */
+    String valueOf(ByteBuffer bytes, int start, int end) {
+        int fieldStart = CsvBytes.fieldStart(bytes, start, end, position);
+        if (fieldStart < 0) return null;
+        return CsvBytes.decodeField(bytes, fieldStart, CsvBytes.fieldEnd(bytes, fieldStart, end));
+    }
+
+    /**
+     * Checks whether a row held as bytes has the given value in the indexed column.
+     *
+     * @param bytes the buffer holding the row
+     * @param start the index at which the row starts
+     * @param end the index just past the row content
+     * @param value the encoded value to compare with
+     * @return true if the row holds the value
+     */
+    boolean matches(ByteBuffer bytes, int start, int end, byte[] value) {
+        int fieldStart = CsvBytes.fieldStart(bytes, start, end, position);
+        return fieldStart >= 0 && CsvBytes.fieldEquals(bytes, fieldStart, CsvBytes.fieldEnd(bytes, fieldStart, end), value);
+    }
+
+    /**
+     * Adds a row to the index.
+     *
+     * @param line the CSV row
+     * @param offset the byte offset of the row
+     */
+    void add(String line, long offset) {
+        addValue(valueOf(line), offset);
+    }
+
+    /**
+     * Adds a row to the index by its already extracted column value.
+     *
+     * @param value the column value of the row, may be null if the row has too few columns
+     * @param offset the byte offset of the row
+     */
+    void addValue(String value, long offset) {
+        if (value == null) return;
+        postings.computeIfAbsent(value, key -> new Postings()).add(offset);
+    }
+
+    /**
+     * Removes a row from the index.
+     *
+     * @param line the CSV row as it was indexed
+     * @param offset the byte offset of the row
+     */
+    void remove(String line, long offset) {
+        String value = valueOf(line);
+        if (value == null) return;
+
+        Postings rows = postings.get(value);
+        if (rows == null) return;
+        rows.remove(offset);
+        if (rows.size == 0) postings.remove(value);
+    }
+
+    /**
+     * Returns the offsets of all rows holding a value, in file order.
+     *
+     * @param value the column value to look up
+     * @return the row offsets, or an empty array if no row holds the value
+     */
+    long[] offsets(String value) {
+        Postings rows = postings.get(value);
+        return rows == null ? EMPTY : Arrays.copyOf(rows.offsets, rows.size);
+    }
+
+    /**
+     * Visits every distinct value in the index with the offsets of the rows holding it, in file order.
+     * The arrays passed to the visitor may be longer than the number of offsets they hold.
+     *
+     * @param visitor the visitor to call with each value, its offsets and the number of offsets
+     */
+    void forEachValue(ValueVisitor visitor) {
+        for (Map.Entry<String, Postings> entry : postings.entrySet()) {
+            Postings rows = entry.getValue();
+            visitor.visit(entry.getKey(), rows.offsets, rows.size);
+        }
+    }
+
+    /**
+     * Sets the offsets of the rows holding a value, replacing any that are already indexed for it.
+     *
+     * @param value the column value
+     * @param offsets the row offsets, sorted in file order; the index takes ownership of the array
+     */
+    void putValue(String value, long[] offsets) {
+        if (offsets.length == 0) return;
+        Postings rows = new Postings();
+        rows.offsets = offsets;
+        rows.size = offsets.length;
+        postings.put(value, rows);
+    }
+
+    /**
+     * Drops every offset that is not in the given set of live row offsets.
+     *
+     * @param liveOffsets the offsets of rows that are still current
+     */
+    void retainAll(Set<Long> liveOffsets) {
+        Iterator<Postings> iterator = postings.values().iterator();
+        while (iterator.hasNext()) {
+            Postings rows = iterator.next();
+            int kept = 0;
+            for (int i = 0; i < rows.size; i++) {
+                if (liveOffsets.contains(rows.offsets[i])) rows.offsets[kept++] = rows.offsets[i];
+            }
+            rows.size = kept;
+            if (kept == 0) iterator.remove();
+        }
+    }
+
+    /**
+     * Removes every entry from the index.
+     */
+    void clear() {
+        postings.clear();
+    }
+
+    /**
+     * Visits a value of the index with the offsets of the rows holding it.
+     */
+    @FunctionalInterface
+    interface ValueVisitor {
+        /**
+         * Visits a single value.
+         *
+         * @param value the column value
+         * @param offsets the row offsets in file order, of which only the first count are valid
+         * @param count the number of offsets
+         */
+        void visit(String value, long[] offsets, int count);
+    }
+
+    /**
+     * A sorted, growable list of row offsets.
+     */
+    private static class Postings {
+        private long[] offsets = new long[4];
+        private int size = 0;
+
+        /**
+         * Inserts an offset, keeping the list sorted. Appends to the end of the file are the common case.
+         *
+         * @param offset the offset to insert
+         */
+        void add(long offset) {
+            if (size == offsets.length) offsets = Arrays.copyOf(offsets, size * 2);
+
+            int at = size == 0 || offsets[size - 1] < offset ? size : Arrays.binarySearch(offsets, 0, size, offset);
+            if (at < 0) {
+                at = -at - 1;
+            } else if (at < size) {
+                return; // Already present
+            }
+            System.arraycopy(offsets, at, offsets, at + 1, size - at);
+            offsets[at] = offset;
+            size++;
+        }
+
+        /**
+         * Removes an offset if it is present.
+         *
+         * @param offset the offset to remove
+         */
+        void remove(long offset) {
+            int at = Arrays.binarySearch(offsets, 0, size, offset);
+            if (at < 0) return;
+            System.arraycopy(offsets, at + 1, offsets, at, size - at - 1);
+            size--;
+        }
+    }
+}
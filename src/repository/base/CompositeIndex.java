@@ -0,0 +1,198 @@
+package repository.base;
+
+import java.time.DateTimeException;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Set;
+import java.util.TreeMap;
+import util.TimestampCodec;
+
+/**
+ * A secondary index over a key column and a timestamp column, such as a doctor ID and an appointment's
+ * start time. The rows of each key are kept sorted by their timestamp, so the rows of one key within a
+ * time range, such as a doctor's appointments on one day, are found with a single range probe instead
+ * of reading every row of the key.
+ * <p>
+ * Rows are referred to by {@code R}, which is the byte offset of the row for {@link CsvFileManager}
+ * and the record ID for {@link InMemoryStorageEngine}.
+ *
+ * @param <R> the type that refers to a row
+ * @author Russell Arvin
+ * @version 1.0
+ */
+final class CompositeIndex<R> {
+    private final String columnName;
+    private final int position;
+    private final String timeColumnName;
+    private final int timePosition;
+    private final Map<String, NavigableMap<LocalDateTime, Set<R>>> entries = new HashMap<>();
+
+    /**
+     * Constructs an empty index over a key column and a timestamp column.
+     *
+     * @param columnName the name of the key column
+     * @param position the zero-based position of the key column in each row
+     * @param timeColumnName the name of the timestamp column
+     * @param timePosition the zero-based position of the timestamp column in each row
+     */
+    CompositeIndex(String columnName, int position, String timeColumnName, int timePosition) {
+        this.columnName = columnName;
+        this.position = position;
+        this.timeColumnName = timeColumnName;
+        this.timePosition = timePosition;
+    }
+
+    /**
+     * Returns the name of the key column.
+     *
+     * @return the key column name
+     */
+    String getColumnName() {
+        return columnName;
+    }
+
+    /**
+     * Returns the name of the timestamp column.
+     *
+     * @return the timestamp column name
+     */
+    String getTimeColumnName() {
+        return timeColumnName;
+    }
+
+    /**
+     * Adds a row to the index. Rows without a key or a readable timestamp are left out.
+     *
+     * @param line the CSV row
+     * @param row the reference to the row
+     */
+    void add(String line, R row) {
+        String value = ColumnIndex.valueAt(line, position);
+        LocalDateTime time = timeOf(line);
+        if (value == null || time == null) return;
+
+        entries.computeIfAbsent(value, key -> new TreeMap<>())
+            .computeIfAbsent(time, key -> new LinkedHashSet<>())
+            .add(row);
+    }
+
+    /**
+     * Removes a row from the index.
+     *
+     * @param line the CSV row as it was indexed
+     * @param row the reference to the row
+     */
+    void remove(String line, R row) {
+        String value = ColumnIndex.valueAt(line, position);
+        LocalDateTime time = timeOf(line);
+        if (value == null || time == null) return;
+
+        NavigableMap<LocalDateTime, Set<R>> times = entries.get(value);
+        if (times == null) return;
+        Set<R> rows = times.get(time);
+        if (rows == null) return;
+
+        rows.remove(row);
+        if (rows.isEmpty()) times.remove(time);
+        if (times.isEmpty()) entries.remove(value);
+    }
+
+    /**
+     * Returns the rows of a key whose timestamp is at or after one time and before another,
+     * sorted by their timestamp.
+     *
+     * @param value the key column value
+     * @param from the earliest time, or null for no lower bound
+     * @param to the time just past the latest one, or null for no upper bound
+     * @return the references to the rows in timestamp order
+     */
+    List<R> range(String value, LocalDateTime from, LocalDateTime to) {
+        List<R> rows = new ArrayList<>();
+        NavigableMap<LocalDateTime, Set<R>> times = entries.get(value);
+        if (times == null) return rows;
+        if (from != null && to != null && !from.isBefore(to)) return rows;
+
+        NavigableMap<LocalDateTime, Set<R>> window = times;
+        if (from != null) window = window.tailMap(from, true);
+        if (to != null) window = window.headMap(to, false);
+        for (Set<R> atTime : window.values()) {
+            rows.addAll(atTime);
+        }
+        return rows;
+    }
+
+    /**
+     * Returns the rows a query could match, if the query has an equality on the key column and a range
+     * on the timestamp column. The rows of each key value are sorted by their timestamp.
+     *
+     * @param query the query
+     * @return the references to the candidate rows, or null if the index cannot narrow down the query
+     */
+    List<R> probe(RowQuery query) {
+        List<String> values = null;
+        RowQuery.Condition window = null;
+        for (RowQuery.Condition condition : query.getConditions()) {
+            if (values == null && condition.getValues() != null && condition.getColumnName().equals(columnName)) {
+                values = condition.getValues();
+            } else if (window == null && condition.getValues() == null && condition.getColumnName().equals(timeColumnName)) {
+                window = condition;
+            }
+        }
+        if (values == null || window == null) return null;
+
+        List<R> rows = new ArrayList<>();
+        for (String value : values) {
+            rows.addAll(range(value, window.getFrom(), window.getTo()));
+        }
+        return rows;
+    }
+
+    /**
+     * Drops every row that is not in the given collection of live rows.
+     *
+     * @param liveRows the references to rows that are still current
+     */
+    void retainAll(Collection<R> liveRows) {
+        Iterator<NavigableMap<LocalDateTime, Set<R>>> keys = entries.values().iterator();
+        while (keys.hasNext()) {
+            NavigableMap<LocalDateTime, Set<R>> times = keys.next();
+            Iterator<Set<R>> atTimes = times.values().iterator();
+            while (atTimes.hasNext()) {
+                Set<R> rows = atTimes.next();
+                rows.retainAll(liveRows);
+                if (rows.isEmpty()) atTimes.remove();
+            }
+            if (times.isEmpty()) keys.remove();
+        }
+    }
+
+    /**
+     * Removes every entry from the index.
+     */
+    void clear() {
+        entries.clear();
+    }
+
+    /**
+     * Reads the timestamp column of a row.
+     *
+     * @param line the CSV row
+     * @return the timestamp, or null if the column is missing, empty or not a timestamp
+     */
+    private LocalDateTime timeOf(String line) {
+        String text = ColumnIndex.valueAt(line, timePosition);
+        if (text == null || text.isEmpty()) return null;
+        try {
+            return TimestampCodec.parse(text);
+        } catch (DateTimeException e) {
+            return null;
+        }
+    }
+}
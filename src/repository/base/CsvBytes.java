@@ -0,0 +1,245 @@
+package repository.base;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Helpers for working on CSV rows as raw UTF-8 bytes, so that rows can be
+ * located and filtered without decoding them into Strings first.
+ * All positions are absolute indexes into the buffer.
+ * <p>
+ * Columns follow RFC 4180 the same way as {@link util.CsvCursor}: a column that starts with a quote
+ * runs to its closing quote, may hold commas, and holds a quote as two quotes. Only quoted columns are
+ * decoded to be compared, so the common unquoted case is still matched on the raw bytes.
+ *
+ * @author Russell Arvin
+ * @version 1.0
+ */
+final class CsvBytes {
+    static final Charset CHARSET = StandardCharsets.UTF_8;
+
+    /**
+     * Prevents instantiation of this utility class.
+     */
+    private CsvBytes() {
+    }
+
+    /**
+     * Returns the index of the first occurrence of a byte in a range.
+     *
+     * @param bytes the buffer to search
+     * @param from the first index to search, inclusive
+     * @param to the last index to search, exclusive
+     * @param target the byte to find
+     * @return the index of the byte, or -1 if it is not in the range
+     */
+    static int indexOf(ByteBuffer bytes, int from, int to, byte target) {
+        for (int i = from; i < to; i++) {
+            if (bytes.get(i) == target) return i;
+        }
+        return -1;
+    }
+
+    /**
+     * Returns the index of the last occurrence of a byte in a range, searching backwards from its end.
+     *
+     * @param bytes the buffer to search
+     * @param from the first index to search, inclusive
+     * @param to the last index to search, exclusive
+     * @param target the byte to find
+     * @return the index of the byte, or -1 if it is not in the range
+     */
+    static int lastIndexOf(ByteBuffer bytes, int from, int to, byte target) {
+        for (int i = to - 1; i >= from; i--) {
+            if (bytes.get(i) == target) return i;
+        }
+        return -1;
+    }
+
+    /**
+     * Returns the end of the line starting at the given index, excluding its terminator.
+     *
+     * @param bytes the buffer holding the line
+     * @param start the index at which the line starts
+     * @return the index just past the last byte of the line content
+     */
+    static int lineEnd(ByteBuffer bytes, int start) {
+        int newline = indexOf(bytes, start, bytes.limit(), (byte) '\n');
+        return trimCarriageReturn(bytes, start, newline < 0 ? bytes.limit() : newline);
+    }
+
+    /**
+     * Drops a trailing carriage return from a line.
+     *
+     * @param bytes the buffer holding the line
+     * @param start the index at which the line starts
+     * @param end the index just past the line content
+     * @return the end of the line without a carriage return
+     */
+    static int trimCarriageReturn(ByteBuffer bytes, int start, int end) {
+        return end > start && bytes.get(end - 1) == '\r' ? end - 1 : end;
+    }
+
+    /**
+     * Returns the index at which a column starts within a row.
+     *
+     * @param bytes the buffer holding the row
+     * @param start the index at which the row starts
+     * @param end the index just past the row content
+     * @param position the zero-based column position
+     * @return the index at which the column starts, or -1 if the row has too few columns
+     */
+    static int fieldStart(ByteBuffer bytes, int start, int end, int position) {
+        int fieldStart = start;
+        for (int i = 0; i < position; i++) {
+            int comma = fieldEnd(bytes, fieldStart, end);
+            if (comma >= end) return -1;
+            fieldStart = comma + 1;
+        }
+        return fieldStart;
+    }
+
+    /**
+     * Returns the index just past the end of a column. Commas inside a quoted column do not end it.
+     *
+     * @param bytes the buffer holding the row
+     * @param fieldStart the index at which the column starts
+     * @param end the index just past the row content
+     * @return the index of the comma ending the column, or the end of the row
+     */
+    static int fieldEnd(ByteBuffer bytes, int fieldStart, int end) {
+        int from = isQuoted(bytes, fieldStart, end) ? closingQuote(bytes, fieldStart, end) + 1 : fieldStart;
+        int comma = from < end ? indexOf(bytes, from, end, (byte) ',') : -1;
+        return comma < 0 ? end : comma;
+    }
+
+    /**
+     * Checks whether a column is quoted.
+     *
+     * @param bytes the buffer holding the row
+     * @param fieldStart the index at which the column starts
+     * @param fieldEnd the index just past the end of the column, or of the row
+     * @return true if the column starts with a quote
+     */
+    static boolean isQuoted(ByteBuffer bytes, int fieldStart, int fieldEnd) {
+        return fieldStart < fieldEnd && bytes.get(fieldStart) == '"';
+    }
+
+    /**
+     * Finds the quote that closes a quoted column, stepping over doubled quotes.
+     *
+     * @param bytes the buffer holding the row
+     * @param quote the index of the opening quote
+     * @param end the index just past the row content
+     * @return the index of the closing quote, or the end of the row if the quote is never closed
+     */
+    private static int closingQuote(ByteBuffer bytes, int quote, int end) {
+        int i = quote + 1;
+        while (i < end) {
+            if (bytes.get(i) == '"') {
+                if (i + 1 < end && bytes.get(i + 1) == '"') {
+                    i += 2;
+                    continue;
+                }
+                return i;
+            }
+            i++;
+        }
+        return end;
+    }
+
+    /**
+     * Compares a column, ignoring surrounding whitespace, with an encoded value.
+     * A quoted column is compared by its unquoted value.
+     *
+     * @param bytes the buffer holding the row
+     * @param fieldStart the index at which the column starts
+     * @param fieldEnd the index just past the end of the column
+     * @param value the encoded value to compare with
+     * @return true if the trimmed column equals the value
+     */
+    static boolean fieldEquals(ByteBuffer bytes, int fieldStart, int fieldEnd, byte[] value) {
+        if (isQuoted(bytes, fieldStart, fieldEnd)) {
+            return decodeField(bytes, fieldStart, fieldEnd).equals(new String(value, CHARSET));
+        }
+
+        while (fieldStart < fieldEnd && isWhitespace(bytes.get(fieldStart))) fieldStart++;
+        while (fieldEnd > fieldStart && isWhitespace(bytes.get(fieldEnd - 1))) fieldEnd--;
+
+        if (fieldEnd - fieldStart != value.length) return false;
+        for (int i = 0; i < value.length; i++) {
+            if (bytes.get(fieldStart + i) != value[i]) return false;
+        }
+        return true;
+    }
+
+    /**
+     * Checks whether a row starts with the given key followed by a comma.
+     *
+     * @param bytes the buffer holding the row
+     * @param start the index at which the row starts
+     * @param end the index just past the row content
+     * @param key the encoded key
+     * @return true if the first column of the row is exactly the key
+     */
+    static boolean startsWithKey(ByteBuffer bytes, int start, int end, byte[] key) {
+        if (end - start <= key.length || bytes.get(start + key.length) != ',') return false;
+        for (int i = 0; i < key.length; i++) {
+            if (bytes.get(start + i) != key[i]) return false;
+        }
+        return true;
+    }
+
+    /**
+     * Decodes a range of the buffer.
+     *
+     * @param bytes the buffer
+     * @param start the first index, inclusive
+     * @param end the last index, exclusive
+     * @return the decoded text
+     */
+    static String decode(ByteBuffer bytes, int start, int end) {
+        if (bytes.hasArray()) {
+            return new String(bytes.array(), bytes.arrayOffset() + start, end - start, CHARSET);
+        }
+
+        byte[] copy = new byte[end - start];
+        ByteBuffer range = bytes.duplicate();
+        range.position(start);
+        range.get(copy);
+        return new String(copy, CHARSET);
+    }
+
+    /**
+     * Decodes the value of a column with surrounding whitespace removed. A quoted column is
+     * returned without its quotes and with doubled quotes collapsed, as {@link util.CsvCursor} reads it.
+     *
+     * @param bytes the buffer holding the row
+     * @param fieldStart the index at which the column starts
+     * @param fieldEnd the index just past the end of the column
+     * @return the decoded, trimmed value
+     */
+    static String decodeField(ByteBuffer bytes, int fieldStart, int fieldEnd) {
+        if (isQuoted(bytes, fieldStart, fieldEnd)) {
+            int closing = closingQuote(bytes, fieldStart, fieldEnd);
+            String value = decode(bytes, fieldStart + 1, closing);
+            if (value.indexOf('"') >= 0) value = value.replace("\"\"", "\"");
+            return value.trim();
+        }
+
+        while (fieldStart < fieldEnd && isWhitespace(bytes.get(fieldStart))) fieldStart++;
+        while (fieldEnd > fieldStart && isWhitespace(bytes.get(fieldEnd - 1))) fieldEnd--;
+        return decode(bytes, fieldStart, fieldEnd);
+    }
+
+    /**
+     * Checks whether a byte is whitespace in the sense of {@link String#trim()}.
+     *
+     * @param b the byte
+     * @return true for ASCII control characters and space
+     */
+    private static boolean isWhitespace(byte b) {
+        return (b & 0xFF) <= ' ';
+    }
+}
@@ -0,0 +1,264 @@
+package repository.base;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Guards one CSV file against concurrent access, both from threads of this process and from other processes.
+ * <p>
+ * Within the process, a read/write lock lets readers run in parallel and serializes writers.
+ * Across processes, a sidecar {@code <file>.lock} file is locked with {@link FileChannel#lock}:
+ * shared while any thread of this process is reading, exclusive while one is writing. The CSV file itself
+ * cannot be locked, because rewrites replace it with a new file.
+ * <p>
+ * The sidecar also holds a version stamp of the CSV file, so a process can tell whether another process
+ * has written to it since it last looked, and whether it was only appended to or rewritten.
+ *
+ * @author Russell Arvin
+ * @version 1.0
+ */
+class CsvFileLock {
+    private static final Map<Path, CsvFileLock> LOCKS = new ConcurrentHashMap<>();
+    private static final int STAMP_SIZE = 2 * Long.BYTES;
+
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+    private final Path lockPath;
+    private FileChannel channel;
+
+    // The process-wide lock on the sidecar, shared by all reading threads
+    private FileLock processLock;
+    private int processReaders = 0;
+
+    /**
+     * Constructs the lock for a CSV file.
+     *
+     * @param lockPath the path of the sidecar lock file
+     */
+    private CsvFileLock(Path lockPath) {
+        this.lockPath = lockPath;
+    }
+
+    /**
+     * Returns the lock for a CSV file, shared by every manager of that file in this process.
+     *
+     * @param filePath the path of the CSV file
+     * @return the lock for the file
+     */
+    static CsvFileLock forFile(String filePath) {
+        Path path = Paths.get(filePath).toAbsolutePath().normalize();
+        return LOCKS.computeIfAbsent(path, key -> new CsvFileLock(Paths.get(key.toString() + ".lock")));
+    }
+
+    /**
+     * Acquires a read lock. Readers of this process share one shared lock on the sidecar.
+     * A thread that already holds the write lock only takes the in-process read lock.
+     */
+    void lockRead() {
+        lock.readLock().lock();
+        if (lock.isWriteLockedByCurrentThread()) return;
+
+        try {
+            acquireShared();
+        } catch (IOException | RuntimeException e) {
+            lock.readLock().unlock();
+            throw new RuntimeException("Error locking CSV: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Releases a read lock taken by {@link #lockRead()}.
+     */
+    void unlockRead() {
+        try {
+            if (!lock.isWriteLockedByCurrentThread()) releaseShared();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Acquires the write lock, together with an exclusive lock on the sidecar for the outermost hold.
+     */
+    void lockWrite() {
+        lock.writeLock().lock();
+        if (lock.getWriteHoldCount() > 1) return;
+
+        try {
+            processLock = channel().lock();
+        } catch (IOException | RuntimeException e) {
+            lock.writeLock().unlock();
+            throw new RuntimeException("Error locking CSV: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Releases the write lock taken by {@link #lockWrite()}.
+     */
+    void unlockWrite() {
+        try {
+            if (lock.getWriteHoldCount() == 1) releaseProcessLock();
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Checks whether the current thread holds the write lock.
+     *
+     * @return true if the current thread holds the write lock
+     */
+    boolean isWriteLockedByCurrentThread() {
+        return lock.isWriteLockedByCurrentThread();
+    }
+
+    /**
+     * Returns the number of read holds of the current thread.
+     *
+     * @return the read hold count
+     */
+    int getReadHoldCount() {
+        return lock.getReadHoldCount();
+    }
+
+    /**
+     * Reads the version stamp of the CSV file. Must be called while holding a read or write lock.
+     *
+     * @return the stamp
+     * @throws IOException if the sidecar cannot be read
+     */
+    Stamp readStamp() throws IOException {
+        ByteBuffer bytes = ByteBuffer.allocate(STAMP_SIZE);
+        FileChannel sidecar = channel();
+        while (bytes.hasRemaining() && sidecar.read(bytes, bytes.position()) > 0) {
+            // Keep reading until the stamp is complete
+        }
+        if (bytes.hasRemaining()) return new Stamp(0, 0);
+
+        bytes.flip();
+        return new Stamp(bytes.getLong(), bytes.getLong());
+    }
+
+    /**
+     * Records a write to the CSV file in the version stamp. Must be called while holding the write lock.
+     *
+     * @param rewritten whether the file was rewritten, rather than only appended to
+     * @return the new stamp
+     * @throws IOException if the sidecar cannot be written
+     */
+    Stamp bumpStamp(boolean rewritten) throws IOException {
+        Stamp current = readStamp();
+        Stamp next = new Stamp(current.generation + (rewritten ? 1 : 0), current.version + 1);
+
+        ByteBuffer bytes = ByteBuffer.allocate(STAMP_SIZE);
+        bytes.putLong(next.generation).putLong(next.version).flip();
+        FileChannel sidecar = channel();
+        while (bytes.hasRemaining()) {
+            sidecar.write(bytes, bytes.position());
+        }
+        return next;
+    }
+
+    /**
+     * Opens the sidecar file on first use.
+     *
+     * @return the open sidecar channel
+     * @throws IOException if the sidecar cannot be opened
+     */
+    private synchronized FileChannel channel() throws IOException {
+        if (channel == null || !channel.isOpen()) {
+            channel = FileChannel.open(lockPath, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        }
+        return channel;
+    }
+
+    /**
+     * Takes the shared sidecar lock for the first reading thread of this process.
+     *
+     * @throws IOException if the sidecar cannot be locked
+     */
+    private synchronized void acquireShared() throws IOException {
+        if (processReaders == 0) processLock = channel().lock(0, Long.MAX_VALUE, true);
+        processReaders++;
+    }
+
+    /**
+     * Releases the shared sidecar lock after the last reading thread of this process.
+     */
+    private synchronized void releaseShared() {
+        if (--processReaders == 0) releaseProcessLock();
+    }
+
+    /**
+     * Releases whichever sidecar lock this process holds.
+     */
+    private synchronized void releaseProcessLock() {
+        if (processLock == null) return;
+        try {
+            processLock.release();
+        } catch (IOException e) {
+            System.err.println("Error unlocking CSV: " + e.getMessage());
+        }
+        processLock = null;
+    }
+
+    /**
+     * A version stamp of a CSV file. The generation changes whenever the file is rewritten,
+     * and the version changes on every write.
+     */
+    static final class Stamp {
+        private final long generation;
+        private final long version;
+
+        /**
+         * Constructs a stamp.
+         *
+         * @param generation the number of rewrites
+         * @param version the number of writes
+         */
+        Stamp(long generation, long version) {
+            this.generation = generation;
+            this.version = version;
+        }
+
+        /**
+         * Checks whether the file was only appended to between this stamp and a later one.
+         *
+         * @param later the later stamp
+         * @return true if the later stamp has the same generation
+         */
+        boolean sameGeneration(Stamp later) {
+            return later.generation == generation;
+        }
+
+        /**
+         * Compares two stamps.
+         *
+         * @param other the object to compare with
+         * @return true if both stamps have the same generation and version
+         */
+        @Override
+        public boolean equals(Object other) {
+            if (!(other instanceof Stamp)) return false;
+            Stamp stamp = (Stamp) other;
+            return stamp.generation == generation && stamp.version == version;
+        }
+
+        /**
+         * Returns a hash code consistent with {@link #equals(Object)}.
+         *
+         * @return the hash code
+         */
+        @Override
+        public int hashCode() {
+            return Long.hashCode(generation) * 31 + Long.hashCode(version);
+        }
+    }
+}
@@ -1,348 +1,1855 @@
 package repository.base;
 
-import java.io.BufferedReader;
+import java.io.BufferedOutputStream;
 import java.io.BufferedWriter;
+import java.io.ByteArrayOutputStream;
 import java.io.File;
-import java.io.FileReader;
 import java.io.FileWriter;
 import java.io.IOException;
+import java.io.OutputStream;
 import java.io.PrintWriter;
 import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.UnaryOperator;
+import util.CsvCursor;
 
 /**
  * A class to manage CSV file operations such as creating files, reading lines, writing lines,
  * appending lines, and finding records by column value.
+ * <p>
+ * In append-only mode, updates and deletes never rewrite the file. They are appended as a new
+ * version of the record or as a tombstone, the latest version of each record is resolved through
+ * the id index, and the file is compacted in the background once enough dead records build up.
+ * Records are still read back in the order they were first written, so an update does not move a
+ * record to the end of a scan, and compaction writes them out in that order.
+ * <p>
+ * Columns registered with {@link #addIndex(String)} get a secondary index from column value to
+ * row offsets, so lookups by that column only read the matching rows. Pairs of a key column and a
+ * timestamp column registered with {@link #addCompositeIndex(String, String)} keep the rows of each key
+ * sorted by time, so a query for one key within a time range reads only the rows in that range.
+ * <p>
+ * Reads go through a byte view of the whole file, memory-mapped for large files, and rows are
+ * matched on their raw bytes so that only the rows that are returned get decoded into Strings.
+ * Quoted columns are read the same way as {@link CsvCursor} reads them, so a quoted value may hold
+ * commas. The ID column is the exception: IDs are never quoted, and the ID of a row is everything
+ * before its first comma.
+ * <p>
+ * Each file is guarded by a read/write lock: reads run in parallel, and writes are serialized
+ * and exclude readers. The lock also holds across processes sharing the data directory, and every
+ * write bumps a version stamp next to the file. A manager that finds the stamp moved on since it last
+ * looked picks up rows appended by another process by reading only the new tail of the file, rebuilds
+ * after a rewrite, and tells its {@link ChangeListener}s which records changed.
+ * <p>
+ * {@link #checkpoint()} saves the indexes to a binary snapshot next to the file, and a later
+ * rebuild loads them from there instead of scanning the file, as long as the file is unchanged.
  * @author Russell Arvin
  * @version 1.0
  */
 public class CsvFileManager {
+    private static final Charset CHARSET = CsvBytes.CHARSET;
+
+    /** Files at least this large are memory-mapped, smaller ones are read onto the heap. */
+    private static final long MAP_THRESHOLD = 4L * 1024 * 1024;
+    /** Windows cannot replace a file while it is mapped, which would break {@link #writeAllLines(List)}. */
+    private static final boolean CAN_MAP = File.separatorChar != '\\';
+
+    /** Second column of a record that marks the id in its first column as deleted. */
+    private static final String TOMBSTONE = "#deleted";
+    private static final byte[] TOMBSTONE_BYTES = TOMBSTONE.getBytes(CHARSET);
+    private static final int COMPACTION_MIN_DEAD_RECORDS = 100;
+    private static final double COMPACTION_DEAD_RATIO = 0.5;
+
+    private static final ExecutorService COMPACTOR = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "csv-compactor");
+        thread.setDaemon(true);
+        return thread;
+    });
+
     private final String filePath;
     private final String header;
+    private final boolean appendOnly;
+
+    // Byte offset of the current version of each record, keyed by the id in its first column,
+    // in the order the records were first written
+    private final Map<String, Long> idOffsets = new LinkedHashMap<>();
+    // Append-only mode only: the position of each live record in the order records were first written,
+    // keyed by the offset of its current version, so updates do not move a record to the end of scans
+    private final Map<Long, Integer> creationRanks = new HashMap<>();
+    private int nextCreationRank = 0;
+    private final Map<String, ColumnIndex> columnIndexes = new HashMap<>();
+    private final List<CompositeIndex<Long>> compositeIndexes = new ArrayList<>();
+    private boolean indexed = false;
+    private long indexedLength = -1;
+    private long deadRecords = 0;
+    private boolean compactionScheduled = false;
+
+    // Guards the file and all of the state below; shared by every manager of the same file
+    private final CsvFileLock lock;
+    // Version stamp of the file as of the last time the index was brought up to date
+    private CsvFileLock.Stamp seenStamp;
+    private final List<ChangeListener> changeListeners = new CopyOnWriteArrayList<>();
+
+    // Bytes of the whole file as of viewLength and viewStamp, extended in place when rows are appended
+    private ByteBuffer view;
+    private long viewLength = -1;
+    private CsvFileLock.Stamp viewStamp;
+
+    /**
+     * Listens for records of the file that were changed by another manager or another process.
+     */
+    @FunctionalInterface
+    public interface ChangeListener {
+        /**
+         * Called after the index has picked up changes made outside this manager.
+         *
+         * @param ids the ids of the records that were written, or null if the file was rewritten and any record may have changed
+         */
+        void onChange(Collection<String> ids);
+    }
+
+    /**
+     * Visits a record row in the byte view of the file. The row's start is also its byte offset in the file.
+     */
+    @FunctionalInterface
+    private interface RowVisitor {
+        /**
+         * Visits a single record row.
+         *
+         * @param bytes the byte view of the file
+         * @param start the index at which the row starts
+         * @param end the index just past the row content, excluding its terminator
+         * @return true to continue scanning, false to stop
+         */
+        boolean visit(ByteBuffer bytes, int start, int end);
+    }
 
     /**
      * Constructs a CsvFileManager for a given file path and header.
-     * 
+     *
      * @param filePath the file path of the CSV file
      * @param header the header row for the CSV file
      */
     public CsvFileManager(String filePath, String header) {
+        this(filePath, header, false);
+    }
+
+    /**
+     * Constructs a CsvFileManager for a given file path and header, optionally in append-only mode.
+     *
+     * @param filePath the file path of the CSV file
+     * @param header the header row for the CSV file
+     * @param appendOnly whether updates and deletes are appended instead of rewriting the file
+     */
+    public CsvFileManager(String filePath, String header, boolean appendOnly) {
         this.filePath = filePath;
         this.header = header;
+        this.appendOnly = appendOnly;
+        this.lock = CsvFileLock.forFile(filePath);
         createFileIfNotExists();
     }
 
     /**
      * Returns the header of the CSV file.
-     * 
+     *
      * @return the header of the CSV file
      */
     public String getHeader(){
         return this.header;
     }
 
+    /**
+     * Returns whether this file is managed in append-only mode.
+     *
+     * @return true if updates and deletes are appended to the file
+     */
+    public boolean isAppendOnly() {
+        return this.appendOnly;
+    }
+
+    /**
+     * Registers a listener for records changed outside this manager, such as by another process
+     * sharing the data directory.
+     *
+     * @param listener the listener to call
+     */
+    public void addChangeListener(ChangeListener listener) {
+        changeListeners.add(listener);
+    }
+
+    /**
+     * Brings the index up to date with the file if it was written outside this manager, notifying
+     * the change listeners. This only checks the version stamp and the file length when nothing changed.
+     *
+     * @throws RuntimeException if the file cannot be read
+     */
+    public void refresh() {
+        lockRead();
+        unlockRead();
+    }
+
+    /**
+     * Builds the index and the byte view now rather than on the first query, so a file can be warmed
+     * up in the background at startup. Queries on the file wait for this to finish, other files do not.
+     *
+     * @return the number of live records and bytes loaded, and the time it took
+     * @throws RuntimeException if the file cannot be read
+     */
+    public CsvLoadStats preload() {
+        long started = System.nanoTime();
+        lock.lockWrite();
+        try {
+            ensureIndex();
+            long bytes = view().limit();
+            return new CsvLoadStats(filePath, idOffsets.size(), bytes, System.nanoTime() - started);
+        } catch (IOException e) {
+            throw new RuntimeException("Error reading CSV: " + e.getMessage());
+        } finally {
+            lock.unlockWrite();
+        }
+    }
+
+    /**
+     * Writes a binary snapshot of the indexes next to the file, so the next start loads them from the
+     * snapshot instead of scanning every row. The snapshot is ignored once the file no longer matches
+     * the length and checksum it was taken from.
+     *
+     * @throws RuntimeException if the file cannot be read or the snapshot cannot be written
+     */
+    public void checkpoint() {
+        lock.lockWrite();
+        try {
+            ensureIndex();
+            CsvSnapshot.write(CsvSnapshot.pathFor(filePath), view(), idOffsets, columnIndexes.values(), deadRecords);
+        } catch (IOException e) {
+            throw new RuntimeException("Error writing CSV snapshot: " + e.getMessage());
+        } finally {
+            lock.unlockWrite();
+        }
+    }
+
+    /**
+     * Registers a secondary index on a column. The index is filled in the same pass that
+     * builds the id index and is kept up to date on every append, update and delete.
+     *
+     * @param columnName the column to index
+     * @throws IllegalArgumentException if the column is not in the CSV header
+     */
+    public void addIndex(String columnName) {
+        lock.lockWrite();
+        try {
+            if (columnIndexes.containsKey(columnName)) return;
+
+            String headerLine;
+            try {
+                headerLine = readFileHeader();
+            } catch (IOException e) {
+                throw new RuntimeException("Error reading CSV: " + e.getMessage());
+            }
+
+            int position = findColumnIndex(headerLine != null ? headerLine : header, columnName);
+            columnIndexes.put(columnName, new ColumnIndex(columnName, position));
+
+            // The new index is populated by the next rebuild
+            indexed = false;
+        } finally {
+            lock.unlockWrite();
+        }
+    }
+
+    /**
+     * Registers a secondary index on a key column and a timestamp column, keeping the rows of each key
+     * sorted by their timestamp. Queries with an equality on the key column and a range on the timestamp
+     * column read only the rows of the key within the range. Like column indexes, it is filled by the
+     * next rebuild and kept up to date on every write.
+     *
+     * @param columnName the key column to index
+     * @param timeColumnName the timestamp column to sort each key's rows by
+     * @throws IllegalArgumentException if either column is not in the CSV header
+     */
+    public void addCompositeIndex(String columnName, String timeColumnName) {
+        lock.lockWrite();
+        try {
+            for (CompositeIndex<Long> compositeIndex : compositeIndexes) {
+                if (compositeIndex.getColumnName().equals(columnName)
+                    && compositeIndex.getTimeColumnName().equals(timeColumnName)) return;
+            }
+
+            String headerLine;
+            try {
+                headerLine = readFileHeader();
+            } catch (IOException e) {
+                throw new RuntimeException("Error reading CSV: " + e.getMessage());
+            }
+
+            String resolvedHeader = headerLine != null ? headerLine : header;
+            compositeIndexes.add(new CompositeIndex<>(
+                columnName,
+                findColumnIndex(resolvedHeader, columnName),
+                timeColumnName,
+                findColumnIndex(resolvedHeader, timeColumnName)
+            ));
+
+            // The new index is populated by the next rebuild
+            indexed = false;
+        } finally {
+            lock.unlockWrite();
+        }
+    }
+
     /**
      * Creates the CSV file if it does not exist and writes the header row.
      */
     public void createFileIfNotExists() {
         File file = new File(filePath);
         file.getParentFile().mkdirs();
-        
-        if (!file.exists()) {
-            try (PrintWriter writer = new PrintWriter(new FileWriter(file))) {
-                writer.println(header);
-            } catch (IOException e) {
-                System.err.println("Error creating CSV file: " + e.getMessage());
+
+        lock.lockWrite();
+        try {
+            if (!file.exists()) {
+                try (PrintWriter writer = new PrintWriter(new FileWriter(file, CHARSET))) {
+                    writer.println(header);
+                } catch (IOException e) {
+                    System.err.println("Error creating CSV file: " + e.getMessage());
+                }
             }
+        } finally {
+            lock.unlockWrite();
         }
     }
 
     /**
      * Reads the last line from the CSV file, excluding the header.
-     * 
+     * In append-only mode this is the most recently created live record, however recently older ones were updated.
+     *
      * @return the last data line in the CSV file
      */
     public String getLastLine() {
-        String lastLine = null;
-        
-        try (BufferedReader reader = new BufferedReader(new FileReader(filePath))) {
-            String line;
-            // Skip the header line
-            reader.readLine();
-            
-            // Read through all lines, keeping track of the last one
-            while ((line = reader.readLine()) != null) {
-                lastLine = line;
+        lockRead();
+        try {
+            try {
+                if (appendOnly) {
+                    ensureIndex();
+                    long lastOffset = -1;
+                    for (long offset : idOffsets.values()) {
+                        lastOffset = offset;
+                    }
+                    return lastOffset < 0 ? null : readRowAt(lastOffset);
+                }
+
+                // Read backwards from the end of the file, so only the last row is looked at
+                ByteBuffer bytes = view();
+                int headerEnd = CsvBytes.indexOf(bytes, 0, bytes.limit(), (byte) '\n');
+                if (headerEnd < 0) return null;
+
+                int end = bytes.limit();
+                while (end > headerEnd + 1) {
+                    int contentEnd = bytes.get(end - 1) == '\n' ? end - 1 : end;
+                    int start = CsvBytes.lastIndexOf(bytes, headerEnd + 1, contentEnd, (byte) '\n') + 1;
+                    if (start == 0) start = headerEnd + 1;
+
+                    int rowEnd = CsvBytes.trimCarriageReturn(bytes, start, contentEnd);
+                    if (rowEnd > start) return CsvBytes.decode(bytes, start, rowEnd);
+                    end = start; // Skip a blank line
+                }
+                return null;
+            } catch (IOException e) {
+                throw new RuntimeException("Error reading last line from CSV: " + e.getMessage());
             }
-        } catch (IOException e) {
-            throw new RuntimeException("Error reading last line from CSV: " + e.getMessage());
+        } finally {
+            unlockRead();
         }
-        
-        return lastLine;
     }
 
     /**
      * Reads a line from the CSV file matching the given search ID.
-     * 
+     * The line is located through the id offset index, so only that record is read from disk.
+     *
      * @param searchId the ID to search for in the first column
      * @return the line that matches the search ID, or null if not found
      */
     public String readLine(String searchId) {
-        try (BufferedReader reader = new BufferedReader(new FileReader(filePath))) {
-            String line;
-            boolean firstLine = true;
-            
-            while ((line = reader.readLine()) != null) {
-                if (firstLine) {
-                    firstLine = false;
-                    continue;
-                }
-                
-                if (line.startsWith(searchId + ",")) {
-                    return line;
+        lockRead();
+        try {
+            String line = readIndexedLine(searchId);
+            if (line != null || !idOffsets.containsKey(searchId)) return line;
+        } catch (IOException e) {
+            System.err.println("Error reading CSV: " + e.getMessage());
+            return null;
+        } finally {
+            unlockRead();
+        }
+
+        // The file was rewritten behind our back, rebuild once and retry
+        lock.lockWrite();
+        try {
+            rebuildIndex();
+            return readIndexedLine(searchId);
+        } catch (IOException e) {
+            System.err.println("Error reading CSV: " + e.getMessage());
+            return null;
+        } finally {
+            lock.unlockWrite();
+        }
+    }
+
+    /**
+     * Reads the lines of several ids, taking the read lock once for the whole batch instead of once per id.
+     * The ids are looked up in the id index and their lines read in file order, in a single forward pass.
+     *
+     * @param searchIds the ids to search for
+     * @return the lines keyed by id, leaving out ids that are not in the file
+     */
+    public Map<String, String> readLines(Collection<String> searchIds) {
+        Map<String, String> lines = new HashMap<>();
+        List<String> stale = new ArrayList<>();
+        lockRead();
+        try {
+            List<String> indexed = new ArrayList<>(searchIds.size());
+            for (String id : searchIds) {
+                if (idOffsets.containsKey(id)) indexed.add(id);
+            }
+            indexed.sort(Comparator.comparingLong(idOffsets::get));
+
+            for (String id : indexed) {
+                String line = readIndexedLine(id);
+                if (line != null) {
+                    lines.put(id, line);
+                } else if (idOffsets.containsKey(id)) {
+                    stale.add(id);
                 }
             }
         } catch (IOException e) {
             System.err.println("Error reading CSV: " + e.getMessage());
+            return lines;
+        } finally {
+            unlockRead();
+        }
+        if (stale.isEmpty()) return lines;
+
+        // The file was rewritten behind our back, rebuild once and retry
+        lock.lockWrite();
+        try {
+            rebuildIndex();
+            for (String id : stale) {
+                String line = readIndexedLine(id);
+                if (line != null) lines.put(id, line);
+            }
+        } catch (IOException e) {
+            System.err.println("Error reading CSV: " + e.getMessage());
+        } finally {
+            lock.unlockWrite();
         }
-        return null;
+        return lines;
     }
 
     /**
      * Appends a new line to the CSV file, ensuring proper newline formatting.
-     * 
+     *
      * @param line the line to append
      */
     public void appendLine(String line) {
+        appendLines(Collections.singletonList(line));
+    }
+
+    /**
+     * Appends a batch of lines to the CSV file with a single open and a single write,
+     * ensuring proper newline formatting.
+     *
+     * @param lines the lines to append, in order
+     */
+    public void appendLines(List<String> lines) {
+        lock.lockWrite();
         try {
-            // Read last character to check if file ends with newline
-            boolean needsNewline = false;
-            File file = new File(filePath);
-            
-            if (file.length() > 0) {
-                try (RandomAccessFile raf = new RandomAccessFile(file, "r")) {
-                    if (file.length() > 0) {
-                        raf.seek(file.length() - 1);
-                        int lastChar = raf.read();
-                        needsNewline = lastChar != '\n';
+            if (lines.isEmpty()) return;
+
+            try (RandomAccessFile raf = new RandomAccessFile(filePath, "rw")) {
+                long length = raf.length();
+                // Appends from another process must be indexed from the file first, so leave them to ensureIndex
+                boolean indexCurrent = indexed && length == indexedLength && lock.readStamp().equals(seenStamp);
+                ByteArrayOutputStream out = new ByteArrayOutputStream();
+                byte[] separator = System.lineSeparator().getBytes(CHARSET);
+
+                // If file is empty, write header
+                if (length == 0) {
+                    out.write(header.getBytes(CHARSET));
+                    out.write(separator);
+                } else {
+                    // Add newline if the file does not already end with one
+                    raf.seek(length - 1);
+                    if (raf.read() != '\n') {
+                        out.write(separator);
                     }
                 }
-            }
 
-            // Open file in append mode
-            try (FileWriter fw = new FileWriter(filePath, true)) {
-                // If file is empty, write header
-                if (file.length() == 0) {
-                    fw.write(header + System.lineSeparator());
+                long[] offsets = new long[lines.size()];
+                for (int i = 0; i < lines.size(); i++) {
+                    offsets[i] = length + out.size();
+                    out.write(lines.get(i).getBytes(CHARSET));
+                    out.write(separator);
                 }
-                // Add newline if needed
-                else if (needsNewline) {
-                    fw.write(System.lineSeparator());
+                raf.seek(length);
+                raf.write(out.toByteArray());
+                CsvFileLock.Stamp stamp = lock.bumpStamp(false);
+
+                // Keep the index in step with the new records instead of rebuilding it
+                if (indexCurrent) {
+                    for (int i = 0; i < lines.size(); i++) {
+                        Long superseded = indexRecord(lines.get(i), offsets[i]);
+                        if (superseded != null) unindexColumns(readLineAt(raf, superseded), superseded);
+                    }
+                    indexedLength = raf.length();
+                    seenStamp = stamp;
                 }
-                
-                // Write the new line with a line separator
-                fw.write(line + System.lineSeparator());
+            } catch (IOException e) {
+                throw new RuntimeException("Error appending to CSV: " + e.getMessage());
+            }
+
+            if (appendOnly) scheduleCompactionIfNeeded();
+        } finally {
+            lock.unlockWrite();
+        }
+    }
+
+    /**
+     * Appends a line unless a live record with the same ID exists. The check and the append
+     * happen under one write lock, so two concurrent callers cannot both add the same ID.
+     *
+     * @param id the ID of the record, which must be the first column of the line
+     * @param line the line to append
+     * @return true if the line was appended, false if the ID already exists
+     */
+    public boolean appendLineIfAbsent(String id, String line) {
+        return appendLinesIfAbsent(Collections.singletonList(id), Collections.singletonList(line)) == null;
+    }
+
+    /**
+     * Appends a batch of lines unless any of their IDs already exists or repeats within the batch,
+     * in which case nothing is written. The check and the append happen under one write lock.
+     *
+     * @param ids the IDs of the records, in the same order as the lines
+     * @param lines the lines to append, in order
+     * @return null if the lines were appended, otherwise the first ID that already exists or repeats
+     */
+    public String appendLinesIfAbsent(List<String> ids, List<String> lines) {
+        lock.lockWrite();
+        try {
+            ensureIndex();
+            Set<String> batchIds = new HashSet<>();
+            for (String id : ids) {
+                if (!batchIds.add(id) || idOffsets.containsKey(id)) return id;
             }
+
+            appendLines(lines);
+            return null;
         } catch (IOException e) {
             throw new RuntimeException("Error appending to CSV: " + e.getMessage());
+        } finally {
+            lock.unlockWrite();
         }
     }
 
     /**
-     * Reads all lines from the CSV file, excluding the header, and returns them as a list.
-     * 
-     * @return a list of all data lines in the CSV file
+     * Replaces the line with the given ID by a function of its current content, or appends the line the
+     * function returns if there is no such line yet. The read and the write happen under one write lock,
+     * which also excludes other processes, so concurrent callers see each other's results in turn.
+     *
+     * @param id the ID of the record, which must be the first column of the line the function returns
+     * @param update the function from the current line, or null if there is none, to the new line
+     * @return the line that was written
      */
-    public List<String> readAllLines() {
-        List<String> lines = new ArrayList<>();
-        boolean isFirstLine = true;  // Flag to track header line
-        
-        try (BufferedReader reader = new BufferedReader(new FileReader(filePath))) {
-            String line;
-            while ((line = reader.readLine()) != null) {
-                if (isFirstLine) {
-                    isFirstLine = false;
-                    continue;  // Skip the header line
+    public String computeLine(String id, UnaryOperator<String> update) {
+        lock.lockWrite();
+        try {
+            String current;
+            try {
+                ensureIndex();
+                current = readIndexedLine(id);
+            } catch (IOException e) {
+                throw new RuntimeException("Error reading CSV: " + e.getMessage());
+            }
+
+            String line = update.apply(current);
+            if (current == null) {
+                appendLine(line);
+            } else {
+                updateLine(id, line);
+            }
+            return line;
+        } finally {
+            lock.unlockWrite();
+        }
+    }
+
+    /**
+     * Writes a line unless a row of another record matches one of the given queries. The line is appended
+     * if there is no record with its ID yet, and replaces that record otherwise. The check and the write
+     * happen under one write lock, which also excludes other processes, so rows another process wrote just
+     * before are checked too, and no other writer can add a matching row between the check and the write.
+     *
+     * @param id the ID of the record, which must be the first column of the line
+     * @param line the line to write
+     * @param conflicts the queries no row of another record may match
+     * @return null if the line was written, otherwise the first row that matched a query
+     * @throws IllegalArgumentException if a column of a query is not in the CSV header
+     */
+    public String writeLineUnlessMatched(String id, String line, List<RowQuery> conflicts) {
+        lock.lockWrite();
+        try {
+            try {
+                ensureIndex();
+            } catch (IOException e) {
+                throw new RuntimeException("Error reading CSV: " + e.getMessage());
+            }
+
+            for (RowQuery conflict : conflicts) {
+                try (CsvRowCursor cursor = openCursor(conflict)) {
+                    while (cursor.hasNext()) {
+                        String row = cursor.next();
+                        if (!id.equals(ColumnIndex.valueAt(row, 0))) return row;
+                    }
                 }
-                lines.add(line);
             }
-        } catch (IOException e) {
-            throw new RuntimeException("Error reading CSV: " + e.getMessage());
+
+            if (idOffsets.containsKey(id)) {
+                updateLine(id, line);
+            } else {
+                appendLine(line);
+            }
+            return null;
+        } finally {
+            lock.unlockWrite();
         }
-        return lines;
     }
 
     /**
-     * Writes a list of lines to the CSV file, overwriting any existing content.
-     * 
-     * @param lines the list of lines to write to the CSV file
+     * Checks whether a live record with the given ID exists, using the id offset index only.
+     *
+     * @param id the ID to look up
+     * @return true if the file holds a live record with the ID
      */
-    public void writeAllLines(List<String> lines) {
-        try (PrintWriter writer = new PrintWriter(new FileWriter(filePath))) {
-            for (String line : lines) {
-                writer.println(line);
+    public boolean containsId(String id) {
+        lockRead();
+        try {
+            try {
+                ensureIndex();
+            } catch (IOException e) {
+                throw new RuntimeException("Error reading CSV: " + e.getMessage());
             }
-        } catch (IOException e) {
-            throw new RuntimeException("Error writing to CSV: " + e.getMessage());
+            return idOffsets.containsKey(id);
+        } finally {
+            unlockRead();
         }
     }
 
     /**
-     * Writes a single line to the CSV file.
-     * 
-     * @param line the line to write to the CSV file
+     * Reads all lines from the CSV file, excluding the header, and returns them as a list.
+     * In append-only mode only the current version of each live record is returned, in the order
+     * the records were first written.
+     *
+     * @return a list of all data lines in the CSV file
      */
-    public void writeLine(String line) {
-        try (FileWriter fw = new FileWriter(filePath, true);
-             BufferedWriter bw = new BufferedWriter(fw);
-             PrintWriter out = new PrintWriter(bw)) {
-            
-            out.println(line);
-            
-        } catch (IOException e) {
-            System.err.println("Error writing to CSV: " + e.getMessage());
+    public List<String> readAllLines() {
+        lockRead();
+        try {
+            List<String> lines = new ArrayList<>();
+            try {
+                forEachRecord((bytes, start, end) -> lines.add(CsvBytes.decode(bytes, start, end)));
+            } catch (IOException e) {
+                throw new RuntimeException("Error reading CSV: " + e.getMessage());
+            }
+            return lines;
+        } finally {
+            unlockRead();
         }
     }
 
     /**
-     * Finds and returns all lines in the CSV file where the specified column matches the given search value.
-     * 
+     * Opens a cursor over every record row, decoding rows lazily as they are consumed.
+     * In append-only mode only the current version of each live record is returned, in the order
+     * the records were first written.
+     *
+     * @return a cursor over the rows, which the caller should close
+     */
+    public CsvRowCursor openCursor() {
+        lockRead();
+        try {
+            try {
+                long[] live = liveOffsets();
+                return new CsvRowCursor(view(), live, null);
+            } catch (IOException e) {
+                throw new RuntimeException("Error reading CSV: " + e.getMessage());
+            }
+        } finally {
+            unlockRead();
+        }
+    }
+
+    /**
+     * Opens a cursor over the record rows where the specified column matches the given value, decoding
+     * rows lazily as they are consumed. Indexed columns only visit the rows listed in the index.
+     *
      * @param columnName the column to search by
      * @param searchValue the value to search for in the specified column
-     * @return a list of lines where the column value matches the search value
+     * @return a cursor over the matching rows, which the caller should close
      * @throws IllegalArgumentException if the column name or search value is invalid
      */
-    public List<String> findLinesByColumnValue(String columnName, String searchValue) {
-        if (columnName == null || columnName.trim().isEmpty()) {
-            throw new IllegalArgumentException("Column name cannot be null or empty");
-        }
-        if (searchValue == null) {
-            throw new IllegalArgumentException("Search value cannot be null");
-        }
-    
-        List<String> matchingLines = new ArrayList<>();
-        boolean headerProcessed = false;
-        int columnIndex = -1;
-        
-        try (BufferedReader reader = new BufferedReader(new FileReader(filePath))) {
-            String line;
-            while ((line = reader.readLine()) != null) {
-                // Process header on first line
-                if (!headerProcessed) {
-                    String[] headers = line.split(",");
-                    for (int i = 0; i < headers.length; i++) {
-                        if (headers[i].trim().equals(columnName)) {
-                            columnIndex = i;
-                            break;
-                        }
-                    }
-                    
-                    if (columnIndex == -1) {
-                        throw new IllegalArgumentException("Column name '" + columnName + "' not found in CSV headers");
-                    }
-                    
-                    headerProcessed = true;
-                    continue;
+    public CsvRowCursor openCursor(String columnName, String searchValue) {
+        return openCursor(new RowQuery().equalTo(columnName, searchValue));
+    }
+
+    /**
+     * Opens a cursor over the record rows that match every condition of a query. The conditions are
+     * checked on the raw bytes of each row, so only matching rows are decoded. If a composite index
+     * covers the query, only the rows in its time range are visited, in time order. Otherwise, if the
+     * query has an equality on an indexed column, only the rows the index lists for its values are visited.
+     * Apart from the time order of a composite index, rows of an append-only file come in the order their
+     * records were first written, as they do in a file that is rewritten in place.
+     *
+     * @param query the conditions rows must match
+     * @return a cursor over the matching rows, which the caller should close
+     * @throws IllegalArgumentException if a column of the query is not in the CSV header
+     */
+    public CsvRowCursor openCursor(RowQuery query) {
+        lockRead();
+        try {
+            try {
+                long[] live = liveOffsets();
+                String headerLine = readFileHeader();
+                if (headerLine == null) {
+                    return new CsvRowCursor(view(), new long[0], null);
                 }
-    
-                // Process data lines
-                try {
-                    String[] values = line.split(",");
-                    if (values.length > columnIndex && values[columnIndex].trim().equals(searchValue)) {
-                        matchingLines.add(line);
-                    }
-                } catch (Exception e) {
-                    System.err.println("Warning: Failed to process line: " + line);
+                RowFilter filter = query.bind(headerLine);
+
+                for (CompositeIndex<Long> compositeIndex : compositeIndexes) {
+                    ensureIndex();
+                    List<Long> candidates = compositeIndex.probe(query);
+                    if (candidates == null) continue;
+
+                    long[] offsets = new long[candidates.size()];
+                    for (int i = 0; i < offsets.length; i++) offsets[i] = candidates.get(i);
+                    return new CsvRowCursor(view(), retainLive(offsets), filter);
+                }
+
+                for (RowQuery.Condition condition : query.getConditions()) {
+                    ColumnIndex columnIndex = columnIndexes.get(condition.getColumnName());
+                    if (columnIndex == null || condition.getValues() == null) continue;
+
+                    ensureIndex();
+                    return new CsvRowCursor(view(), liveOffsets(indexedOffsets(columnIndex, condition.getValues())), filter);
                 }
+                return new CsvRowCursor(view(), live, filter);
+            } catch (IOException e) {
+                throw new RuntimeException("Error reading CSV file: " + e.getMessage(), e);
             }
-        } catch (IOException e) {
-            throw new RuntimeException("Error reading CSV file: " + e.getMessage(), e);
+        } finally {
+            unlockRead();
         }
-        
-        return matchingLines;
     }
 
     /**
-     * Finds and returns the first line in the CSV file where the specified column matches the given search value.
-     * 
-     * @param columnName the column to search by
-     * @param searchValue the value to search for in the specified column
-     * @return the first matching line, or null if not found
-     * @throws IllegalArgumentException if the column name is invalid
+     * Returns the offsets a column index lists for any of a set of values, in file order.
+     *
+     * @param columnIndex the column index
+     * @param values the column values
+     * @return the sorted offsets of the rows holding any of the values
      */
-    public String findLineByColumnValue(String columnName, String searchValue) {
-        try (BufferedReader reader = new BufferedReader(new FileReader(filePath))) {
-            // Read header line first
-            String headerLine = reader.readLine();
-            if (headerLine == null) {
-                return null;
-            }
-    
-            // Split header into columns and find the index of the target column
-            String[] headers = headerLine.split(",");
-            int columnIndex = -1;
-            for (int i = 0; i < headers.length; i++) {
-                if (headers[i].trim().equals(columnName)) {
-                    columnIndex = i;
-                    break;
-                }
-            }
-    
-            // If column name not found in headers
-            if (columnIndex == -1) {
-                throw new IllegalArgumentException("Column name '" + columnName + "' not found in CSV headers");
-            }
-    
-            // Read through file looking for matching value in the correct column
-            String line;
-            while ((line = reader.readLine()) != null) {
-                String[] values = line.split(",");
-                // Check if the line has enough columns and the value matches
-                if (values.length > columnIndex && values[columnIndex].trim().equals(searchValue)) {
-                    return line;
+    private static long[] indexedOffsets(ColumnIndex columnIndex, List<String> values) {
+        if (values.size() == 1) return columnIndex.offsets(values.get(0));
+
+        long[][] runs = new long[values.size()][];
+        int total = 0;
+        for (int i = 0; i < runs.length; i++) {
+            runs[i] = columnIndex.offsets(values.get(i));
+            total += runs[i].length;
+        }
+
+        // A row holds one value per column, so the runs never overlap and only need merging
+        long[] offsets = new long[total];
+        int at = 0;
+        for (long[] run : runs) {
+            System.arraycopy(run, 0, offsets, at, run.length);
+            at += run.length;
+        }
+        Arrays.sort(offsets);
+        return offsets;
+    }
+
+    /**
+     * Writes a list of lines to the CSV file, overwriting any existing content.
+     * The first line is treated as the header, and the id offset index is rebuilt from the written lines.
+     * The lines are written to a temporary file first and moved over the CSV file, so an interrupted
+     * write never leaves a truncated file behind.
+     *
+     * @param lines the list of lines to write to the CSV file
+     */
+    public void writeAllLines(List<String> lines) {
+        lock.lockWrite();
+        try {
+            byte[] separator = System.lineSeparator().getBytes(CHARSET);
+            Path target = Paths.get(filePath);
+            Path temp = Paths.get(filePath + ".tmp");
+            clearIdIndex();
+            clearColumnIndexes();
+            deadRecords = 0;
+            indexed = false;
+            view = null;
+
+            try {
+                long position = 0;
+                try (OutputStream out = new BufferedOutputStream(Files.newOutputStream(temp))) {
+                    for (int i = 0; i < lines.size(); i++) {
+                        String line = lines.get(i);
+                        byte[] bytes = line.getBytes(CHARSET);
+                        if (i > 0) indexRecord(line, position);
+
+                        out.write(bytes);
+                        out.write(separator);
+                        position += bytes.length + separator.length;
+                    }
                 }
+                replaceFile(temp, target);
+                CsvFileLock.Stamp previous = lock.readStamp();
+                CsvFileLock.Stamp stamp = lock.bumpStamp(true);
+                indexed = true;
+                indexedLength = position;
+
+                // Records changed by another process since we last looked are gone now, but may still be cached
+                boolean missedChanges = seenStamp != null && !previous.equals(seenStamp);
+                seenStamp = stamp;
+                if (missedChanges) notifyChange(null);
+            } catch (IOException e) {
+                clearIdIndex();
+                throw new RuntimeException("Error writing to CSV: " + e.getMessage());
             }
+        } finally {
+            lock.unlockWrite();
+        }
+    }
+
+    /**
+     * Returns the version stamp of the file as it is now.
+     *
+     * @return the stamp
+     * @throws RuntimeException if the stamp cannot be read
+     */
+    CsvFileLock.Stamp readStamp() {
+        lock.lockRead();
+        try {
+            return lock.readStamp();
         } catch (IOException e) {
-            throw new RuntimeException("Error searching CSV: " + e.getMessage());
+            throw new RuntimeException("Error reading CSV: " + e.getMessage());
+        } finally {
+            lock.unlockRead();
         }
-        return null;
     }
 
     /**
-     * Deletes the line with the given ID from the CSV file.
-     * 
-     * @param id the ID of the line to delete
-     * @throws RuntimeException if no record with the given ID is found
+     * Writes a list of lines to the CSV file as {@link #writeAllLines(List)} does, but only if nothing has
+     * written to the file since it had the expected version stamp. The check and the write happen under
+     * the file's write lock, so no other process can write in between.
+     *
+     * @param lines the list of lines to write to the CSV file, starting with the header
+     * @param expected the version stamp the file must still have
+     * @return the new version stamp, or null if the file was changed and left as it is
+     * @throws RuntimeException if the file cannot be written
      */
-    public void deleteLine(String id) {
-        List<String> allLines = new ArrayList<>();
-        boolean found = false;
-        
-        try (BufferedReader reader = new BufferedReader(new FileReader(filePath))) {
-            String line;
-            // Add header first
-            allLines.add(reader.readLine());
-            
-            // Read remaining lines
-            while ((line = reader.readLine()) != null) {
-                if (line.startsWith(id + ",")) {
-                    found = true;
-                    continue; // Skip this line (delete)
-                }
-                allLines.add(line);
-            }
-            
-            if (!found) {
-                throw new RuntimeException("No record found with ID: " + id);
-            }
-            
-            // Write back all lines except the deleted one
-            writeAllLines(allLines);
-            
+    CsvFileLock.Stamp writeAllLinesIfUnchanged(List<String> lines, CsvFileLock.Stamp expected) {
+        lock.lockWrite();
+        try {
+            if (!lock.readStamp().equals(expected)) return null;
+            writeAllLines(lines);
+            return lock.readStamp();
         } catch (IOException e) {
-            throw new RuntimeException("Error deleting from CSV: " + e.getMessage());
+            throw new RuntimeException("Error writing to CSV: " + e.getMessage());
+        } finally {
+            lock.unlockWrite();
         }
     }
 
+    /**
+     * Writes a single line to the CSV file.
+     *
+     * @param line the line to write to the CSV file
+     */
+    public void writeLine(String line) {
+        lock.lockWrite();
+        try {
+            try (FileWriter fw = new FileWriter(filePath, CHARSET, true);
+                 BufferedWriter bw = new BufferedWriter(fw);
+                 PrintWriter out = new PrintWriter(bw)) {
+
+                out.println(line);
+
+            } catch (IOException e) {
+                System.err.println("Error writing to CSV: " + e.getMessage());
+            }
+
+            // The line is not indexed here, the moved stamp makes the next read pick it up from the tail
+            try {
+                lock.bumpStamp(false);
+            } catch (IOException e) {
+                System.err.println("Error writing to CSV: " + e.getMessage());
+            }
+        } finally {
+            lock.unlockWrite();
+        }
+    }
+
+    /**
+     * Replaces the line with the given ID. In append-only mode the new version is appended to the
+     * end of the file, otherwise the file is rewritten with the line replaced.
+     *
+     * @param id the ID of the line to replace
+     * @param line the new line
+     * @return true if a line with the given ID was found and replaced, false otherwise
+     */
+    public boolean updateLine(String id, String line) {
+        lock.lockWrite();
+        try {
+            if (appendOnly) {
+                try {
+                    ensureIndex();
+                } catch (IOException e) {
+                    throw new RuntimeException("Error updating CSV: " + e.getMessage());
+                }
+                if (!idOffsets.containsKey(id)) return false;
+
+                appendLine(line);
+                return true;
+            }
+
+            List<String> lines = readAllLines();
+            boolean found = false;
+
+            List<String> updatedLines = new ArrayList<>();
+            updatedLines.add(header);  // Add header
+
+            // Update the specific entity line
+            for (String existingLine : lines) {
+                if (existingLine.startsWith(header)) continue;
+
+                String existingId = ColumnIndex.valueAt(existingLine, 0);
+
+                if (existingId.equals(id)) {
+                    updatedLines.add(line);
+                    found = true;
+                } else {
+                    updatedLines.add(existingLine);
+                }
+            }
+
+            if (found) writeAllLines(updatedLines);
+            return found;
+        } finally {
+            lock.unlockWrite();
+        }
+    }
+
+    /**
+     * Finds and returns all lines in the CSV file where the specified column matches the given search value.
+     *
+     * @param columnName the column to search by
+     * @param searchValue the value to search for in the specified column
+     * @return a list of lines where the column value matches the search value
+     * @throws IllegalArgumentException if the column name or search value is invalid
+     */
+    public List<String> findLinesByColumnValue(String columnName, String searchValue) {
+        lockRead();
+        try {
+            if (columnName == null || columnName.trim().isEmpty()) {
+                throw new IllegalArgumentException("Column name cannot be null or empty");
+            }
+            if (searchValue == null) {
+                throw new IllegalArgumentException("Search value cannot be null");
+            }
+
+            List<String> matchingLines = new ArrayList<>();
+
+            try {
+                ColumnIndex columnIndex = columnIndexes.get(columnName);
+                if (columnIndex != null) {
+                    return readIndexedLines(columnIndex, searchValue, Integer.MAX_VALUE);
+                }
+
+                String headerLine = readFileHeader();
+                if (headerLine == null) {
+                    return matchingLines;
+                }
+                int position = findColumnIndex(headerLine, columnName);
+                byte[] value = searchValue.getBytes(CHARSET);
+
+                forEachRecord((bytes, start, end) -> {
+                    int fieldStart = CsvBytes.fieldStart(bytes, start, end, position);
+                    if (fieldStart >= 0 && CsvBytes.fieldEquals(bytes, fieldStart, CsvBytes.fieldEnd(bytes, fieldStart, end), value)) {
+                        matchingLines.add(CsvBytes.decode(bytes, start, end));
+                    }
+                    return true;
+                });
+            } catch (IOException e) {
+                throw new RuntimeException("Error reading CSV file: " + e.getMessage(), e);
+            }
+
+            return matchingLines;
+        } finally {
+            unlockRead();
+        }
+    }
+
+    /**
+     * Finds and returns the first line in the CSV file where the specified column matches the given search value.
+     *
+     * @param columnName the column to search by
+     * @param searchValue the value to search for in the specified column
+     * @return the first matching line, or null if not found
+     * @throws IllegalArgumentException if the column name is invalid
+     */
+    public String findLineByColumnValue(String columnName, String searchValue) {
+        lockRead();
+        try {
+            String[] match = new String[1];
+
+            try {
+                ColumnIndex columnIndex = columnIndexes.get(columnName);
+                if (columnIndex != null) {
+                    List<String> lines = readIndexedLines(columnIndex, searchValue, 1);
+                    return lines.isEmpty() ? null : lines.get(0);
+                }
+
+                // Read header line first
+                String headerLine = readFileHeader();
+                if (headerLine == null) {
+                    return null;
+                }
+                int position = findColumnIndex(headerLine, columnName);
+                byte[] value = searchValue.getBytes(CHARSET);
+
+                // Read through file looking for matching value in the correct column
+                forEachRecord((bytes, start, end) -> {
+                    int fieldStart = CsvBytes.fieldStart(bytes, start, end, position);
+                    // Check if the row has enough columns and the value matches
+                    if (fieldStart >= 0 && CsvBytes.fieldEquals(bytes, fieldStart, CsvBytes.fieldEnd(bytes, fieldStart, end), value)) {
+                        match[0] = CsvBytes.decode(bytes, start, end);
+                        return false;
+                    }
+                    return true;
+                });
+            } catch (IOException e) {
+                throw new RuntimeException("Error searching CSV: " + e.getMessage());
+            }
+            return match[0];
+        } finally {
+            unlockRead();
+        }
+    }
+
+    /**
+     * Deletes the line with the given ID from the CSV file.
+     * In append-only mode a tombstone for the ID is appended instead of rewriting the file.
+     *
+     * @param id the ID of the line to delete
+     * @throws RuntimeException if no record with the given ID is found
+     */
+    public void deleteLine(String id) {
+        lock.lockWrite();
+        try {
+            try {
+                // The index tells us up front whether there is anything to delete
+                ensureIndex();
+                if (!idOffsets.containsKey(id)) {
+                    throw new RuntimeException("No record found with ID: " + id);
+                }
+            } catch (IOException e) {
+                throw new RuntimeException("Error deleting from CSV: " + e.getMessage());
+            }
+
+            if (appendOnly) {
+                appendLine(id + "," + TOMBSTONE);
+                return;
+            }
+
+            List<String> allLines = new ArrayList<>();
+            boolean[] found = new boolean[1];
+            byte[] key = id.getBytes(CHARSET);
+            allLines.add(header);
+
+            try {
+                scanRows((bytes, start, end) -> {
+                    if (CsvBytes.startsWithKey(bytes, start, end, key)) {
+                        found[0] = true;
+                        return true; // Skip this line (delete)
+                    }
+                    allLines.add(CsvBytes.decode(bytes, start, end));
+                    return true;
+                });
+            } catch (IOException e) {
+                throw new RuntimeException("Error deleting from CSV: " + e.getMessage());
+            }
+
+            if (!found[0]) {
+                throw new RuntimeException("No record found with ID: " + id);
+            }
+
+            // Write back all lines except the deleted one
+            writeAllLines(allLines);
+        } finally {
+            lock.unlockWrite();
+        }
+    }
+
+    /**
+     * Rewrites an append-only file so that it only contains the current version of each live record.
+     * This runs in the background once dead records pass the compaction threshold, but may also be called directly.
+     */
+    public void compact() {
+        lock.lockWrite();
+        try {
+            compactionScheduled = false;
+            if (!appendOnly) return;
+
+            try {
+                ensureIndex();
+                if (deadRecords == 0) return;
+
+                List<String> lines = readAllLines();
+                lines.add(0, header);
+                writeAllLines(lines);
+            } catch (IOException | RuntimeException e) {
+                System.err.println("Error compacting CSV: " + e.getMessage());
+            }
+        } finally {
+            lock.unlockWrite();
+        }
+    }
+
+    /**
+     * Queues a background compaction if enough of the file is taken up by superseded records and tombstones.
+     */
+    private void scheduleCompactionIfNeeded() {
+        if (compactionScheduled || !indexed) return;
+
+        long totalRecords = deadRecords + idOffsets.size();
+        if (deadRecords < COMPACTION_MIN_DEAD_RECORDS || deadRecords < totalRecords * COMPACTION_DEAD_RATIO) return;
+
+        compactionScheduled = true;
+        COMPACTOR.execute(this::compact);
+    }
+
+    /**
+     * Acquires the read lock with the index and the byte view brought up to date. If they are stale,
+     * the write lock is taken to refresh them and the read lock is taken again afterwards, so other
+     * readers never see them half built. While the read lock is held, neither is refreshed again.
+     *
+     * @throws RuntimeException if the file cannot be read
+     */
+    private void lockRead() {
+        while (true) {
+            lock.lockRead();
+            boolean ready = false;
+            try {
+                if (lock.isWriteLockedByCurrentThread()) {
+                    ensureIndex();
+                    view();
+                    ready = true;
+                } else {
+                    // A nested read cannot upgrade without deadlocking, so it keeps the state it already has
+                    ready = lock.getReadHoldCount() > 1 || isReadable();
+                }
+            } catch (IOException e) {
+                throw new RuntimeException("Error reading CSV: " + e.getMessage());
+            } finally {
+                if (!ready) lock.unlockRead();
+            }
+            if (ready) return;
+
+            // The lock on the file cannot be downgraded, so refresh under the write lock and check again
+            lock.lockWrite();
+            try {
+                ensureIndex();
+                view();
+            } catch (IOException e) {
+                throw new RuntimeException("Error reading CSV: " + e.getMessage());
+            } finally {
+                lock.unlockWrite();
+            }
+        }
+    }
+
+    /**
+     * Releases the read lock taken by {@link #lockRead()}.
+     */
+    private void unlockRead() {
+        lock.unlockRead();
+    }
+
+    /**
+     * Checks whether the index and the byte view match the file as it is on disk.
+     *
+     * @return true if both are built for the current length and version stamp of the file
+     * @throws IOException if the version stamp cannot be read
+     */
+    private boolean isReadable() throws IOException {
+        long length = new File(filePath).length();
+        if (!indexed || indexedLength != length || view == null || viewLength != length) return false;
+
+        CsvFileLock.Stamp stamp = lock.readStamp();
+        return stamp.equals(seenStamp) && stamp.equals(viewStamp);
+    }
+
+    /**
+     * Builds the id offset index if it has not been built yet, or brings it up to date if the file has
+     * changed since it was last indexed, whether through another process or an edit outside the application.
+     * Rows appended since then are indexed from the new tail of the file only; anything else is a full rebuild.
+     * Readers rely on {@link #lockRead()} having done this, so the check only runs under the write lock.
+     *
+     * @throws IOException if the file cannot be read
+     */
+    private void ensureIndex() throws IOException {
+        if (indexed && !lock.isWriteLockedByCurrentThread()) return;
+
+        CsvFileLock.Stamp stamp = lock.readStamp();
+        long length = new File(filePath).length();
+        if (indexed && length == indexedLength && stamp.equals(seenStamp)) return;
+
+        if (indexed && seenStamp != null && !stamp.equals(seenStamp) && seenStamp.sameGeneration(stamp)
+                && indexedLength > 0 && length > indexedLength) {
+            Set<String> changedIds = indexTail();
+            seenStamp = stamp;
+            notifyChange(changedIds);
+            return;
+        }
+
+        boolean changedElsewhere = seenStamp != null && !stamp.equals(seenStamp);
+        rebuildIndex();
+        if (changedElsewhere) notifyChange(null);
+    }
+
+    /**
+     * Scans the whole file once and records the byte offset of the current version of every record by its id.
+     *
+     * @throws IOException if the file cannot be read
+     */
+    private void rebuildIndex() throws IOException {
+        view = null; // The file may have been rewritten at the same length
+        clearIdIndex();
+        clearColumnIndexes();
+        deadRecords = 0;
+        indexed = false;
+
+        CsvFileLock.Stamp stamp = lock.readStamp();
+        ByteBuffer bytes = view();
+        boolean fromSnapshot = loadSnapshot(bytes);
+        if (fromSnapshot) rankRecords();
+        if (fromSnapshot && !compositeIndexes.isEmpty()) {
+            // Snapshots hold the column indexes only, so read the composite keys of the live rows
+            for (long offset : idOffsets.values()) {
+                indexComposites(CsvBytes.decode(bytes, (int) offset, CsvBytes.lineEnd(bytes, (int) offset)), offset);
+            }
+        } else if (!fromSnapshot) {
+            scanRows((rowBytes, start, end) -> {
+                indexRow(rowBytes, start, end);
+                return true;
+            });
+        }
+        long length = bytes.limit();
+
+        // Superseded versions were indexed while scanning, drop them now that the live set is known
+        if (!fromSnapshot && appendOnly && deadRecords > 0 && (!columnIndexes.isEmpty() || !compositeIndexes.isEmpty())) {
+            Set<Long> liveOffsets = new HashSet<>(idOffsets.values());
+            for (ColumnIndex columnIndex : columnIndexes.values()) {
+                columnIndex.retainAll(liveOffsets);
+            }
+            for (CompositeIndex<Long> compositeIndex : compositeIndexes) {
+                compositeIndex.retainAll(liveOffsets);
+            }
+        }
+
+        indexed = true;
+        indexedLength = length;
+        seenStamp = stamp;
+        if (appendOnly) scheduleCompactionIfNeeded();
+    }
+
+    /**
+     * Fills the indexes from the snapshot of the file, if there is one that was taken from the file as it is now.
+     *
+     * @param bytes the byte view of the whole file
+     * @return true if the indexes were loaded, false if the file has to be scanned instead
+     */
+    private boolean loadSnapshot(ByteBuffer bytes) {
+        try {
+            long dead = CsvSnapshot.read(CsvSnapshot.pathFor(filePath), bytes, idOffsets, columnIndexes);
+            if (dead >= 0) {
+                deadRecords = dead;
+                return true;
+            }
+        } catch (IOException | RuntimeException e) {
+            System.err.println("Error reading CSV snapshot: " + e.getMessage());
+        }
+
+        // Drop whatever a mismatched or damaged snapshot filled in before it was rejected
+        clearIdIndex();
+        clearColumnIndexes();
+        return false;
+    }
+
+    /**
+     * Indexes the rows appended to the file since it was last indexed, reading only the new tail of the file.
+     *
+     * @return the ids of the records in the appended rows
+     * @throws IOException if the file cannot be read
+     */
+    private Set<String> indexTail() throws IOException {
+        Set<String> ids = new HashSet<>();
+        ByteBuffer bytes = view();
+        List<Long> superseded = new ArrayList<>();
+
+        scanRows(bytes, (int) indexedLength, (rowBytes, start, end) -> {
+            int comma = CsvBytes.indexOf(rowBytes, start, end, (byte) ',');
+            if (comma < 0) return true;
+
+            String id = CsvBytes.decode(rowBytes, start, comma);
+            Long previous = appendOnly ? idOffsets.get(id) : null;
+            indexRow(rowBytes, start, end);
+            if (previous != null) superseded.add(previous);
+            ids.add(id);
+            return true;
+        });
+
+        for (long offset : superseded) {
+            unindexColumns(readRowAt(offset), offset);
+        }
+        indexedLength = bytes.limit();
+        if (appendOnly) scheduleCompactionIfNeeded();
+        return ids;
+    }
+
+    /**
+     * Tells every change listener which records were changed outside this manager.
+     *
+     * @param ids the ids of the changed records, or null if any record may have changed
+     */
+    private void notifyChange(Collection<String> ids) {
+        for (ChangeListener listener : changeListeners) {
+            listener.onChange(ids);
+        }
+    }
+
+    /**
+     * Records the offset of a single line in the id index and the column indexes. In append-only mode
+     * a later line supersedes an earlier one with the same id and a tombstone removes the id, otherwise
+     * the first line wins.
+     *
+     * @param line the CSV line
+     * @param offset the byte offset at which the line starts
+     * @return the offset of the version this line supersedes in append-only mode, or null if there is none
+     */
+    private Long indexRecord(String line, long offset) {
+        int comma = line.indexOf(',');
+        if (comma < 0) return null;
+
+        boolean tombstone = appendOnly && line.length() == comma + 1 + TOMBSTONE.length() && line.endsWith(TOMBSTONE);
+        Long previous = indexId(line.substring(0, comma), tombstone, offset);
+        if (!tombstone) indexColumns(line, offset);
+        return previous;
+    }
+
+    /**
+     * Records a row of the byte view in the id index and the column indexes, decoding only
+     * the id and the indexed columns.
+     *
+     * @param bytes the byte view of the file
+     * @param start the index at which the row starts, which is also its byte offset
+     * @param end the index just past the row content
+     */
+    private void indexRow(ByteBuffer bytes, int start, int end) {
+        int comma = CsvBytes.indexOf(bytes, start, end, (byte) ',');
+        if (comma < 0) return;
+
+        boolean tombstone = appendOnly && end - comma - 1 == TOMBSTONE_BYTES.length
+            && CsvBytes.fieldEquals(bytes, comma + 1, end, TOMBSTONE_BYTES);
+        indexId(CsvBytes.decode(bytes, start, comma), tombstone, start);
+        if (tombstone) return;
+
+        for (ColumnIndex columnIndex : columnIndexes.values()) {
+            columnIndex.addValue(columnIndex.valueOf(bytes, start, end), start);
+        }
+        if (!compositeIndexes.isEmpty()) indexComposites(CsvBytes.decode(bytes, start, end), start);
+    }
+
+    /**
+     * Records the offset of a record in the id index. In append-only mode a later record supersedes an
+     * earlier one with the same id and a tombstone removes the id, otherwise the first record wins.
+     *
+     * @param id the id of the record
+     * @param tombstone whether the record is a tombstone
+     * @param offset the byte offset at which the record starts
+     * @return the offset of the version this record supersedes in append-only mode, or null if there is none
+     */
+    private Long indexId(String id, boolean tombstone, long offset) {
+        if (!appendOnly) {
+            // First occurrence wins, matching a forward scan of the file
+            idOffsets.putIfAbsent(id, offset);
+            return null;
+        }
+
+        Long previous = tombstone ? idOffsets.remove(id) : idOffsets.put(id, offset);
+        // A new version keeps the rank of the one it supersedes, so only new records go to the end
+        Integer rank = previous == null ? null : creationRanks.remove(previous);
+        if (!tombstone) creationRanks.put(offset, rank != null ? rank : nextCreationRank++);
+        if (previous != null) deadRecords++;
+        if (tombstone) deadRecords++;
+        return previous;
+    }
+
+    /**
+     * Ranks the live records of an append-only file in the order of the id index, which is the order
+     * they were first written in.
+     */
+    private void rankRecords() {
+        creationRanks.clear();
+        nextCreationRank = 0;
+        if (!appendOnly) return;
+
+        for (long offset : idOffsets.values()) {
+            creationRanks.put(offset, nextCreationRank++);
+        }
+    }
+
+    /**
+     * Empties the id index and the creation ranks of its records.
+     */
+    private void clearIdIndex() {
+        idOffsets.clear();
+        creationRanks.clear();
+        nextCreationRank = 0;
+    }
+
+    /**
+     * Adds a line to every column index and composite index.
+     *
+     * @param line the CSV line
+     * @param offset the byte offset at which the line starts
+     */
+    private void indexColumns(String line, long offset) {
+        for (ColumnIndex columnIndex : columnIndexes.values()) {
+            columnIndex.add(line, offset);
+        }
+        indexComposites(line, offset);
+    }
+
+    /**
+     * Adds a line to every composite index.
+     *
+     * @param line the CSV line
+     * @param offset the byte offset at which the line starts
+     */
+    private void indexComposites(String line, long offset) {
+        for (CompositeIndex<Long> compositeIndex : compositeIndexes) {
+            compositeIndex.add(line, offset);
+        }
+    }
+
+    /**
+     * Removes a line from every column index and composite index.
+     *
+     * @param line the CSV line as it was indexed, may be null if it could not be read
+     * @param offset the byte offset at which the line starts
+     */
+    private void unindexColumns(String line, long offset) {
+        if (line == null) return;
+        for (ColumnIndex columnIndex : columnIndexes.values()) {
+            columnIndex.remove(line, offset);
+        }
+        for (CompositeIndex<Long> compositeIndex : compositeIndexes) {
+            compositeIndex.remove(line, offset);
+        }
+    }
+
+    /**
+     * Removes every entry from the column indexes and the composite indexes.
+     */
+    private void clearColumnIndexes() {
+        columnIndexes.values().forEach(ColumnIndex::clear);
+        compositeIndexes.forEach(CompositeIndex::clear);
+    }
+
+    /**
+     * Reads the rows a column index lists for a value, checking each one against the index
+     * so that a stale entry is skipped rather than returned.
+     *
+     * @param columnIndex the column index to use
+     * @param value the column value to look up
+     * @param limit the maximum number of rows to return
+     * @return the matching rows in file order
+     * @throws IOException if the file cannot be read
+     */
+    private List<String> readIndexedLines(ColumnIndex columnIndex, String value, int limit) throws IOException {
+        ensureIndex();
+        long[] offsets = liveOffsets(columnIndex.offsets(value));
+        List<String> lines = new ArrayList<>();
+        if (offsets.length == 0) return lines;
+
+        ByteBuffer bytes = view();
+        byte[] encoded = value.getBytes(CHARSET);
+        for (long offset : offsets) {
+            if (offset >= bytes.limit()) continue;
+
+            int start = (int) offset;
+            int end = CsvBytes.lineEnd(bytes, start);
+            if (!columnIndex.matches(bytes, start, end, encoded)) continue;
+
+            lines.add(CsvBytes.decode(bytes, start, end));
+            if (lines.size() >= limit) break;
+        }
+        return lines;
+    }
+
+    /**
+     * Visits every record row after the header. In append-only mode superseded versions
+     * and tombstones are skipped, so only the current version of each live record is visited,
+     * in the order the records were first written.
+     *
+     * @param visitor the visitor to call for each record
+     * @throws IOException if the file cannot be read
+     */
+    private void forEachRecord(RowVisitor visitor) throws IOException {
+        if (!appendOnly) {
+            scanRows(visitor);
+            return;
+        }
+
+        long[] live = liveOffsets();
+        ByteBuffer bytes = view();
+        for (long offset : live) {
+            if (offset >= bytes.limit()) continue;
+
+            int start = (int) offset;
+            if (!visitor.visit(bytes, start, CsvBytes.lineEnd(bytes, start))) return;
+        }
+    }
+
+    /**
+     * Returns the offsets of the current version of every live record in an append-only file.
+     * An update appends the new version at the end of the file, so the offsets are listed in the
+     * order the records were first written rather than in file order.
+     *
+     * @return the live offsets in creation order, or null if the file is not append-only and every row is current
+     * @throws IOException if the file cannot be read
+     */
+    private long[] liveOffsets() throws IOException {
+        if (!appendOnly) return null;
+
+        ensureIndex();
+        long[] live = new long[idOffsets.size()];
+        int count = 0;
+        for (long offset : idOffsets.values()) live[count++] = offset;
+        return live;
+    }
+
+    /**
+     * Keeps the candidate offsets that hold the current version of a record in an append-only file,
+     * ordered by when their records were first written. The index must be up to date.
+     *
+     * @param candidates the candidate offsets, such as those a column index lists for a value
+     * @return the live candidates in creation order, or the candidates themselves if the file is not append-only
+     */
+    private long[] liveOffsets(long[] candidates) {
+        if (!appendOnly) return candidates;
+
+        // Offsets fit in an int as the view of the file is a ByteBuffer, so each rank and offset pack into one long
+        long[] ranked = new long[candidates.length];
+        int count = 0;
+        for (long offset : candidates) {
+            Integer rank = creationRanks.get(offset);
+            if (rank != null) ranked[count++] = ((long) rank << 32) | offset;
+        }
+        Arrays.sort(ranked, 0, count);
+
+        long[] live = new long[count];
+        for (int i = 0; i < count; i++) live[i] = ranked[i] & 0xFFFFFFFFL;
+        return live;
+    }
+
+    /**
+     * Keeps the candidate offsets that hold the current version of a record in an append-only file,
+     * in the order they were given. The index must be up to date.
+     *
+     * @param candidates the candidate offsets, such as those a composite index lists in time order
+     * @return the live candidates, or the candidates themselves if the file is not append-only
+     */
+    private long[] retainLive(long[] candidates) {
+        if (!appendOnly) return candidates;
+
+        return Arrays.stream(candidates).filter(creationRanks::containsKey).toArray();
+    }
+
+    /**
+     * Visits every non-empty row after the header in the byte view of the file.
+     *
+     * @param visitor the visitor to call for each row
+     * @return the byte view that was scanned, whose limit is the length of the file
+     * @throws IOException if the file cannot be read
+     */
+    private ByteBuffer scanRows(RowVisitor visitor) throws IOException {
+        ByteBuffer bytes = view();
+        int newline = CsvBytes.indexOf(bytes, 0, bytes.limit(), (byte) '\n');
+        return scanRows(bytes, newline < 0 ? bytes.limit() : newline + 1, visitor); // Skip the header
+    }
+
+    /**
+     * Visits every non-empty row of a byte view from a given row start onwards.
+     *
+     * @param bytes the byte view of the file
+     * @param start the index at which the first row to visit starts
+     * @param visitor the visitor to call for each row
+     * @return the byte view that was scanned
+     */
+    private static ByteBuffer scanRows(ByteBuffer bytes, int start, RowVisitor visitor) {
+        int limit = bytes.limit();
+        int newline;
+        while (start < limit) {
+            newline = CsvBytes.indexOf(bytes, start, limit, (byte) '\n');
+            int next = newline < 0 ? limit : newline + 1;
+            int end = CsvBytes.trimCarriageReturn(bytes, start, newline < 0 ? limit : newline);
+
+            if (end > start && !visitor.visit(bytes, start, end)) break;
+            start = next;
+        }
+        return bytes;
+    }
+
+    /**
+     * Returns a byte view of the whole file. Large files are memory-mapped, small files (and all
+     * files on Windows) are read onto the heap. The view is reused until the file changes, and when
+     * rows were only appended to it, just the new tail is read onto the heap.
+     *
+     * @return a read-only view of the file whose limit is the file length
+     * @throws IOException if the file cannot be read or is too large to view
+     */
+    private ByteBuffer view() throws IOException {
+        if (view != null && !lock.isWriteLockedByCurrentThread()) return view;
+        long length = new File(filePath).length();
+        CsvFileLock.Stamp stamp = lock.readStamp();
+        if (view != null && viewLength == length && stamp.equals(viewStamp)) return view;
+
+        try (FileChannel channel = FileChannel.open(Paths.get(filePath), StandardOpenOption.READ)) {
+            length = channel.size();
+            if (length > Integer.MAX_VALUE) {
+                throw new IOException("CSV file is too large to read: " + filePath);
+            }
+
+            // A newer stamp of the same generation means the file was only appended to since the view was read
+            boolean appended = view != null && viewStamp != null && !stamp.equals(viewStamp)
+                && viewStamp.sameGeneration(stamp) && length >= viewLength;
+
+            ByteBuffer bytes;
+            if (CAN_MAP && length >= MAP_THRESHOLD) {
+                bytes = channel.map(FileChannel.MapMode.READ_ONLY, 0, length);
+            } else if (appended && !view.isDirect()) {
+                bytes = extendView(channel, (int) length);
+            } else {
+                bytes = ByteBuffer.allocate((int) length);
+                readFully(channel, bytes, 0);
+                bytes.flip();
+            }
+            view = bytes;
+            viewLength = length;
+            viewStamp = stamp;
+            return bytes;
+        }
+    }
+
+    /**
+     * Extends the heap view with the bytes appended to the file since it was read. The backing array grows
+     * with headroom, so a run of small appends is copied in place. Cursors keep their own view of the array
+     * with the old limit, and bytes below it are never changed, so they are not affected.
+     *
+     * @param channel the open file
+     * @param length the new length of the file
+     * @return a view of the file whose limit is the new length
+     * @throws IOException if the file cannot be read
+     */
+    private ByteBuffer extendView(FileChannel channel, int length) throws IOException {
+        ByteBuffer backing = view;
+        if (backing.capacity() < length) {
+            long grown = Math.max(length, viewLength + (viewLength >> 1));
+            backing = ByteBuffer.allocate((int) Math.min(grown, Integer.MAX_VALUE));
+            ByteBuffer old = view.duplicate();
+            old.position(0).limit((int) viewLength);
+            backing.put(old);
+        }
+
+        ByteBuffer tail = backing.duplicate();
+        tail.position((int) viewLength).limit(length);
+        readFully(channel, tail, viewLength);
+
+        ByteBuffer bytes = backing.duplicate();
+        bytes.position(0).limit(length);
+        return bytes;
+    }
+
+    /**
+     * Reads from a file until the buffer is full or the end of the file is reached.
+     *
+     * @param channel the open file
+     * @param buffer the buffer to fill from its position up to its limit
+     * @param position the byte offset in the file to start reading from
+     * @throws IOException if the file cannot be read
+     */
+    private static void readFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        int read;
+        while (buffer.hasRemaining() && (read = channel.read(buffer, position)) != -1) {
+            position += read;
+        }
+    }
+
+    /**
+     * Reads the header line as it is stored in the file.
+     *
+     * @return the header line, or null if the file is empty
+     * @throws IOException if the file cannot be read
+     */
+    private String readFileHeader() throws IOException {
+        return readRowAt(0);
+    }
+
+    /**
+     * Finds the position of a column in a header line.
+     *
+     * @param headerLine the header line
+     * @param columnName the column to find
+     * @return the zero-based column index
+     * @throws IllegalArgumentException if the column is not in the header
+     */
+    static int findColumnIndex(String headerLine, String columnName) {
+        String[] headers = CsvCursor.split(headerLine);
+        for (int i = 0; i < headers.length; i++) {
+            if (headers[i].trim().equals(columnName)) {
+                return i;
+            }
+        }
+        throw new IllegalArgumentException("Column name '" + columnName + "' not found in CSV headers");
+    }
+
+    /**
+     * Reads the line recorded in the index for the given id.
+     *
+     * @param id the id to look up
+     * @return the line, or null if the id is not indexed or the indexed line no longer belongs to it
+     * @throws IOException if the file cannot be read
+     */
+    private String readIndexedLine(String id) throws IOException {
+        Long offset = idOffsets.get(id);
+        if (offset == null) return null;
+
+        ByteBuffer bytes = view();
+        if (offset >= bytes.limit()) return null;
+
+        int start = (int) (long) offset;
+        int end = CsvBytes.lineEnd(bytes, start);
+        if (!CsvBytes.startsWithKey(bytes, start, end, id.getBytes(CHARSET))) return null;
+        return CsvBytes.decode(bytes, start, end);
+    }
+
+    /**
+     * Reads the row starting at the given byte offset from the byte view of the file.
+     *
+     * @param offset the byte offset of the start of the row
+     * @return the row without its terminator, or null if the offset is past the end of the file
+     * @throws IOException if the file cannot be read
+     */
+    private String readRowAt(long offset) throws IOException {
+        ByteBuffer bytes = view();
+        if (offset >= bytes.limit()) return null;
+        return CsvBytes.decode(bytes, (int) offset, CsvBytes.lineEnd(bytes, (int) offset));
+    }
+
+    /**
+     * Reads a single line starting at the given byte offset of an open file.
+     *
+     * @param raf the open file
+     * @param offset the byte offset of the start of the line
+     * @return the line without its terminator, or null if the offset is past the end of the file
+     * @throws IOException if the file cannot be read
+     */
+    private static String readLineAt(RandomAccessFile raf, long offset) throws IOException {
+        if (offset >= raf.length()) return null;
+        raf.seek(offset);
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] buffer = new byte[512];
+        int read;
+        while ((read = raf.read(buffer)) != -1) {
+            int end = indexOf(buffer, read, (byte) '\n');
+            if (end >= 0) {
+                out.write(buffer, 0, end);
+                break;
+            }
+            out.write(buffer, 0, read);
+        }
+        return decodeLine(out);
+    }
+
+    /**
+     * Decodes the bytes of a line, dropping a trailing carriage return.
+     *
+     * @param bytes the line bytes
+     * @return the decoded line
+     */
+    private static String decodeLine(ByteArrayOutputStream bytes) {
+        String line = new String(bytes.toByteArray(), CHARSET);
+        return line.endsWith("\r") ? line.substring(0, line.length() - 1) : line;
+    }
+
+    /**
+     * Moves a file over another one, atomically where the file system supports it.
+     *
+     * @param source the file to move
+     * @param target the file to replace
+     * @throws IOException if the file cannot be moved
+     */
+    private static void replaceFile(Path source, Path target) throws IOException {
+        try {
+            Files.move(source, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(source, target, StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    /**
+     * Returns the index of the first occurrence of a byte in a buffer.
+     *
+     * @param buffer the buffer to search
+     * @param length the number of valid bytes in the buffer
+     * @param target the byte to find
+     * @return the index of the byte, or -1 if it is not present
+     */
+    private static int indexOf(byte[] buffer, int length, byte target) {
+        for (int i = 0; i < length; i++) {
+            if (buffer[i] == target) return i;
+        }
+        return -1;
+    }
 }
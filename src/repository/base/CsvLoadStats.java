@@ -0,0 +1,76 @@
+package repository.base;
+
+/**
+ * The result of loading and indexing a single CSV file: how many live records and bytes it held,
+ * and how long it took to load.
+ *
+ * @author Russell Arvin
+ * @version 1.0
+ */
+public class CsvLoadStats {
+    private final String filePath;
+    private final long rows;
+    private final long bytes;
+    private final long nanos;
+
+    /**
+     * Constructs the load statistics of a file.
+     *
+     * @param filePath the path of the CSV file
+     * @param rows the number of live records in the file
+     * @param bytes the length of the file in bytes
+     * @param nanos the time taken to load the file, in nanoseconds
+     */
+    public CsvLoadStats(String filePath, long rows, long bytes, long nanos) {
+        this.filePath = filePath;
+        this.rows = rows;
+        this.bytes = bytes;
+        this.nanos = nanos;
+    }
+
+    /**
+     * Returns the path of the CSV file.
+     *
+     * @return the file path
+     */
+    public String getFilePath() {
+        return filePath;
+    }
+
+    /**
+     * Returns the number of live records in the file.
+     *
+     * @return the row count
+     */
+    public long getRows() {
+        return rows;
+    }
+
+    /**
+     * Returns the length of the file in bytes.
+     *
+     * @return the byte count
+     */
+    public long getBytes() {
+        return bytes;
+    }
+
+    /**
+     * Returns the time taken to load the file.
+     *
+     * @return the load time in milliseconds
+     */
+    public double getMillis() {
+        return nanos / 1_000_000.0;
+    }
+
+    /**
+     * Returns a one-line summary of the load, as printed in the preload report.
+     *
+     * @return the file path, rows, bytes and load time
+     */
+    @Override
+    public String toString() {
+        return String.format("%s: %d rows, %d bytes in %.1f ms", filePath, rows, bytes, getMillis());
+    }
+}
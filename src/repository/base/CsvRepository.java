@@ -1,17 +1,23 @@
 package repository.base;
 
-import java.lang.reflect.Array;
-import java.lang.reflect.ParameterizedType;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
-import java.util.stream.Collectors;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Stream;
 import model.BaseEntity;
 import repository.mapper.BaseMapper;
+import util.CsvCursor;
 
 /**
  * The CsvRepository class provides a generic repository for managing entities stored in a CSV file.
  * It supports basic CRUD operations (create, read, update, delete) for entities that extend BaseEntity
- * and are mapped using a specified mapper.
+ * and are mapped using a specified mapper. The rows are kept by a {@link StorageEngine}, which is a
+ * {@link CsvStorageEngine} unless the repository is constructed with another engine.
  *
  * @param <T> The type of entity managed by this repository, extending BaseEntity.
  * @param <M> The type of mapper used to convert between CSV data and entity instances.
@@ -21,8 +27,9 @@ import repository.mapper.BaseMapper;
  */
 public class CsvRepository<T extends BaseEntity, M extends BaseMapper<T>> {
 
-    protected final CsvFileManager fileManager;
+    protected final StorageEngine storage;
     protected final M mapper;
+    private EntityCache<T> cache;
 
     /**
      * Constructs a CsvRepository with a specified file path, CSV header, and mapper.
@@ -32,40 +39,167 @@ public class CsvRepository<T extends BaseEntity, M extends BaseMapper<T>> {
      * @param mapper   The mapper for converting CSV data to entities and vice versa.
      */
     public CsvRepository(String filePath, String header, M mapper) {
-        this.fileManager = new CsvFileManager(filePath, header);
+        this(filePath, header, mapper, false);
+    }
+
+    /**
+     * Constructs a CsvRepository with a specified file path, CSV header, and mapper,
+     * optionally storing updates and deletes as appended records instead of rewriting the file.
+     *
+     * @param filePath   The file path of the CSV file.
+     * @param header     The CSV header for the file.
+     * @param mapper     The mapper for converting CSV data to entities and vice versa.
+     * @param appendOnly Whether the CSV file is managed in append-only mode.
+     */
+    public CsvRepository(String filePath, String header, M mapper, boolean appendOnly) {
+        this(filePath, header, mapper, appendOnly, CsvStorageEngine::new);
+    }
+
+    /**
+     * Constructs a CsvRepository whose rows are kept by a storage engine of the caller's choice.
+     *
+     * @param filePath   The file path of the CSV file.
+     * @param header     The CSV header for the file.
+     * @param mapper     The mapper for converting CSV data to entities and vice versa.
+     * @param appendOnly Whether the CSV file is managed in append-only mode.
+     * @param engine     Creates the storage engine for the CSV file.
+     */
+    public CsvRepository(String filePath, String header, M mapper, boolean appendOnly, StorageEngine.Factory engine) {
+        this.storage = engine.create(filePath, header, appendOnly);
         this.mapper = mapper;
     }
 
+    /**
+     * Registers a secondary index on a column, so lookups by that column only read the matching rows.
+     * Repositories call this from their constructor for the columns they query by.
+     *
+     * @param columnName The name of the column to index.
+     */
+    protected void registerIndex(String columnName) {
+        this.storage.addIndex(columnName);
+    }
+
+    /**
+     * Registers a secondary index on a key column and a timestamp column, so queries for one key within
+     * a time range only read the rows in that range. Repositories call this from their constructor.
+     *
+     * @param columnName     The name of the key column to index.
+     * @param timeColumnName The name of the timestamp column to sort each key's rows by.
+     */
+    protected void registerCompositeIndex(String columnName, String timeColumnName) {
+        this.storage.addCompositeIndex(columnName, timeColumnName);
+    }
+
+    /**
+     * Loads and indexes the CSV file now instead of on the first query.
+     *
+     * @return The number of records and bytes loaded, and the time it took.
+     */
+    public CsvLoadStats preload() {
+        return this.storage.preload();
+    }
+
+    /**
+     * Writes a binary snapshot of the CSV file's indexes, which the next start loads instead of scanning the file.
+     */
+    public void checkpoint() {
+        this.storage.checkpoint();
+    }
+
+    /**
+     * Registers a listener for records written by another process sharing the data directory. The listener
+     * is called once the storage engine sees the records, possibly while it holds its own lock, so it should
+     * only take note of the IDs and not read from the repository.
+     *
+     * @param listener The listener to call with the IDs of the written records, or null if any record may have changed.
+     */
+    public void addChangeListener(CsvFileManager.ChangeListener listener) {
+        this.storage.addChangeListener(listener);
+    }
+
+    /**
+     * Picks up records written by another process sharing the data directory, calling the change
+     * listeners with them. This only checks the file's version stamp when nothing was written.
+     */
+    public void refresh() {
+        this.storage.refresh();
+    }
+
+    /**
+     * Enables a write-through cache of entities read by ID. Entities are cached on {@link #findOne(String)},
+     * {@link #save(BaseEntity)} and {@link #update(BaseEntity)}, and dropped on {@link #delete(BaseEntity)}.
+     * The cache keeps each entity's stored row, so every lookup still returns an instance of its own.
+     * Repositories call this from their constructor for data that is looked up often. Records written by
+     * another process sharing the data directory are dropped from the cache once the storage engine sees them.
+     *
+     * @param maxBytes The estimated number of bytes the cached entities may take up.
+     */
+    protected void enableCache(long maxBytes) {
+        EntityCache<T> entityCache = new EntityCache<>(maxBytes, mapper);
+        this.storage.addChangeListener(ids -> {
+            if (ids == null) {
+                entityCache.clear();
+            } else {
+                ids.forEach(entityCache::invalidate);
+            }
+        });
+        this.cache = entityCache;
+    }
+
+    /**
+     * Returns the entity cache of this repository, for reading its counters.
+     *
+     * @return The entity cache, or null if caching is not enabled.
+     */
+    public EntityCache<T> getCache() {
+        return this.cache;
+    }
+
     /**
      * Saves a new entity to the CSV file. Throws an exception if an entity with the same ID already exists.
      *
      * @param entity The entity to save.
      */
     public void save(T entity) {
-        T duplicateEntity = this.findOne(entity.getId());
-        if(duplicateEntity != null) throw new RuntimeException("Item already exists for ID: " + entity.getId());
+        String line = entity.toCsvString();
+        boolean saved = this.storage.appendLineIfAbsent(entity.getId(), line);
+        if(!saved) throw new RuntimeException("Item already exists for ID: " + entity.getId());
 
-        this.fileManager.appendLine(entity.toCsvString());
+        if (cache != null) cache.put(entity.getId(), line);
     }
 
     /**
-     * Saves an array of entities to the CSV file.
+     * Saves an array of entities to the CSV file in a single append. Throws an exception, before
+     * anything is written, if an entity's ID already exists in the file or appears twice in the batch.
      *
      * @param entities The array of entities to save.
      */
     public void saveMany(T[] entities) {
+        List<String> ids = new ArrayList<>(entities.length);
+        List<String> lines = new ArrayList<>(entities.length);
+
         for (int i = 0; i < entities.length; i++) {
-            this.save(entities[i]);
+            ids.add(entities[i].getId());
+            lines.add(entities[i].toCsvString());
+        }
+
+        String duplicateId = this.storage.appendLinesIfAbsent(ids, lines);
+        if (duplicateId != null) throw new RuntimeException("Item already exists for ID: " + duplicateId);
+        if (cache != null) {
+            for (int i = 0; i < entities.length; i++) {
+                cache.put(ids.get(i), lines.get(i));
+            }
         }
     }
 
     /**
      * Finds and returns the latest entity in the CSV file.
      *
-     * @return The latest entity.
+     * @return The latest entity, or null if there are none.
      */
     public T findLatest() {
-        String line = this.fileManager.getLastLine();
+        String line = this.storage.getLastLine();
+        if(line == null) return null;
         return mapper.fromCsvString(line);
     }
 
@@ -76,38 +210,73 @@ public class CsvRepository<T extends BaseEntity, M extends BaseMapper<T>> {
      * @return The entity with the specified ID, or null if not found.
      */
     public T findOne(String id) {
-        String line = this.fileManager.readLine(id);
+        if (cache != null) {
+            // Only checks the file's version stamp, unless another process has written to it
+            this.storage.refresh();
+            T cached = cache.get(id);
+            if (cached != null) return cached;
+        }
+
+        String line = this.storage.readLine(id);
         if(line == null) return null;
+
+        if (cache != null) cache.put(id, line);
         return mapper.fromCsvString(line);
     }
 
     /**
-     * Finds and returns all entities from the CSV file as an array of type T.
+     * Finds the entities with any of the given IDs in one batch. Cached entities are served from the
+     * cache, and the rest are read from storage in a single call instead of one lookup per ID, which the
+     * CSV engine answers through its ID index in one pass over the file.
+     * Each entity appears once in the result, however often its ID is given.
      *
-     * @param entityClass The class of the entity type.
-     * @return An array of all entities.
+     * @param ids The IDs of the entities to find.
+     * @return The entities keyed by ID, leaving out IDs that were not found.
      */
-    protected T[] findAll(Class<T> entityClass) {
-        List<String> lines = this.fileManager.readAllLines();
-        return mapLines(lines, entityClass);
+    public Map<String, T> findManyByIds(Collection<String> ids) {
+        Map<String, T> entities = new HashMap<>();
+        Set<String> missing = new LinkedHashSet<>();
+
+        if (cache != null) this.storage.refresh();
+        for (String id : ids) {
+            if (id == null || entities.containsKey(id)) continue;
+
+            T cached = cache != null ? cache.get(id) : null;
+            if (cached != null) {
+                entities.put(id, cached);
+            } else {
+                missing.add(id);
+            }
+        }
+        if (missing.isEmpty()) return entities;
+
+        CsvCursor fields = new CsvCursor();
+        for (Map.Entry<String, String> row : this.storage.readLines(missing).entrySet()) {
+            T entity = mapper.fromCsv(fields.reset(row.getValue()));
+            entities.put(row.getKey(), entity);
+            if (cache != null) cache.put(row.getKey(), row.getValue());
+        }
+        return entities;
     }
 
     /**
-     * Maps a list of CSV lines to an array of entities.
+     * Maps a list of CSV lines to an array of entities. The array is created by the mapper,
+     * so no reflection is needed, and every line is read through the same cursor.
      *
-     * @param lines       The list of CSV lines.
-     * @param entityClass The class of the entity type.
+     * @param lines The list of CSV lines.
      * @return An array of mapped entities.
      */
-    protected T[] mapLines(List<String> lines, Class<T> entityClass) {
-        List<T> entities = lines.stream()
-            .filter(line -> !line.equals(this.fileManager.getHeader()))
-            .map(mapper::fromCsvString)
-            .collect(Collectors.toList());
-        
-        @SuppressWarnings("unchecked")
-        T[] array = (T[]) Array.newInstance(entityClass, entities.size());
-        return entities.toArray(array);
+    protected T[] mapLines(List<String> lines) {
+        String header = this.storage.getHeader();
+        T[] entities = mapper.newArray(lines.size());
+        int count = 0;
+
+        CsvCursor fields = new CsvCursor();
+        for (String line : lines) {
+            if (line.equals(header)) continue;
+            entities[count++] = mapper.fromCsv(fields.reset(line));
+        }
+        return count == entities.length ? entities : Arrays.copyOf(entities, count);
     }
 
     /**
@@ -116,14 +285,57 @@ public class CsvRepository<T extends BaseEntity, M extends BaseMapper<T>> {
      * @return An array containing all entities from the CSV file
      */
     public T[] findAll() {
-        List<String> lines = this.fileManager.readAllLines();
-        @SuppressWarnings("unchecked")
-        Class<T> entityClass = (Class<T>) ((ParameterizedType)mapper.getClass().getGenericInterfaces()[0])
-            .getActualTypeArguments()[0];
-        return mapLines(lines, entityClass);
+        List<String> lines = this.storage.readAllLines();
+        return mapLines(lines);
     }
 
 
+    /**
+     * Streams every entity in the CSV file, mapping rows lazily as the stream is consumed, so callers
+     * that filter or stop early never hold the whole file in memory. The stream may be backed by an open
+     * file cursor and should be closed, for example with try-with-resources.
+     *
+     * @return A sequential stream of all entities in file order.
+     */
+    public Stream<T> scan() {
+        return mapRows(this.storage.scan());
+    }
+
+    /**
+     * Streams the entities whose column matches a value, mapping rows lazily as the stream is consumed.
+     * Indexed columns only read the rows listed in the index. The stream should be closed after use.
+     *
+     * @param columnName The column to filter by.
+     * @param value      The value the column must hold.
+     * @return A sequential stream of the matching entities in file order.
+     */
+    protected Stream<T> scan(String columnName, String value) {
+        return mapRows(this.storage.scan(columnName, value));
+    }
+
+    /**
+     * Streams the entities whose rows match every condition of a query. The conditions are checked on the
+     * raw rows, so only matching rows are mapped. The stream should be closed after use.
+     *
+     * @param query The conditions the rows must match.
+     * @return A sequential stream of the matching entities.
+     */
+    protected Stream<T> scan(RowQuery query) {
+        return mapRows(this.storage.scan(query));
+    }
+
+    /**
+     * Maps a sequential stream of CSV lines to entities through one cursor, which is reset to each
+     * line in turn, so no cursor is created per line.
+     *
+     * @param rows The sequential stream of CSV lines.
+     * @return A stream of the mapped entities, which closes the stream of lines when it is closed.
+     */
+    private Stream<T> mapRows(Stream<String> rows) {
+        CsvCursor fields = new CsvCursor();
+        return rows.map(line -> mapper.fromCsv(fields.reset(line)));
+    }
+
     /**
      * Updates an existing entity in the CSV file. Throws an exception if the entity is not found.
      *
@@ -131,32 +343,47 @@ public class CsvRepository<T extends BaseEntity, M extends BaseMapper<T>> {
      */
     public void update(T entity) {
         entity.setUpdatedAt();
-    
-        List<String> lines = this.fileManager.readAllLines();
-        boolean found = false;
-    
-        List<String> updatedLines = new ArrayList<>();
-        updatedLines.add(this.fileManager.getHeader());  // Add header
-    
-        // Update the specific entity line
-        for (String line : lines) {
-            if (line.startsWith(this.fileManager.getHeader())) continue;
-    
-            String id = line.split(",")[0];
-    
-            if (id.equals(entity.getId())) {
-                updatedLines.add(entity.toCsvString());
-                found = true;
-            } else {
-                updatedLines.add(line);
-            }
+        String line = entity.toCsvString();
+
+        boolean found;
+        try {
+            found = this.storage.updateLine(entity.getId(), line);
+        } catch (RuntimeException e) {
+            // The write may or may not have reached storage, so the cached row can no longer be trusted
+            if (cache != null) cache.invalidate(entity.getId());
+            throw e;
         }
-    
         if (!found) {
+            if (cache != null) cache.invalidate(entity.getId());
             throw new RuntimeException("Item not found for update: " + entity.getId());
         }
-    
-        this.fileManager.writeAllLines(updatedLines);
+        if (cache != null) cache.put(entity.getId(), line);
+    }
+
+    /**
+     * Saves an entity, adding it or replacing the stored entity with the same ID, unless another entity
+     * matches one of the queries. The check and the write are one atomic step of the storage engine, which
+     * for CSV files holds the file's write lock throughout, so the rule the queries express holds even when
+     * another process writes to the same file.
+     *
+     * @param entity    The entity to save.
+     * @param conflicts The queries no other entity may match.
+     * @return null if the entity was saved, otherwise the first other entity that matched a query.
+     */
+    protected T saveUnlessMatched(T entity, RowQuery... conflicts) {
+        String line = entity.toCsvString();
+
+        String conflict;
+        try {
+            conflict = this.storage.writeLineUnlessMatched(entity.getId(), line, Arrays.asList(conflicts));
+        } catch (RuntimeException e) {
+            if (cache != null) cache.invalidate(entity.getId());
+            throw e;
+        }
+        if (conflict != null) return mapper.fromCsvString(conflict);
+
+        if (cache != null) cache.put(entity.getId(), line);
+        return null;
     }
 
     /**
@@ -172,8 +399,9 @@ public class CsvRepository<T extends BaseEntity, M extends BaseMapper<T>> {
             throw new RuntimeException("Item not found for deletion: " + id);
         }
         
+        if (cache != null) cache.invalidate(id);
         try {
-            this.fileManager.deleteLine(id);
+            this.storage.deleteLine(id);
         } catch (RuntimeException e) {
             throw new RuntimeException("Failed to delete item: " + e.getMessage());
         }
@@ -0,0 +1,126 @@
+package repository.base;
+
+import java.io.Closeable;
+import java.nio.ByteBuffer;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * A forward-only cursor over the record rows of a CSV file, decoding one row at a time as it is consumed.
+ * The cursor reads from a snapshot of the file taken when it was opened, so it does not hold the file
+ * manager's lock and is not affected by writes made while it is open.
+ * <p>
+ * Rows are either walked in file order, or taken from a list of offsets supplied by the manager, such as
+ * those of a column or composite index, and are only decoded once they pass the cursor's {@link RowFilter}.
+ * For append-only files the manager only supplies the offsets of the current version of each record.
+ *
+ * @author Russell Arvin
+ * @version 1.0
+ */
+public final class CsvRowCursor implements Iterator<String>, Closeable {
+    private ByteBuffer bytes;
+    private final long[] offsets;
+    private final RowFilter filter;
+
+    private int nextRow;
+    private int nextOffset = 0;
+    private String pending;
+
+    /**
+     * Constructs a cursor over a snapshot of a CSV file.
+     *
+     * @param bytes          the byte view of the file
+     * @param offsets        the offsets of the candidate rows in the order to return them, or null to walk every row
+     * @param filter         the filter rows must pass, checked on their raw bytes, or null to return every row
+     */
+    CsvRowCursor(ByteBuffer bytes, long[] offsets, RowFilter filter) {
+        this.bytes = bytes;
+        this.offsets = offsets;
+        this.filter = filter;
+
+        // Rows start after the header
+        int newline = CsvBytes.indexOf(bytes, 0, bytes.limit(), (byte) '\n');
+        this.nextRow = newline < 0 ? bytes.limit() : newline + 1;
+    }
+
+    /**
+     * Checks whether there is another matching row.
+     *
+     * @return true if {@link #next()} will return a row
+     */
+    @Override
+    public boolean hasNext() {
+        if (pending == null && bytes != null) pending = offsets == null ? advanceRow() : advanceOffset();
+        return pending != null;
+    }
+
+    /**
+     * Returns the next matching row.
+     *
+     * @return the row without its line terminator
+     * @throws NoSuchElementException if there are no more rows
+     */
+    @Override
+    public String next() {
+        if (!hasNext()) throw new NoSuchElementException();
+        String row = pending;
+        pending = null;
+        return row;
+    }
+
+    /**
+     * Releases the snapshot of the file. Further calls to {@link #hasNext()} return false.
+     */
+    @Override
+    public void close() {
+        bytes = null;
+        pending = null;
+    }
+
+    /**
+     * Walks forward in file order to the next matching row.
+     *
+     * @return the decoded row, or null if the end of the file was reached
+     */
+    private String advanceRow() {
+        int limit = bytes.limit();
+        while (nextRow < limit) {
+            int start = nextRow;
+            int newline = CsvBytes.indexOf(bytes, start, limit, (byte) '\n');
+            nextRow = newline < 0 ? limit : newline + 1;
+            int end = CsvBytes.trimCarriageReturn(bytes, start, newline < 0 ? limit : newline);
+
+            if (end == start) continue;
+            if (matches(start, end)) return CsvBytes.decode(bytes, start, end);
+        }
+        return null;
+    }
+
+    /**
+     * Moves to the next candidate offset that holds a matching row.
+     *
+     * @return the decoded row, or null if there are no more candidates
+     */
+    private String advanceOffset() {
+        while (nextOffset < offsets.length) {
+            long offset = offsets[nextOffset++];
+            if (offset >= bytes.limit()) continue;
+
+            int start = (int) offset;
+            int end = CsvBytes.lineEnd(bytes, start);
+            if (matches(start, end)) return CsvBytes.decode(bytes, start, end);
+        }
+        return null;
+    }
+
+    /**
+     * Checks a row against the filter.
+     *
+     * @param start the index at which the row starts
+     * @param end the index just past the row content
+     * @return true if there is no filter or the row passes it
+     */
+    private boolean matches(int start, int end) {
+        return filter == null || filter.test(bytes, start, end);
+    }
+}
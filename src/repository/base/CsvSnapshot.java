@@ -0,0 +1,300 @@
+package repository.base;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.Collection;
+import java.util.Map;
+import java.util.zip.CRC32C;
+
+/**
+ * Reads and writes the binary snapshot of a CSV file's indexes, stored next to the file as {@code <file>.snap}.
+ * Loading a snapshot replaces the scan of every row that otherwise builds the indexes at startup.
+ * <p>
+ * A snapshot records the length and CRC-32C checksum of the CSV file it was taken from, and is only
+ * loaded while the file still matches both. Strings are length-prefixed UTF-8 and numbers are variable
+ * length. Record offsets are stored as signed deltas in the order of the id index, which is the order the
+ * records were first written, so that order survives a reload. Each column index is stored as a dictionary
+ * of its distinct values, such as the values of an enum column, with the delta-encoded offsets of the
+ * rows holding each one.
+ *
+ * @author Russell Arvin
+ * @version 1.0
+ */
+final class CsvSnapshot {
+    private static final Charset CHARSET = CsvBytes.CHARSET;
+    private static final int MAGIC = 0x484D5332; // "HMS2"
+
+    /**
+     * Prevents instantiation of this utility class.
+     */
+    private CsvSnapshot() {
+    }
+
+    /**
+     * Returns the path of the snapshot of a CSV file.
+     *
+     * @param filePath the path of the CSV file
+     * @return the path of its snapshot
+     */
+    static Path pathFor(String filePath) {
+        return Paths.get(filePath + ".snap");
+    }
+
+    /**
+     * Writes a snapshot of the indexes of a CSV file. The snapshot is written to a temporary file first
+     * and moved into place, so a reader never sees a partly written snapshot.
+     *
+     * @param path the path of the snapshot
+     * @param csv the byte view of the whole CSV file the indexes were built from
+     * @param idOffsets the byte offset of the current version of each record, keyed by id, in the order to keep
+     * @param columns the column indexes
+     * @param deadRecords the number of superseded records and tombstones in the file
+     * @throws IOException if the snapshot cannot be written
+     */
+    static void write(Path path, ByteBuffer csv, Map<String, Long> idOffsets, Collection<ColumnIndex> columns,
+                      long deadRecords) throws IOException {
+        ByteArrayOutputStream body = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(body);
+        out.writeInt(MAGIC);
+        out.writeLong(csv.limit());
+        out.writeInt(checksum(csv));
+        writeVarLong(out, deadRecords);
+
+        // Records in creation order, which is mostly file order, so their offsets are mostly small deltas
+        writeVarLong(out, idOffsets.size());
+        long previous = 0;
+        for (Map.Entry<String, Long> record : idOffsets.entrySet()) {
+            writeSignedVarLong(out, record.getValue() - previous);
+            writeString(out, record.getKey());
+            previous = record.getValue();
+        }
+
+        writeVarLong(out, columns.size());
+        for (ColumnIndex column : columns) {
+            writeString(out, column.getColumnName());
+            writeVarLong(out, column.getPosition());
+
+            ByteArrayOutputStream values = new ByteArrayOutputStream();
+            DataOutputStream valuesOut = new DataOutputStream(values);
+            int[] distinct = new int[1];
+            IOException[] failure = new IOException[1];
+            column.forEachValue((value, offsets, count) -> {
+                try {
+                    writeString(valuesOut, value);
+                    writeOffsets(valuesOut, offsets, count);
+                    distinct[0]++;
+                } catch (IOException e) {
+                    failure[0] = e;
+                }
+            });
+            if (failure[0] != null) throw failure[0];
+
+            writeVarLong(out, distinct[0]);
+            values.writeTo(out);
+        }
+        out.flush();
+
+        byte[] bytes = body.toByteArray();
+        CRC32C crc = new CRC32C();
+        crc.update(bytes);
+
+        Path temp = Paths.get(path.toString() + ".tmp");
+        try (OutputStream file = new BufferedOutputStream(Files.newOutputStream(temp));
+             DataOutputStream fileOut = new DataOutputStream(file)) {
+            fileOut.write(bytes);
+            fileOut.writeInt((int) crc.getValue());
+        }
+        try {
+            Files.move(temp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(temp, path, StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    /**
+     * Loads the indexes of a CSV file from its snapshot, if the snapshot is intact and was taken
+     * from the file as it is now. Only a snapshot holding exactly the given column indexes is loaded.
+     *
+     * @param path the path of the snapshot
+     * @param csv the byte view of the whole CSV file
+     * @param idOffsets the empty id index to fill, which keeps the order the records are read in
+     * @param columns the empty column indexes to fill, keyed by column name
+     * @return the number of superseded records and tombstones in the file, or -1 if the snapshot could not be used
+     * @throws IOException if the snapshot cannot be read
+     */
+    static long read(Path path, ByteBuffer csv, Map<String, Long> idOffsets, Map<String, ColumnIndex> columns)
+            throws IOException {
+        if (!Files.exists(path)) return -1;
+
+        ByteBuffer in = ByteBuffer.wrap(Files.readAllBytes(path));
+        if (in.remaining() < Integer.BYTES * 2 + Long.BYTES) return -1;
+
+        CRC32C crc = new CRC32C();
+        crc.update(in.array(), 0, in.limit() - Integer.BYTES);
+        if ((int) crc.getValue() != in.getInt(in.limit() - Integer.BYTES)) return -1;
+        in.limit(in.limit() - Integer.BYTES);
+
+        if (in.getInt() != MAGIC || in.getLong() != csv.limit() || in.getInt() != checksum(csv)) return -1;
+        long deadRecords = readVarLong(in);
+
+        long records = readVarLong(in);
+        long offset = 0;
+        for (long i = 0; i < records; i++) {
+            offset += readSignedVarLong(in);
+            idOffsets.put(readString(in), offset);
+        }
+
+        long columnCount = readVarLong(in);
+        int loaded = 0;
+        for (long i = 0; i < columnCount; i++) {
+            String name = readString(in);
+            long position = readVarLong(in);
+            ColumnIndex column = columns.get(name);
+            boolean matches = column != null && column.getPosition() == position;
+            if (matches) loaded++;
+
+            long distinct = readVarLong(in);
+            for (long j = 0; j < distinct; j++) {
+                String value = readString(in);
+                long[] offsets = readOffsets(in);
+                if (matches) column.putValue(value, offsets);
+            }
+        }
+        return loaded == columns.size() ? deadRecords : -1;
+    }
+
+    /**
+     * Computes the CRC-32C checksum of a byte view without moving its position.
+     *
+     * @param bytes the byte view
+     * @return the checksum
+     */
+    private static int checksum(ByteBuffer bytes) {
+        CRC32C crc = new CRC32C();
+        ByteBuffer all = bytes.duplicate();
+        all.position(0);
+        crc.update(all);
+        return (int) crc.getValue();
+    }
+
+    /**
+     * Writes a sorted run of offsets as a count followed by deltas.
+     *
+     * @param out the stream to write to
+     * @param offsets the offsets in ascending order
+     * @param count the number of offsets to write
+     * @throws IOException if the stream cannot be written
+     */
+    private static void writeOffsets(DataOutputStream out, long[] offsets, int count) throws IOException {
+        writeVarLong(out, count);
+        long previous = 0;
+        for (int i = 0; i < count; i++) {
+            writeVarLong(out, offsets[i] - previous);
+            previous = offsets[i];
+        }
+    }
+
+    /**
+     * Reads a run of offsets written by {@link #writeOffsets(DataOutputStream, long[], int)}.
+     *
+     * @param in the buffer to read from
+     * @return the offsets in ascending order
+     */
+    private static long[] readOffsets(ByteBuffer in) {
+        long[] offsets = new long[Math.toIntExact(readVarLong(in))];
+        long previous = 0;
+        for (int i = 0; i < offsets.length; i++) {
+            previous += readVarLong(in);
+            offsets[i] = previous;
+        }
+        return offsets;
+    }
+
+    /**
+     * Writes a string as its UTF-8 length followed by its UTF-8 bytes.
+     *
+     * @param out the stream to write to
+     * @param value the string to write
+     * @throws IOException if the stream cannot be written
+     */
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        byte[] bytes = value.getBytes(CHARSET);
+        writeVarLong(out, bytes.length);
+        out.write(bytes);
+    }
+
+    /**
+     * Reads a string written by {@link #writeString(DataOutputStream, String)}.
+     *
+     * @param in the buffer to read from
+     * @return the string
+     */
+    private static String readString(ByteBuffer in) {
+        int length = Math.toIntExact(readVarLong(in));
+        String value = new String(in.array(), in.position(), length, CHARSET);
+        in.position(in.position() + length);
+        return value;
+    }
+
+    /**
+     * Writes a non-negative number in seven-bit groups, low group first.
+     *
+     * @param out the stream to write to
+     * @param value the number to write
+     * @throws IOException if the stream cannot be written
+     */
+    private static void writeVarLong(DataOutputStream out, long value) throws IOException {
+        while ((value & ~0x7FL) != 0) {
+            out.writeByte((int) (value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        out.writeByte((int) value);
+    }
+
+    /**
+     * Reads a number written by {@link #writeVarLong(DataOutputStream, long)}.
+     *
+     * @param in the buffer to read from
+     * @return the number
+     */
+    private static long readVarLong(ByteBuffer in) {
+        long value = 0;
+        for (int shift = 0; ; shift += 7) {
+            byte b = in.get();
+            value |= (long) (b & 0x7F) << shift;
+            if (b >= 0) return value;
+        }
+    }
+
+    /**
+     * Writes a number that may be negative, zigzag encoded so that small negative numbers stay short.
+     *
+     * @param out the stream to write to
+     * @param value the number
+     * @throws IOException if the number cannot be written
+     */
+    private static void writeSignedVarLong(DataOutputStream out, long value) throws IOException {
+        writeVarLong(out, (value << 1) ^ (value >> 63));
+    }
+
+    /**
+     * Reads a number written by {@link #writeSignedVarLong(DataOutputStream, long)}.
+     *
+     * @param in the buffer to read from
+     * @return the number
+     */
+    private static long readSignedVarLong(ByteBuffer in) {
+        long value = readVarLong(in);
+        return (value >>> 1) ^ -(value & 1);
+    }
+}
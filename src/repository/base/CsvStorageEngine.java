@@ -0,0 +1,268 @@
+package repository.base;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * A storage engine that keeps records in a CSV file through a {@link CsvFileManager}, reading them
+ * from the file on every query. This is the default engine of every repository.
+ *
+ * @author Russell Arvin
+ * @version 1.0
+ */
+public class CsvStorageEngine implements StorageEngine {
+    private final CsvFileManager fileManager;
+
+    /**
+     * Constructs a CsvStorageEngine for a CSV file.
+     *
+     * @param filePath the file path of the CSV file
+     * @param header the header row for the CSV file
+     * @param appendOnly whether updates and deletes are appended instead of rewriting the file
+     */
+    public CsvStorageEngine(String filePath, String header, boolean appendOnly) {
+        this.fileManager = new CsvFileManager(filePath, header, appendOnly);
+    }
+
+    /**
+     * Returns the header of the CSV file.
+     *
+     * @return the header row
+     */
+    @Override
+    public String getHeader() {
+        return fileManager.getHeader();
+    }
+
+    /**
+     * Registers a secondary index on a column of the CSV file.
+     *
+     * @param columnName the column to index
+     */
+    @Override
+    public void addIndex(String columnName) {
+        fileManager.addIndex(columnName);
+    }
+
+    /**
+     * Registers a composite index on a key column and a timestamp column of the CSV file.
+     *
+     * @param columnName the key column to index
+     * @param timeColumnName the timestamp column to sort each key's rows by
+     */
+    @Override
+    public void addCompositeIndex(String columnName, String timeColumnName) {
+        fileManager.addCompositeIndex(columnName, timeColumnName);
+    }
+
+    /**
+     * Registers a listener for records changed by another manager or another process.
+     *
+     * @param listener the listener to call
+     */
+    @Override
+    public void addChangeListener(CsvFileManager.ChangeListener listener) {
+        fileManager.addChangeListener(listener);
+    }
+
+    /**
+     * Brings the file's indexes up to date if the file was written outside this engine.
+     */
+    @Override
+    public void refresh() {
+        fileManager.refresh();
+    }
+
+    /**
+     * Loads and indexes the CSV file now instead of on the first query.
+     *
+     * @return the number of records and bytes loaded, and the time it took
+     */
+    @Override
+    public CsvLoadStats preload() {
+        return fileManager.preload();
+    }
+
+    /**
+     * Writes a binary snapshot of the file's indexes, which the next start loads instead of scanning the file.
+     */
+    @Override
+    public void checkpoint() {
+        fileManager.checkpoint();
+    }
+
+    /**
+     * Reads the row of a record through the id index.
+     *
+     * @param id the ID of the record
+     * @return the row, or null if not found
+     */
+    @Override
+    public String readLine(String id) {
+        return fileManager.readLine(id);
+    }
+
+    /**
+     * Reads the rows of several records from the file, holding the file's read lock once.
+     *
+     * @param ids the IDs of the records
+     * @return the rows keyed by record ID
+     */
+    @Override
+    public Map<String, String> readLines(Collection<String> ids) {
+        return fileManager.readLines(ids);
+    }
+
+    /**
+     * Reads the last row of the file.
+     *
+     * @return the last row, or null if the file has no records
+     */
+    @Override
+    public String getLastLine() {
+        return fileManager.getLastLine();
+    }
+
+    /**
+     * Appends a row to the file unless a record with the same ID exists.
+     *
+     * @param id the ID of the record
+     * @param line the row to append
+     * @return true if the row was appended
+     */
+    @Override
+    public boolean appendLineIfAbsent(String id, String line) {
+        return fileManager.appendLineIfAbsent(id, line);
+    }
+
+    /**
+     * Appends a batch of rows to the file in a single write, unless any of their IDs exists or repeats.
+     *
+     * @param ids the IDs of the records
+     * @param lines the rows to append
+     * @return null if the rows were appended, otherwise the first ID that exists or repeats
+     */
+    @Override
+    public String appendLinesIfAbsent(List<String> ids, List<String> lines) {
+        return fileManager.appendLinesIfAbsent(ids, lines);
+    }
+
+    /**
+     * Writes a row to the file unless a row of another record matches one of the queries. The file's write
+     * lock is held from the check to the write, so other processes cannot add a matching row in between.
+     *
+     * @param id the ID of the record
+     * @param line the row to write
+     * @param conflicts the queries no row of another record may match
+     * @return null if the row was written, otherwise the first row that matched a query
+     */
+    @Override
+    public String writeLineUnlessMatched(String id, String line, List<RowQuery> conflicts) {
+        return fileManager.writeLineUnlessMatched(id, line, conflicts);
+    }
+
+    /**
+     * Replaces the row of a record in the file.
+     *
+     * @param id the ID of the record
+     * @param line the new row
+     * @return true if the record was found
+     */
+    @Override
+    public boolean updateLine(String id, String line) {
+        return fileManager.updateLine(id, line);
+    }
+
+    /**
+     * Deletes a record from the file.
+     *
+     * @param id the ID of the record
+     */
+    @Override
+    public void deleteLine(String id) {
+        fileManager.deleteLine(id);
+    }
+
+    /**
+     * Reads every row of the file.
+     *
+     * @return the rows, excluding the header
+     */
+    @Override
+    public List<String> readAllLines() {
+        return fileManager.readAllLines();
+    }
+
+    /**
+     * Streams every row of the file through a cursor over its byte view.
+     *
+     * @return a stream of the rows, which should be closed
+     */
+    @Override
+    public Stream<String> scan() {
+        return stream(fileManager.openCursor());
+    }
+
+    /**
+     * Streams the rows whose column matches a value through a cursor over the file's byte view.
+     *
+     * @param columnName the column to filter by
+     * @param value the value the column must hold
+     * @return a stream of the matching rows, which should be closed
+     */
+    @Override
+    public Stream<String> scan(String columnName, String value) {
+        return stream(fileManager.openCursor(columnName, value));
+    }
+
+    /**
+     * Streams the rows that match a query, checking its conditions on the raw bytes of each row.
+     *
+     * @param query the conditions rows must match
+     * @return a stream of the matching rows, which should be closed
+     */
+    @Override
+    public Stream<String> scan(RowQuery query) {
+        return stream(fileManager.openCursor(query));
+    }
+
+    /**
+     * Finds the rows whose column matches a value.
+     *
+     * @param columnName the column to search by
+     * @param value the value the column must hold
+     * @return the matching rows
+     */
+    @Override
+    public List<String> findLinesByColumnValue(String columnName, String value) {
+        return fileManager.findLinesByColumnValue(columnName, value);
+    }
+
+    /**
+     * Finds the first row whose column matches a value.
+     *
+     * @param columnName the column to search by
+     * @param value the value the column must hold
+     * @return the first matching row, or null if there is none
+     */
+    @Override
+    public String findLineByColumnValue(String columnName, String value) {
+        return fileManager.findLineByColumnValue(columnName, value);
+    }
+
+    /**
+     * Wraps a row cursor in a stream that closes the cursor when the stream is closed.
+     *
+     * @param cursor the row cursor
+     * @return a sequential stream of the rows
+     */
+    private static Stream<String> stream(CsvRowCursor cursor) {
+        Spliterator<String> rows = Spliterators.spliteratorUnknownSize(cursor, Spliterator.ORDERED | Spliterator.NONNULL);
+        return StreamSupport.stream(rows, false).onClose(cursor::close);
+    }
+}
@@ -0,0 +1,192 @@
+package repository.base;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import model.BaseEntity;
+import repository.mapper.BaseMapper;
+
+/**
+ * A least-recently-used cache of entities keyed by ID, bounded by an estimate of the memory
+ * its entries take up. The size of an entity is estimated from the length of its CSV row.
+ * Hits, misses and evictions are counted so the bound can be sized from real use.
+ * <p>
+ * The cache holds the committed CSV row of each entity and maps a new entity from it on every hit,
+ * so callers that change an entity before updating it never expose those changes to other callers.
+ *
+ * @param <T> The type of entity held in the cache, extending BaseEntity.
+ *
+ * @author Celeste Ho
+ * @version 1.0
+ */
+public class EntityCache<T extends BaseEntity> {
+    /** Rough per-entry cost of the map entry, the key and the entity object headers, in bytes. */
+    private static final int ENTRY_OVERHEAD = 128;
+
+    private final long maxBytes;
+    private final BaseMapper<T> mapper;
+    private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private long bytes = 0;
+    private long hits = 0;
+    private long misses = 0;
+    private long evictions = 0;
+
+    /**
+     * Constructs an empty cache.
+     *
+     * @param maxBytes The estimated number of bytes the cached entities may take up.
+     * @param mapper   The mapper that turns cached rows back into entities.
+     */
+    public EntityCache(long maxBytes, BaseMapper<T> mapper) {
+        this.maxBytes = maxBytes;
+        this.mapper = mapper;
+    }
+
+    /**
+     * Returns a new instance of the cached entity for an ID and marks it as recently used.
+     *
+     * @param id The ID of the entity.
+     * @return The entity mapped from its cached row, or null if it is not cached.
+     */
+    public T get(String id) {
+        String line;
+        synchronized (this) {
+            Entry entry = entries.get(id);
+            if (entry == null) {
+                misses++;
+                return null;
+            }
+            hits++;
+            line = entry.line;
+        }
+        return mapper.fromCsvString(line);
+    }
+
+    /**
+     * Adds or replaces the row of an entity, evicting the least recently used entities while the cache is
+     * over its bound.
+     *
+     * @param id   The ID of the entity.
+     * @param line The entity's CSV row as it is stored.
+     */
+    public synchronized void put(String id, String line) {
+        Entry entry = new Entry(line, ENTRY_OVERHEAD + 2L * (line.length() + id.length()));
+        if (entry.weight > maxBytes) {
+            invalidate(id);
+            return;
+        }
+
+        Entry previous = entries.put(id, entry);
+        if (previous != null) bytes -= previous.weight;
+        bytes += entry.weight;
+
+        Iterator<Map.Entry<String, Entry>> eldest = entries.entrySet().iterator();
+        while (bytes > maxBytes && eldest.hasNext()) {
+            bytes -= eldest.next().getValue().weight;
+            eldest.remove();
+            evictions++;
+        }
+    }
+
+    /**
+     * Removes an entity from the cache.
+     *
+     * @param id The ID of the entity to remove.
+     */
+    public synchronized void invalidate(String id) {
+        Entry previous = entries.remove(id);
+        if (previous != null) bytes -= previous.weight;
+    }
+
+    /**
+     * Removes every entity from the cache. The counters are kept.
+     */
+    public synchronized void clear() {
+        entries.clear();
+        bytes = 0;
+    }
+
+    /**
+     * Returns the number of cached entities.
+     *
+     * @return The number of entities in the cache.
+     */
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    /**
+     * Returns the estimated number of bytes taken up by the cached entities.
+     *
+     * @return The estimated size of the cache in bytes.
+     */
+    public synchronized long getBytes() {
+        return bytes;
+    }
+
+    /**
+     * Returns the estimated number of bytes the cache may take up.
+     *
+     * @return The memory bound of the cache in bytes.
+     */
+    public long getMaxBytes() {
+        return maxBytes;
+    }
+
+    /**
+     * Returns the number of lookups that found a cached entity.
+     *
+     * @return The hit count.
+     */
+    public synchronized long getHits() {
+        return hits;
+    }
+
+    /**
+     * Returns the number of lookups that did not find a cached entity.
+     *
+     * @return The miss count.
+     */
+    public synchronized long getMisses() {
+        return misses;
+    }
+
+    /**
+     * Returns the number of entities evicted to stay within the memory bound.
+     *
+     * @return The eviction count.
+     */
+    public synchronized long getEvictions() {
+        return evictions;
+    }
+
+    /**
+     * Returns a one-line summary of the cache size and counters.
+     *
+     * @return The cache statistics.
+     */
+    @Override
+    public synchronized String toString() {
+        return "EntityCache[size=" + entries.size() + ", bytes=" + bytes + "/" + maxBytes
+            + ", hits=" + hits + ", misses=" + misses + ", evictions=" + evictions + "]";
+    }
+
+    /**
+     * The cached row of an entity together with its estimated size.
+     */
+    private static class Entry {
+        private final String line;
+        private final long weight;
+
+        /**
+         * Constructs a cache entry.
+         *
+         * @param line   The CSV row of the entity.
+         * @param weight The estimated size of the entity in bytes.
+         */
+        Entry(String line, long weight) {
+            this.line = line;
+            this.weight = weight;
+        }
+    }
+}
@@ -0,0 +1,660 @@
+package repository.base;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * A storage engine that keeps every record on the heap, loaded from the CSV file on first use.
+ * Reads never touch the file. Writes only change memory and mark the engine dirty, and a background
+ * task snapshots dirty engines back to the CSV file at a fixed interval, as do {@link #checkpoint()}
+ * and a shutdown hook when the JVM exits normally or is interrupted.
+ * <p>
+ * Writes made since the last snapshot are lost if the process is killed, and records written to the
+ * file by another process are not seen, so this engine suits data that one process owns. A snapshot
+ * never overwrites such records: if the file's version stamp changed since the engine last loaded or
+ * wrote it, the snapshot fails and the file is left as it is.
+ *
+ * @author Russell Arvin
+ * @version 1.0
+ */
+public class InMemoryStorageEngine implements StorageEngine {
+    /** Seconds between snapshots of a dirty engine to its CSV file. */
+    public static final long DEFAULT_SNAPSHOT_INTERVAL_SECONDS = 30;
+
+    private static final ScheduledExecutorService SNAPSHOTTER = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "memory-snapshot");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    // Every engine, so the ones with unsaved writes can be snapshotted when the JVM shuts down
+    private static final List<InMemoryStorageEngine> ENGINES = new CopyOnWriteArrayList<>();
+
+    static {
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            for (InMemoryStorageEngine engine : ENGINES) {
+                engine.snapshotQuietly();
+            }
+        }, "memory-snapshot-shutdown"));
+    }
+
+    private final String filePath;
+    private final String header;
+    private final CsvFileManager fileManager;
+
+    // Guards the rows and indexes below; snapshots only take the read lock to copy the rows
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+    private final Map<String, String> rows = new LinkedHashMap<>();
+    private final Map<String, Integer> columnPositions = new HashMap<>();
+    private final Map<String, Map<String, Set<String>>> columnIndexes = new HashMap<>();
+    private final List<CompositeIndex<String>> compositeIndexes = new ArrayList<>();
+    private volatile boolean loaded = false;
+    private long version = 0;
+
+    // Serializes snapshots, so an older copy of the rows never overwrites a newer one
+    private final Object snapshotLock = new Object();
+    private long snapshotVersion = 0;
+    private CsvFileLock.Stamp fileStamp;
+
+    /**
+     * Constructs an InMemoryStorageEngine for a CSV file, snapshotting at the default interval.
+     *
+     * @param filePath the file path of the CSV file
+     * @param header the header row for the CSV file
+     * @param appendOnly whether the CSV file may hold appended versions and tombstones from append-only mode
+     */
+    public InMemoryStorageEngine(String filePath, String header, boolean appendOnly) {
+        this(filePath, header, appendOnly, DEFAULT_SNAPSHOT_INTERVAL_SECONDS);
+    }
+
+    /**
+     * Constructs an InMemoryStorageEngine for a CSV file.
+     *
+     * @param filePath the file path of the CSV file
+     * @param header the header row for the CSV file
+     * @param appendOnly whether the CSV file may hold appended versions and tombstones from append-only mode
+     * @param snapshotIntervalSeconds the seconds between snapshots of the records to the CSV file
+     * @throws IllegalArgumentException if the interval is not positive
+     */
+    public InMemoryStorageEngine(String filePath, String header, boolean appendOnly, long snapshotIntervalSeconds) {
+        if (snapshotIntervalSeconds < 1) {
+            throw new IllegalArgumentException("Snapshot interval must be positive: " + snapshotIntervalSeconds);
+        }
+        this.filePath = filePath;
+        this.header = header;
+        this.fileManager = new CsvFileManager(filePath, header, appendOnly);
+        SNAPSHOTTER.scheduleWithFixedDelay(this::snapshotQuietly, snapshotIntervalSeconds, snapshotIntervalSeconds, TimeUnit.SECONDS);
+        ENGINES.add(this);
+    }
+
+    /**
+     * Returns the header of the CSV file.
+     *
+     * @return the header row
+     */
+    @Override
+    public String getHeader() {
+        return header;
+    }
+
+    /**
+     * Registers a secondary index on a column, built from the records in memory.
+     *
+     * @param columnName the column to index
+     * @throws IllegalArgumentException if the column is not in the header
+     */
+    @Override
+    public void addIndex(String columnName) {
+        int position = CsvFileManager.findColumnIndex(header, columnName);
+        lock.writeLock().lock();
+        try {
+            if (columnPositions.containsKey(columnName)) return;
+            columnPositions.put(columnName, position);
+            Map<String, Set<String>> index = new HashMap<>();
+            columnIndexes.put(columnName, index);
+            for (Map.Entry<String, String> row : rows.entrySet()) {
+                addToIndex(index, ColumnIndex.valueAt(row.getValue(), position), row.getKey());
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Registers a composite index on a key column and a timestamp column, built from the records in memory.
+     *
+     * @param columnName the key column to index
+     * @param timeColumnName the timestamp column to sort each key's rows by
+     * @throws IllegalArgumentException if either column is not in the header
+     */
+    @Override
+    public void addCompositeIndex(String columnName, String timeColumnName) {
+        CompositeIndex<String> compositeIndex = new CompositeIndex<>(
+            columnName,
+            CsvFileManager.findColumnIndex(header, columnName),
+            timeColumnName,
+            CsvFileManager.findColumnIndex(header, timeColumnName)
+        );
+        lock.writeLock().lock();
+        try {
+            for (CompositeIndex<String> existing : compositeIndexes) {
+                if (existing.getColumnName().equals(columnName)
+                    && existing.getTimeColumnName().equals(timeColumnName)) return;
+            }
+            compositeIndexes.add(compositeIndex);
+            for (Map.Entry<String, String> row : rows.entrySet()) {
+                compositeIndex.add(row.getValue(), row.getKey());
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Does nothing, as this engine does not watch the CSV file for changes made elsewhere.
+     *
+     * @param listener the listener, which is never called
+     */
+    @Override
+    public void addChangeListener(CsvFileManager.ChangeListener listener) {
+        // Records only change through this engine
+    }
+
+    /**
+     * Does nothing, as this engine does not watch the CSV file for changes made elsewhere.
+     */
+    @Override
+    public void refresh() {
+        // Records only change through this engine
+    }
+
+    /**
+     * Loads the records from the CSV file now instead of on the first query.
+     *
+     * @return the number of records and bytes loaded, and the time it took
+     */
+    @Override
+    public CsvLoadStats preload() {
+        long started = System.nanoTime();
+        ensureLoaded();
+        lock.readLock().lock();
+        try {
+            return new CsvLoadStats(filePath, rows.size(), new File(filePath).length(), System.nanoTime() - started);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Snapshots the records to the CSV file now if anything changed since the last snapshot.
+     *
+     * @throws RuntimeException if the file cannot be written
+     */
+    @Override
+    public void checkpoint() {
+        snapshot();
+    }
+
+    /**
+     * Reads the row of a record.
+     *
+     * @param id the ID of the record
+     * @return the row, or null if not found
+     */
+    @Override
+    public String readLine(String id) {
+        ensureLoaded();
+        lock.readLock().lock();
+        try {
+            return rows.get(id);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Reads the rows of several records.
+     *
+     * @param ids the IDs of the records
+     * @return the rows keyed by record ID
+     */
+    @Override
+    public Map<String, String> readLines(Collection<String> ids) {
+        ensureLoaded();
+        lock.readLock().lock();
+        try {
+            Map<String, String> found = new HashMap<>();
+            for (String id : ids) {
+                String line = rows.get(id);
+                if (line != null) found.put(id, line);
+            }
+            return found;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Reads the row of the most recently added record.
+     *
+     * @return the row, or null if there are no records
+     */
+    @Override
+    public String getLastLine() {
+        ensureLoaded();
+        lock.readLock().lock();
+        try {
+            String last = null;
+            for (String line : rows.values()) last = line;
+            return last;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Adds a record unless one with the same ID exists.
+     *
+     * @param id the ID of the record
+     * @param line the row to add
+     * @return true if the record was added
+     */
+    @Override
+    public boolean appendLineIfAbsent(String id, String line) {
+        return appendLinesIfAbsent(Collections.singletonList(id), Collections.singletonList(line)) == null;
+    }
+
+    /**
+     * Adds a batch of records unless any of their IDs exists or repeats, in which case nothing is added.
+     *
+     * @param ids the IDs of the records
+     * @param lines the rows to add
+     * @return null if the records were added, otherwise the first ID that exists or repeats
+     */
+    @Override
+    public String appendLinesIfAbsent(List<String> ids, List<String> lines) {
+        ensureLoaded();
+        lock.writeLock().lock();
+        try {
+            Set<String> batchIds = new HashSet<>();
+            for (String id : ids) {
+                if (!batchIds.add(id) || rows.containsKey(id)) return id;
+            }
+
+            for (int i = 0; i < ids.size(); i++) {
+                putRow(ids.get(i), lines.get(i));
+            }
+            if (!ids.isEmpty()) version++;
+            return null;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Adds or replaces a record unless a row of another record matches one of the queries.
+     * The check and the write happen under the write lock.
+     *
+     * @param id the ID of the record
+     * @param line the row to write
+     * @param conflicts the queries no row of another record may match
+     * @return null if the row was written, otherwise the first row that matched a query
+     * @throws IllegalArgumentException if a column of a query is not in the header
+     */
+    @Override
+    public String writeLineUnlessMatched(String id, String line, List<RowQuery> conflicts) {
+        ensureLoaded();
+        lock.writeLock().lock();
+        try {
+            for (RowQuery conflict : conflicts) {
+                for (String row : scan(conflict).collect(Collectors.toList())) {
+                    if (!id.equals(ColumnIndex.valueAt(row, 0))) return row;
+                }
+            }
+
+            if (rows.containsKey(id)) removeRow(id);
+            putRow(id, line);
+            version++;
+            return null;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Replaces the row of a record, keeping its place in the order of records.
+     *
+     * @param id the ID of the record
+     * @param line the new row
+     * @return true if the record was found
+     */
+    @Override
+    public boolean updateLine(String id, String line) {
+        ensureLoaded();
+        lock.writeLock().lock();
+        try {
+            if (!rows.containsKey(id)) return false;
+            removeRow(id);
+            putRow(id, line);
+            version++;
+            return true;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Deletes a record.
+     *
+     * @param id the ID of the record
+     * @throws RuntimeException if no record with the given ID is found
+     */
+    @Override
+    public void deleteLine(String id) {
+        ensureLoaded();
+        lock.writeLock().lock();
+        try {
+            if (!rows.containsKey(id)) throw new RuntimeException("No record found with ID: " + id);
+            removeRow(id);
+            rows.remove(id);
+            version++;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Returns the rows of all records.
+     *
+     * @return the rows in the order the records were added
+     */
+    @Override
+    public List<String> readAllLines() {
+        ensureLoaded();
+        lock.readLock().lock();
+        try {
+            return new ArrayList<>(rows.values());
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Streams the rows of all records as they were when the stream was opened.
+     *
+     * @return a stream of the rows
+     */
+    @Override
+    public Stream<String> scan() {
+        return readAllLines().stream();
+    }
+
+    /**
+     * Streams the rows whose column matches a value, as they were when the stream was opened.
+     *
+     * @param columnName the column to filter by
+     * @param value the value the column must hold
+     * @return a stream of the matching rows
+     * @throws IllegalArgumentException if the column name or value is invalid
+     */
+    @Override
+    public Stream<String> scan(String columnName, String value) {
+        return findLinesByColumnValue(columnName, value).stream();
+    }
+
+    /**
+     * Streams the rows that match every condition of a query, as they were when the stream was opened.
+     * If a composite index covers the query, only the records in its time range are checked, in time order.
+     * Otherwise, if the query has an equality on an indexed column, only the records the index lists are checked.
+     *
+     * @param query the conditions rows must match
+     * @return a stream of the matching rows
+     * @throws IllegalArgumentException if a column of the query is not in the header
+     */
+    @Override
+    public Stream<String> scan(RowQuery query) {
+        RowFilter filter = query.bind(header);
+        ensureLoaded();
+        lock.readLock().lock();
+        try {
+            List<String> lines = new ArrayList<>();
+            for (CompositeIndex<String> compositeIndex : compositeIndexes) {
+                List<String> ids = compositeIndex.probe(query);
+                if (ids == null) continue;
+
+                for (String id : ids) {
+                    String line = rows.get(id);
+                    if (filter.test(line)) lines.add(line);
+                }
+                return lines.stream();
+            }
+
+            for (RowQuery.Condition condition : query.getConditions()) {
+                Map<String, Set<String>> index = columnIndexes.get(condition.getColumnName());
+                if (index == null || condition.getValues() == null) continue;
+
+                for (String value : condition.getValues()) {
+                    for (String id : index.getOrDefault(value, Collections.emptySet())) {
+                        String line = rows.get(id);
+                        if (filter.test(line)) lines.add(line);
+                    }
+                }
+                return lines.stream();
+            }
+
+            for (String line : rows.values()) {
+                if (filter.test(line)) lines.add(line);
+            }
+            return lines.stream();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Finds the rows whose column matches a value, through the column's index if it has one.
+     *
+     * @param columnName the column to search by
+     * @param value the value the column must hold
+     * @return the matching rows
+     * @throws IllegalArgumentException if the column name or value is invalid
+     */
+    @Override
+    public List<String> findLinesByColumnValue(String columnName, String value) {
+        return findLines(columnName, value, Integer.MAX_VALUE);
+    }
+
+    /**
+     * Finds the first row whose column matches a value, through the column's index if it has one.
+     *
+     * @param columnName the column to search by
+     * @param value the value the column must hold
+     * @return the first matching row, or null if there is none
+     * @throws IllegalArgumentException if the column name is invalid
+     */
+    @Override
+    public String findLineByColumnValue(String columnName, String value) {
+        List<String> lines = findLines(columnName, value, 1);
+        return lines.isEmpty() ? null : lines.get(0);
+    }
+
+    /**
+     * Finds up to a number of rows whose column matches a value.
+     *
+     * @param columnName the column to search by
+     * @param value the value the column must hold
+     * @param limit the maximum number of rows to return
+     * @return the matching rows
+     * @throws IllegalArgumentException if the column name or value is invalid
+     */
+    private List<String> findLines(String columnName, String value, int limit) {
+        if (columnName == null || columnName.trim().isEmpty()) {
+            throw new IllegalArgumentException("Column name cannot be null or empty");
+        }
+        if (value == null) {
+            throw new IllegalArgumentException("Search value cannot be null");
+        }
+
+        ensureLoaded();
+        lock.readLock().lock();
+        try {
+            List<String> lines = new ArrayList<>();
+            Map<String, Set<String>> index = columnIndexes.get(columnName);
+            if (index != null) {
+                for (String id : index.getOrDefault(value, Collections.emptySet())) {
+                    if (lines.size() >= limit) break;
+                    lines.add(rows.get(id));
+                }
+                return lines;
+            }
+
+            int position = CsvFileManager.findColumnIndex(header, columnName);
+            for (String line : rows.values()) {
+                if (lines.size() >= limit) break;
+                if (value.equals(ColumnIndex.valueAt(line, position))) lines.add(line);
+            }
+            return lines;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Loads the records from the CSV file on first use. In a file that holds the same ID twice the first row wins.
+     *
+     * @throws RuntimeException if the file cannot be read
+     */
+    private void ensureLoaded() {
+        if (loaded) return;
+
+        lock.writeLock().lock();
+        try {
+            if (loaded) return;
+
+            // Taken before reading, so a write that lands during the read makes the stamp stale, not missed
+            CsvFileLock.Stamp stamp = fileManager.readStamp();
+            for (String line : fileManager.readAllLines()) {
+                int comma = line.indexOf(',');
+                if (comma < 0) continue;
+
+                String id = line.substring(0, comma);
+                if (!rows.containsKey(id)) putRow(id, line);
+            }
+            synchronized (snapshotLock) {
+                fileStamp = stamp;
+            }
+            loaded = true;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Adds a row and records it in every column index and composite index. Must be called while holding the write lock.
+     *
+     * @param id the ID of the record
+     * @param line the row
+     */
+    private void putRow(String id, String line) {
+        rows.put(id, line);
+        for (Map.Entry<String, Integer> column : columnPositions.entrySet()) {
+            addToIndex(columnIndexes.get(column.getKey()), ColumnIndex.valueAt(line, column.getValue()), id);
+        }
+        for (CompositeIndex<String> compositeIndex : compositeIndexes) {
+            compositeIndex.add(line, id);
+        }
+    }
+
+    /**
+     * Removes a record from every column index and composite index, leaving its row in place.
+     * Must be called while holding the write lock.
+     *
+     * @param id the ID of the record
+     */
+    private void removeRow(String id) {
+        String line = rows.get(id);
+        for (Map.Entry<String, Integer> column : columnPositions.entrySet()) {
+            String value = ColumnIndex.valueAt(line, column.getValue());
+            Map<String, Set<String>> index = columnIndexes.get(column.getKey());
+            Set<String> ids = value == null ? null : index.get(value);
+            if (ids == null) continue;
+
+            ids.remove(id);
+            if (ids.isEmpty()) index.remove(value);
+        }
+        for (CompositeIndex<String> compositeIndex : compositeIndexes) {
+            compositeIndex.remove(line, id);
+        }
+    }
+
+    /**
+     * Adds a record to a column index under its column value.
+     *
+     * @param index the column index
+     * @param value the column value of the record, may be null if the row has too few columns
+     * @param id the ID of the record
+     */
+    private static void addToIndex(Map<String, Set<String>> index, String value, String id) {
+        if (value == null) return;
+        index.computeIfAbsent(value, key -> new LinkedHashSet<>()).add(id);
+    }
+
+    /**
+     * Writes the records to the CSV file if anything changed since the last snapshot. The rows are copied
+     * under the read lock and written outside it, so queries and writes carry on while the file is written.
+     *
+     * @throws RuntimeException if the file cannot be written
+     */
+    private void snapshot() {
+        synchronized (snapshotLock) {
+            if (!loaded) return;
+
+            List<String> lines;
+            long copiedVersion;
+            lock.readLock().lock();
+            try {
+                if (version == snapshotVersion) return;
+                lines = new ArrayList<>(rows.size() + 1);
+                lines.add(header);
+                lines.addAll(rows.values());
+                copiedVersion = version;
+            } finally {
+                lock.readLock().unlock();
+            }
+
+            CsvFileLock.Stamp stamp = fileManager.writeAllLinesIfUnchanged(lines, fileStamp);
+            if (stamp == null) {
+                throw new RuntimeException("Not snapshotting " + filePath + ", as it has been written to elsewhere since it was loaded");
+            }
+            fileStamp = stamp;
+            snapshotVersion = copiedVersion;
+        }
+    }
+
+    /**
+     * Runs a scheduled snapshot, reporting a failure instead of cancelling later snapshots.
+     */
+    private void snapshotQuietly() {
+        try {
+            snapshot();
+        } catch (RuntimeException e) {
+            System.err.println("Error snapshotting records to CSV: " + e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,88 @@
+package repository.base;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+
+/**
+ * Loads and indexes the CSV files of a set of repositories in parallel on a bounded pool of
+ * background threads, so the first query on each file does not pay for a cold load.
+ * <p>
+ * Nothing waits for the preload to finish. A query on a file that is still loading waits on that
+ * file's lock only, and queries on files that are loaded, or not yet started, go ahead as usual.
+ *
+ * <p>Example usage:
+ * <pre>
+ * new RepositoryPreloader(4, patientRepository, doctorRepository).start()
+ *     .thenAccept(report -&gt; report.forEach(System.out::println));
+ * </pre>
+ *
+ * @author Russell Arvin
+ * @version 1.0
+ */
+public class RepositoryPreloader {
+    private final int threads;
+    private final List<CsvRepository<?, ?>> repositories;
+
+    /**
+     * Constructs a RepositoryPreloader for the given repositories.
+     *
+     * @param threads the maximum number of files loaded at once
+     * @param repositories the repositories whose files are loaded
+     * @throws IllegalArgumentException if the number of threads is not positive
+     */
+    public RepositoryPreloader(int threads, CsvRepository<?, ?>... repositories) {
+        this(threads, List.of(repositories));
+    }
+
+    /**
+     * Constructs a RepositoryPreloader for the given repositories.
+     *
+     * @param threads the maximum number of files loaded at once
+     * @param repositories the repositories whose files are loaded
+     * @throws IllegalArgumentException if the number of threads is not positive
+     */
+    public RepositoryPreloader(int threads, List<? extends CsvRepository<?, ?>> repositories) {
+        if (threads < 1) throw new IllegalArgumentException("Preload threads must be positive: " + threads);
+        this.threads = threads;
+        this.repositories = List.copyOf(repositories);
+    }
+
+    /**
+     * Starts loading every file in the background and returns immediately. A file that fails to load is
+     * reported on the error stream and left to load on its first query instead.
+     *
+     * @return a future completed with the load statistics of every file that loaded, in repository order
+     */
+    public CompletableFuture<List<CsvLoadStats>> start() {
+        if (repositories.isEmpty()) return CompletableFuture.completedFuture(new ArrayList<>());
+
+        AtomicInteger count = new AtomicInteger();
+        ExecutorService executor = Executors.newFixedThreadPool(Math.min(threads, repositories.size()), runnable -> {
+            Thread thread = new Thread(runnable, "csv-preload-" + count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+
+        List<CompletableFuture<CsvLoadStats>> loads = new ArrayList<>();
+        for (CsvRepository<?, ?> repository : repositories) {
+            loads.add(CompletableFuture.supplyAsync(repository::preload, executor)
+                .exceptionally(e -> {
+                    System.err.println("Error preloading CSV: " + e.getMessage());
+                    return null;
+                }));
+        }
+        executor.shutdown(); // Queued loads still run, the threads exit once they are done
+
+        return CompletableFuture.allOf(loads.toArray(new CompletableFuture<?>[0]))
+            .thenApply(done -> loads.stream()
+                .map(CompletableFuture::join)
+                .filter(Objects::nonNull)
+                .collect(Collectors.toList()));
+    }
+}
@@ -0,0 +1,228 @@
+package repository.base;
+
+import java.nio.ByteBuffer;
+import java.time.DateTimeException;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import util.TimestampCodec;
+
+/**
+ * A {@link RowQuery} resolved against the header of a CSV file, checking rows either as raw bytes,
+ * without decoding anything but the timestamps it compares, or as decoded lines.
+ * <p>
+ * Conditions with more than {@value #MAX_LINEAR_VALUES} values, such as a batch of IDs to join on, are
+ * checked against a hash set of the values instead of comparing the column with each value in turn.
+ *
+ * @author Russell Arvin
+ * @version 1.0
+ */
+final class RowFilter {
+    private static final int MAX_LINEAR_VALUES = 8;
+
+    private final int[] positions;
+    private final byte[][][] values;
+    private final String[][] textValues;
+    private final List<Set<String>> valueSets;
+    private final LocalDateTime[] from;
+    private final LocalDateTime[] to;
+
+    /**
+     * Resolves the conditions of a query against a header line.
+     *
+     * @param conditions the conditions of the query
+     * @param headerLine the header line of the CSV file
+     * @throws IllegalArgumentException if a column is not in the header
+     */
+    RowFilter(List<RowQuery.Condition> conditions, String headerLine) {
+        int count = conditions.size();
+        this.positions = new int[count];
+        this.values = new byte[count][][];
+        this.textValues = new String[count][];
+        this.from = new LocalDateTime[count];
+        this.to = new LocalDateTime[count];
+        this.valueSets = new ArrayList<>(count);
+
+        for (int i = 0; i < count; i++) {
+            RowQuery.Condition condition = conditions.get(i);
+            positions[i] = CsvFileManager.findColumnIndex(headerLine, condition.getColumnName());
+            if (condition.getValues() != null) {
+                textValues[i] = condition.getValues().toArray(new String[0]);
+                values[i] = new byte[textValues[i].length][];
+                for (int j = 0; j < textValues[i].length; j++) {
+                    values[i][j] = textValues[i][j].getBytes(CsvBytes.CHARSET);
+                }
+                valueSets.add(textValues[i].length > MAX_LINEAR_VALUES ? new HashSet<>(condition.getValues()) : null);
+            } else {
+                valueSets.add(null);
+                from[i] = condition.getFrom();
+                to[i] = condition.getTo();
+            }
+        }
+    }
+
+    /**
+     * Checks a row held as bytes against every condition.
+     *
+     * @param bytes the buffer holding the row
+     * @param start the index at which the row starts
+     * @param end the index just past the row content
+     * @return true if the row matches the query
+     */
+    boolean test(ByteBuffer bytes, int start, int end) {
+        for (int i = 0; i < positions.length; i++) {
+            int fieldStart = CsvBytes.fieldStart(bytes, start, end, positions[i]);
+            if (fieldStart < 0) return false;
+            int fieldEnd = CsvBytes.fieldEnd(bytes, fieldStart, end);
+
+            if (valueSets.get(i) != null) {
+                if (!valueSets.get(i).contains(CsvBytes.decodeField(bytes, fieldStart, fieldEnd))) return false;
+            } else if (values[i] != null) {
+                if (!anyEquals(bytes, fieldStart, fieldEnd, values[i])) return false;
+            } else if (CsvBytes.isQuoted(bytes, fieldStart, fieldEnd)) {
+                String field = CsvBytes.decodeField(bytes, fieldStart, fieldEnd);
+                if (!inRange(field, 0, field.length(), i)) return false;
+            } else if (!inRange(new AsciiChars(bytes), fieldStart, fieldEnd, i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Checks a decoded row against every condition.
+     *
+     * @param line the CSV row
+     * @return true if the row matches the query
+     */
+    boolean test(String line) {
+        for (int i = 0; i < positions.length; i++) {
+            String field = ColumnIndex.valueAt(line, positions[i]);
+            if (field == null) return false;
+
+            if (valueSets.get(i) != null) {
+                if (!valueSets.get(i).contains(field)) return false;
+            } else if (textValues[i] != null) {
+                if (!anyEquals(field, textValues[i])) return false;
+            } else if (!inRange(field, 0, field.length(), i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Checks whether a column held as bytes equals any of the given values.
+     *
+     * @param bytes the buffer holding the row
+     * @param fieldStart the index at which the column starts
+     * @param fieldEnd the index just past the end of the column
+     * @param candidates the encoded values
+     * @return true if the trimmed column equals one of the values
+     */
+    private static boolean anyEquals(ByteBuffer bytes, int fieldStart, int fieldEnd, byte[][] candidates) {
+        for (byte[] candidate : candidates) {
+            if (CsvBytes.fieldEquals(bytes, fieldStart, fieldEnd, candidate)) return true;
+        }
+        return false;
+    }
+
+    /**
+     * Checks whether a trimmed column equals any of the given values.
+     *
+     * @param field the trimmed column
+     * @param candidates the values
+     * @return true if the column equals one of the values
+     */
+    private static boolean anyEquals(String field, String[] candidates) {
+        for (String candidate : candidates) {
+            if (field.equals(candidate)) return true;
+        }
+        return false;
+    }
+
+    /**
+     * Checks whether a timestamp column lies within the range of a condition.
+     *
+     * @param text the characters holding the column
+     * @param fieldStart the index at which the column starts
+     * @param fieldEnd the index just past the end of the column
+     * @param condition the index of the range condition
+     * @return true if the column is a timestamp within the range
+     */
+    private boolean inRange(CharSequence text, int fieldStart, int fieldEnd, int condition) {
+        while (fieldStart < fieldEnd && text.charAt(fieldStart) == ' ') fieldStart++;
+        while (fieldEnd > fieldStart && text.charAt(fieldEnd - 1) == ' ') fieldEnd--;
+        if (fieldStart == fieldEnd) return false;
+
+        LocalDateTime time;
+        try {
+            time = TimestampCodec.parse(text, fieldStart, fieldEnd);
+        } catch (DateTimeException e) {
+            return false;
+        }
+        return (from[condition] == null || !time.isBefore(from[condition]))
+            && (to[condition] == null || time.isBefore(to[condition]));
+    }
+
+    /**
+     * A view of a byte buffer as characters, one per byte, for parsing the ASCII timestamps in place.
+     */
+    private static final class AsciiChars implements CharSequence {
+        private final ByteBuffer bytes;
+
+        /**
+         * Constructs a view of a buffer.
+         *
+         * @param bytes the buffer to view
+         */
+        AsciiChars(ByteBuffer bytes) {
+            this.bytes = bytes;
+        }
+
+        /**
+         * Returns the number of bytes in the buffer.
+         *
+         * @return the length
+         */
+        @Override
+        public int length() {
+            return bytes.limit();
+        }
+
+        /**
+         * Returns a byte of the buffer as a character.
+         *
+         * @param index the index of the byte
+         * @return the character
+         */
+        @Override
+        public char charAt(int index) {
+            return (char) (bytes.get(index) & 0xFF);
+        }
+
+        /**
+         * Decodes a range of the buffer.
+         *
+         * @param start the first index, inclusive
+         * @param end the last index, exclusive
+         * @return the decoded text
+         */
+        @Override
+        public CharSequence subSequence(int start, int end) {
+            return CsvBytes.decode(bytes, start, end);
+        }
+
+        /**
+         * Decodes the whole buffer.
+         *
+         * @return the decoded text
+         */
+        @Override
+        public String toString() {
+            return CsvBytes.decode(bytes, 0, bytes.limit());
+        }
+    }
+}
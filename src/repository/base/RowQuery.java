@@ -0,0 +1,173 @@
+package repository.base;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+
+/**
+ * A conjunction of column conditions that storage engines check on the raw CSV rows while scanning,
+ * so only rows that match every condition are decoded and mapped to entities. A condition is one of:
+ * <ul>
+ *   <li>a column equal to a value,</li>
+ *   <li>a column equal to any of a set of values,</li>
+ *   <li>a timestamp column within a half-open range.</li>
+ * </ul>
+ * Values are compared with the trimmed column, as in {@link CsvFileManager#findLinesByColumnValue(String, String)}.
+ * An equality on an indexed column lets the engine read only the rows the index lists for it.
+ *
+ * <p>Example usage:
+ * <pre>
+ * RowQuery query = new RowQuery()
+ *     .equalTo("doctorId", "D001")
+ *     .in("status", List.of("REQUESTED", "CONFIRMED"))
+ *     .between("startDateTime", day.atStartOfDay(), day.plusDays(1).atStartOfDay());
+ * </pre>
+ *
+ * @author Russell Arvin
+ * @version 1.0
+ */
+public class RowQuery {
+    private final List<Condition> conditions = new ArrayList<>();
+
+    /**
+     * Adds the condition that a column equals a value.
+     *
+     * @param columnName the column to check
+     * @param value the value the column must hold
+     * @return this query
+     * @throws IllegalArgumentException if the column name or value is invalid
+     */
+    public RowQuery equalTo(String columnName, String value) {
+        if (value == null) throw new IllegalArgumentException("Search value cannot be null");
+        return in(columnName, Collections.singletonList(value));
+    }
+
+    /**
+     * Adds the condition that a column equals any of a set of values. An empty set matches no row.
+     *
+     * @param columnName the column to check
+     * @param values the values the column may hold
+     * @return this query
+     * @throws IllegalArgumentException if the column name or a value is invalid
+     */
+    public RowQuery in(String columnName, Collection<String> values) {
+        checkColumnName(columnName);
+        if (values == null || values.contains(null)) {
+            throw new IllegalArgumentException("Search values cannot be null");
+        }
+        conditions.add(new Condition(columnName, new ArrayList<>(new LinkedHashSet<>(values)), null, null));
+        return this;
+    }
+
+    /**
+     * Adds the condition that a timestamp column is at or after one time and before another.
+     * Rows whose column is empty or not a timestamp do not match.
+     *
+     * @param columnName the column to check
+     * @param from the earliest matching time, or null for no lower bound
+     * @param to the time just past the latest matching one, or null for no upper bound
+     * @return this query
+     * @throws IllegalArgumentException if the column name is invalid
+     */
+    public RowQuery between(String columnName, LocalDateTime from, LocalDateTime to) {
+        checkColumnName(columnName);
+        conditions.add(new Condition(columnName, null, from, to));
+        return this;
+    }
+
+    /**
+     * Returns the conditions of the query, in the order they were added.
+     *
+     * @return the conditions
+     */
+    List<Condition> getConditions() {
+        return conditions;
+    }
+
+    /**
+     * Resolves the columns of the query against a header line.
+     *
+     * @param headerLine the header line of the CSV file
+     * @return a filter that checks rows of the file against the query
+     * @throws IllegalArgumentException if a column is not in the header
+     */
+    RowFilter bind(String headerLine) {
+        return new RowFilter(conditions, headerLine);
+    }
+
+    /**
+     * Checks that a column name is usable.
+     *
+     * @param columnName the column name
+     * @throws IllegalArgumentException if the column name is null or empty
+     */
+    private static void checkColumnName(String columnName) {
+        if (columnName == null || columnName.trim().isEmpty()) {
+            throw new IllegalArgumentException("Column name cannot be null or empty");
+        }
+    }
+
+    /**
+     * A single condition on a column: either a set of values or a timestamp range.
+     */
+    static final class Condition {
+        private final String columnName;
+        private final List<String> values;
+        private final LocalDateTime from;
+        private final LocalDateTime to;
+
+        /**
+         * Constructs a condition.
+         *
+         * @param columnName the column to check
+         * @param values the values the column may hold, or null for a range condition
+         * @param from the lower bound of a range condition, inclusive, or null
+         * @param to the upper bound of a range condition, exclusive, or null
+         */
+        private Condition(String columnName, List<String> values, LocalDateTime from, LocalDateTime to) {
+            this.columnName = columnName;
+            this.values = values;
+            this.from = from;
+            this.to = to;
+        }
+
+        /**
+         * Returns the column the condition checks.
+         *
+         * @return the column name
+         */
+        String getColumnName() {
+            return columnName;
+        }
+
+        /**
+         * Returns the values the column may hold.
+         *
+         * @return the values, or null if this is a range condition
+         */
+        List<String> getValues() {
+            return values;
+        }
+
+        /**
+         * Returns the lower bound of a range condition.
+         *
+         * @return the earliest matching time, or null
+         */
+        LocalDateTime getFrom() {
+            return from;
+        }
+
+        /**
+         * Returns the upper bound of a range condition.
+         *
+         * @return the time just past the latest matching one, or null
+         */
+        LocalDateTime getTo() {
+            return to;
+        }
+    }
+}
@@ -0,0 +1,80 @@
+package repository.base;
+
+import java.util.function.LongSupplier;
+
+/**
+ * Allocates increasing numbers from named sequences, such as the numeric part of new patient IDs.
+ * The last value handed out by each sequence is persisted in a CSV file, so numbers are never reused
+ * after a restart. Each allocation reads and writes its counter under the file's write lock, which
+ * also holds across processes, so two callers can never be given the same number.
+ * <p>
+ * The file is append-only: an allocation appends the new value of its counter, and superseded values
+ * are compacted away in the background.
+ *
+ * <p>Example usage:
+ * <pre>
+ * SequenceAllocator sequences = new SequenceAllocator();
+ * long next = sequences.next("patient", () -&gt; 0);
+ * </pre>
+ *
+ * @author Russell Arvin
+ * @version 1.0
+ */
+public class SequenceAllocator {
+    private static final String CSV_FILE = "data/sequences.csv";
+    private static final String CSV_HEADER = "name,value";
+
+    private final CsvFileManager fileManager;
+
+    /**
+     * Constructs a SequenceAllocator backed by the default sequences file.
+     */
+    public SequenceAllocator() {
+        this(CSV_FILE);
+    }
+
+    /**
+     * Constructs a SequenceAllocator backed by the given file.
+     *
+     * @param filePath the path of the CSV file holding the counters
+     */
+    public SequenceAllocator(String filePath) {
+        this.fileManager = new CsvFileManager(filePath, CSV_HEADER, true);
+    }
+
+    /**
+     * Allocates the next number of a sequence. The first allocation of a sequence that has no counter yet
+     * starts after the seed, which lets a sequence take over from IDs that were handed out before it existed.
+     *
+     * @param name the name of the sequence, which must not contain a comma
+     * @param seed supplies the last number already in use, called only if the sequence has no counter yet
+     * @return the allocated number
+     * @throws IllegalArgumentException if the name is empty or contains a comma
+     */
+    public long next(String name, LongSupplier seed) {
+        if (name == null || name.isEmpty() || name.indexOf(',') >= 0) {
+            throw new IllegalArgumentException("Invalid sequence name: " + name);
+        }
+
+        String line = fileManager.computeLine(name, current -> {
+            long last = current == null ? seed.getAsLong() : parseValue(current);
+            return name + "," + (last + 1);
+        });
+        return parseValue(line);
+    }
+
+    /**
+     * Reads the value of a counter line.
+     *
+     * @param line the counter line
+     * @return the value of the counter
+     * @throws RuntimeException if the line does not hold a number
+     */
+    private static long parseValue(String line) {
+        try {
+            return Long.parseLong(line.substring(line.indexOf(',') + 1).trim());
+        } catch (NumberFormatException e) {
+            throw new RuntimeException("Invalid sequence line: " + line);
+        }
+    }
+}
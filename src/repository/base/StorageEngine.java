@@ -0,0 +1,210 @@
+package repository.base;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Stream;
+
+/**
+ * The storage behind a {@link CsvRepository}. An engine stores records as CSV rows whose first column is
+ * the record's ID, and the repository maps the rows to and from entities, so an engine never sees entity types.
+ * <p>
+ * {@link CsvStorageEngine} keeps the rows in a CSV file and reads them from there on every query.
+ * {@link InMemoryStorageEngine} keeps them on the heap and periodically writes them back to the CSV file.
+ *
+ * @author Russell Arvin
+ * @version 1.0
+ */
+public interface StorageEngine {
+
+    /**
+     * Creates the storage engine of a repository.
+     */
+    @FunctionalInterface
+    interface Factory {
+        /**
+         * Creates a storage engine for a CSV file.
+         *
+         * @param filePath the file path of the CSV file
+         * @param header the header row for the CSV file
+         * @param appendOnly whether updates and deletes should be appended instead of rewriting the file
+         * @return the storage engine
+         */
+        StorageEngine create(String filePath, String header, boolean appendOnly);
+    }
+
+    /**
+     * Returns the header of the CSV rows.
+     *
+     * @return the header row
+     */
+    String getHeader();
+
+    /**
+     * Registers a secondary index on a column, so lookups by that column only read the matching rows.
+     *
+     * @param columnName the column to index
+     * @throws IllegalArgumentException if the column is not in the header
+     */
+    void addIndex(String columnName);
+
+    /**
+     * Registers a secondary index on a key column and a timestamp column that keeps the rows of each key
+     * sorted by time, so queries with an equality on the key and a range on the time only read the rows in range.
+     *
+     * @param columnName the key column to index
+     * @param timeColumnName the timestamp column to sort each key's rows by
+     * @throws IllegalArgumentException if either column is not in the header
+     */
+    void addCompositeIndex(String columnName, String timeColumnName);
+
+    /**
+     * Registers a listener for records changed outside this engine, such as by another process.
+     * Engines that cannot see such changes never call it.
+     *
+     * @param listener the listener to call
+     */
+    void addChangeListener(CsvFileManager.ChangeListener listener);
+
+    /**
+     * Picks up records changed outside this engine, notifying the change listeners.
+     */
+    void refresh();
+
+    /**
+     * Loads and indexes the records now instead of on the first query.
+     *
+     * @return the number of records and bytes loaded, and the time it took
+     */
+    CsvLoadStats preload();
+
+    /**
+     * Makes everything written so far durable in a form that loads quickly on the next start.
+     */
+    void checkpoint();
+
+    /**
+     * Reads the row of a record.
+     *
+     * @param id the ID of the record
+     * @return the row, or null if there is no record with the ID
+     */
+    String readLine(String id);
+
+    /**
+     * Reads the rows of several records at once.
+     *
+     * @param ids the IDs of the records
+     * @return the rows keyed by record ID, leaving out IDs that have no record
+     */
+    Map<String, String> readLines(Collection<String> ids);
+
+    /**
+     * Reads the row of the most recently added record.
+     *
+     * @return the row, or null if there are no records
+     */
+    String getLastLine();
+
+    /**
+     * Appends a row unless a record with the same ID exists, as one atomic step.
+     *
+     * @param id the ID of the record, which must be the first column of the row
+     * @param line the row to append
+     * @return true if the row was appended, false if the ID already exists
+     */
+    boolean appendLineIfAbsent(String id, String line);
+
+    /**
+     * Appends a batch of rows unless any of their IDs already exists or repeats within the batch,
+     * in which case nothing is written.
+     *
+     * @param ids the IDs of the records, in the same order as the rows
+     * @param lines the rows to append, in order
+     * @return null if the rows were appended, otherwise the first ID that already exists or repeats
+     */
+    String appendLinesIfAbsent(List<String> ids, List<String> lines);
+
+    /**
+     * Writes a row unless a row of another record matches one of the queries, as one atomic step.
+     * The row is added as a new record if there is no record with its ID, and replaces that record otherwise.
+     *
+     * @param id the ID of the record, which must be the first column of the row
+     * @param line the row to write
+     * @param conflicts the queries no row of another record may match
+     * @return null if the row was written, otherwise the first row that matched a query
+     * @throws IllegalArgumentException if a column of a query is not in the header
+     */
+    String writeLineUnlessMatched(String id, String line, List<RowQuery> conflicts);
+
+    /**
+     * Replaces the row of a record.
+     *
+     * @param id the ID of the record
+     * @param line the new row
+     * @return true if the record was found and replaced, false otherwise
+     */
+    boolean updateLine(String id, String line);
+
+    /**
+     * Deletes a record.
+     *
+     * @param id the ID of the record
+     * @throws RuntimeException if there is no record with the ID
+     */
+    void deleteLine(String id);
+
+    /**
+     * Reads the rows of all records.
+     *
+     * @return the rows, excluding the header
+     */
+    List<String> readAllLines();
+
+    /**
+     * Streams the rows of all records, decoding them lazily. The stream should be closed after use.
+     *
+     * @return a sequential stream of the rows
+     */
+    Stream<String> scan();
+
+    /**
+     * Streams the rows whose column matches a value, decoding them lazily. The stream should be closed after use.
+     *
+     * @param columnName the column to filter by
+     * @param value the value the column must hold
+     * @return a sequential stream of the matching rows
+     * @throws IllegalArgumentException if the column name or value is invalid
+     */
+    Stream<String> scan(String columnName, String value);
+
+    /**
+     * Streams the rows that match every condition of a query, checking the conditions before a row is
+     * decoded where the engine can. The stream should be closed after use.
+     *
+     * @param query the conditions rows must match
+     * @return a sequential stream of the matching rows
+     * @throws IllegalArgumentException if a column of the query is not in the header
+     */
+    Stream<String> scan(RowQuery query);
+
+    /**
+     * Finds the rows whose column matches a value, through the column's index if it has one.
+     *
+     * @param columnName the column to search by
+     * @param value the value the column must hold
+     * @return the matching rows
+     * @throws IllegalArgumentException if the column name or value is invalid
+     */
+    List<String> findLinesByColumnValue(String columnName, String value);
+
+    /**
+     * Finds the first row whose column matches a value, through the column's index if it has one.
+     *
+     * @param columnName the column to search by
+     * @param value the value the column must hold
+     * @return the first matching row, or null if there is none
+     * @throws IllegalArgumentException if the column name is invalid
+     */
+    String findLineByColumnValue(String columnName, String value);
+}
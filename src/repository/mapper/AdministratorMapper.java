@@ -2,8 +2,8 @@ package repository.mapper;
 
 import enums.Gender;
 import java.nio.charset.StandardCharsets;
-import java.time.LocalDateTime;
 import model.Administrator;
+import util.CsvCursor;
 
 /**
  * The AdministratorMapper class provides a mapping from a CSV line to an Administrator object.
@@ -15,23 +15,31 @@ import model.Administrator;
 public class AdministratorMapper implements BaseMapper<Administrator> {
 
     /**
-     * Converts a CSV line into an Administrator object by parsing each field.
+     * Reads an Administrator object from the fields of a CSV line.
      *
-     * @param csvLine The CSV line containing Administrator data.
+     * @param fields The cursor positioned at the first field of a line containing Administrator data.
      * @return An Administrator object constructed from the CSV data.
      */
-    public Administrator fromCsvString(String csvLine) {
-        String[] parts = csvLine.split(",");
-
+    public Administrator fromCsv(CsvCursor fields) {
         return new Administrator(
-            parts[0],
-            parts[1],
-            parts[2].getBytes(StandardCharsets.UTF_8),
-            parts[3],
-            Integer.parseInt(parts[4]),
-            Gender.valueOf(parts[5]),
-            LocalDateTime.parse(parts[6]),
-            LocalDateTime.parse(parts[7])
+            fields.nextString(),
+            fields.nextString(),
+            fields.nextString().getBytes(StandardCharsets.UTF_8),
+            fields.nextString(),
+            fields.nextInt(),
+            fields.nextEnum(Gender.class),
+            fields.nextDateTime(),
+            fields.nextDateTime()
         );
     }
+
+    /**
+     * Creates an array of Administrator objects.
+     *
+     * @param size The length of the array.
+     * @return A new Administrator array with the given length.
+     */
+    public Administrator[] newArray(int size) {
+        return new Administrator[size];
+    }
 }
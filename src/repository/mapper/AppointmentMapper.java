@@ -1,8 +1,8 @@
 package repository.mapper;
 
 import enums.AppointmentStatus;
-import java.time.LocalDateTime;
 import model.Appointment;
+import util.CsvCursor;
 
 /**
  * The AppointmentMapper class provides a mapping from a CSV line to an Appointment object.
@@ -14,24 +14,32 @@ import model.Appointment;
 public class AppointmentMapper implements BaseMapper<Appointment> {
 
     /**
-     * Converts a CSV line into an Appointment object by parsing each field.
+     * Reads an Appointment object from the fields of a CSV line.
      *
-     * @param csvLine The CSV line containing Appointment data.
+     * @param fields The cursor positioned at the first field of a line containing Appointment data.
      * @return An Appointment object constructed from the CSV data.
      */
-    public Appointment fromCsvString(String csvLine) {
-        String[] parts = csvLine.split(",");
-
+    public Appointment fromCsv(CsvCursor fields) {
         return new Appointment(
-            parts[0],
-            parts[1],
-            parts[2],
-            LocalDateTime.parse(parts[3]),
-            LocalDateTime.parse(parts[4]),
-            AppointmentStatus.valueOf(parts[5]),
-            parts[6],
-            LocalDateTime.parse(parts[7]),
-            LocalDateTime.parse(parts[8])
+            fields.nextString(),
+            fields.nextString(),
+            fields.nextString(),
+            fields.nextDateTime(),
+            fields.nextDateTime(),
+            fields.nextEnum(AppointmentStatus.class),
+            fields.nextString(),
+            fields.nextDateTime(),
+            fields.nextDateTime()
         );
     }
+
+    /**
+     * Creates an array of Appointment objects.
+     *
+     * @param size The length of the array.
+     * @return A new Appointment array with the given length.
+     */
+    public Appointment[] newArray(int size) {
+        return new Appointment[size];
+    }
 }
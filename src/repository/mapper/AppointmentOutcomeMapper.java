@@ -1,8 +1,8 @@
 package repository.mapper;
 
 import enums.AppointmentServiceType;
-import java.time.LocalDateTime;
 import model.AppointmentOutcome;
+import util.CsvCursor;
 
 /**
  * The AppointmentOutcomeMapper class provides a mapping from a CSV line to an AppointmentOutcome object.
@@ -14,21 +14,30 @@ import model.AppointmentOutcome;
 public class AppointmentOutcomeMapper implements BaseMapper<AppointmentOutcome> {
 
     /**
-     * Converts a CSV line into an AppointmentOutcome object by parsing each field.
+     * Reads an AppointmentOutcome object from the fields of a CSV line.
      *
-     * @param csvLine The CSV line containing AppointmentOutcome data.
+     * @param fields The cursor positioned at the first field of a line containing AppointmentOutcome data.
      * @return An AppointmentOutcome object constructed from the CSV data.
      */
-    public AppointmentOutcome fromCsvString(String csvLine) {
-        String[] parts = csvLine.split(",");
+    public AppointmentOutcome fromCsv(CsvCursor fields) {
         return new AppointmentOutcome(
-            parts[0],
-            parts[1],
-            parts[2],
-            AppointmentServiceType.valueOf(parts[3]),
-            parts[4],
-            LocalDateTime.parse(parts[5]),
-            LocalDateTime.parse(parts[6])
+            fields.nextString(),
+            fields.nextString(),
+            fields.nextString(),
+            fields.nextEnum(AppointmentServiceType.class),
+            fields.nextString(),
+            fields.nextDateTime(),
+            fields.nextDateTime()
         );
     }
+
+    /**
+     * Creates an array of AppointmentOutcome objects.
+     *
+     * @param size The length of the array.
+     * @return A new AppointmentOutcome array with the given length.
+     */
+    public AppointmentOutcome[] newArray(int size) {
+        return new AppointmentOutcome[size];
+    }
 }
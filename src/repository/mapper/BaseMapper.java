@@ -1,6 +1,7 @@
 package repository.mapper;
 
 import model.BaseEntity;
+import util.CsvCursor;
 
 /**
  * The BaseMapper interface defines the contract for mappers that convert CSV strings to entity objects.
@@ -19,5 +20,24 @@ public interface BaseMapper<T extends BaseEntity> {
      * @param csvString The CSV string representing the entity.
      * @return The entity object constructed from the CSV data.
      */
-    T fromCsvString(String csvString);
+    default T fromCsvString(String csvString) {
+        return fromCsv(new CsvCursor(csvString));
+    }
+
+    /**
+     * Reads an entity object of type T from the fields of a CSV line. Repositories that map many lines
+     * reset one cursor to each line in turn, so no cursor is created per line.
+     *
+     * @param fields The cursor positioned at the first field of the CSV line.
+     * @return The entity object constructed from the CSV data.
+     */
+    T fromCsv(CsvCursor fields);
+
+    /**
+     * Creates an array of type T, so repositories can return typed arrays without reflection.
+     *
+     * @param size The length of the array.
+     * @return A new array of type T with the given length.
+     */
+    T[] newArray(int size);
 }
@@ -2,8 +2,8 @@ package repository.mapper;
 
 import enums.Gender;
 import java.nio.charset.StandardCharsets;
-import java.time.LocalDateTime;
 import model.Doctor;
+import util.CsvCursor;
 
 /**
  * The DoctorMapper class provides a mapping from a CSV line to a Doctor object.
@@ -15,25 +15,33 @@ import model.Doctor;
 public class DoctorMapper implements BaseMapper<Doctor> {
 
     /**
-     * Converts a CSV line into a Doctor object by parsing each field.
+     * Reads a Doctor object from the fields of a CSV line.
      *
-     * @param csvLine The CSV line containing Doctor data.
+     * @param fields The cursor positioned at the first field of a line containing Doctor data.
      * @return A Doctor object constructed from the CSV data.
      */
-    public Doctor fromCsvString(String csvLine) {
-        String[] parts = csvLine.split(",");
-
+    public Doctor fromCsv(CsvCursor fields) {
         return new Doctor(
-            parts[0],
-            parts[1],
-            parts[2].getBytes(StandardCharsets.UTF_8),
-            parts[3],
-            Integer.parseInt(parts[4]),
-            Gender.valueOf(parts[5]),
-            Integer.parseInt(parts[6]),
-            Integer.parseInt(parts[7]),
-            LocalDateTime.parse(parts[8]),
-            LocalDateTime.parse(parts[9])
+            fields.nextString(),
+            fields.nextString(),
+            fields.nextString().getBytes(StandardCharsets.UTF_8),
+            fields.nextString(),
+            fields.nextInt(),
+            fields.nextEnum(Gender.class),
+            fields.nextInt(),
+            fields.nextInt(),
+            fields.nextDateTime(),
+            fields.nextDateTime()
         );
     }
+
+    /**
+     * Creates an array of Doctor objects.
+     *
+     * @param size The length of the array.
+     * @return A new Doctor array with the given length.
+     */
+    public Doctor[] newArray(int size) {
+        return new Doctor[size];
+    }
 }
@@ -1,8 +1,8 @@
 package repository.mapper;
 
 import enums.MedicalRecordType;
-import java.time.LocalDateTime;
 import model.MedicalRecord;
+import util.CsvCursor;
 
 /**
  * The MedicalRecordMapper class provides a mapping from a CSV line to a MedicalRecord object.
@@ -14,22 +14,30 @@ import model.MedicalRecord;
 public class MedicalRecordMapper implements BaseMapper<MedicalRecord> {
 
     /**
-     * Converts a CSV line into a MedicalRecord object by parsing each field.
+     * Reads a MedicalRecord object from the fields of a CSV line.
      *
-     * @param csvLine The CSV line containing MedicalRecord data.
+     * @param fields The cursor positioned at the first field of a line containing MedicalRecord data.
      * @return A MedicalRecord object constructed from the CSV data.
      */
-    public MedicalRecord fromCsvString(String csvLine) {
-        String[] parts = csvLine.split(",");
-
+    public MedicalRecord fromCsv(CsvCursor fields) {
         return new MedicalRecord(
-            parts[0],
-            parts[1],
-            parts[2],
-            MedicalRecordType.valueOf(parts[3]),
-            parts[4],
-            LocalDateTime.parse(parts[5]),
-            LocalDateTime.parse(parts[6])
+            fields.nextString(),
+            fields.nextString(),
+            fields.nextString(),
+            fields.nextEnum(MedicalRecordType.class),
+            fields.nextString(),
+            fields.nextDateTime(),
+            fields.nextDateTime()
         );
     }
+
+    /**
+     * Creates an array of MedicalRecord objects.
+     *
+     * @param size The length of the array.
+     * @return A new MedicalRecord array with the given length.
+     */
+    public MedicalRecord[] newArray(int size) {
+        return new MedicalRecord[size];
+    }
 }
@@ -1,7 +1,7 @@
 package repository.mapper;
 
-import java.time.LocalDateTime;
 import model.Medicine;
+import util.CsvCursor;
 
 /**
  * The MedicineMapper class provides a mapping from a CSV line to a Medicine object.
@@ -13,21 +13,29 @@ import model.Medicine;
 public class MedicineMapper implements BaseMapper<Medicine> {
 
     /**
-     * Converts a CSV line into a Medicine object by parsing each field.
+     * Reads a Medicine object from the fields of a CSV line.
      *
-     * @param csvLine The CSV line containing Medicine data.
+     * @param fields The cursor positioned at the first field of a line containing Medicine data.
      * @return A Medicine object constructed from the CSV data.
      */
-    public Medicine fromCsvString(String csvLine) {
-        String[] parts = csvLine.split(",");
-
+    public Medicine fromCsv(CsvCursor fields) {
         return new Medicine(
-            parts[0],
-            parts[1],
-            Integer.parseInt(parts[2]),
-            Integer.parseInt(parts[3]),
-            LocalDateTime.parse(parts[4]),
-            LocalDateTime.parse(parts[5])
+            fields.nextString(),
+            fields.nextString(),
+            fields.nextInt(),
+            fields.nextInt(),
+            fields.nextDateTime(),
+            fields.nextDateTime()
         );
     }
+
+    /**
+     * Creates an array of Medicine objects.
+     *
+     * @param size The length of the array.
+     * @return A new Medicine array with the given length.
+     */
+    public Medicine[] newArray(int size) {
+        return new Medicine[size];
+    }
 }
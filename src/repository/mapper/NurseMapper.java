@@ -2,8 +2,8 @@ package repository.mapper;
 
 import enums.Gender;
 import java.nio.charset.StandardCharsets;
-import java.time.LocalDateTime;
 import model.Nurse;
+import util.CsvCursor;
 
 /**
  * The NurseMapper class provides a mapping from a CSV line to a Nurse object.
@@ -15,23 +15,31 @@ import model.Nurse;
 public class NurseMapper implements BaseMapper<Nurse> {
 
     /**
-     * Converts a CSV line into a Nurse object by parsing each field.
+     * Reads a Nurse object from the fields of a CSV line.
      *
-     * @param csvLine The CSV line containing Nurse data.
+     * @param fields The cursor positioned at the first field of a line containing Nurse data.
      * @return A Nurse object constructed from the CSV data.
      */
-    public Nurse fromCsvString(String csvLine) {
-        String[] parts = csvLine.split(",");
-
+    public Nurse fromCsv(CsvCursor fields) {
         return new Nurse(
-            parts[0],
-            parts[1],
-            parts[2].getBytes(StandardCharsets.UTF_8),
-            parts[3],
-            Integer.parseInt(parts[4]),
-            Gender.valueOf(parts[5]),
-            LocalDateTime.parse(parts[6]),
-            LocalDateTime.parse(parts[7])
+            fields.nextString(),
+            fields.nextString(),
+            fields.nextString().getBytes(StandardCharsets.UTF_8),
+            fields.nextString(),
+            fields.nextInt(),
+            fields.nextEnum(Gender.class),
+            fields.nextDateTime(),
+            fields.nextDateTime()
         );
     }
+
+    /**
+     * Creates an array of Nurse objects.
+     *
+     * @param size The length of the array.
+     * @return A new Nurse array with the given length.
+     */
+    public Nurse[] newArray(int size) {
+        return new Nurse[size];
+    }
 }
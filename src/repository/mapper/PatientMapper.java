@@ -3,9 +3,8 @@ package repository.mapper;
 import enums.BloodType;
 import enums.Gender;
 import java.nio.charset.StandardCharsets;
-import java.time.LocalDate;
-import java.time.LocalDateTime;
 import model.Patient;
+import util.CsvCursor;
 
 /**
  * The PatientMapper class provides a mapping from a CSV line to a Patient object.
@@ -17,27 +16,35 @@ import model.Patient;
 public class PatientMapper implements BaseMapper<Patient> {
 
     /**
-     * Converts a CSV line into a Patient object by parsing each field.
+     * Reads a Patient object from the fields of a CSV line.
      *
-     * @param csvLine The CSV line containing Patient data.
+     * @param fields The cursor positioned at the first field of a line containing Patient data.
      * @return A Patient object constructed from the CSV data.
      */
-    public Patient fromCsvString(String csvLine) {
-        String[] parts = csvLine.split(",");
-        
+    public Patient fromCsv(CsvCursor fields) {
         return new Patient(
-            parts[0],                           // id
-            parts[1],                           // password
-            parts[2].getBytes(StandardCharsets.UTF_8), // salt
-            parts[3],                           // name
-            Integer.parseInt(parts[4]),         // age
-            LocalDate.parse(parts[5]),          // dateOfBirth
-            Gender.valueOf(parts[6]),           // gender
-            BloodType.valueOf(parts[7]),        // bloodType
-            Integer.parseInt(parts[8]),         // phoneNumber
-            parts[9],                           // email
-            LocalDateTime.parse(parts[10]),     // createdAt
-            LocalDateTime.parse(parts[11])      // updatedAt
+            fields.nextString(),                                  // id
+            fields.nextString(),                                  // password
+            fields.nextString().getBytes(StandardCharsets.UTF_8), // salt
+            fields.nextString(),                                  // name
+            fields.nextInt(),                                     // age
+            fields.nextDate(),                                    // dateOfBirth
+            fields.nextEnum(Gender.class),                        // gender
+            fields.nextEnum(BloodType.class),                     // bloodType
+            fields.nextInt(),                                     // phoneNumber
+            fields.nextString(),                                  // email
+            fields.nextDateTime(),                                // createdAt
+            fields.nextDateTime()                                 // updatedAt
         );
     }
+
+    /**
+     * Creates an array of Patient objects.
+     *
+     * @param size The length of the array.
+     * @return A new Patient array with the given length.
+     */
+    public Patient[] newArray(int size) {
+        return new Patient[size];
+    }
 }
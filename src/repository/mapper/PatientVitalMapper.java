@@ -1,7 +1,7 @@
 package repository.mapper;
 
-import java.time.LocalDateTime;
 import model.PatientVital;
+import util.CsvCursor;
 
 /**
  * The PatientVitalMapper class provides a mapping from a CSV line to a PatientVital object.
@@ -13,22 +13,31 @@ import model.PatientVital;
 public class PatientVitalMapper implements BaseMapper<PatientVital> {
 
     /**
-     * Converts a CSV line into a PatientVital object by parsing each field.
+     * Reads a PatientVital object from the fields of a CSV line.
      *
-     * @param csvLine The CSV line containing PatientVital data.
+     * @param fields The cursor positioned at the first field of a line containing PatientVital data.
      * @return A PatientVital object constructed from the CSV data.
      */
-    public PatientVital fromCsvString(String csvLine) {
-        String[] parts = csvLine.split(",");
+    public PatientVital fromCsv(CsvCursor fields) {
         return new PatientVital(
-            parts[0],                          // id
-            parts[1],                          // patientId
-            Integer.parseInt(parts[2]),        // bloodOxygen
-            Integer.parseInt(parts[3]),        // height
-            Integer.parseInt(parts[4]),        // weight
-            Integer.parseInt(parts[5]),        // bloodPressure
-            LocalDateTime.parse(parts[6]),     // createdAt
-            LocalDateTime.parse(parts[7])      // updatedAt
+            fields.nextString(),   // id
+            fields.nextString(),   // patientId
+            fields.nextInt(),      // bloodOxygen
+            fields.nextInt(),      // height
+            fields.nextInt(),      // weight
+            fields.nextInt(),      // bloodPressure
+            fields.nextDateTime(), // createdAt
+            fields.nextDateTime()  // updatedAt
         );
     }
+
+    /**
+     * Creates an array of PatientVital objects.
+     *
+     * @param size The length of the array.
+     * @return A new PatientVital array with the given length.
+     */
+    public PatientVital[] newArray(int size) {
+        return new PatientVital[size];
+    }
 }
@@ -2,8 +2,8 @@ package repository.mapper;
 
 import enums.Gender;
 import java.nio.charset.StandardCharsets;
-import java.time.LocalDateTime;
 import model.Pharmacist;
+import util.CsvCursor;
 
 /**
  * The PharmacistMapper class provides a mapping from a CSV line to a Pharmacist object.
@@ -15,23 +15,31 @@ import model.Pharmacist;
 public class PharmacistMapper implements BaseMapper<Pharmacist> {
 
     /**
-     * Converts a CSV line into a Pharmacist object by parsing each field.
+     * Reads a Pharmacist object from the fields of a CSV line.
      *
-     * @param csvLine The CSV line containing Pharmacist data.
+     * @param fields The cursor positioned at the first field of a line containing Pharmacist data.
      * @return A Pharmacist object constructed from the CSV data.
      */
-    public Pharmacist fromCsvString(String csvLine) {
-        String[] parts = csvLine.split(",");
-
+    public Pharmacist fromCsv(CsvCursor fields) {
         return new Pharmacist(
-            parts[0],                          // id
-            parts[1],                          // password
-            parts[2].getBytes(StandardCharsets.UTF_8), // salt
-            parts[3],                          // name
-            Integer.parseInt(parts[4]),        // age
-            Gender.valueOf(parts[5]),          // gender
-            LocalDateTime.parse(parts[6]),     // createdAt
-            LocalDateTime.parse(parts[7])      // updatedAt
+            fields.nextString(),                                  // id
+            fields.nextString(),                                  // password
+            fields.nextString().getBytes(StandardCharsets.UTF_8), // salt
+            fields.nextString(),                                  // name
+            fields.nextInt(),                                     // age
+            fields.nextEnum(Gender.class),                        // gender
+            fields.nextDateTime(),                                // createdAt
+            fields.nextDateTime()                                 // updatedAt
         );
     }
+
+    /**
+     * Creates an array of Pharmacist objects.
+     *
+     * @param size The length of the array.
+     * @return A new Pharmacist array with the given length.
+     */
+    public Pharmacist[] newArray(int size) {
+        return new Pharmacist[size];
+    }
 }
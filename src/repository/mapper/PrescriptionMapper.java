@@ -1,8 +1,8 @@
 package repository.mapper;
 
 import enums.PrescriptionStatus;
-import java.time.LocalDateTime;
 import model.Prescription;
+import util.CsvCursor;
 
 /**
  * The PrescriptionMapper class provides a mapping from a CSV line to a Prescription object.
@@ -14,22 +14,30 @@ import model.Prescription;
 public class PrescriptionMapper implements BaseMapper<Prescription> {
 
     /**
-     * Converts a CSV line into a Prescription object by parsing each field.
+     * Reads a Prescription object from the fields of a CSV line.
      *
-     * @param csvLine The CSV line containing Prescription data.
+     * @param fields The cursor positioned at the first field of a line containing Prescription data.
      * @return A Prescription object constructed from the CSV data.
      */
-    public Prescription fromCsvString(String csvLine) {
-        String[] parts = csvLine.split(",");
-
+    public Prescription fromCsv(CsvCursor fields) {
         return new Prescription(
-            parts[0],                          // id
-            parts[1],                          // appointmentOutcomeId
-            parts[2],                          // medicineId
-            PrescriptionStatus.valueOf(parts[3]), // status
-            Integer.parseInt(parts[4]),        // amount
-            LocalDateTime.parse(parts[5]),     // createdAt
-            LocalDateTime.parse(parts[6])      // updatedAt
+            fields.nextString(),                       // id
+            fields.nextString(),                       // appointmentOutcomeId
+            fields.nextString(),                       // medicineId
+            fields.nextEnum(PrescriptionStatus.class), // status
+            fields.nextInt(),                          // amount
+            fields.nextDateTime(),                     // createdAt
+            fields.nextDateTime()                      // updatedAt
         );
     }
+
+    /**
+     * Creates an array of Prescription objects.
+     *
+     * @param size The length of the array.
+     * @return A new Prescription array with the given length.
+     */
+    public Prescription[] newArray(int size) {
+        return new Prescription[size];
+    }
 }
@@ -1,8 +1,8 @@
 package repository.mapper;
 
 import enums.ReplenishmentRequestStatus;
-import java.time.LocalDateTime;
 import model.ReplenishmentRequest;
+import util.CsvCursor;
 
 /**
  * The ReplenishmentRequestMapper class provides a mapping from a CSV line to a ReplenishmentRequest object.
@@ -14,21 +14,30 @@ import model.ReplenishmentRequest;
 public class ReplenishmentRequestMapper implements BaseMapper<ReplenishmentRequest> {
 
     /**
-     * Converts a CSV line into a ReplenishmentRequest object by parsing each field.
+     * Reads a ReplenishmentRequest object from the fields of a CSV line.
      *
-     * @param csvLine The CSV line containing ReplenishmentRequest data.
+     * @param fields The cursor positioned at the first field of a line containing ReplenishmentRequest data.
      * @return A ReplenishmentRequest object constructed from the CSV data.
      */
-    public ReplenishmentRequest fromCsvString(String csvLine) {
-        String[] parts = csvLine.split(",");
+    public ReplenishmentRequest fromCsv(CsvCursor fields) {
         return new ReplenishmentRequest(
-            parts[0],                          // id
-            parts[1],                          // medicineId
-            parts[2],                          // pharmacistId
-            Integer.parseInt(parts[3]),        // newAmount
-            ReplenishmentRequestStatus.valueOf(parts[4]), // status
-            LocalDateTime.parse(parts[5]),     // createdAt
-            LocalDateTime.parse(parts[6])      // updatedAt
+            fields.nextString(),                               // id
+            fields.nextString(),                               // medicineId
+            fields.nextString(),                               // pharmacistId
+            fields.nextInt(),                                  // newAmount
+            fields.nextEnum(ReplenishmentRequestStatus.class), // status
+            fields.nextDateTime(),                             // createdAt
+            fields.nextDateTime()                              // updatedAt
         );
     }
+
+    /**
+     * Creates an array of ReplenishmentRequest objects.
+     *
+     * @param size The length of the array.
+     * @return A new ReplenishmentRequest array with the given length.
+     */
+    public ReplenishmentRequest[] newArray(int size) {
+        return new ReplenishmentRequest[size];
+    }
 }
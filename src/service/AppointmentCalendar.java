@@ -0,0 +1,463 @@
+package service;
+
+import enums.AppointmentStatus;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.stream.Stream;
+import model.Appointment;
+import repository.AppointmentRepository;
+import util.DaySlots;
+import util.IntervalTree;
+import util.TimestampCodec;
+
+/**
+ * The AppointmentCalendar class keeps the time taken up by appointments in memory, as one interval tree
+ * per doctor and one per patient, so checking whether a doctor or patient is free over a time slot takes
+ * O(log n) instead of a pass over their appointments. Cancelled appointments take up no time.
+ * <p>
+ * Each doctor-day also has a bitmap of the {@link DaySlots} its appointments overlap, so checking a
+ * whole slot, or listing a day's free slots, is a bitwise operation on a single {@code long}.
+ * <p>
+ * The calendar is loaded from the repository on first use. {@link AppointmentService} keeps it up to date
+ * when appointments are created, rescheduled or change status. Before each query it checks the appointments
+ * file's version stamp, and appointments written by another process are reloaded once the repository sees them.
+ *
+ * @author Russell Arvin
+ * @version 1.0
+ */
+public class AppointmentCalendar {
+    private final AppointmentRepository appointmentRepository;
+
+    // Guards the bookings, trees and doctor-day bitmaps below
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+    private final Map<String, Booking> bookings = new HashMap<>();
+    private final Map<String, IntervalTree<String>> doctorBookings = new HashMap<>();
+    private final Map<String, IntervalTree<String>> patientBookings = new HashMap<>();
+    private final Map<String, Map<LocalDate, Long>> doctorDays = new HashMap<>();
+    private volatile boolean loaded = false;
+
+    // Appointments written by another process, reloaded on the next query
+    private final Set<String> staleIds = ConcurrentHashMap.newKeySet();
+
+    /**
+     * Constructs an AppointmentCalendar over the appointments in a repository.
+     *
+     * @param appointmentRepository The repository for appointment data.
+     */
+    public AppointmentCalendar(AppointmentRepository appointmentRepository) {
+        this.appointmentRepository = appointmentRepository;
+        appointmentRepository.addChangeListener(this::onChange);
+    }
+
+    /**
+     * Records the current time slot and status of an appointment, replacing what was recorded for it before.
+     *
+     * @param appointment The appointment as it was saved.
+     */
+    public void put(Appointment appointment) {
+        ensureCurrent();
+        lock.writeLock().lock();
+        try {
+            removeBooking(appointment.getId());
+            addBooking(appointment);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Checks whether a doctor has no appointment that overlaps a time slot. Slots made of whole
+     * {@link DaySlots} are checked against the doctor-day bitmap, others against the doctor's interval tree.
+     *
+     * @param doctorId      The ID of the doctor.
+     * @param startDateTime The start of the time slot.
+     * @param endDateTime   The end of the time slot.
+     * @return true if the doctor is free for the whole slot, otherwise false.
+     */
+    public boolean isDoctorFree(String doctorId, LocalDateTime startDateTime, LocalDateTime endDateTime) {
+        if (DaySlots.isAligned(startDateTime, endDateTime)) {
+            long slots = DaySlots.covering(startDateTime, endDateTime);
+            return (getOccupiedSlots(doctorId, startDateTime.toLocalDate()) & slots) == 0;
+        }
+        return isFree(doctorBookings, doctorId, startDateTime, endDateTime);
+    }
+
+    /**
+     * Returns the bitmap of the slots of a day that a doctor's appointments overlap.
+     *
+     * @param doctorId The ID of the doctor.
+     * @param date     The day.
+     * @return The bitmap of the occupied {@link DaySlots}, or 0 if the doctor has nothing booked that day.
+     */
+    public long getOccupiedSlots(String doctorId, LocalDate date) {
+        ensureCurrent();
+        lock.readLock().lock();
+        try {
+            Map<LocalDate, Long> days = doctorDays.get(doctorId);
+            if (days == null) return 0L;
+            return days.getOrDefault(date, 0L);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Returns the bitmaps of the slots of consecutive days that a doctor's appointments overlap.
+     *
+     * @param doctorId The ID of the doctor.
+     * @param fromDate The first day.
+     * @param days     The number of days.
+     * @return The bitmaps of the occupied {@link DaySlots}, one per day starting with the first.
+     */
+    public long[] getOccupiedSlots(String doctorId, LocalDate fromDate, int days) {
+        long[] slots = new long[days];
+        ensureCurrent();
+        lock.readLock().lock();
+        try {
+            Map<LocalDate, Long> doctorSlots = doctorDays.get(doctorId);
+            if (doctorSlots == null) return slots;
+            for (int day = 0; day < days; day++) {
+                slots[day] = doctorSlots.getOrDefault(fromDate.plusDays(day), 0L);
+            }
+            return slots;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Returns the bitmaps of the slots of consecutive days that a patient's appointments overlap,
+     * built from the patient's interval tree.
+     *
+     * @param patientId The ID of the patient.
+     * @param fromDate  The first day.
+     * @param days      The number of days.
+     * @return The bitmaps of the occupied {@link DaySlots}, one per day starting with the first.
+     */
+    public long[] getPatientOccupiedSlots(String patientId, LocalDate fromDate, int days) {
+        long[] slots = new long[days];
+        ensureCurrent();
+        lock.readLock().lock();
+        try {
+            IntervalTree<String> tree = patientBookings.get(patientId);
+            if (tree == null) return slots;
+
+            LocalDate toDate = fromDate.plusDays(days);
+            List<String> ids = tree.findOverlapping(
+                TimestampCodec.toEpochMicros(fromDate.atStartOfDay()),
+                TimestampCodec.toEpochMicros(toDate.atStartOfDay())
+            );
+            for (String id : ids) {
+                Booking booking = bookings.get(id);
+                LocalDateTime startDateTime = TimestampCodec.fromEpochMicros(booking.start);
+                LocalDateTime endDateTime = TimestampCodec.fromEpochMicros(booking.end);
+                LocalDate date = startDateTime.toLocalDate().isBefore(fromDate) ? fromDate : startDateTime.toLocalDate();
+                for (; date.isBefore(toDate) && date.atStartOfDay().isBefore(endDateTime); date = date.plusDays(1)) {
+                    slots[(int) (date.toEpochDay() - fromDate.toEpochDay())] |= slotsOn(date, startDateTime, endDateTime);
+                }
+            }
+            return slots;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Checks whether a patient has no appointment that overlaps a time slot.
+     *
+     * @param patientId     The ID of the patient.
+     * @param startDateTime The start of the time slot.
+     * @param endDateTime   The end of the time slot.
+     * @return true if the patient is free for the whole slot, otherwise false.
+     */
+    public boolean isPatientFree(String patientId, LocalDateTime startDateTime, LocalDateTime endDateTime) {
+        return isFree(patientBookings, patientId, startDateTime, endDateTime);
+    }
+
+    /**
+     * Finds the appointments of a doctor that overlap a time slot.
+     *
+     * @param doctorId      The ID of the doctor.
+     * @param startDateTime The start of the time slot.
+     * @param endDateTime   The end of the time slot.
+     * @return The IDs of the overlapping appointments, in order of their start time.
+     */
+    public List<String> findDoctorConflicts(String doctorId, LocalDateTime startDateTime, LocalDateTime endDateTime) {
+        return findConflicts(doctorBookings, doctorId, startDateTime, endDateTime);
+    }
+
+    /**
+     * Finds the appointments of a patient that overlap a time slot.
+     *
+     * @param patientId     The ID of the patient.
+     * @param startDateTime The start of the time slot.
+     * @param endDateTime   The end of the time slot.
+     * @return The IDs of the overlapping appointments, in order of their start time.
+     */
+    public List<String> findPatientConflicts(String patientId, LocalDateTime startDateTime, LocalDateTime endDateTime) {
+        return findConflicts(patientBookings, patientId, startDateTime, endDateTime);
+    }
+
+    /**
+     * Checks whether the owner of a tree has nothing booked over a time slot.
+     *
+     * @param trees         The trees by doctor or patient ID.
+     * @param ownerId       The ID of the doctor or patient.
+     * @param startDateTime The start of the time slot.
+     * @param endDateTime   The end of the time slot.
+     * @return true if nothing overlaps the slot.
+     */
+    private boolean isFree(
+        Map<String, IntervalTree<String>> trees,
+        String ownerId,
+        LocalDateTime startDateTime,
+        LocalDateTime endDateTime
+    ) {
+        ensureCurrent();
+        lock.readLock().lock();
+        try {
+            IntervalTree<String> tree = trees.get(ownerId);
+            return tree == null || !tree.overlaps(
+                TimestampCodec.toEpochMicros(startDateTime),
+                TimestampCodec.toEpochMicros(endDateTime)
+            );
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Finds what the owner of a tree has booked over a time slot.
+     *
+     * @param trees         The trees by doctor or patient ID.
+     * @param ownerId       The ID of the doctor or patient.
+     * @param startDateTime The start of the time slot.
+     * @param endDateTime   The end of the time slot.
+     * @return The IDs of the overlapping appointments.
+     */
+    private List<String> findConflicts(
+        Map<String, IntervalTree<String>> trees,
+        String ownerId,
+        LocalDateTime startDateTime,
+        LocalDateTime endDateTime
+    ) {
+        ensureCurrent();
+        lock.readLock().lock();
+        try {
+            IntervalTree<String> tree = trees.get(ownerId);
+            if (tree == null) return new ArrayList<>();
+            return tree.findOverlapping(
+                TimestampCodec.toEpochMicros(startDateTime),
+                TimestampCodec.toEpochMicros(endDateTime)
+            );
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Loads the calendar on first use, and reloads the appointments another process has written since.
+     * The repository is refreshed first, which only checks the file's version stamp unless another
+     * process has written to it, so such writes are seen by the query that follows them.
+     */
+    private void ensureCurrent() {
+        // Runs the change listener for whatever another process wrote since the last query
+        appointmentRepository.refresh();
+        if (!loaded) load();
+        if (staleIds.isEmpty()) return;
+
+        // Read outside the lock, as the repository may call back into onChange while it reads
+        List<String> ids = new ArrayList<>(staleIds);
+        staleIds.removeAll(ids);
+        Map<String, Appointment> appointments = appointmentRepository.findManyByIds(ids);
+
+        lock.writeLock().lock();
+        try {
+            for (String id : ids) {
+                removeBooking(id);
+                Appointment appointment = appointments.get(id);
+                if (appointment != null) addBooking(appointment);
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Loads every appointment from the repository, replacing whatever the calendar held.
+     */
+    private void load() {
+        lock.writeLock().lock();
+        try {
+            if (loaded) return;
+            bookings.clear();
+            doctorBookings.clear();
+            patientBookings.clear();
+            doctorDays.clear();
+            staleIds.clear();
+
+            try (Stream<Appointment> appointments = appointmentRepository.scan()) {
+                appointments.forEach(this::addBooking);
+            }
+            loaded = true;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Marks appointments written by another process to be reloaded on the next query.
+     *
+     * @param ids The IDs of the written appointments, or null if any appointment may have changed.
+     */
+    private void onChange(Collection<String> ids) {
+        if (ids == null) {
+            loaded = false;
+        } else {
+            staleIds.addAll(ids);
+        }
+    }
+
+    /**
+     * Adds an appointment to the trees of its doctor and patient, unless it is cancelled or has no
+     * valid time slot. Must be called while holding the write lock.
+     *
+     * @param appointment The appointment to add.
+     */
+    private void addBooking(Appointment appointment) {
+        AppointmentStatus status = appointment.getStatus();
+        if (status == AppointmentStatus.DOCTOR_CANCELLED || status == AppointmentStatus.PATIENT_CANCELLED) return;
+        if (appointment.getStartDateTime() == null || appointment.getEndDateTime() == null) return;
+
+        long start = TimestampCodec.toEpochMicros(appointment.getStartDateTime());
+        long end = TimestampCodec.toEpochMicros(appointment.getEndDateTime());
+        if (end <= start) return;
+
+        Booking booking = new Booking(appointment.getDoctorId(), appointment.getPatientId(), start, end);
+        bookings.put(appointment.getId(), booking);
+        doctorBookings.computeIfAbsent(booking.doctorId, key -> new IntervalTree<>()).add(start, end, appointment.getId());
+        patientBookings.computeIfAbsent(booking.patientId, key -> new IntervalTree<>()).add(start, end, appointment.getId());
+
+        Map<LocalDate, Long> days = doctorDays.computeIfAbsent(booking.doctorId, key -> new HashMap<>());
+        LocalDateTime startDateTime = appointment.getStartDateTime();
+        LocalDateTime endDateTime = appointment.getEndDateTime();
+        for (LocalDate date = startDateTime.toLocalDate(); date.atStartOfDay().isBefore(endDateTime); date = date.plusDays(1)) {
+            days.merge(date, slotsOn(date, startDateTime, endDateTime), (a, b) -> a | b);
+        }
+    }
+
+    /**
+     * Removes an appointment from the trees it was added to, if any. Must be called while holding the write lock.
+     *
+     * @param id The ID of the appointment.
+     */
+    private void removeBooking(String id) {
+        Booking booking = bookings.remove(id);
+        if (booking == null) return;
+        removeFrom(doctorBookings, booking.doctorId, booking.start, id);
+        removeFrom(patientBookings, booking.patientId, booking.start, id);
+
+        // Another appointment may overlap the same slots, so rebuild the days from what is left
+        LocalDateTime startDateTime = TimestampCodec.fromEpochMicros(booking.start);
+        LocalDateTime endDateTime = TimestampCodec.fromEpochMicros(booking.end);
+        for (LocalDate date = startDateTime.toLocalDate(); date.atStartOfDay().isBefore(endDateTime); date = date.plusDays(1)) {
+            rebuildDay(booking.doctorId, date);
+        }
+    }
+
+    /**
+     * Recomputes the bitmap of a doctor-day from the doctor's interval tree. Must be called while holding the write lock.
+     *
+     * @param doctorId The ID of the doctor.
+     * @param date     The day.
+     */
+    private void rebuildDay(String doctorId, LocalDate date) {
+        Map<LocalDate, Long> days = doctorDays.get(doctorId);
+        if (days == null) return;
+
+        long slots = 0L;
+        IntervalTree<String> tree = doctorBookings.get(doctorId);
+        if (tree != null) {
+            LocalDateTime dayStart = date.atStartOfDay();
+            List<String> ids = tree.findOverlapping(
+                TimestampCodec.toEpochMicros(dayStart),
+                TimestampCodec.toEpochMicros(dayStart.plusDays(1))
+            );
+            for (String id : ids) {
+                Booking other = bookings.get(id);
+                slots |= slotsOn(date, TimestampCodec.fromEpochMicros(other.start), TimestampCodec.fromEpochMicros(other.end));
+            }
+        }
+
+        if (slots != 0L) {
+            days.put(date, slots);
+        } else {
+            days.remove(date);
+            if (days.isEmpty()) doctorDays.remove(doctorId);
+        }
+    }
+
+    /**
+     * Returns the slots of a day that a time range overlaps.
+     *
+     * @param date          The day.
+     * @param startDateTime The start of the range.
+     * @param endDateTime   The end of the range.
+     * @return The bitmap of the overlapped slots of the day.
+     */
+    private static long slotsOn(LocalDate date, LocalDateTime startDateTime, LocalDateTime endDateTime) {
+        LocalDateTime dayStart = date.atStartOfDay();
+        LocalDateTime dayEnd = dayStart.plusDays(1);
+        LocalDateTime from = startDateTime.isAfter(dayStart) ? startDateTime : dayStart;
+        LocalDateTime to = endDateTime.isBefore(dayEnd) ? endDateTime : dayEnd;
+        return DaySlots.covering(from, to);
+    }
+
+    /**
+     * Removes an appointment from the tree of a doctor or patient, dropping the tree once it is empty.
+     *
+     * @param trees   The trees by doctor or patient ID.
+     * @param ownerId The ID of the doctor or patient.
+     * @param start   The start of the appointment as it was added.
+     * @param id      The ID of the appointment.
+     */
+    private static void removeFrom(Map<String, IntervalTree<String>> trees, String ownerId, long start, String id) {
+        IntervalTree<String> tree = trees.get(ownerId);
+        if (tree == null) return;
+        tree.remove(start, id);
+        if (tree.isEmpty()) trees.remove(ownerId);
+    }
+
+    /**
+     * Where an appointment was added, so it can be found again once its fields have changed.
+     */
+    private static final class Booking {
+        private final String doctorId;
+        private final String patientId;
+        private final long start;
+        private final long end;
+
+        /**
+         * Constructs a Booking.
+         *
+         * @param doctorId  The ID of the doctor.
+         * @param patientId The ID of the patient.
+         * @param start     The start of the appointment in epoch microseconds.
+         * @param end       The end of the appointment in epoch microseconds.
+         */
+        Booking(String doctorId, String patientId, long start, long end) {
+            this.doctorId = doctorId;
+            this.patientId = patientId;
+            this.start = start;
+            this.end = end;
+        }
+    }
+}
@@ -2,7 +2,14 @@ package service;
 
 import enums.AppointmentServiceType;
 import enums.AppointmentStatus;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
 import model.Appointment;
 import model.AppointmentDetail;
 import model.AppointmentOutcome;
@@ -64,51 +71,101 @@ public class AppointmentOutcomeService {
     }
 
     /**
-     * Maps an AppointmentOutcome to an AppointmentOutcomeDetail, including associated prescriptions and appointment details.
+     * Maps multiple AppointmentOutcome records to AppointmentOutcomeDetail objects.
      *
-     * @param outcome The AppointmentOutcome to map.
-     * @return The mapped AppointmentOutcomeDetail.
+     * @param outcomes An array of AppointmentOutcome records to map.
+     * @return An array of mapped AppointmentOutcomeDetail objects.
      */
-    private AppointmentOutcomeDetail mapDetail(AppointmentOutcome outcome) {
-        Prescription[] rawPrescriptions = prescriptionRepository.findManyByOutcomeId(outcome.getId());
-        PrescriptionWithMedicine[] prescriptions = new PrescriptionWithMedicine[rawPrescriptions.length];
-
-        for(int i =0; i < prescriptions.length; i ++){
-            Prescription rawPrescription = rawPrescriptions[i];
-            Medicine medicine = medicineRepository.findOne(rawPrescription.getMedicineId());
-            prescriptions[i] = PrescriptionWithMedicine.fromPrescription(rawPrescription, medicine);
+    private AppointmentOutcomeDetail[] mapDetails(AppointmentOutcome[] outcomes) {
+        Set<String> appointmentIds = new HashSet<>();
+        for (AppointmentOutcome outcome : outcomes) {
+            appointmentIds.add(outcome.getAppointmentId());
         }
+        return mapDetails(outcomes, appointmentRepository.findManyByIds(appointmentIds));
+    }
 
+    /**
+     * Maps multiple AppointmentOutcome records to AppointmentOutcomeDetail objects by joining them with
+     * their prescriptions, medicines, appointments, doctors and patients in memory. Each of those tables
+     * is read once for the whole batch and hashed by ID, instead of once per outcome or prescription.
+     *
+     * @param outcomes     An array of AppointmentOutcome records to map.
+     * @param appointments The appointments of the outcomes, keyed by appointment ID.
+     * @return An array of mapped AppointmentOutcomeDetail objects.
+     */
+    private AppointmentOutcomeDetail[] mapDetails(AppointmentOutcome[] outcomes, Map<String, Appointment> appointments) {
+        List<String> outcomeIds = new ArrayList<>(outcomes.length);
+        for (AppointmentOutcome outcome : outcomes) {
+            outcomeIds.add(outcome.getId());
+        }
 
-        Appointment appointment = appointmentRepository.findOne(outcome.getAppointmentId());
-        Doctor doctor = doctorRepository.findOne(appointment.getDoctorId());
-        Patient patient = patientRepository.findOne(appointment.getPatientId());
+        // Group the prescriptions by outcome, keeping their file order
+        Map<String, List<Prescription>> prescriptionsByOutcome = new HashMap<>();
+        Set<String> medicineIds = new HashSet<>();
+        for (Prescription prescription : prescriptionRepository.findManyByOutcomeIds(outcomeIds)) {
+            prescriptionsByOutcome.computeIfAbsent(prescription.getAppointmentOutcomeId(), id -> new ArrayList<>()).add(prescription);
+            medicineIds.add(prescription.getMedicineId());
+        }
+        Map<String, Medicine> medicines = medicineRepository.findManyByIds(medicineIds);
+
+        Set<String> doctorIds = new HashSet<>();
+        Set<String> patientIds = new HashSet<>();
+        for (Appointment appointment : appointments.values()) {
+            doctorIds.add(appointment.getDoctorId());
+            patientIds.add(appointment.getPatientId());
+        }
+        Map<String, Doctor> doctors = doctorRepository.findManyByIds(doctorIds);
+        Map<String, Patient> patients = patientRepository.findManyByIds(patientIds);
 
-        return AppointmentOutcomeDetail.fromAppointmentOutcome(
-            outcome, 
-            prescriptions, 
-            AppointmentDetail.fromAppointment(
-                appointment, 
-                doctor, 
-                patient
-            )
-        );
+        AppointmentOutcomeDetail[] details = new AppointmentOutcomeDetail[outcomes.length];
+        for (int i = 0; i < details.length; i++) {
+            AppointmentOutcome outcome = outcomes[i];
+
+            List<Prescription> rawPrescriptions = prescriptionsByOutcome.getOrDefault(outcome.getId(), List.of());
+            PrescriptionWithMedicine[] prescriptions = new PrescriptionWithMedicine[rawPrescriptions.size()];
+            for (int j = 0; j < prescriptions.length; j++) {
+                Prescription rawPrescription = rawPrescriptions.get(j);
+                prescriptions[j] = PrescriptionWithMedicine.fromPrescription(rawPrescription, medicines.get(rawPrescription.getMedicineId()));
+            }
+
+            Appointment appointment = appointments.get(outcome.getAppointmentId());
+            details[i] = AppointmentOutcomeDetail.fromAppointmentOutcome(
+                outcome,
+                prescriptions,
+                AppointmentDetail.fromAppointment(
+                    appointment,
+                    doctors.get(appointment.getDoctorId()),
+                    patients.get(appointment.getPatientId())
+                )
+            );
+        }
+        return details;
     }
 
     /**
-     * Maps multiple AppointmentOutcome records to AppointmentOutcomeDetail objects.
+     * Maps completed appointments to the AppointmentOutcomeDetail objects of their outcomes, looking up
+     * all the outcomes in one pass. Appointments without a recorded outcome are left out.
      *
-     * @param outcomes An array of AppointmentOutcome records to map.
-     * @return An array of mapped AppointmentOutcomeDetail objects.
+     * @param appointments The completed appointments.
+     * @return An array of AppointmentOutcomeDetail objects, in the order of the appointments.
      */
-    private AppointmentOutcomeDetail[] mapDetails(AppointmentOutcome[] outcomes) {
-        AppointmentOutcomeDetail[] details = new AppointmentOutcomeDetail[outcomes.length];
+    private AppointmentOutcomeDetail[] mapCompleted(Appointment[] appointments) {
+        Map<String, Appointment> appointmentsById = new HashMap<>();
+        for (Appointment appointment : appointments) {
+            appointmentsById.put(appointment.getId(), appointment);
+        }
 
-        for(int i = 0; i < details.length; i++){
-            AppointmentOutcome outcome = outcomes[i];
-            details[i] = mapDetail(outcome);
+        Map<String, AppointmentOutcome> outcomesByAppointment = new HashMap<>();
+        for (AppointmentOutcome outcome : appointmentOutcomeRepository.findManyByAppointmentIds(appointmentsById.keySet())) {
+            outcomesByAppointment.putIfAbsent(outcome.getAppointmentId(), outcome);
         }
-        return details;    }
+
+        AppointmentOutcome[] outcomes = Arrays.stream(appointments)
+            .map(appointment -> outcomesByAppointment.get(appointment.getId()))
+            .filter(Objects::nonNull)
+            .toArray(AppointmentOutcome[]::new);
+        return mapDetails(outcomes, appointmentsById);
+    }
 
     /**
      * Retrieves completed AppointmentOutcomeDetail records for a specific patient.
@@ -122,14 +179,8 @@ public class AppointmentOutcomeService {
             .filter(appointment -> appointment.getStatus() == AppointmentStatus.COMPLETED)
             .toArray(Appointment[]::new);
 
-        AppointmentOutcomeDetail[] outcomes = new AppointmentOutcomeDetail[completedAppointments.length];
-
-        for(int i = 0; i < outcomes.length; i++){
-            String appointmentId  = completedAppointments[i].getId();
-            AppointmentOutcome rawOutcome = appointmentOutcomeRepository.findOneByAppointmentId(appointmentId);
-            outcomes[i] = mapDetail(rawOutcome);
-        }
-        return outcomes;    }
+        return mapCompleted(completedAppointments);
+    }
 
     /**
      * Retrieves all confirmed AppointmentOutcomeDetail records.
@@ -138,16 +189,8 @@ public class AppointmentOutcomeService {
      */
     public AppointmentOutcomeDetail[] findAllConfirmed() {
         Appointment[] appointments = appointmentRepository.findManyByStatus(AppointmentStatus.COMPLETED);
-        AppointmentOutcomeDetail[] outcomes = new AppointmentOutcomeDetail[appointments.length];
-
-        for(int i = 0; i < outcomes.length; i++){
-            String appointmentId  = appointments[i].getId();
-            AppointmentOutcome rawOutcome = appointmentOutcomeRepository.findOneByAppointmentId(appointmentId);
-            outcomes[i] = mapDetail(rawOutcome);
-
-        }
-
-        return outcomes;    }
+        return mapCompleted(appointments);
+    }
 
     /**
      * Creates a new AppointmentOutcome with prescriptions and updates the appointment status.
@@ -175,8 +218,14 @@ public class AppointmentOutcomeService {
             if(patient == null) return "Unable to find patient";
             
             //Check existence of medicine
+            Set<String> medicineIds = new HashSet<>();
+            for (PendingPrescription rawPrescription : rawPrescriptions) {
+                medicineIds.add(rawPrescription.getMedicineId());
+            }
+            Map<String, Medicine> medicines = medicineRepository.findManyByIds(medicineIds);
+
             for(int i = 0; i < rawPrescriptions.length; i++){
-                Medicine medicine = medicineRepository.findOne(rawPrescriptions[i].getMedicineId());
+                Medicine medicine = medicines.get(rawPrescriptions[i].getMedicineId());
                 if(medicine == null) return "Medicine: " + rawPrescriptions[i].getMedicineId() + " cannot be found";
                 prescriptions[i] = new Prescription(appointmentOutcomeId, rawPrescriptions[i]);
             }
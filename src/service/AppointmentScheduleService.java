@@ -1,13 +1,21 @@
 package service;
 
+import java.time.LocalDate;
 import java.time.LocalDateTime;
+import java.time.temporal.ChronoUnit;
 import java.util.ArrayList;
+import java.util.Comparator;
 import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
 import model.AppointmentDetail;
 import model.Doctor;
+import model.FreeSlot;
 import model.Patient;
 import repository.DoctorRepository;
 import repository.PatientRepository;
+import util.Constant;
+import util.DaySlots;
 
 /**
  * The AppointmentScheduleService class provides functionality for checking the availability
@@ -16,6 +24,12 @@ import repository.PatientRepository;
  * @version 1.0
  */
 public class AppointmentScheduleService {
+    private static final ForkJoinPool SLOT_SEARCH_POOL = new ForkJoinPool(Constant.SLOT_SEARCH_THREADS);
+    private static final int DOCTORS_PER_TASK = 16;
+    private static final Comparator<FreeSlot> SLOT_ORDER = Comparator
+        .comparing(FreeSlot::getStartDateTime)
+        .thenComparing(slot -> slot.getDoctor().getId());
+
     private DoctorRepository doctorRepository;
     private PatientRepository patientRepository;
     private AppointmentService appointmentService;
@@ -64,23 +78,17 @@ public class AppointmentScheduleService {
             return false;
         }
 
-        int appointmentHour = startDateTime.getHour();
-        if (appointmentHour < doctor.getStartWorkHours() || appointmentHour >= doctor.getEndWorkHours()) {
-            System.out.println("Appointment time is outside doctor's working hours (" + 
-                String.format("%02d:00", doctor.getStartWorkHours()) + " to " + 
-                String.format("%02d:00", doctor.getEndWorkHours()) + ")");
+        if (!isWithinWorkingHours(doctor, startDateTime, endDateTime)) {
+            System.out.println(outsideWorkingHours(doctor));
             return false;
         }
 
-        AppointmentDetail[] doctorAppointments = appointmentService.findManyByDoctorId(doctorId);
-        AppointmentDetail[] patientAppointments = appointmentService.findManyByPatientId(patientId);
-
-        if (!isTimeSlotAvailable(doctorAppointments, startDateTime, endDateTime)) {
+        if (!appointmentService.isDoctorFree(doctorId, startDateTime, endDateTime)) {
             System.out.println("Doctor is not available at this time");
             return false;
         }
 
-        if (!isTimeSlotAvailable(patientAppointments, startDateTime, endDateTime)) {
+        if (!appointmentService.isPatientFree(patientId, startDateTime, endDateTime)) {
             System.out.println("Patient has another appointment at this time");
             return false;
         }
@@ -88,8 +96,88 @@ public class AppointmentScheduleService {
         return true;
     }
 
+    /**
+     * Books an appointment if the time slot lies within the doctor's working hours and neither the doctor
+     * nor the patient has another appointment that overlaps it. Unlike checking {@link #isSlotFree} and
+     * then creating the appointment, the availability check and the booking happen atomically, so
+     * concurrent bookings cannot double-book a doctor or a patient.
+     *
+     * @param doctorId      The ID of the doctor.
+     * @param patientId     The ID of the patient.
+     * @param startDateTime The start time of the appointment.
+     * @param endDateTime   The end time of the appointment.
+     * @return null if the appointment was booked, otherwise the reason it was not.
+     */
+    public String bookIfFree(
+        String doctorId,
+        String patientId,
+        LocalDateTime startDateTime,
+        LocalDateTime endDateTime
+    ) {
+        if (doctorId == null || patientId == null || startDateTime == null || endDateTime == null) {
+            return "Input parameters cannot be null";
+        }
+
+        if (!startDateTime.isBefore(endDateTime)) {
+            return "Invalid time slot: start time must be before end time";
+        }
+
+        Doctor doctor = doctorRepository.findOne(doctorId);
+        if (doctor == null) {
+            return "Doctor could not be found";
+        }
+
+        Patient patient = patientRepository.findOne(patientId);
+        if (patient == null) {
+            return "Patient could not be found";
+        }
+
+        if (!isWithinWorkingHours(doctor, startDateTime, endDateTime)) {
+            return outsideWorkingHours(doctor);
+        }
+
+        return appointmentService.bookIfFree(patientId, doctorId, startDateTime, endDateTime);
+    }
+
+    /**
+     * Moves an appointment to a new time if the new time lies within the doctor's working hours and neither
+     * the doctor nor the patient has another appointment that overlaps it. As with {@link #bookIfFree},
+     * the availability check and the move happen atomically.
+     *
+     * @param appointment   The appointment to move.
+     * @param startDateTime The new start time.
+     * @param endDateTime   The new end time.
+     * @return null if the appointment was moved, otherwise the reason it was not.
+     */
+    public String rescheduleIfFree(
+        AppointmentDetail appointment,
+        LocalDateTime startDateTime,
+        LocalDateTime endDateTime
+    ) {
+        if (appointment == null || startDateTime == null || endDateTime == null) {
+            return "Input parameters cannot be null";
+        }
+
+        if (!startDateTime.isBefore(endDateTime)) {
+            return "Invalid time slot: start time must be before end time";
+        }
+
+        Doctor doctor = doctorRepository.findOne(appointment.getDoctorId());
+        if (doctor == null) {
+            return "Doctor could not be found";
+        }
+
+        if (!isWithinWorkingHours(doctor, startDateTime, endDateTime)) {
+            return outsideWorkingHours(doctor);
+        }
+
+        return appointmentService.rescheduleIfFree(appointment.getId(), startDateTime, endDateTime);
+    }
+
     /**
      * Retrieves an array of doctors who are available during the specified time slot for a given patient.
+     * Each doctor's working hours are checked the same way as when booking, and slots made of whole
+     * 30-minute blocks are checked against the doctor-day bitmap, so each doctor takes a few bitwise operations.
      *
      * @param patientId     The ID of the patient.
      * @param startDateTime The start time of the appointment.
@@ -117,28 +205,18 @@ public class AppointmentScheduleService {
             return new Doctor[0];
         }
 
-        AppointmentDetail[] patientAppointments = appointmentService.findManyByPatientId(patientId);
-        if (!isTimeSlotAvailable(patientAppointments, startDateTime, endDateTime)) {
+        if (!appointmentService.isPatientFree(patientId, startDateTime, endDateTime)) {
             System.out.println("Patient has another appointment at this time");
             return new Doctor[0];
         }
 
         Doctor[] allDoctors = doctorRepository.findAll();
-        AppointmentDetail[] allAppointments = appointmentService.findAll();
 
         List<Doctor> availableDoctors = new ArrayList<>();
         for (Doctor doctor : allDoctors) {
-            List<AppointmentDetail> doctorAppointments = new ArrayList<>();
-            for (AppointmentDetail appointment : allAppointments) {
-                if (appointment.getDoctor().getId().equals(doctor.getId())) {
-                    doctorAppointments.add(appointment);
-                }
-            }
-
-            if (isTimeSlotAvailable(
-                doctorAppointments.toArray(new AppointmentDetail[0]),
-                startDateTime,
-                endDateTime)) {
+            // The slot must lie in the doctor's working hours and clash with none of their appointments
+            if (isWithinWorkingHours(doctor, startDateTime, endDateTime)
+                && appointmentService.isDoctorFree(doctor.getId(), startDateTime, endDateTime)) {
                 availableDoctors.add(doctor);
             }
         }
@@ -147,35 +225,199 @@ public class AppointmentScheduleService {
     }
 
     /**
-     * Helper method to check if a time slot is available for a given set of appointments.
+     * Checks whether a time slot lies within a doctor's working hours. Booking, rescheduling, checking a slot
+     * and listing available doctors all go through this check, so they agree on which slots are bookable.
      *
-     * @param appointments   An array of AppointmentDetail objects to check against.
-     * @param startDateTime  The start time of the new appointment.
-     * @param endDateTime    The end time of the new appointment.
-     * @return true if the time slot is available, otherwise false.
+     * @param doctor        The doctor.
+     * @param startDateTime The start of the time slot.
+     * @param endDateTime   The end of the time slot.
+     * @return true if the slot starts and ends within the doctor's working hours on the day it starts.
      */
-    private boolean isTimeSlotAvailable(
-        AppointmentDetail[] appointments,
-        LocalDateTime startDateTime,
-        LocalDateTime endDateTime
-    ) {
-        for (AppointmentDetail appointment : appointments) {
-            boolean hasOverlap = 
-                (startDateTime.isAfter(appointment.getStartDateTime()) && 
-                 startDateTime.isBefore(appointment.getEndDateTime())) ||
-                (endDateTime.isAfter(appointment.getStartDateTime()) && 
-                 endDateTime.isBefore(appointment.getEndDateTime())) ||
-                (startDateTime.isBefore(appointment.getStartDateTime()) && 
-                 endDateTime.isAfter(appointment.getEndDateTime())) ||
-                (startDateTime.isAfter(appointment.getStartDateTime()) && 
-                 endDateTime.isBefore(appointment.getEndDateTime())) ||
-                (startDateTime.isEqual(appointment.getStartDateTime()) || 
-                 endDateTime.isEqual(appointment.getEndDateTime()));
-
-            if (hasOverlap) {
-                return false;
+    private static boolean isWithinWorkingHours(Doctor doctor, LocalDateTime startDateTime, LocalDateTime endDateTime) {
+        return DaySlots.isWithinHours(startDateTime, endDateTime, doctor.getStartWorkHours(), doctor.getEndWorkHours());
+    }
+
+    /**
+     * Describes a doctor's working hours to a patient whose slot falls outside them.
+     *
+     * @param doctor The doctor.
+     * @return The message to show.
+     */
+    private static String outsideWorkingHours(Doctor doctor) {
+        return "Appointment time is outside doctor's working hours (" +
+            String.format("%02d:00", doctor.getStartWorkHours()) + " to " +
+            String.format("%02d:00", doctor.getEndWorkHours()) + ")";
+    }
+
+    /**
+     * Retrieves the start times of the slots of a day in which a doctor is working and has no appointment.
+     * For today, slots that have already started are left out.
+     *
+     * @param doctorId The ID of the doctor.
+     * @param date     The day to look at.
+     * @return The start times of the free slots in order, or an empty list if the doctor could not be found.
+     */
+    public List<LocalDateTime> getFreeSlots(String doctorId, LocalDate date) {
+        Doctor doctor = doctorRepository.findOne(doctorId);
+        if (doctor == null) {
+            System.out.println("Doctor could not be found");
+            return new ArrayList<>();
+        }
+
+        long free = DaySlots.workingHours(doctor.getStartWorkHours(), doctor.getEndWorkHours())
+            & ~appointmentService.getOccupiedSlots(doctorId, date);
+
+        LocalDateTime now = LocalDateTime.now();
+        if (date.equals(now.toLocalDate())) {
+            free &= ~DaySlots.covering(date.atStartOfDay(), now);
+        }
+        return DaySlots.starts(date, free);
+    }
+
+    /**
+     * Finds the earliest slots over a range of days in which any doctor is working, has no appointment,
+     * and the patient has no other appointment. Each doctor's free slots come from their working hours
+     * and doctor-day bitmaps, and the doctors are searched in parallel on a fork-join pool, each task
+     * keeping only its earliest slots. Slots that have already started are left out.
+     *
+     * @param patientId The ID of the patient.
+     * @param fromDate  The first day to search.
+     * @param toDate    The last day to search, inclusive.
+     * @param limit     The maximum number of slots to return.
+     * @return The earliest free slots, ordered by start time and then doctor ID, or an empty list if the
+     *         inputs are invalid or the patient could not be found.
+     */
+    public List<FreeSlot> findEarliestFreeSlots(String patientId, LocalDate fromDate, LocalDate toDate, int limit) {
+        if (patientId == null || fromDate == null || toDate == null) {
+            System.out.println("Input parameters cannot be null");
+            return new ArrayList<>();
+        }
+
+        if (toDate.isBefore(fromDate) || limit <= 0) {
+            System.out.println("Invalid search: the range must not end before it starts and the limit must be positive");
+            return new ArrayList<>();
+        }
+
+        Patient patient = patientRepository.findOne(patientId);
+        if (patient == null) {
+            System.out.println("Patient could not be found");
+            return new ArrayList<>();
+        }
+
+        // Slots the patient is busy in, or that have already started, are closed to every doctor
+        int days = (int) ChronoUnit.DAYS.between(fromDate, toDate) + 1;
+        long[] closed = appointmentService.getPatientOccupiedSlots(patientId, fromDate, days);
+        LocalDateTime now = LocalDateTime.now();
+        for (int day = 0; day < days; day++) {
+            LocalDate date = fromDate.plusDays(day);
+            if (date.isBefore(now.toLocalDate())) {
+                closed[day] = DaySlots.range(0, DaySlots.SLOTS_PER_DAY);
+            } else if (date.equals(now.toLocalDate())) {
+                closed[day] |= DaySlots.covering(date.atStartOfDay(), now);
             }
         }
-        return true;
+
+        Doctor[] doctors = doctorRepository.findAll();
+        return SLOT_SEARCH_POOL.invoke(new SlotSearch(doctors, 0, doctors.length, fromDate, closed, limit));
+    }
+
+    /**
+     * Merges two lists of free slots that are each in {@link #SLOT_ORDER}, keeping the earliest ones.
+     *
+     * @param first  The first sorted list.
+     * @param second The second sorted list.
+     * @param limit  The maximum number of slots to keep.
+     * @return The merged list, sorted and cut down to the limit.
+     */
+    private static List<FreeSlot> merge(List<FreeSlot> first, List<FreeSlot> second, int limit) {
+        List<FreeSlot> merged = new ArrayList<>(Math.min(limit, first.size() + second.size()));
+        int i = 0;
+        int j = 0;
+        while (merged.size() < limit && (i < first.size() || j < second.size())) {
+            if (j == second.size() || (i < first.size() && SLOT_ORDER.compare(first.get(i), second.get(j)) <= 0)) {
+                merged.add(first.get(i++));
+            } else {
+                merged.add(second.get(j++));
+            }
+        }
+        return merged;
+    }
+
+    /**
+     * A fork-join task that finds the earliest free slots of a run of doctors, splitting the run in half
+     * until it is small enough to search directly.
+     */
+    private class SlotSearch extends RecursiveTask<List<FreeSlot>> {
+        private static final long serialVersionUID = 1L;
+
+        private final Doctor[] doctors;
+        private final int from;
+        private final int to;
+        private final LocalDate fromDate;
+        private final long[] closed;
+        private final int limit;
+
+        /**
+         * Constructs a search over a run of doctors.
+         *
+         * @param doctors  The doctors.
+         * @param from     The index of the first doctor of the run, inclusive.
+         * @param to       The index of the last doctor of the run, exclusive.
+         * @param fromDate The first day to search.
+         * @param closed   The bitmaps of the slots closed to every doctor, one per day.
+         * @param limit    The maximum number of slots to find.
+         */
+        SlotSearch(Doctor[] doctors, int from, int to, LocalDate fromDate, long[] closed, int limit) {
+            this.doctors = doctors;
+            this.from = from;
+            this.to = to;
+            this.fromDate = fromDate;
+            this.closed = closed;
+            this.limit = limit;
+        }
+
+        /**
+         * Searches the run of doctors, forking half of it if it is too large.
+         *
+         * @return The earliest free slots of the run, sorted and cut down to the limit.
+         */
+        @Override
+        protected List<FreeSlot> compute() {
+            if (to - from > DOCTORS_PER_TASK) {
+                int middle = (from + to) >>> 1;
+                SlotSearch left = new SlotSearch(doctors, from, middle, fromDate, closed, limit);
+                left.fork();
+                List<FreeSlot> right = new SlotSearch(doctors, middle, to, fromDate, closed, limit).compute();
+                return merge(left.join(), right, limit);
+            }
+
+            List<FreeSlot> earliest = new ArrayList<>();
+            for (int i = from; i < to; i++) {
+                earliest = merge(earliest, findFreeSlots(doctors[i]), limit);
+            }
+            return earliest;
+        }
+
+        /**
+         * Finds a doctor's earliest free slots, day by day.
+         *
+         * @param doctor The doctor.
+         * @return The doctor's earliest free slots in order, up to the limit.
+         */
+        private List<FreeSlot> findFreeSlots(Doctor doctor) {
+            List<FreeSlot> slots = new ArrayList<>();
+            long working = DaySlots.workingHours(doctor.getStartWorkHours(), doctor.getEndWorkHours());
+            if (working == 0L) return slots;
+
+            long[] occupied = appointmentService.getOccupiedSlots(doctor.getId(), fromDate, closed.length);
+            for (int day = 0; day < closed.length; day++) {
+                long free = working & ~occupied[day] & ~closed[day];
+                for (LocalDateTime start : DaySlots.starts(fromDate.plusDays(day), free)) {
+                    slots.add(new FreeSlot(doctor, start, start.plusMinutes(DaySlots.SLOT_MINUTES)));
+                    if (slots.size() == limit) return slots;
+                }
+            }
+            return slots;
+        }
     }
 }
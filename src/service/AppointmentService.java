@@ -3,7 +3,11 @@ package service;
 import enums.AppointmentStatus;
 import java.time.LocalDate;
 import java.time.LocalDateTime;
-import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Stream;
 import model.Appointment;
 import model.AppointmentDetail;
 import model.Doctor;
@@ -11,6 +15,8 @@ import model.Patient;
 import repository.AppointmentRepository;
 import repository.DoctorRepository;
 import repository.PatientRepository;
+import util.Constant;
+import util.StripedLock;
 
 /**
  * The AppointmentService class manages appointment-related operations such as creation,
@@ -23,6 +29,8 @@ public class AppointmentService {
     private AppointmentRepository appointmentRepository;
     private DoctorRepository doctorRepository;
     private PatientRepository patientRepository;
+    private AppointmentCalendar calendar;
+    private final StripedLock bookingLocks = new StripedLock(Constant.BOOKING_LOCK_STRIPES);
 
     /**
      * Constructs an AppointmentService with the required repositories.
@@ -39,6 +47,66 @@ public class AppointmentService {
         this.appointmentRepository = appointmentRepository;
         this.doctorRepository = doctorRepository;
         this.patientRepository = patientRepository;
+        this.calendar = new AppointmentCalendar(appointmentRepository);
+    }
+
+    /**
+     * Checks whether a doctor has no appointment that overlaps a time slot.
+     *
+     * @param doctorId      The ID of the doctor.
+     * @param startDateTime The start of the time slot.
+     * @param endDateTime   The end of the time slot.
+     * @return true if the doctor is free for the whole slot, otherwise false.
+     */
+    public boolean isDoctorFree(String doctorId, LocalDateTime startDateTime, LocalDateTime endDateTime) {
+        return calendar.isDoctorFree(doctorId, startDateTime, endDateTime);
+    }
+
+    /**
+     * Returns the bitmap of the slots of a day that a doctor's appointments overlap.
+     *
+     * @param doctorId The ID of the doctor.
+     * @param date     The day.
+     * @return The bitmap of the occupied slots, as laid out by {@link util.DaySlots}.
+     */
+    public long getOccupiedSlots(String doctorId, LocalDate date) {
+        return calendar.getOccupiedSlots(doctorId, date);
+    }
+
+    /**
+     * Returns the bitmaps of the slots of consecutive days that a doctor's appointments overlap.
+     *
+     * @param doctorId The ID of the doctor.
+     * @param fromDate The first day.
+     * @param days     The number of days.
+     * @return The bitmaps of the occupied slots, one per day, as laid out by {@link util.DaySlots}.
+     */
+    public long[] getOccupiedSlots(String doctorId, LocalDate fromDate, int days) {
+        return calendar.getOccupiedSlots(doctorId, fromDate, days);
+    }
+
+    /**
+     * Returns the bitmaps of the slots of consecutive days that a patient's appointments overlap.
+     *
+     * @param patientId The ID of the patient.
+     * @param fromDate  The first day.
+     * @param days      The number of days.
+     * @return The bitmaps of the occupied slots, one per day, as laid out by {@link util.DaySlots}.
+     */
+    public long[] getPatientOccupiedSlots(String patientId, LocalDate fromDate, int days) {
+        return calendar.getPatientOccupiedSlots(patientId, fromDate, days);
+    }
+
+    /**
+     * Checks whether a patient has no appointment that overlaps a time slot.
+     *
+     * @param patientId     The ID of the patient.
+     * @param startDateTime The start of the time slot.
+     * @param endDateTime   The end of the time slot.
+     * @return true if the patient is free for the whole slot, otherwise false.
+     */
+    public boolean isPatientFree(String patientId, LocalDateTime startDateTime, LocalDateTime endDateTime) {
+        return calendar.isPatientFree(patientId, startDateTime, endDateTime);
     }
 
     /**
@@ -59,26 +127,62 @@ public class AppointmentService {
     }
 
     /**
-     * Reschedules an appointment to a new time.
+     * Reschedules an appointment to a new time, without checking the new time for clashes.
+     * The update runs under the doctor's and the patient's booking locks, so it does not interleave
+     * with a booking, a status change or another reschedule of the same doctor or patient.
      *
      * @param appointmentId  The ID of the appointment.
      * @param startDateTime  The new start time.
      * @param endDateTime    The new end time.
      * @return null if successful, otherwise an error message.
+     * @see #rescheduleIfFree(String, LocalDateTime, LocalDateTime)
      */
     public String rescheduleAppointment(
         String appointmentId,
         LocalDateTime startDateTime,
         LocalDateTime endDateTime
+    ) {
+        return reschedule(appointmentId, startDateTime, endDateTime, false);
+    }
+
+    /**
+     * Reschedules an appointment to a new time under the doctor's and the patient's booking locks.
+     *
+     * @param appointmentId  The ID of the appointment.
+     * @param startDateTime  The new start time.
+     * @param endDateTime    The new end time.
+     * @param onlyIfFree     Whether to save the new time only if it overlaps no other appointment in the file.
+     * @return null if successful, otherwise an error message.
+     */
+    private String reschedule(
+        String appointmentId,
+        LocalDateTime startDateTime,
+        LocalDateTime endDateTime,
+        boolean onlyIfFree
     ) {
         try {
             Appointment appointment = appointmentRepository.findOne(appointmentId);
             if (appointment == null) return "Unable to find appointment";
 
-            appointment.setStartDateTime(startDateTime);
-            appointment.setEndDateTime(endDateTime);
-            appointmentRepository.update(appointment);
-            return null;
+            String doctorId = appointment.getDoctorId();
+            String patientId = appointment.getPatientId();
+            bookingLocks.lock(doctorId, patientId);
+            try {
+                appointment = appointmentRepository.findOne(appointmentId);
+                if (appointment == null) return "Unable to find appointment";
+
+                appointment.setStartDateTime(startDateTime);
+                appointment.setEndDateTime(endDateTime);
+                if (onlyIfFree) {
+                    appointment.setUpdatedAt();
+                    return saveIfFree(appointment);
+                }
+                appointmentRepository.update(appointment);
+                calendar.put(appointment);
+                return null;
+            } finally {
+                bookingLocks.unlock(doctorId, patientId);
+            }
         } catch (Exception e) {
             return "Something went wrong when rescheduling appointment";
         }
@@ -98,6 +202,26 @@ public class AppointmentService {
         String doctorId,
         LocalDateTime startDateTime,
         LocalDateTime endDateTime
+    ) {
+        return create(patientId, doctorId, startDateTime, endDateTime, false);
+    }
+
+    /**
+     * Creates a new appointment once its doctor and patient are found.
+     *
+     * @param patientId     The ID of the patient.
+     * @param doctorId      The ID of the doctor.
+     * @param startDateTime The start time of the appointment.
+     * @param endDateTime   The end time of the appointment.
+     * @param onlyIfFree    Whether to save the appointment only if it overlaps no other appointment in the file.
+     * @return null if successful, otherwise an error message.
+     */
+    private String create(
+        String patientId,
+        String doctorId,
+        LocalDateTime startDateTime,
+        LocalDateTime endDateTime,
+        boolean onlyIfFree
     ) {
         try {
             Doctor doctor = doctorRepository.findOne(doctorId);
@@ -111,7 +235,9 @@ public class AppointmentService {
             }
 
             Appointment appointment = new Appointment(doctorId, patientId, startDateTime, endDateTime);
+            if (onlyIfFree) return saveIfFree(appointment);
             appointmentRepository.save(appointment);
+            calendar.put(appointment);
             return null;
         } catch (Exception e) {
             return "Something went wrong when creating an appointment";
@@ -119,7 +245,105 @@ public class AppointmentService {
     }
 
     /**
-     * Updates the status of an appointment.
+     * Saves an appointment unless the appointments file holds another appointment of its doctor or patient
+     * that overlaps it, and records it in the calendar once saved. The calendar has already been checked
+     * under the booking locks, but those only exclude this process, so the file is checked again under its
+     * write lock, which another process booking the same slot has to take as well.
+     *
+     * @param appointment The new or rescheduled appointment.
+     * @return null if the appointment was saved, otherwise an error message.
+     */
+    private String saveIfFree(Appointment appointment) {
+        Appointment conflict = appointmentRepository.saveUnlessOverlapping(appointment);
+        if (conflict != null) {
+            if (conflict.getDoctorId().equals(appointment.getDoctorId())) return "Doctor is not available at this time";
+            return "Patient has another appointment at this time";
+        }
+        calendar.put(appointment);
+        return null;
+    }
+
+    /**
+     * Creates a new appointment only if neither the doctor nor the patient has another appointment that
+     * overlaps it. The check and the booking run under the locks of the doctor's and the patient's IDs,
+     * so two bookings for the same doctor or patient cannot both pass the check, while bookings for
+     * unrelated doctors and patients run in parallel. The calendar catches up with the appointments file
+     * before it is checked, and the appointment is only written if the file still shows no overlap under
+     * its write lock, so a booking made by another process sharing the data directory is not overlapped either.
+     *
+     * @param patientId     The ID of the patient.
+     * @param doctorId      The ID of the doctor.
+     * @param startDateTime The start time of the appointment.
+     * @param endDateTime   The end time of the appointment.
+     * @return null if successful, otherwise an error message.
+     */
+    public String bookIfFree(
+        String patientId,
+        String doctorId,
+        LocalDateTime startDateTime,
+        LocalDateTime endDateTime
+    ) {
+        bookingLocks.lock(doctorId, patientId);
+        try {
+            if (!calendar.isDoctorFree(doctorId, startDateTime, endDateTime)) {
+                return "Doctor is not available at this time";
+            }
+            if (!calendar.isPatientFree(patientId, startDateTime, endDateTime)) {
+                return "Patient has another appointment at this time";
+            }
+            return create(patientId, doctorId, startDateTime, endDateTime, true);
+        } finally {
+            bookingLocks.unlock(doctorId, patientId);
+        }
+    }
+
+    /**
+     * Moves an appointment to a new time only if neither its doctor nor its patient has another appointment
+     * that overlaps the new time. The appointment's own slot does not count as a clash. Like
+     * {@link #bookIfFree}, the check and the move run under the locks of the doctor's and the patient's IDs,
+     * and the new time is checked against the appointments file again under its write lock.
+     *
+     * @param appointmentId  The ID of the appointment.
+     * @param startDateTime  The new start time.
+     * @param endDateTime    The new end time.
+     * @return null if successful, otherwise an error message.
+     */
+    public String rescheduleIfFree(
+        String appointmentId,
+        LocalDateTime startDateTime,
+        LocalDateTime endDateTime
+    ) {
+        Appointment appointment;
+        try {
+            appointment = appointmentRepository.findOne(appointmentId);
+        } catch (Exception e) {
+            return "Something went wrong when rescheduling appointment";
+        }
+        if (appointment == null) return "Unable to find appointment";
+
+        // An appointment never changes doctor or patient, so these are the locks any clashing booking takes
+        String doctorId = appointment.getDoctorId();
+        String patientId = appointment.getPatientId();
+        bookingLocks.lock(doctorId, patientId);
+        try {
+            List<String> doctorConflicts = calendar.findDoctorConflicts(doctorId, startDateTime, endDateTime);
+            if (!doctorConflicts.stream().allMatch(appointmentId::equals)) {
+                return "Doctor is not available at this time";
+            }
+            List<String> patientConflicts = calendar.findPatientConflicts(patientId, startDateTime, endDateTime);
+            if (!patientConflicts.stream().allMatch(appointmentId::equals)) {
+                return "Patient has another appointment at this time";
+            }
+            return reschedule(appointmentId, startDateTime, endDateTime, true);
+        } finally {
+            bookingLocks.unlock(doctorId, patientId);
+        }
+    }
+
+    /**
+     * Updates the status of an appointment. Cancelling an appointment frees its slot, so the update runs
+     * under the same locks as {@link #bookIfFree} and {@link #rescheduleIfFree}, and the appointment is
+     * read again once they are held so that a concurrent reschedule is not overwritten.
      *
      * @param appointmentId The ID of the appointment.
      * @param status        The new status to set.
@@ -137,10 +361,23 @@ public class AppointmentService {
                 return "Cant find appointment to update";
             }
 
-            appointment.setStatus(status);
-            if (status == AppointmentStatus.DOCTOR_CANCELLED) appointment.setCancelReason(cancelReason);
-            appointmentRepository.update(appointment);
-            return null;
+            String doctorId = appointment.getDoctorId();
+            String patientId = appointment.getPatientId();
+            bookingLocks.lock(doctorId, patientId);
+            try {
+                appointment = appointmentRepository.findOne(appointmentId);
+                if (appointment == null) {
+                    return "Cant find appointment to update";
+                }
+
+                appointment.setStatus(status);
+                if (status == AppointmentStatus.DOCTOR_CANCELLED) appointment.setCancelReason(cancelReason);
+                appointmentRepository.update(appointment);
+                calendar.put(appointment);
+                return null;
+            } finally {
+                bookingLocks.unlock(doctorId, patientId);
+            }
         } catch (Exception e) {
             return "Something went wrong when updating the appointment";
         }
@@ -152,13 +389,13 @@ public class AppointmentService {
      * @return An array of today's confirmed appointments.
      */
     public AppointmentDetail[] findToday() {
-        Appointment[] appointments = appointmentRepository.findAll();
-        Appointment[] todayAppointments = Arrays.stream(appointments)
-            .filter(appointment -> appointment.getStartDateTime().toLocalDate() == LocalDate.now() &&
-                                    appointment.getStatus() == AppointmentStatus.CONFIRMED)
-            .toArray(AppointmentDetail[]::new);
+        LocalDate today = LocalDate.now();
 
-        return mapDetails(todayAppointments);
+        return mapDetails(appointmentRepository.scanByStatusStartingBetween(
+            AppointmentStatus.CONFIRMED,
+            today.atStartOfDay(),
+            today.plusDays(1).atStartOfDay()
+        ));
     }
 
     /**
@@ -177,12 +414,11 @@ public class AppointmentService {
      * @return An array of pending or confirmed appointments for the patient.
      */
     public AppointmentDetail[] findPendingCompletedByPatientId(String patientId) {
-        AppointmentDetail[] appointments = this.findManyByPatientId(patientId);
-
-        return Arrays.stream(appointments)
-            .filter(appointment -> appointment.getStatus() == AppointmentStatus.REQUESTED ||
-                                   appointment.getStatus() == AppointmentStatus.CONFIRMED)
-            .toArray(AppointmentDetail[]::new);
+        return mapDetails(appointmentRepository.scanByPatientIdAndStatus(
+            patientId,
+            AppointmentStatus.REQUESTED,
+            AppointmentStatus.CONFIRMED
+        ));
     }
 
     /**
@@ -192,11 +428,7 @@ public class AppointmentService {
      * @return An array of confirmed appointments for the patient.
      */
     public AppointmentDetail[] findConfirmedByPatientId(String patientId) {
-        AppointmentDetail[] appointments = this.findManyByPatientId(patientId);
-
-        return Arrays.stream(appointments)
-            .filter(appointment -> appointment.getStatus() == AppointmentStatus.CONFIRMED)
-            .toArray(AppointmentDetail[]::new);
+        return mapDetails(appointmentRepository.scanByPatientIdAndStatus(patientId, AppointmentStatus.CONFIRMED));
     }
 
     /**
@@ -206,11 +438,7 @@ public class AppointmentService {
      * @return An array of requested appointments for the doctor.
      */
     public AppointmentDetail[] findRequestedByDoctor(String doctorId) {
-        AppointmentDetail[] appointments = this.findManyByDoctorId(doctorId);
-
-        return Arrays.stream(appointments)
-            .filter(appointment -> appointment.getStatus() == AppointmentStatus.REQUESTED)
-            .toArray(AppointmentDetail[]::new);
+        return mapDetails(appointmentRepository.scanByDoctorIdAndStatus(doctorId, AppointmentStatus.REQUESTED));
     }
 
     /**
@@ -220,11 +448,7 @@ public class AppointmentService {
      * @return An array of completed appointments for the doctor.
      */
     public AppointmentDetail[] findCompletedByDoctor(String doctorId) {
-        AppointmentDetail[] appointments = this.findManyByDoctorId(doctorId);
-
-        return Arrays.stream(appointments)
-            .filter(appointment -> appointment.getStatus() == AppointmentStatus.COMPLETED)
-            .toArray(AppointmentDetail[]::new);
+        return mapDetails(appointmentRepository.scanByDoctorIdAndStatus(doctorId, AppointmentStatus.COMPLETED));
     }
 
     /**
@@ -234,8 +458,7 @@ public class AppointmentService {
      * @return An array of appointments for the doctor.
      */
     public AppointmentDetail[] findManyByDoctorId(String doctorId) {
-        Appointment[] appointments = appointmentRepository.findManyByDoctorId(doctorId);
-        return mapDetails(appointments);
+        return mapDetails(appointmentRepository.scanByDoctorId(doctorId));
     }
 
     /**
@@ -246,44 +469,57 @@ public class AppointmentService {
      * @return An array of appointments for the doctor on the specified date.
      */
     public AppointmentDetail[] findDoctorAppointmentsByDate(String doctorId, LocalDate date) {
-        AppointmentDetail[] appointments = this.findManyByDoctorId(doctorId);
-
-        return Arrays.stream(appointments)
-            .filter(appointment ->
-                (appointment.getStatus() == AppointmentStatus.REQUESTED ||
-                appointment.getStatus() == AppointmentStatus.CONFIRMED) &&
-                appointment.getStartDateTime().toLocalDate().equals(date)
-            )
-            .toArray(AppointmentDetail[]::new);
+        return mapDetails(appointmentRepository.scanByDoctorIdStartingBetween(
+            doctorId,
+            date.atStartOfDay(),
+            date.plusDays(1).atStartOfDay(),
+            AppointmentStatus.REQUESTED,
+            AppointmentStatus.CONFIRMED
+        ));
     }
 
     /**
-     * Maps an Appointment to an AppointmentDetail.
+     * Maps an array of Appointments to an array of AppointmentDetails. The distinct doctors and patients
+     * are looked up in one batch each, and appointments that share a doctor or patient share its instance.
      *
-     * @param appointment The appointment to map.
-     * @return The mapped AppointmentDetail.
+     * @param appointments The appointments to map.
+     * @return The mapped AppointmentDetails.
      */
-    private AppointmentDetail mapDetail(Appointment appointment) {
-        Doctor doctor = doctorRepository.findOne(appointment.getDoctorId());
-        Patient patient = patientRepository.findOne(appointment.getPatientId());
+    private AppointmentDetail[] mapDetails(Appointment[] appointments) {
+        Set<String> doctorIds = new HashSet<>();
+        Set<String> patientIds = new HashSet<>();
+        for (Appointment appointment : appointments) {
+            doctorIds.add(appointment.getDoctorId());
+            patientIds.add(appointment.getPatientId());
+        }
+
+        Map<String, Doctor> doctors = doctorRepository.findManyByIds(doctorIds);
+        Map<String, Patient> patients = patientRepository.findManyByIds(patientIds);
+
+        AppointmentDetail[] details = new AppointmentDetail[appointments.length];
+        for (int i = 0; i < appointments.length; i++) {
+            Appointment appointment = appointments[i];
+            details[i] = AppointmentDetail.fromAppointment(
+                appointment,
+                doctors.get(appointment.getDoctorId()),
+                patients.get(appointment.getPatientId())
+            );
+        }
 
-        return AppointmentDetail.fromAppointment(appointment, doctor, patient);
+        return details;
     }
 
     /**
-     * Maps an array of Appointments to an array of AppointmentDetails.
+     * Maps a stream of Appointments to an array of AppointmentDetails, closing the stream afterwards.
+     * Repository queries filter rows before they are mapped, so only matching appointments get here.
      *
      * @param appointments The appointments to map.
      * @return The mapped AppointmentDetails.
      */
-    private AppointmentDetail[] mapDetails(Appointment[] appointments) {
-        AppointmentDetail[] details = new AppointmentDetail[appointments.length];
-
-        for (int i = 0; i < appointments.length; i++) {
-            details[i] = mapDetail(appointments[i]);
+    private AppointmentDetail[] mapDetails(Stream<Appointment> appointments) {
+        try (Stream<Appointment> rows = appointments) {
+            return mapDetails(rows.toArray(Appointment[]::new));
         }
-
-        return details;
     }
 
     /**
@@ -292,8 +528,7 @@ public class AppointmentService {
      * @return An array of all appointments.
      */
     public AppointmentDetail[] findAll() {
-        Appointment[] appointments = appointmentRepository.findAll();
-        return mapDetails(appointments);
+        return mapDetails(appointmentRepository.scan());
     }
 
     /**
@@ -303,8 +538,7 @@ public class AppointmentService {
      * @return An array of appointments with the specified status.
      */
     private AppointmentDetail[] findManyByStatus(AppointmentStatus status) {
-        Appointment[] appointments = appointmentRepository.findManyByStatus(status);
-        return mapDetails(appointments);
+        return mapDetails(appointmentRepository.scanByStatus(status));
     }
 
     /**
@@ -314,7 +548,30 @@ public class AppointmentService {
      * @return An array of appointments for the patient.
      */
     public AppointmentDetail[] findManyByPatientId(String patientId) {
-        Appointment[] appointments = appointmentRepository.findManyByPatientId(patientId);
-        return mapDetails(appointments);
+        return mapDetails(appointmentRepository.scanByPatientId(patientId));
+    }
+
+    /**
+     * Finds a doctor's appointments of any status that start within a time range, in order of start time.
+     *
+     * @param doctorId The ID of the doctor.
+     * @param from     The earliest start time, inclusive.
+     * @param to       The latest start time, exclusive.
+     * @return An array of the doctor's appointments that start within the range.
+     */
+    public AppointmentDetail[] findManyByDoctorIdStartingBetween(String doctorId, LocalDateTime from, LocalDateTime to) {
+        return mapDetails(appointmentRepository.scanByDoctorIdStartingBetween(doctorId, from, to));
+    }
+
+    /**
+     * Finds a patient's appointments of any status that start within a time range, in order of start time.
+     *
+     * @param patientId The ID of the patient.
+     * @param from      The earliest start time, inclusive.
+     * @param to        The latest start time, exclusive.
+     * @return An array of the patient's appointments that start within the range.
+     */
+    public AppointmentDetail[] findManyByPatientIdStartingBetween(String patientId, LocalDateTime from, LocalDateTime to) {
+        return mapDetails(appointmentRepository.scanByPatientIdStartingBetween(patientId, from, to));
     }
 }
@@ -2,7 +2,10 @@ package service;
 
 import enums.AppointmentStatus;
 import java.util.Arrays;
+import java.util.LinkedHashSet;
+import java.util.Map;
 import java.util.Objects;
+import java.util.Set;
 import model.Appointment;
 import model.Doctor;
 import model.Patient;
@@ -54,13 +57,17 @@ public class DoctorService {
             )
             .toArray(Appointment[]::new);
         
-        // Get unique patient IDs and fetch patient details
-        return Arrays.stream(appointments)
-            .map(Appointment::getPatientId)  
-            .distinct()                      
-            .map(patientRepository::findOne) 
-            .filter(Objects::nonNull)        
-            .toArray(Patient[]::new);     
+        // Get unique patient IDs and fetch patient details in one batch
+        Set<String> patientIds = new LinkedHashSet<>();
+        for (Appointment appointment : appointments) {
+            patientIds.add(appointment.getPatientId());
+        }
+
+        Map<String, Patient> patients = patientRepository.findManyByIds(patientIds);
+        return patientIds.stream()
+            .map(patients::get)
+            .filter(Objects::nonNull)
+            .toArray(Patient[]::new);
     }
 
     /**
@@ -105,7 +105,7 @@ public class InitialisationService {
             LocalDateTime currentDateTime = LocalDateTime.now();
             
             for (int i = 0; i < lines.size(); i++) {
-                String[] parts = lines.get(i).split(",");
+                String[] parts = CsvCursor.split(lines.get(i));
                 validateDataFormat(parts, 5, i);
                 
                 String id = parts[0].trim();
@@ -208,7 +208,7 @@ public class InitialisationService {
             Patient[] patients = new Patient[lines.size()];
             
             for (int i = 0; i < lines.size(); i++) {
-                String[] parts = lines.get(i).split(",");
+                String[] parts = CsvCursor.split(lines.get(i));
                 validateDataFormat(parts, 6, i);
                 
                 String id = parts[0].trim();
@@ -251,7 +251,7 @@ public class InitialisationService {
             Medicine[] medicines = new Medicine[lines.size()];
             
             for (int i = 0; i < lines.size(); i++) {
-                String[] parts = lines.get(i).split(",");
+                String[] parts = CsvCursor.split(lines.get(i));
                 validateDataFormat(parts, 3, i);
                 
                 String name = parts[0].trim();
@@ -9,6 +9,9 @@ import java.time.LocalDateTime;
 import java.time.Period;
 import java.util.Arrays;
 import java.util.Comparator;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
 import model.Appointment;
 import model.Doctor;
 import model.MedicalRecord;
@@ -20,6 +23,7 @@ import repository.DoctorRepository;
 import repository.MedicalRecordRepository;
 import repository.PatientRepository;
 import repository.PatientVitalRepository;
+import repository.base.SequenceAllocator;
 import util.Constant;
 import util.PasswordUtil;
 
@@ -31,11 +35,14 @@ import util.PasswordUtil;
  * @version 1.0
  */
 public class PatientService {
+    private static final String PATIENT_ID_SEQUENCE = "patient";
+
     private PatientRepository patientRepository;
     private DoctorRepository doctorRepository;
     private AppointmentRepository appointmentRepository;
     private MedicalRecordRepository medicalRecordRepository;
     private PatientVitalRepository patientVitalRepository;
+    private SequenceAllocator sequenceAllocator;
 
     /**
      * Constructs a PatientService with the required repositories.
@@ -45,19 +52,22 @@ public class PatientService {
      * @param doctorRepository          Repository for managing doctor data.
      * @param medicalRecordRepository   Repository for managing medical record data.
      * @param patientVitalRepository    Repository for managing patient vital data.
+     * @param sequenceAllocator         Allocator for new patient ID numbers.
      */
     public PatientService(
         PatientRepository patientRepository,
         AppointmentRepository appointmentRepository,
         DoctorRepository doctorRepository,
         MedicalRecordRepository medicalRecordRepository,
-        PatientVitalRepository patientVitalRepository
+        PatientVitalRepository patientVitalRepository,
+        SequenceAllocator sequenceAllocator
     ) {
         this.patientRepository = patientRepository;
         this.appointmentRepository = appointmentRepository;
         this.doctorRepository = doctorRepository;
         this.medicalRecordRepository = medicalRecordRepository;
         this.patientVitalRepository = patientVitalRepository;
+        this.sequenceAllocator = sequenceAllocator;
     }
 
     /**
@@ -80,8 +90,7 @@ public class PatientService {
         String email
     ) {
         try {
-            Patient patient = patientRepository.findLatest();
-            String id = generateNextPatientId(patient.getId());
+            String id = generateNextPatientId();
             byte[] salt = PasswordUtil.generateSalt();
             String hashedPassword = PasswordUtil.hashPassword(Constant.DEFAULT_PASSWORD, salt);
             Patient newPatient = new Patient(
@@ -105,21 +114,33 @@ public class PatientService {
     }
 
     /**
-     * Generates the next patient ID based on the current patient's ID.
+     * Generates the next patient ID from the patient ID sequence. The sequence starts after the latest
+     * patient on first use, and IDs that were taken outside the sequence are skipped.
      *
-     * @param currentId The ID of the current patient.
-     * @return The next patient ID in sequence.
+     * @return The next unused patient ID.
      */
-    private String generateNextPatientId(String currentId) {
-        if (currentId == null || currentId.isEmpty()) {
-            return "P001";
+    private String generateNextPatientId() {
+        String id;
+        do {
+            id = String.format("P%03d", sequenceAllocator.next(PATIENT_ID_SEQUENCE, this::latestPatientNumber));
+        } while (patientRepository.findOne(id) != null);
+        return id;
+    }
+
+    /**
+     * Returns the number of the latest patient ID, used to start the patient ID sequence.
+     *
+     * @return The number of the latest patient ID, or 0 if there are no patients.
+     */
+    private long latestPatientNumber() {
+        Patient patient = patientRepository.findLatest();
+        if (patient == null || patient.getId() == null || patient.getId().isEmpty()) {
+            return 0;
         }
-        
-        String numStr = currentId.substring(1);
-        
+
+        String currentId = patient.getId();
         try {
-            int nextNum = Integer.parseInt(numStr) + 1;
-            return String.format("P%03d", nextNum);
+            return Integer.parseInt(currentId.substring(1));
         } catch (NumberFormatException e) {
             throw new RuntimeException("Invalid patient ID format: " + currentId);
         }
@@ -187,9 +208,15 @@ public class PatientService {
         MedicalRecord[] rawRecords = medicalRecordRepository.findManyByPatientId(patientId);
         MedicalRecordDetail[] records = new MedicalRecordDetail[rawRecords.length];
 
+        Set<String> doctorIds = new HashSet<>();
+        for (MedicalRecord rawRecord : rawRecords) {
+            doctorIds.add(rawRecord.getDoctorId());
+        }
+        Map<String, Doctor> doctors = doctorRepository.findManyByIds(doctorIds);
+
         for (int i = 0; i < records.length; i++) {
             MedicalRecord rawRecord = rawRecords[i];
-            Doctor doctor = doctorRepository.findOne(rawRecord.getDoctorId());
+            Doctor doctor = doctors.get(rawRecord.getDoctorId());
 
             records[i] = MedicalRecordDetail.fromMedicalRecord(rawRecord, doctor);
         }
@@ -1,6 +1,9 @@
 package service;
 
 import enums.ReplenishmentRequestStatus;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
 import model.Medicine;
 import model.Pharmacist;
 import model.ReplenishmentRequest;
@@ -122,12 +125,21 @@ public class ReplenishmentRequestService {
     public ReplenishmentRequestDetail[] getRequests() {
         ReplenishmentRequest[] requests = replenishmentRequestRepository.findManyByStatus(ReplenishmentRequestStatus.PENDING);
         ReplenishmentRequestDetail[] details = new ReplenishmentRequestDetail[requests.length];
+
+        Set<String> medicineIds = new HashSet<>();
+        Set<String> pharmacistIds = new HashSet<>();
+        for (ReplenishmentRequest request : requests) {
+            medicineIds.add(request.getMedicineId());
+            pharmacistIds.add(request.getPharmacistId());
+        }
+        Map<String, Medicine> medicines = medicineRepository.findManyByIds(medicineIds);
+        Map<String, Pharmacist> pharmacists = pharmacistRepository.findManyByIds(pharmacistIds);
         
         for (int i = 0; i < requests.length; i++) {
             ReplenishmentRequest request = requests[i];
             
-            Medicine medicine = medicineRepository.findOne(request.getMedicineId());
-            Pharmacist pharmacist = pharmacistRepository.findOne(request.getPharmacistId());
+            Medicine medicine = medicines.get(request.getMedicineId());
+            Pharmacist pharmacist = pharmacists.get(request.getPharmacistId());
             
             // Create detail object using the static factory method
             details[i] = ReplenishmentRequestDetail.fromReplenishmentRequest(
@@ -151,9 +163,15 @@ public class ReplenishmentRequestService {
         ReplenishmentRequest[] requests = replenishmentRequestRepository.findManyByPharmacist(pharmacistID);
         ReplenishmentRequestDetail[] details = new ReplenishmentRequestDetail[requests.length];
 
+        Set<String> medicineIds = new HashSet<>();
+        for (ReplenishmentRequest request : requests) {
+            medicineIds.add(request.getMedicineId());
+        }
+        Map<String, Medicine> medicines = medicineRepository.findManyByIds(medicineIds);
+
         for (int i = 0; i < requests.length; i++) {
             ReplenishmentRequest request = requests[i];
-            Medicine medicine = medicineRepository.findOne(request.getMedicineId());
+            Medicine medicine = medicines.get(request.getMedicineId());
             
             // Create detail object using the static factory method
             details[i] = ReplenishmentRequestDetail.fromReplenishmentRequest(
@@ -297,14 +297,15 @@ public class AppointmentTableUI {
             .findFirst()
             .orElse(null);
 
-
-
-            if(appointmentScheduleService.isSlotFree(appointment.getDoctorId(),appointment.getPatientId(),startDateTime,endDateTime)){
-                System.out.println("Please choose another time slot");
+            if (appointment == null) {
+                System.out.println("Error: Unable to find appointment");
+                System.out.println("Press Enter to continue...");
+                scanner.nextLine();
                 return;
             }
-            
-            String error = appointmentService.rescheduleAppointment(appointmentId, startDateTime, endDateTime);
+
+            // Checks the new slot and moves the appointment in one step, so no other booking can take it in between
+            String error = appointmentScheduleService.rescheduleIfFree(appointment, startDateTime, endDateTime);
             if (error != null) {
                 System.out.println("Error: " + error);
                 System.out.println("Press Enter to continue...");
@@ -1,12 +1,16 @@
 package ui;
 
+import java.time.LocalDate;
 import java.time.LocalDateTime;
 import java.time.format.DateTimeFormatter;
 import java.time.format.DateTimeParseException;
+import java.util.List;
 import java.util.Scanner;
+import model.FreeSlot;
 import model.Patient;
 import service.AppointmentScheduleService;
 import service.AppointmentService;
+import util.Constant;
 
 /**
  * The CreateAppointmentUI class provides a user interface for creating new appointments.
@@ -18,6 +22,7 @@ import service.AppointmentService;
  */
 public class CreateAppointmentUI {
     private static final DateTimeFormatter formatter = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm");
+    private static final int EARLIEST_SLOTS_SHOWN = 5;
 
     /**
      * Displays the user interface for creating an appointment.
@@ -46,6 +51,7 @@ public class CreateAppointmentUI {
         System.out.format(leftAlignFormat, "Patient: " + patient.getName());
         System.out.format(leftAlignFormat, "ID: " + patient.getId());
         System.out.format(separator);
+        printEarliestFreeSlots(appointmentScheduleService, patient.getId(), leftAlignFormat, separator);
 
         // Get doctor name and search for ID
         String doctorId = null;
@@ -61,13 +67,15 @@ public class CreateAppointmentUI {
             }
             System.out.format(leftAlignFormat, "Doctor ID: " + doctorId);
         }
+        System.out.format(separator);
+        printFreeSlots(appointmentScheduleService, doctorId, LocalDate.now(), leftAlignFormat, separator);
 
-        // Get appointment start date and time
+        // Get appointment start date and time, and book it if the slot is still free
         LocalDateTime startDateTime = null;
         LocalDateTime endDateTime = null;
-        boolean isSlotValid = false;
+        boolean isBooked = false;
 
-        while (!isSlotValid) {
+        while (!isBooked) {
             while (startDateTime == null) {
                 System.out.format(leftAlignFormat, "Enter Start Date/Time:");
                 System.out.format(leftAlignFormat, "(Format: YYYY-MM-DD HH:mm)");
@@ -90,29 +98,67 @@ public class CreateAppointmentUI {
                 }
             }
 
-            // Check if the slot is free
-            if (appointmentScheduleService.isSlotFree(doctorId, patient.getId(), startDateTime, endDateTime)) {
-                isSlotValid = true;
+            // Check the slot and book it in one step, so no one else can take it in between
+            String result = appointmentScheduleService.bookIfFree(doctorId, patient.getId(), startDateTime, endDateTime);
+            if (result == null) {
+                isBooked = true;
             } else {
+                System.out.format(leftAlignFormat, "Error: " + result);
                 System.out.format(leftAlignFormat, "Please choose another time slot");
                 System.out.format(separator);
+                printFreeSlots(appointmentScheduleService, doctorId, startDateTime.toLocalDate(), leftAlignFormat, separator);
                 startDateTime = null; // Reset to ask for new time
-                continue;
             }
         }
 
-        // Create the appointment
-        String result = appointmentService.createAppointment(patient.getId(), doctorId, startDateTime, endDateTime);
-
         System.out.format(separator);
-        if (result == null) {
-            System.out.format(leftAlignFormat, "Appointment created successfully!");
-        } else {
-            System.out.format(leftAlignFormat, "Error: " + result);
-        }
+        System.out.format(leftAlignFormat, "Appointment created successfully!");
         System.out.format(separator);
 
         System.out.println("\nPress Enter to continue...");
         scanner.nextLine();
     }
+
+    /**
+     * Prints the start times of a doctor's free slots on a day, a few to a line.
+     *
+     * @param appointmentScheduleService the service used to find the free slots
+     * @param doctorId                   the ID of the doctor
+     * @param date                       the day to print the free slots of
+     * @param leftAlignFormat            the format of a line of the table
+     * @param separator                  the separator line of the table
+     */
+    private static void printFreeSlots(
+        AppointmentScheduleService appointmentScheduleService,
+        String doctorId,
+        LocalDate date,
+        String leftAlignFormat,
+        String separator
+    ) {
+        List<LocalDateTime> freeSlots = appointmentScheduleService.getFreeSlots(doctorId, date);
+        FreeSlotTableUI.printFreeSlots("Free slots on " + date + ":", freeSlots, leftAlignFormat);
+        System.out.format(separator);
+    }
+
+    /**
+     * Prints the earliest slots in which any doctor and the patient are both free, with the doctor's name.
+     *
+     * @param appointmentScheduleService the service used to find the free slots
+     * @param patientId                  the ID of the patient
+     * @param leftAlignFormat            the format of a line of the table
+     * @param separator                  the separator line of the table
+     */
+    private static void printEarliestFreeSlots(
+        AppointmentScheduleService appointmentScheduleService,
+        String patientId,
+        String leftAlignFormat,
+        String separator
+    ) {
+        LocalDate today = LocalDate.now();
+        List<FreeSlot> freeSlots = appointmentScheduleService.findEarliestFreeSlots(
+            patientId, today, today.plusDays(Constant.SLOT_SEARCH_DAYS - 1), EARLIEST_SLOTS_SHOWN
+        );
+
+        FreeSlotTableUI.printFreeSlotsWithDoctor("Earliest free slots:", freeSlots, leftAlignFormat, separator);
+    }
 }
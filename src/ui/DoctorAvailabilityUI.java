@@ -1,7 +1,9 @@
 package ui;
 
+import java.time.LocalDate;
 import java.util.Scanner;
 import model.Doctor;
+import service.AppointmentScheduleService;
 import service.DoctorService;
 import validator.InputValidator;
 
@@ -13,17 +15,23 @@ import validator.InputValidator;
  * @version 1.0
  */
 public class DoctorAvailabilityUI {
-
     /**
      * Displays the user interface for setting the availability of a doctor.
      * Prompts the user to input start and end working hours, validates the inputs,
-     * and updates the doctor's availability through the DoctorService.
+     * and updates the doctor's availability through the DoctorService. Once updated, the doctor's
+     * free slots for today under the new working hours are shown.
      *
-     * @param scanner       the Scanner object used to capture user input
-     * @param doctorService the service used to manage doctor-related actions
-     * @param doctor        the doctor whose availability is being updated
+     * @param scanner                    the Scanner object used to capture user input
+     * @param doctorService              the service used to manage doctor-related actions
+     * @param appointmentScheduleService the service used to find the doctor's free slots
+     * @param doctor                     the doctor whose availability is being updated
      */
-    public static void display(Scanner scanner, DoctorService doctorService, Doctor doctor) {
+    public static void display(
+        Scanner scanner,
+        DoctorService doctorService,
+        AppointmentScheduleService appointmentScheduleService,
+        Doctor doctor
+    ) {
         // Define formatting
         String leftAlignFormat = "| %-30s |%n";
         String separator = "+--------------------------------+%n";
@@ -86,6 +94,12 @@ public class DoctorAvailabilityUI {
 
         if (result == null) {
             System.out.format(leftAlignFormat, "Availability updated successfully!");
+            System.out.format(separator);
+            FreeSlotTableUI.printFreeSlots(
+                "Free slots today:",
+                appointmentScheduleService.getFreeSlots(doctor.getId(), LocalDate.now()),
+                leftAlignFormat
+            );
         } else {
             System.out.format(leftAlignFormat, "Error: " + result);
         }
@@ -0,0 +1,80 @@
+package ui;
+
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.List;
+import model.FreeSlot;
+
+/**
+ * The FreeSlotTableUI class prints free appointment slots as rows of the bordered tables used by the
+ * booking and availability screens, so every screen lists free slots the same way.
+ *
+ * @author Russell Arvin
+ * @version 1.0
+ */
+public class FreeSlotTableUI {
+    private static final DateTimeFormatter formatter = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm");
+    private static final DateTimeFormatter slotFormatter = DateTimeFormatter.ofPattern("HH:mm");
+    private static final int SLOTS_PER_LINE = 5;
+
+    // The doctor column is at least this wide, so the table lines up with the 34-character tables around it
+    private static final int MIN_DOCTOR_WIDTH = 11;
+
+    /**
+     * Prints a title and the start times of free slots on one day, a few to a line.
+     *
+     * @param title           the line printed above the slots
+     * @param freeSlots       the start times of the free slots
+     * @param leftAlignFormat the format of a line of the table
+     */
+    public static void printFreeSlots(String title, List<LocalDateTime> freeSlots, String leftAlignFormat) {
+        System.out.format(leftAlignFormat, title);
+        if (freeSlots.isEmpty()) {
+            System.out.format(leftAlignFormat, "None");
+        }
+        for (int i = 0; i < freeSlots.size(); i += SLOTS_PER_LINE) {
+            StringBuilder line = new StringBuilder();
+            for (LocalDateTime slot : freeSlots.subList(i, Math.min(i + SLOTS_PER_LINE, freeSlots.size()))) {
+                if (line.length() > 0) line.append(' ');
+                line.append(slot.format(slotFormatter));
+            }
+            System.out.format(leftAlignFormat, line);
+        }
+    }
+
+    /**
+     * Prints a title and free slots of any doctor, with the date and time and the doctor's name in
+     * separate columns. The doctor column is widened to fit the longest name.
+     *
+     * @param title           the line printed above the slots
+     * @param freeSlots       the free slots, each with its doctor
+     * @param leftAlignFormat the format of a line of the table
+     * @param separator       the separator line of the table, printed when there are no slots
+     */
+    public static void printFreeSlotsWithDoctor(
+        String title,
+        List<FreeSlot> freeSlots,
+        String leftAlignFormat,
+        String separator
+    ) {
+        System.out.format(leftAlignFormat, title);
+        if (freeSlots.isEmpty()) {
+            System.out.format(leftAlignFormat, "None");
+            System.out.format(separator);
+            return;
+        }
+
+        int doctorWidth = MIN_DOCTOR_WIDTH;
+        for (FreeSlot slot : freeSlots) {
+            doctorWidth = Math.max(doctorWidth, slot.getDoctor().getName().length());
+        }
+        String rowFormat = "| %-16s | %-" + doctorWidth + "s |%n";
+        String columnSeparator = "+" + "-".repeat(18) + "+" + "-".repeat(doctorWidth + 2) + "+%n";
+
+        System.out.format(columnSeparator);
+        for (FreeSlot slot : freeSlots) {
+            System.out.format(rowFormat, slot.getStartDateTime().format(formatter), slot.getDoctor().getName());
+        }
+        System.out.format(columnSeparator);
+    }
+}
@@ -28,4 +28,34 @@ public class Constant {
      *  The default CSV headers for staff CSV files
      */
     public static final String DEFAULT_STAFF_CSV_HEADER = "id,password,salt,name,age,gendercreatedAt,updatedAt";
+
+    /**
+     *  The estimated memory, in bytes, each repository's entity cache may take up
+     */
+    public static final long ENTITY_CACHE_MAX_BYTES = 4L * 1024 * 1024;
+
+    /**
+     *  The maximum number of CSV files loaded in parallel at startup
+     */
+    public static final int PRELOAD_THREADS = 4;
+
+    /**
+     *  The system property that, when set to true, prints the per-file load times, rows and bytes of the startup preload
+     */
+    public static final String PRELOAD_REPORT_PROPERTY = "hms.preloadReport";
+
+    /**
+     *  The number of threads searching doctors' schedules for free slots in parallel
+     */
+    public static final int SLOT_SEARCH_THREADS = Runtime.getRuntime().availableProcessors();
+
+    /**
+     *  The number of days ahead searched for the earliest free appointment slots
+     */
+    public static final int SLOT_SEARCH_DAYS = 30;
+
+    /**
+     *  The number of locks that doctor and patient IDs are spread over when booking appointments
+     */
+    public static final int BOOKING_LOCK_STRIPES = 64;
 }
@@ -0,0 +1,286 @@
+package util;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A forward-only cursor over the fields of a single CSV row, following RFC 4180.
+ * Fields are read one at a time in their typed form, straight from the row, so no
+ * intermediate {@code String[]} is built and numbers are parsed without a substring.
+ * Quoted fields may hold commas and doubled quotes, as written by {@link ExcelReader}.
+ *
+ * <p>Example usage:
+ * <pre>
+ * CsvCursor cursor = new CsvCursor(line);
+ * String id = cursor.nextString();
+ * int age = cursor.nextInt();
+ * Gender gender = cursor.nextEnum(Gender.class);
+ * </pre>
+ *
+ * @author Russell Arvin
+ * @version 1.0
+ */
+public class CsvCursor {
+    private String line;
+    private int position;
+
+    /**
+     * Constructs a cursor positioned at the first field of a row.
+     *
+     * @param line the CSV row, without its line terminator
+     */
+    public CsvCursor(String line) {
+        reset(line);
+    }
+
+    /**
+     * Constructs a cursor without a row, to be moved to one with {@link #reset(String)} before reading.
+     * Code that reads many rows keeps one such cursor and resets it to each row in turn.
+     */
+    public CsvCursor() {
+        this.line = "";
+        this.position = -1;
+    }
+
+    /**
+     * Moves the cursor to the first field of another row, so one cursor can be reused across rows.
+     *
+     * @param line the CSV row, without its line terminator
+     * @return this cursor
+     */
+    public CsvCursor reset(String line) {
+        if (line == null) throw new IllegalArgumentException("CSV row cannot be null");
+        this.line = line;
+        this.position = 0;
+        return this;
+    }
+
+    /**
+     * Checks whether the row has another field. A row always has at least one field,
+     * and a trailing comma starts a final empty field.
+     *
+     * @return true if there is another field to read
+     */
+    public boolean hasNext() {
+        return position >= 0;
+    }
+
+    /**
+     * Skips the next field.
+     */
+    public void skip() {
+        int start = requireField();
+        if (start < line.length() && line.charAt(start) == '"') {
+            advancePast(closingQuote(start));
+        } else {
+            advancePast(fieldEnd(start));
+        }
+    }
+
+    /**
+     * Reads the next field as a string. A quoted field is returned without its quotes
+     * and with doubled quotes collapsed.
+     *
+     * @return the field value
+     */
+    public String nextString() {
+        int start = requireField();
+        if (start < line.length() && line.charAt(start) == '"') {
+            return nextQuoted(start);
+        }
+
+        int end = fieldEnd(start);
+        advancePast(end);
+        return line.substring(start, end);
+    }
+
+    /**
+     * Reads the next field as a decimal integer, parsing it in place.
+     *
+     * @return the field value
+     * @throws NumberFormatException if the field is not a valid int
+     */
+    public int nextInt() {
+        int start = requireField();
+        if (start < line.length() && line.charAt(start) == '"') {
+            return Integer.parseInt(nextQuoted(start));
+        }
+
+        int end = fieldEnd(start);
+        int i = start;
+        boolean negative = i < end && line.charAt(i) == '-';
+        if (negative || (i < end && line.charAt(i) == '+')) i++;
+        if (i == end) throw new NumberFormatException("For input string: \"" + line.substring(start, end) + "\"");
+
+        // Accumulate negatively so that Integer.MIN_VALUE parses without overflow
+        int limit = negative ? Integer.MIN_VALUE : -Integer.MAX_VALUE;
+        int result = 0;
+        for (; i < end; i++) {
+            int digit = line.charAt(i) - '0';
+            if (digit < 0 || digit > 9 || result < limit / 10 || result * 10 < limit + digit) {
+                throw new NumberFormatException("For input string: \"" + line.substring(start, end) + "\"");
+            }
+            result = result * 10 - digit;
+        }
+
+        advancePast(end);
+        return negative ? result : -result;
+    }
+
+    /**
+     * Reads the next field as the name of an enum constant.
+     *
+     * @param <E> the enum type
+     * @param type the enum class
+     * @return the enum constant
+     * @throws IllegalArgumentException if the field is not a constant of the enum
+     */
+    public <E extends Enum<E>> E nextEnum(Class<E> type) {
+        return Enum.valueOf(type, nextString());
+    }
+
+    /**
+     * Reads the next field as a timestamp in either stored encoding, parsing it in place.
+     *
+     * @return the field value
+     * @see TimestampCodec#parse(CharSequence, int, int)
+     */
+    public LocalDateTime nextDateTime() {
+        int start = requireField();
+        if (start < line.length() && line.charAt(start) == '"') {
+            return TimestampCodec.parse(nextQuoted(start));
+        }
+
+        int end = fieldEnd(start);
+        LocalDateTime value = TimestampCodec.parse(line, start, end);
+        advancePast(end);
+        return value;
+    }
+
+    /**
+     * Reads the next field as an ISO-8601 date, in the format written by {@link LocalDate#toString()}.
+     *
+     * @return the field value
+     */
+    public LocalDate nextDate() {
+        return LocalDate.parse(nextString());
+    }
+
+    /**
+     * Splits a whole row into its fields. This is meant for rows whose number of fields is
+     * checked up front, such as imported data; mappers should read typed fields instead.
+     *
+     * @param line the CSV row, without its line terminator
+     * @return the field values
+     */
+    public static String[] split(String line) {
+        CsvCursor cursor = new CsvCursor(line);
+        List<String> fields = new ArrayList<>();
+        while (cursor.hasNext()) {
+            fields.add(cursor.nextString());
+        }
+        return fields.toArray(new String[0]);
+    }
+
+    /**
+     * Joins field values into a row that this cursor reads back as the same values, quoting the
+     * values that hold a comma, a quote or a line break.
+     *
+     * @param values the field values, where null is written as an empty field
+     * @return the CSV row
+     */
+    public static String join(String... values) {
+        StringBuilder row = new StringBuilder();
+        for (int i = 0; i < values.length; i++) {
+            if (i > 0) row.append(',');
+            row.append(escape(values[i]));
+        }
+        return row.toString();
+    }
+
+    /**
+     * Escapes a field value for a CSV row. Values that hold a comma, a quote or a line break are
+     * quoted, with quotes inside them doubled; other values are returned as they are.
+     *
+     * @param value the field value, where null is written as an empty field
+     * @return the value as it should appear in the row
+     */
+    public static String escape(String value) {
+        if (value == null) return "";
+        if (value.contains(",") || value.contains("\"") || value.contains("\n")) {
+            return "\"" + value.replace("\"", "\"\"") + "\"";
+        }
+        return value;
+    }
+
+    /**
+     * Returns the start of the next field, failing if the row has no more fields.
+     *
+     * @return the index at which the next field starts
+     * @throws IllegalArgumentException if every field has been read
+     */
+    private int requireField() {
+        if (position < 0) throw new IllegalArgumentException("CSV row has too few fields: " + line);
+        return position;
+    }
+
+    /**
+     * Returns the end of an unquoted field.
+     *
+     * @param start the index at which the field starts
+     * @return the index of the comma ending the field, or the end of the row
+     */
+    private int fieldEnd(int start) {
+        int comma = line.indexOf(',', start);
+        return comma < 0 ? line.length() : comma;
+    }
+
+    /**
+     * Reads a quoted field and moves past it.
+     *
+     * @param start the index of the opening quote
+     * @return the unquoted field value
+     */
+    private String nextQuoted(int start) {
+        int end = closingQuote(start);
+        String value = line.substring(start + 1, end);
+        if (value.indexOf('"') >= 0) value = value.replace("\"\"", "\"");
+        advancePast(end);
+        return value;
+    }
+
+    /**
+     * Finds the quote that closes a quoted field, stepping over doubled quotes.
+     *
+     * @param start the index of the opening quote
+     * @return the index of the closing quote
+     * @throws IllegalArgumentException if the quote is never closed
+     */
+    private int closingQuote(int start) {
+        int i = start + 1;
+        while (true) {
+            int quote = line.indexOf('"', i);
+            if (quote < 0) throw new IllegalArgumentException("Unterminated quoted field in CSV row: " + line);
+            if (quote + 1 < line.length() && line.charAt(quote + 1) == '"') {
+                i = quote + 2;
+            } else {
+                return quote;
+            }
+        }
+    }
+
+    /**
+     * Moves the cursor past the end of a field. For a quoted field, the end is its closing quote.
+     *
+     * @param end the index just past an unquoted field, or of the closing quote of a quoted one
+     */
+    private void advancePast(int end) {
+        if (end < line.length() && line.charAt(end) == '"') end++;
+        if (end < line.length() && line.charAt(end) != ',') {
+            throw new IllegalArgumentException("Unexpected character after quoted field in CSV row: " + line);
+        }
+        position = end < line.length() ? end + 1 : -1;
+    }
+}
@@ -0,0 +1,148 @@
+package util;
+
+import java.time.Duration;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Bitmaps of the fixed-length slots of a day, one bit per slot in a {@code long}, with bit 0 for the slot
+ * starting at midnight. Appointments are booked in blocks of {@value #SLOT_MINUTES} minutes and doctors
+ * work whole hours, so a day's bookings and a doctor's working hours both fit in one {@code long}, and
+ * checking or listing free slots becomes a few bitwise operations.
+ *
+ * <p>Example usage:
+ * <pre>
+ * long working = DaySlots.workingHours(9, 17);
+ * long free = working &amp; ~occupied;
+ * boolean isFree = (free &amp; DaySlots.covering(start, end)) == DaySlots.covering(start, end);
+ * List&lt;LocalDateTime&gt; starts = DaySlots.starts(date, free);
+ * </pre>
+ *
+ * @author Russell Arvin
+ * @version 1.0
+ */
+public final class DaySlots {
+    /** Length of a slot in minutes. */
+    public static final int SLOT_MINUTES = 30;
+    /** Number of slots in a day. */
+    public static final int SLOTS_PER_DAY = 24 * 60 / SLOT_MINUTES;
+
+    /**
+     * Prevents instantiation of this utility class.
+     */
+    private DaySlots() {
+    }
+
+    /**
+     * Returns the bitmap of a run of slots.
+     *
+     * @param fromSlot the first slot, inclusive
+     * @param toSlot the last slot, exclusive
+     * @return the bitmap with the bits of the slots set
+     * @throws IllegalArgumentException if the run is outside the day
+     */
+    public static long range(int fromSlot, int toSlot) {
+        if (fromSlot < 0 || toSlot > SLOTS_PER_DAY || fromSlot > toSlot) {
+            throw new IllegalArgumentException("Invalid slot range: " + fromSlot + " to " + toSlot);
+        }
+        if (fromSlot == toSlot) return 0L;
+        return (-1L >>> (Long.SIZE - (toSlot - fromSlot))) << fromSlot;
+    }
+
+    /**
+     * Returns the bitmap of the slots within whole working hours.
+     *
+     * @param startHour the hour work starts, from 0 to 24
+     * @param endHour the hour work ends, from 0 to 24
+     * @return the bitmap of the working slots, or 0 if the hours are empty
+     */
+    public static long workingHours(int startHour, int endHour) {
+        int slotsPerHour = 60 / SLOT_MINUTES;
+        int from = Math.max(0, startHour) * slotsPerHour;
+        int to = Math.min(24, endHour) * slotsPerHour;
+        return from >= to ? 0L : range(from, to);
+    }
+
+    /**
+     * Checks whether a time range lies within whole working hours on the day it starts. The hours are read
+     * the same way as by {@link #workingHours(int, int)}, so for a range of whole slots this agrees with
+     * checking its {@link #covering(LocalDateTime, LocalDateTime)} bitmap against the working-hours bitmap,
+     * and it also holds for ranges that do not start or end on a slot boundary.
+     *
+     * @param start the start of the range, inclusive
+     * @param end the end of the range, exclusive
+     * @param startHour the hour work starts, from 0 to 24
+     * @param endHour the hour work ends, from 0 to 24
+     * @return true if the range is not empty and starts and ends within the working hours
+     */
+    public static boolean isWithinHours(LocalDateTime start, LocalDateTime end, int startHour, int endHour) {
+        if (!end.isAfter(start)) return false;
+
+        LocalDateTime dayStart = start.toLocalDate().atStartOfDay();
+        LocalDateTime workStart = dayStart.plusHours(Math.max(0, startHour));
+        LocalDateTime workEnd = dayStart.plusHours(Math.min(24, endHour));
+        return !start.isBefore(workStart) && !end.isAfter(workEnd);
+    }
+
+    /**
+     * Returns the bitmap of the slots of a time range's first day that the range overlaps, including
+     * slots it only partly covers.
+     *
+     * @param start the start of the range, inclusive
+     * @param end the end of the range, exclusive
+     * @return the bitmap of the overlapped slots on the day the range starts
+     */
+    public static long covering(LocalDateTime start, LocalDateTime end) {
+        LocalDateTime dayStart = start.toLocalDate().atStartOfDay();
+        LocalDateTime dayEnd = dayStart.plusDays(1);
+        if (!end.isAfter(start)) return 0L;
+
+        int fromSlot = (int) (Duration.between(dayStart, start).toMinutes() / SLOT_MINUTES);
+        long endMinutes = end.isBefore(dayEnd) ? Duration.between(dayStart, end).toMinutes() : 24 * 60;
+        boolean partial = end.isBefore(dayEnd) && (endMinutes % SLOT_MINUTES != 0 || end.getSecond() != 0 || end.getNano() != 0);
+        int toSlot = (int) (endMinutes / SLOT_MINUTES) + (partial ? 1 : 0);
+        return range(fromSlot, Math.max(fromSlot, toSlot));
+    }
+
+    /**
+     * Checks whether a time range starts and ends on slot boundaries within a single day, so that
+     * {@link #covering(LocalDateTime, LocalDateTime)} describes it exactly.
+     *
+     * @param start the start of the range
+     * @param end the end of the range
+     * @return true if the range is exactly a run of whole slots of one day
+     */
+    public static boolean isAligned(LocalDateTime start, LocalDateTime end) {
+        if (!end.isAfter(start) || !onBoundary(start) || !onBoundary(end)) return false;
+        LocalDateTime nextDay = start.toLocalDate().plusDays(1).atStartOfDay();
+        return !end.isAfter(nextDay);
+    }
+
+    /**
+     * Returns the start times of the slots in a bitmap.
+     *
+     * @param date the day of the bitmap
+     * @param slots the bitmap
+     * @return the start times of the slots, in order
+     */
+    public static List<LocalDateTime> starts(LocalDate date, long slots) {
+        List<LocalDateTime> starts = new ArrayList<>(Long.bitCount(slots));
+        LocalDateTime dayStart = date.atStartOfDay();
+        for (long remaining = slots; remaining != 0; remaining &= remaining - 1) {
+            starts.add(dayStart.plusMinutes((long) Long.numberOfTrailingZeros(remaining) * SLOT_MINUTES));
+        }
+        return starts;
+    }
+
+    /**
+     * Checks whether a time falls on a slot boundary.
+     *
+     * @param time the time
+     * @return true if the time is the start of a slot
+     */
+    private static boolean onBoundary(LocalDateTime time) {
+        return time.getMinute() % SLOT_MINUTES == 0 && time.getSecond() == 0 && time.getNano() == 0;
+    }
+}
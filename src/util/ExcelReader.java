@@ -23,7 +23,7 @@ import org.w3c.dom.*;
  * <pre>
  * List<String> rows = ExcelReader.readExcel("data.xlsx");
  * for (String row : rows) {
- *     String[] columns = row.split(",");
+ *     String[] columns = CsvCursor.split(row);
  *     // Process the data...
  * }
  * </pre>
@@ -164,7 +164,7 @@ public class ExcelReader {
         for (int i = 0; i < cells.getLength(); i++) {
             if (i > 0) rowContent.append(",");
             String cellValue = getCellValue((Element) cells.item(i), sharedStrings);
-            rowContent.append(escapeCsvValue(cellValue));
+            rowContent.append(CsvCursor.escape(cellValue));
         }
 
         return rowContent.toString();
@@ -197,21 +197,6 @@ public class ExcelReader {
         return value;
     }
 
-    /**
-     * Escapes special characters in a value for CSV format.
-     * Wraps values containing commas in quotes and escapes existing quotes.
-     *
-     * @param value the string to escape
-     * @return the escaped string
-     */
-    private static String escapeCsvValue(String value) {
-        if (value == null) return "";
-        if (value.contains(",") || value.contains("\"") || value.contains("\n")) {
-            return "\"" + value.replace("\"", "\"\"") + "\"";
-        }
-        return value;
-    }
-
     /**
      * Demonstrates usage of the ExcelReader class.
      *
@@ -0,0 +1,306 @@
+package util;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A set of half-open intervals {@code [start, end)} on a line of longs, each carrying a unique key.
+ * The intervals are held in an AVL tree ordered by start, where every node also records the largest
+ * end in its subtree, so finding whether any interval overlaps a range takes O(log n) and listing the
+ * k intervals that overlap it takes O(log n + k).
+ *
+ * <p>Example usage:
+ * <pre>
+ * IntervalTree&lt;String&gt; bookings = new IntervalTree&lt;&gt;();
+ * bookings.add(900, 930, "A1");
+ * bookings.overlaps(915, 945);         // true
+ * bookings.findOverlapping(800, 1000); // [A1]
+ * bookings.remove(900, "A1");
+ * </pre>
+ *
+ * <p>The tree is not thread-safe.
+ *
+ * @param <K> the type of the keys, which break ties between intervals with the same start
+ * @author Russell Arvin
+ * @version 1.0
+ */
+public class IntervalTree<K extends Comparable<K>> {
+    private Node<K> root;
+    private int size = 0;
+
+    /**
+     * Adds an interval, replacing the end of an interval with the same start and key.
+     *
+     * @param start the start of the interval, inclusive
+     * @param end the end of the interval, exclusive
+     * @param key the key of the interval
+     * @throws IllegalArgumentException if the key is null or the interval is empty
+     */
+    public void add(long start, long end, K key) {
+        if (key == null) throw new IllegalArgumentException("Interval key cannot be null");
+        if (end <= start) throw new IllegalArgumentException("Interval must end after it starts: " + start + ", " + end);
+        root = insert(root, start, end, key);
+    }
+
+    /**
+     * Removes an interval.
+     *
+     * @param start the start of the interval, as it was added
+     * @param key the key of the interval
+     * @return true if the interval was found and removed
+     */
+    public boolean remove(long start, K key) {
+        int before = size;
+        root = delete(root, start, key);
+        return size < before;
+    }
+
+    /**
+     * Checks whether any interval overlaps a range.
+     *
+     * @param start the start of the range, inclusive
+     * @param end the end of the range, exclusive
+     * @return true if some interval starts before the range ends and ends after it starts
+     */
+    public boolean overlaps(long start, long end) {
+        Node<K> node = root;
+        while (node != null) {
+            if (node.start < end && start < node.end) return true;
+
+            // If the left subtree reaches past the start but holds no overlap, neither does the right one,
+            // as everything there starts at or after an interval that already starts too late
+            node = node.left != null && node.left.maxEnd > start ? node.left : node.right;
+        }
+        return false;
+    }
+
+    /**
+     * Lists the keys of the intervals that overlap a range.
+     *
+     * @param start the start of the range, inclusive
+     * @param end the end of the range, exclusive
+     * @return the keys of the overlapping intervals, in order of their start
+     */
+    public List<K> findOverlapping(long start, long end) {
+        List<K> keys = new ArrayList<>();
+        collect(root, start, end, keys);
+        return keys;
+    }
+
+    /**
+     * Returns the number of intervals.
+     *
+     * @return the number of intervals
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Checks whether there are no intervals.
+     *
+     * @return true if the tree is empty
+     */
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    /**
+     * Collects the keys of the intervals in a subtree that overlap a range, in order of their start.
+     *
+     * @param node the root of the subtree
+     * @param start the start of the range, inclusive
+     * @param end the end of the range, exclusive
+     * @param keys the list to add the keys to
+     */
+    private static <K extends Comparable<K>> void collect(Node<K> node, long start, long end, List<K> keys) {
+        if (node == null || node.maxEnd <= start) return;
+
+        collect(node.left, start, end, keys);
+        if (node.start >= end) return;
+        if (start < node.end) keys.add(node.key);
+        collect(node.right, start, end, keys);
+    }
+
+    /**
+     * Inserts an interval into a subtree.
+     *
+     * @param node the root of the subtree
+     * @param start the start of the interval
+     * @param end the end of the interval
+     * @param key the key of the interval
+     * @return the new root of the subtree
+     */
+    private Node<K> insert(Node<K> node, long start, long end, K key) {
+        if (node == null) {
+            size++;
+            return new Node<>(start, end, key);
+        }
+
+        int order = compare(start, key, node);
+        if (order < 0) {
+            node.left = insert(node.left, start, end, key);
+        } else if (order > 0) {
+            node.right = insert(node.right, start, end, key);
+        } else {
+            node.end = end;
+        }
+        return balance(node);
+    }
+
+    /**
+     * Deletes an interval from a subtree.
+     *
+     * @param node the root of the subtree
+     * @param start the start of the interval
+     * @param key the key of the interval
+     * @return the new root of the subtree
+     */
+    private Node<K> delete(Node<K> node, long start, K key) {
+        if (node == null) return null;
+
+        int order = compare(start, key, node);
+        if (order < 0) {
+            node.left = delete(node.left, start, key);
+        } else if (order > 0) {
+            node.right = delete(node.right, start, key);
+        } else {
+            size--;
+            if (node.left == null) return node.right;
+            if (node.right == null) return node.left;
+
+            Node<K> successor = node.right;
+            while (successor.left != null) successor = successor.left;
+            node.right = deleteMin(node.right);
+            successor.left = node.left;
+            successor.right = node.right;
+            node = successor;
+        }
+        return balance(node);
+    }
+
+    /**
+     * Deletes the interval with the smallest start from a subtree.
+     *
+     * @param node the root of the subtree
+     * @return the new root of the subtree
+     */
+    private Node<K> deleteMin(Node<K> node) {
+        if (node.left == null) return node.right;
+        node.left = deleteMin(node.left);
+        return balance(node);
+    }
+
+    /**
+     * Orders an interval against a node by start, then by key.
+     *
+     * @param start the start of the interval
+     * @param key the key of the interval
+     * @param node the node to compare with
+     * @return a negative number, zero or a positive number as the interval sorts before, with or after the node
+     */
+    private static <K extends Comparable<K>> int compare(long start, K key, Node<K> node) {
+        int order = Long.compare(start, node.start);
+        return order != 0 ? order : key.compareTo(node.key);
+    }
+
+    /**
+     * Restores the AVL balance of a node whose subtrees changed, and updates its height and largest end.
+     *
+     * @param node the node
+     * @return the new root of the node's subtree
+     */
+    private static <K extends Comparable<K>> Node<K> balance(Node<K> node) {
+        update(node);
+        int skew = height(node.left) - height(node.right);
+        if (skew > 1) {
+            if (height(node.left.left) < height(node.left.right)) node.left = rotateLeft(node.left);
+            return rotateRight(node);
+        }
+        if (skew < -1) {
+            if (height(node.right.right) < height(node.right.left)) node.right = rotateRight(node.right);
+            return rotateLeft(node);
+        }
+        return node;
+    }
+
+    /**
+     * Rotates a subtree to the left.
+     *
+     * @param node the root of the subtree
+     * @return the new root of the subtree
+     */
+    private static <K extends Comparable<K>> Node<K> rotateLeft(Node<K> node) {
+        Node<K> pivot = node.right;
+        node.right = pivot.left;
+        pivot.left = node;
+        update(node);
+        update(pivot);
+        return pivot;
+    }
+
+    /**
+     * Rotates a subtree to the right.
+     *
+     * @param node the root of the subtree
+     * @return the new root of the subtree
+     */
+    private static <K extends Comparable<K>> Node<K> rotateRight(Node<K> node) {
+        Node<K> pivot = node.left;
+        node.left = pivot.right;
+        pivot.right = node;
+        update(node);
+        update(pivot);
+        return pivot;
+    }
+
+    /**
+     * Recomputes the height and largest end of a node from its children.
+     *
+     * @param node the node
+     */
+    private static <K extends Comparable<K>> void update(Node<K> node) {
+        node.height = 1 + Math.max(height(node.left), height(node.right));
+        long maxEnd = node.end;
+        if (node.left != null) maxEnd = Math.max(maxEnd, node.left.maxEnd);
+        if (node.right != null) maxEnd = Math.max(maxEnd, node.right.maxEnd);
+        node.maxEnd = maxEnd;
+    }
+
+    /**
+     * Returns the height of a subtree.
+     *
+     * @param node the root of the subtree, may be null
+     * @return the height, or 0 for an empty subtree
+     */
+    private static int height(Node<?> node) {
+        return node == null ? 0 : node.height;
+    }
+
+    /**
+     * An interval in the tree, with the height and largest end of the subtree it roots.
+     */
+    private static final class Node<K> {
+        private final long start;
+        private final K key;
+        private long end;
+        private long maxEnd;
+        private int height = 1;
+        private Node<K> left;
+        private Node<K> right;
+
+        /**
+         * Constructs a leaf node.
+         *
+         * @param start the start of the interval
+         * @param end the end of the interval
+         * @param key the key of the interval
+         */
+        Node(long start, long end, K key) {
+            this.start = start;
+            this.end = end;
+            this.maxEnd = end;
+            this.key = key;
+        }
+    }
+}
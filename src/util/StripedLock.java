@@ -0,0 +1,93 @@
+package util;
+
+import java.util.Arrays;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * A fixed set of locks that string keys, such as doctor and patient IDs, are hashed onto. Work on the
+ * same key is serialized, while work on keys that fall on different stripes runs in parallel, without
+ * keeping a lock per key.
+ *
+ * <p>Several keys are locked together by taking their stripes in ascending order, so two threads that
+ * lock overlapping sets of keys cannot deadlock.
+ *
+ * <p>Example usage:
+ * <pre>
+ * StripedLock locks = new StripedLock(64);
+ * locks.lock(doctorId, patientId);
+ * try {
+ *     // check and book
+ * } finally {
+ *     locks.unlock(doctorId, patientId);
+ * }
+ * </pre>
+ *
+ * @author Russell Arvin
+ * @version 1.0
+ */
+public class StripedLock {
+    private final ReentrantLock[] stripes;
+
+    /**
+     * Constructs a set of stripes.
+     *
+     * @param stripeCount the number of stripes
+     * @throws IllegalArgumentException if the number of stripes is not positive
+     */
+    public StripedLock(int stripeCount) {
+        if (stripeCount <= 0) throw new IllegalArgumentException("Stripe count must be positive: " + stripeCount);
+        stripes = new ReentrantLock[stripeCount];
+        for (int i = 0; i < stripeCount; i++) {
+            stripes[i] = new ReentrantLock();
+        }
+    }
+
+    /**
+     * Locks the stripes of the given keys, waiting until all of them are held.
+     *
+     * @param keys the keys to lock
+     */
+    public void lock(String... keys) {
+        for (int stripe : stripesOf(keys)) {
+            stripes[stripe].lock();
+        }
+    }
+
+    /**
+     * Unlocks the stripes of the given keys, which must have been locked with the same keys.
+     *
+     * @param keys the keys to unlock
+     */
+    public void unlock(String... keys) {
+        int[] held = stripesOf(keys);
+        for (int i = held.length - 1; i >= 0; i--) {
+            stripes[held[i]].unlock();
+        }
+    }
+
+    /**
+     * Returns the distinct stripes of the given keys in ascending order.
+     *
+     * @param keys the keys
+     * @return the indexes of the stripes
+     */
+    private int[] stripesOf(String... keys) {
+        return Arrays.stream(keys)
+            .mapToInt(this::stripeOf)
+            .distinct()
+            .sorted()
+            .toArray();
+    }
+
+    /**
+     * Returns the stripe a key is hashed onto.
+     *
+     * @param key the key
+     * @return the index of the stripe
+     */
+    private int stripeOf(String key) {
+        int hash = key.hashCode();
+        hash ^= hash >>> 16;
+        return Math.floorMod(hash, stripes.length);
+    }
+}
@@ -0,0 +1,282 @@
+package util;
+
+import enums.TimestampEncoding;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+
+/**
+ * Fixed-layout parser and formatter for the timestamps stored in the CSV files.
+ * The ISO layout written by {@link LocalDateTime#toString()} ({@code yyyy-MM-ddTHH:mm[:ss[.fraction]]})
+ * is handled by hand instead of through a {@code DateTimeFormatter}, and anything else falls back to
+ * {@link LocalDateTime#parse(CharSequence)}.
+ *
+ * <p>Timestamps can also be stored as epoch microseconds, which are shorter and cheaper to parse.
+ * The encoding used for writing is chosen with the {@value #ENCODING_PROPERTY} system property
+ * ({@code ISO} or {@code EPOCH_MICROS}) or {@link #setEncoding(TimestampEncoding)}. Reading always
+ * accepts both, so existing ISO files stay readable after switching. Epoch microseconds drop
+ * any nanoseconds below a microsecond.
+ *
+ * @author Russell Arvin
+ * @version 1.0
+ */
+public final class TimestampCodec {
+    /** System property selecting the encoding timestamps are written in. */
+    public static final String ENCODING_PROPERTY = "hms.timestampEncoding";
+
+    private static final long MICROS_PER_SECOND = 1_000_000L;
+    private static final int NANOS_PER_MICRO = 1_000;
+
+    private static volatile TimestampEncoding encoding = readEncodingProperty();
+
+    /**
+     * Prevents instantiation of this utility class.
+     */
+    private TimestampCodec() {
+    }
+
+    /**
+     * Returns the encoding timestamps are currently written in.
+     *
+     * @return the current encoding
+     */
+    public static TimestampEncoding getEncoding() {
+        return encoding;
+    }
+
+    /**
+     * Sets the encoding timestamps are written in from now on.
+     *
+     * @param newEncoding the encoding to write
+     */
+    public static void setEncoding(TimestampEncoding newEncoding) {
+        if (newEncoding == null) throw new IllegalArgumentException("Timestamp encoding cannot be null");
+        encoding = newEncoding;
+    }
+
+    /**
+     * Formats a timestamp for storage in the current encoding.
+     *
+     * @param dateTime the timestamp to format
+     * @return the stored form of the timestamp
+     */
+    public static String format(LocalDateTime dateTime) {
+        return encoding == TimestampEncoding.EPOCH_MICROS
+            ? Long.toString(toEpochMicros(dateTime))
+            : formatIso(dateTime);
+    }
+
+    /**
+     * Formats a timestamp exactly as {@link LocalDateTime#toString()} does.
+     *
+     * @param dateTime the timestamp to format
+     * @return the ISO-8601 form of the timestamp
+     */
+    public static String formatIso(LocalDateTime dateTime) {
+        int year = dateTime.getYear();
+        if (year < 1000 || year > 9999) return dateTime.toString(); // Needs sign or padding rules
+
+        int second = dateTime.getSecond();
+        int nano = dateTime.getNano();
+        char[] out = new char[29];
+        int length = 0;
+
+        length = writeDigits(out, length, year, 4);
+        out[length++] = '-';
+        length = writeDigits(out, length, dateTime.getMonthValue(), 2);
+        out[length++] = '-';
+        length = writeDigits(out, length, dateTime.getDayOfMonth(), 2);
+        out[length++] = 'T';
+        length = writeDigits(out, length, dateTime.getHour(), 2);
+        out[length++] = ':';
+        length = writeDigits(out, length, dateTime.getMinute(), 2);
+
+        if (second > 0 || nano > 0) {
+            out[length++] = ':';
+            length = writeDigits(out, length, second, 2);
+            if (nano > 0) {
+                out[length++] = '.';
+                if (nano % 1_000_000 == 0) {
+                    length = writeDigits(out, length, nano / 1_000_000, 3);
+                } else if (nano % 1_000 == 0) {
+                    length = writeDigits(out, length, nano / 1_000, 6);
+                } else {
+                    length = writeDigits(out, length, nano, 9);
+                }
+            }
+        }
+        return new String(out, 0, length);
+    }
+
+    /**
+     * Parses a stored timestamp in either encoding.
+     *
+     * @param text the stored timestamp
+     * @return the parsed timestamp
+     */
+    public static LocalDateTime parse(CharSequence text) {
+        return parse(text, 0, text.length());
+    }
+
+    /**
+     * Parses a stored timestamp in either encoding from a range of characters, without copying it.
+     *
+     * @param text the characters holding the timestamp
+     * @param start the index at which the timestamp starts
+     * @param end the index just past the timestamp
+     * @return the parsed timestamp
+     * @throws java.time.DateTimeException if the text is not a valid timestamp
+     */
+    public static LocalDateTime parse(CharSequence text, int start, int end) {
+        if (isEpochMicros(text, start, end)) {
+            return fromEpochMicros(parseLong(text, start, end));
+        }
+
+        LocalDateTime parsed = parseIso(text, start, end);
+        return parsed != null ? parsed : LocalDateTime.parse(text.subSequence(start, end));
+    }
+
+    /**
+     * Converts a timestamp to microseconds since 1970-01-01T00:00, counting it as UTC.
+     *
+     * @param dateTime the timestamp
+     * @return the epoch microseconds
+     */
+    public static long toEpochMicros(LocalDateTime dateTime) {
+        return dateTime.toEpochSecond(ZoneOffset.UTC) * MICROS_PER_SECOND + dateTime.getNano() / NANOS_PER_MICRO;
+    }
+
+    /**
+     * Converts microseconds since 1970-01-01T00:00, counted as UTC, to a timestamp.
+     *
+     * @param micros the epoch microseconds
+     * @return the timestamp
+     */
+    public static LocalDateTime fromEpochMicros(long micros) {
+        long seconds = Math.floorDiv(micros, MICROS_PER_SECOND);
+        int nanos = (int) Math.floorMod(micros, MICROS_PER_SECOND) * NANOS_PER_MICRO;
+        return LocalDateTime.ofEpochSecond(seconds, nanos, ZoneOffset.UTC);
+    }
+
+    /**
+     * Parses the layout written by {@link LocalDateTime#toString()} for four-digit years.
+     *
+     * @param text the characters holding the timestamp
+     * @param start the index at which the timestamp starts
+     * @param end the index just past the timestamp
+     * @return the parsed timestamp, or null if the text does not follow the layout
+     */
+    private static LocalDateTime parseIso(CharSequence text, int start, int end) {
+        int length = end - start;
+        if (length < 16
+            || text.charAt(start + 4) != '-' || text.charAt(start + 7) != '-'
+            || text.charAt(start + 10) != 'T' || text.charAt(start + 13) != ':') {
+            return null;
+        }
+
+        int year = digits(text, start, 4);
+        int month = digits(text, start + 5, 2);
+        int day = digits(text, start + 8, 2);
+        int hour = digits(text, start + 11, 2);
+        int minute = digits(text, start + 14, 2);
+        int second = 0;
+        int nano = 0;
+
+        if (length > 16) {
+            if (length < 19 || text.charAt(start + 16) != ':') return null;
+            second = digits(text, start + 17, 2);
+
+            if (length > 19) {
+                int fractionDigits = length - 20;
+                if (text.charAt(start + 19) != '.' || fractionDigits < 1 || fractionDigits > 9) return null;
+                nano = digits(text, start + 20, fractionDigits);
+                if (nano < 0) return null;
+                for (int i = fractionDigits; i < 9; i++) nano *= 10;
+            }
+        }
+
+        if (year < 0 || month < 0 || day < 0 || hour < 0 || minute < 0 || second < 0) return null;
+        return LocalDateTime.of(year, month, day, hour, minute, second, nano);
+    }
+
+    /**
+     * Checks whether a range holds an epoch-micros timestamp: an optional minus sign and digits only.
+     *
+     * @param text the characters holding the timestamp
+     * @param start the index at which the timestamp starts
+     * @param end the index just past the timestamp
+     * @return true if the range is an integer
+     */
+    private static boolean isEpochMicros(CharSequence text, int start, int end) {
+        if (start < end && text.charAt(start) == '-') start++;
+        if (start == end || end - start > 18) return false;
+        for (int i = start; i < end; i++) {
+            char c = text.charAt(i);
+            if (c < '0' || c > '9') return false;
+        }
+        return true;
+    }
+
+    /**
+     * Parses a range already known to be an optional minus sign followed by at most 18 digits.
+     *
+     * @param text the characters holding the number
+     * @param start the index at which the number starts
+     * @param end the index just past the number
+     * @return the number
+     */
+    private static long parseLong(CharSequence text, int start, int end) {
+        boolean negative = text.charAt(start) == '-';
+        long value = 0;
+        for (int i = negative ? start + 1 : start; i < end; i++) {
+            value = value * 10 + (text.charAt(i) - '0');
+        }
+        return negative ? -value : value;
+    }
+
+    /**
+     * Parses a fixed number of decimal digits.
+     *
+     * @param text the characters holding the digits
+     * @param start the index of the first digit
+     * @param count the number of digits
+     * @return the value, or -1 if any character is not a digit
+     */
+    private static int digits(CharSequence text, int start, int count) {
+        int value = 0;
+        for (int i = start; i < start + count; i++) {
+            int digit = text.charAt(i) - '0';
+            if (digit < 0 || digit > 9) return -1;
+            value = value * 10 + digit;
+        }
+        return value;
+    }
+
+    /**
+     * Writes a non-negative number as a fixed number of digits, padded with leading zeros.
+     *
+     * @param out the buffer to write to
+     * @param at the index to start writing at
+     * @param value the number to write
+     * @param count the number of digits
+     * @return the index just past the written digits
+     */
+    private static int writeDigits(char[] out, int at, int value, int count) {
+        for (int i = at + count - 1; i >= at; i--) {
+            out[i] = (char) ('0' + value % 10);
+            value /= 10;
+        }
+        return at + count;
+    }
+
+    /**
+     * Reads the write encoding from the {@value #ENCODING_PROPERTY} system property.
+     *
+     * @return the configured encoding, or ISO if the property is unset
+     * @throws IllegalArgumentException if the property does not name an encoding
+     */
+    private static TimestampEncoding readEncodingProperty() {
+        String value = System.getProperty(ENCODING_PROPERTY);
+        if (value == null || value.trim().isEmpty()) return TimestampEncoding.ISO;
+        return TimestampEncoding.valueOf(value.trim().replace('-', '_').toUpperCase());
+    }
+}